@@ -0,0 +1,49 @@
+package org.library.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.library.domain.Book;
+
+/**
+ * Creates the {@link Book}s used by the benchmarks
+ * 
+ * @author dylants
+ * 
+ */
+public final class BenchmarkBooks {
+
+    private BenchmarkBooks() {
+    }
+
+    /**
+     * Creates a {@link Book} with a title and author of typical length
+     * 
+     * @param id
+     *            The ID of the {@link Book}
+     * @return The {@link Book}
+     */
+    public static Book createBook(long id) {
+        Book book = new Book();
+        book.setId(id);
+        book.setTitle("The Elegant Universe: Superstrings, Hidden Dimensions, and the Quest "
+                + "for the Ultimate Theory, Volume " + id);
+        book.setAuthor("Brian Greene");
+        return book;
+    }
+
+    /**
+     * Creates <code>size</code> {@link Book}s
+     * 
+     * @param size
+     *            The number of {@link Book}s to create
+     * @return The {@link Book}s
+     */
+    public static List<Book> createBooks(int size) {
+        List<Book> books = new ArrayList<Book>(size);
+        for (int i = 1; i <= size; i++) {
+            books.add(createBook(i));
+        }
+        return books;
+    }
+}
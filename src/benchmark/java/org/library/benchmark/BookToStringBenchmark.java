@@ -0,0 +1,37 @@
+package org.library.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.library.domain.Book;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link Book#toString()}, which is called whenever a {@link Book} is logged at debug
+ * level
+ * 
+ * @author dylants
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookToStringBenchmark {
+
+    private final Book book = BenchmarkBooks.createBook(1);
+
+    @Benchmark
+    public String bookToString() {
+        return this.book.toString();
+    }
+}
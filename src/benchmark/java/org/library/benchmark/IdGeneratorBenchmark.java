@@ -0,0 +1,83 @@
+package org.library.benchmark;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.library.WebApplicationInitializer;
+import org.library.domain.Book;
+import org.library.persistence.UseExistingOrGenerateIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+
+/**
+ * Benchmarks the {@link UseExistingOrGenerateIdGenerator} of {@link Book}s, both generating new
+ * IDs (leasing blocks of IDs from the development HSQL database as needed) and using supplied IDs
+ * 
+ * @author dylants
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdGeneratorBenchmark {
+
+    private AnnotationConfigWebApplicationContext context;
+    private EntityManager entityManager;
+    private SessionImplementor session;
+    private IdentifierGenerator generator;
+    private final Book existingBook = BenchmarkBooks.createBook(1);
+
+    @Setup
+    public void setup() {
+        // the root context also picks up the servlet configuration, which needs a servlet context
+        this.context = new AnnotationConfigWebApplicationContext();
+        this.context.setServletContext(new MockServletContext());
+        this.context.getEnvironment().setActiveProfiles("development");
+        this.context.register(WebApplicationInitializer.RootContextConfiguration.class);
+        this.context.refresh();
+
+        this.entityManager = this.context.getBean(EntityManagerFactory.class)
+                .createEntityManager();
+        this.session = this.entityManager.unwrap(SessionImplementor.class);
+        SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor) this.entityManager
+                .unwrap(Session.class).getSessionFactory();
+        this.generator = sessionFactory.getIdentifierGenerator(Book.class.getName());
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.entityManager.close();
+        this.context.close();
+    }
+
+    @Benchmark
+    public Serializable generateNewId() {
+        return this.generator.generate(this.session, new Book());
+    }
+
+    @Benchmark
+    public Serializable useExistingId() {
+        return this.generator.generate(this.session, this.existingBook);
+    }
+}
@@ -0,0 +1,75 @@
+package org.library.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.library.domain.Book;
+import org.library.web.BookResourceAssembler;
+import org.library.web.BooksResourceAssembler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.Resources;
+
+/**
+ * Benchmarks converting {@link Book}s to {@link Resource}s with the {@link BookResourceAssembler}
+ * and {@link BooksResourceAssembler}, as done for every GET request
+ * 
+ * @author dylants
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResourceAssemblerBenchmark {
+
+    /**
+     * The state of the single {@link Book} benchmark
+     */
+    @State(Scope.Benchmark)
+    public static class BookState {
+
+        private final BookResourceAssembler bookResourceAssembler = new BookResourceAssembler();
+        private final Book book = BenchmarkBooks.createBook(1);
+    }
+
+    /**
+     * The state of the collection benchmark, run for each number of {@link Book}s
+     */
+    @State(Scope.Benchmark)
+    public static class BooksState {
+
+        @Param({"10", "1000", "100000"})
+        private int size;
+
+        private final BooksResourceAssembler booksResourceAssembler = new BooksResourceAssembler(
+                new BookResourceAssembler());
+        private List<Book> books;
+
+        @Setup
+        public void setup() {
+            this.books = BenchmarkBooks.createBooks(this.size);
+        }
+    }
+
+    @Benchmark
+    public Resource<Book> bookToResource(BookState state) {
+        return state.bookResourceAssembler.toResource(state.book);
+    }
+
+    @Benchmark
+    public Resources<Resource<Book>> booksToResource(BooksState state) {
+        return state.booksResourceAssembler.toResource(state.books);
+    }
+}
@@ -0,0 +1,169 @@
+package org.library.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.library.domain.Book;
+import org.library.web.BookResourceAssembler;
+import org.library.web.BooksResourceAssembler;
+import org.library.web.MappingJacksonSmileHttpMessageConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.Resources;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJacksonHttpMessageConverter;
+import org.springframework.http.converter.xml.Jaxb2RootElementHttpMessageConverter;
+
+/**
+ * Benchmarks writing {@link Resource}s of {@link Book}s as JSON, Smile and XML, using the same
+ * {@link MappingJacksonHttpMessageConverter} (Jackson),
+ * {@link MappingJacksonSmileHttpMessageConverter} (Jackson's binary JSON) and
+ * {@link Jaxb2RootElementHttpMessageConverter} (JAXB) that Spring MVC uses to write our
+ * responses. The output is discarded, so only the cost of serialization is measured. Reading the
+ * {@link Resources} of {@link Book}s back is benchmarked for JSON and Smile, as our callers would,
+ * and the size of each encoding is printed when the collection is set up.
+ * <p>
+ * Note that the {@link Resources} of {@link Book}s can only be written as JSON: {@link Book} has
+ * no JAXB mapping, so JAXB fails to marshal the collection (and writes a single {@link Book} as an
+ * empty resource).
+ * 
+ * @author dylants
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    /**
+     * The state of the single {@link Book} benchmarks
+     */
+    @State(Scope.Benchmark)
+    public static class BookState {
+
+        private final Resource<Book> resource = new BookResourceAssembler()
+                .toResource(BenchmarkBooks.createBook(1));
+    }
+
+    /**
+     * The state of the collection benchmarks, run for each number of {@link Book}s
+     */
+    @State(Scope.Benchmark)
+    public static class BooksState {
+
+        @Param({"10", "1000"})
+        private int size;
+
+        private Resources<Resource<Book>> resources;
+        private byte[] json;
+        private byte[] smile;
+
+        @Setup
+        public void setup() throws IOException {
+            this.resources = new BooksResourceAssembler(new BookResourceAssembler())
+                    .toResource(BenchmarkBooks.createBooks(this.size));
+            this.json = new MappingJacksonHttpMessageConverter().getObjectMapper()
+                    .writeValueAsBytes(this.resources);
+            this.smile = new MappingJacksonSmileHttpMessageConverter().getObjectMapper()
+                    .writeValueAsBytes(this.resources);
+            System.out.println(String.format("%d books: %d bytes of JSON, %d bytes of Smile "
+                    + "(%.0f%%)", this.size, this.json.length, this.smile.length, 100.0
+                    * this.smile.length / this.json.length));
+        }
+    }
+
+    private final MappingJacksonHttpMessageConverter jsonConverter = new MappingJacksonHttpMessageConverter();
+    private final MappingJacksonSmileHttpMessageConverter smileConverter = new MappingJacksonSmileHttpMessageConverter();
+    private final Jaxb2RootElementHttpMessageConverter xmlConverter = new Jaxb2RootElementHttpMessageConverter();
+
+    @Benchmark
+    public HttpOutputMessage writeBookJson(BookState state) throws IOException {
+        HttpOutputMessage message = new DiscardingOutputMessage();
+        this.jsonConverter.write(state.resource, MediaType.APPLICATION_JSON, message);
+        return message;
+    }
+
+    @Benchmark
+    public HttpOutputMessage writeBookSmile(BookState state) throws IOException {
+        HttpOutputMessage message = new DiscardingOutputMessage();
+        this.smileConverter.write(state.resource,
+                MappingJacksonSmileHttpMessageConverter.APPLICATION_SMILE, message);
+        return message;
+    }
+
+    @Benchmark
+    public HttpOutputMessage writeBookXml(BookState state) throws IOException {
+        HttpOutputMessage message = new DiscardingOutputMessage();
+        this.xmlConverter.write(state.resource, MediaType.TEXT_XML, message);
+        return message;
+    }
+
+    @Benchmark
+    public HttpOutputMessage writeBooksJson(BooksState state) throws IOException {
+        HttpOutputMessage message = new DiscardingOutputMessage();
+        this.jsonConverter.write(state.resources, MediaType.APPLICATION_JSON, message);
+        return message;
+    }
+
+    @Benchmark
+    public HttpOutputMessage writeBooksSmile(BooksState state) throws IOException {
+        HttpOutputMessage message = new DiscardingOutputMessage();
+        this.smileConverter.write(state.resources,
+                MappingJacksonSmileHttpMessageConverter.APPLICATION_SMILE, message);
+        return message;
+    }
+
+    @Benchmark
+    public Map<?, ?> readBooksJson(BooksState state) throws IOException {
+        return this.jsonConverter.getObjectMapper().readValue(state.json, Map.class);
+    }
+
+    @Benchmark
+    public Map<?, ?> readBooksSmile(BooksState state) throws IOException {
+        return this.smileConverter.getObjectMapper().readValue(state.smile, Map.class);
+    }
+
+    /**
+     * An {@link HttpOutputMessage} that discards its body
+     */
+    private static class DiscardingOutputMessage implements HttpOutputMessage {
+
+        private final HttpHeaders headers = new HttpHeaders();
+        private final OutputStream body = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return this.headers;
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return this.body;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.library.loadtest;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.library.WebApplicationInitializer;
+import org.library.WebApplicationInitializer.ServletContextConfiguration;
+import org.springframework.web.SpringServletContainerInitializer;
+
+/**
+ * Runs the application in an embedded Tomcat 7 server, booting it through our
+ * {@link WebApplicationInitializer} just as a standalone Tomcat would. The server listens on a free
+ * port, and the application uses the default (development) profile.
+ * <p>
+ * All the clients of the load test share the same address, standing in for many users. So the
+ * limit on the rate of each client is raised out of the way, leaving the limit on the requests in
+ * flight to apply as it would in production.
+ * 
+ * @author dylants
+ * 
+ */
+public class EmbeddedServer {
+
+    /**
+     * The context path of the application, matching the path used by the tomcat7 plugin
+     */
+    public static final String CONTEXT_PATH = "/library";
+    /**
+     * The number of requests per second allowed for the address shared by all the clients
+     */
+    public static final int CLIENT_RATE = 1000000;
+
+    private final Tomcat tomcat = new Tomcat();
+
+    /**
+     * Creates an {@link EmbeddedServer}
+     * 
+     * @param baseDir
+     *            The working directory of the server
+     */
+    public EmbeddedServer(File baseDir) {
+        File docBase = new File(baseDir, "webapp");
+        docBase.mkdirs();
+        this.tomcat.setBaseDir(baseDir.getAbsolutePath());
+        this.tomcat.setPort(0);
+
+        Context context = this.tomcat.addContext(CONTEXT_PATH, docBase.getAbsolutePath());
+        context.addParameter(ServletContextConfiguration.ADMISSION_CLIENT_RATE_PROPERTY,
+                String.valueOf(CLIENT_RATE));
+        context.addParameter(ServletContextConfiguration.ADMISSION_CLIENT_BURST_PROPERTY,
+                String.valueOf(CLIENT_RATE));
+        context.addServletContainerInitializer(new SpringServletContainerInitializer(),
+                Collections.<Class<?>> singleton(WebApplicationInitializer.class));
+    }
+
+    /**
+     * Starts the server, returning once the application is ready
+     * 
+     * @throws LifecycleException
+     *             If the server fails to start
+     */
+    public void start() throws LifecycleException {
+        this.tomcat.start();
+    }
+
+    /**
+     * Stops the server
+     * 
+     * @throws LifecycleException
+     *             If the server fails to stop
+     */
+    public void stop() throws LifecycleException {
+        this.tomcat.stop();
+        this.tomcat.destroy();
+    }
+
+    /**
+     * @return the base URL of the API, such as <code>http://localhost:8080/library/api</code>
+     */
+    public String getApiUrl() {
+        return "http://localhost:" + this.tomcat.getConnector().getLocalPort() + CONTEXT_PATH
+                + "/api";
+    }
+}
@@ -0,0 +1,221 @@
+package org.library.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An end-to-end load test of the /books API. This boots the application in an
+ * {@link EmbeddedServer} and drives it with many concurrent {@link LoadTestClient}s performing a
+ * configurable mix of {@link Operation}s (see {@link LoadTestConfig}). Once done, it reports the
+ * throughput along with the p50, p99 and p99.9 latencies, and compares them against the stored
+ * baseline: the test fails (exiting with a non-zero status) should any request fail, or should the
+ * throughput, p50 or p99 latency be worse than the baseline by more than the tolerance. The p99.9
+ * latency is reported, but too noisy to compare.
+ * <p>
+ * The clients send their next request as soon as the previous one completes, so the latencies
+ * are those seen under the load the server can sustain, rather than at a fixed request rate. The
+ * baseline depends on the machine it was recorded on, so update it (with
+ * <code>-Dloadtest.updateBaseline=true</code>) when the test moves to other hardware.
+ * 
+ * @author dylants
+ * 
+ */
+public class LoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    private static final String THROUGHPUT = "throughput";
+    private static final String P50 = "p50";
+    private static final String P99 = "p99";
+    private static final String P999 = "p999";
+
+    private final LoadTestConfig config;
+    private final String apiUrl;
+
+    /**
+     * Creates a {@link LoadTest}
+     * 
+     * @param config
+     *            The {@link LoadTestConfig} of the test
+     * @param apiUrl
+     *            The base URL of the API to test
+     */
+    public LoadTest(LoadTestConfig config, String apiUrl) {
+        this.config = config;
+        this.apiUrl = apiUrl;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = new LoadTestConfig();
+        logger.info("starting load test with {}", config);
+
+        EmbeddedServer server = new EmbeddedServer(new File("target/loadtest-tomcat"));
+        server.start();
+        Map<String, Object> results;
+        try {
+            results = new LoadTest(config, server.getApiUrl()).run();
+        } finally {
+            server.stop();
+        }
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        config.getResults().getParentFile().mkdirs();
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(config.getResults(), results);
+        logger.info("results written to {}", config.getResults());
+
+        List<String> failures = new ArrayList<String>();
+        if (((Number) results.get("errors")).longValue() > 0) {
+            failures.add(results.get("errors") + " requests failed");
+        }
+        if (config.isUpdateBaseline()) {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(config.getBaseline(),
+                    baselineOf(results));
+            logger.info("baseline updated in {}", config.getBaseline());
+        } else if (config.getBaseline().exists()) {
+            @SuppressWarnings("unchecked")
+            Map<String, Number> baseline = objectMapper.readValue(config.getBaseline(), Map.class);
+            failures.addAll(compare(results, baseline, config.getTolerance()));
+        } else {
+            logger.warn("no baseline found in {}, skipping comparison", config.getBaseline());
+        }
+
+        for (String failure : failures) {
+            logger.error("load test failed: {}", failure);
+        }
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Runs the test, returning the results
+     * 
+     * @return The throughput, latencies (in milliseconds) and errors, overall and per
+     *         {@link Operation}
+     * @throws InterruptedException
+     *             If interrupted while waiting for the clients
+     * @throws IOException
+     *             If the results can't be created
+     * @throws IllegalStateException
+     *             If no request was recorded
+     */
+    public Map<String, Object> run() throws InterruptedException, IOException {
+        long measureStart = System.nanoTime()
+                + TimeUnit.SECONDS.toNanos(this.config.getWarmupSeconds());
+        long end = measureStart + TimeUnit.SECONDS.toNanos(this.config.getDurationSeconds());
+
+        List<LoadTestClient> clients = new ArrayList<LoadTestClient>();
+        ExecutorService executor = Executors.newFixedThreadPool(this.config.getClients());
+        for (int i = 0; i < this.config.getClients(); i++) {
+            LoadTestClient client = new LoadTestClient(this.apiUrl, this.config.getMix(),
+                    measureStart, end);
+            clients.add(client);
+            executor.execute(client);
+        }
+        executor.shutdown();
+        executor.awaitTermination(end - System.nanoTime() + TimeUnit.MINUTES.toNanos(1),
+                TimeUnit.NANOSECONDS);
+
+        // merge the histograms of all the clients
+        Map<Operation, Histogram> histograms = new LinkedHashMap<Operation, Histogram>();
+        Histogram overall = null;
+        long errors = 0;
+        for (LoadTestClient client : clients) {
+            for (Map.Entry<Operation, Histogram> entry : client.getHistograms().entrySet()) {
+                Histogram histogram = histograms.get(entry.getKey());
+                if (histogram == null) {
+                    histograms.put(entry.getKey(), entry.getValue().copy());
+                } else {
+                    histogram.add(entry.getValue());
+                }
+                if (overall == null) {
+                    overall = entry.getValue().copy();
+                } else {
+                    overall.add(entry.getValue());
+                }
+            }
+            errors += client.getErrors();
+        }
+
+        if (overall == null || overall.getTotalCount() == 0) {
+            throw new IllegalStateException("no requests were recorded, check that the API is up "
+                    + "at " + this.apiUrl);
+        }
+        Map<String, Object> results = this.summarize(overall);
+        results.put("errors", errors);
+        Map<String, Object> operations = new LinkedHashMap<String, Object>();
+        for (Map.Entry<Operation, Histogram> entry : histograms.entrySet()) {
+            if (entry.getValue().getTotalCount() > 0) {
+                operations.put(entry.getKey().name().toLowerCase(),
+                        this.summarize(entry.getValue()));
+            }
+        }
+        results.put("operations", operations);
+
+        logger.info(String.format("%-8s %10s %10s %10s %10s %10s", "", "requests", "req/s",
+                "p50 ms", "p99 ms", "p99.9 ms"));
+        this.report("overall", results);
+        for (Map.Entry<String, Object> entry : operations.entrySet()) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> summary = (Map<String, Object>) entry.getValue();
+            this.report(entry.getKey(), summary);
+        }
+        logger.info("{} requests failed", errors);
+        return results;
+    }
+
+    private Map<String, Object> summarize(Histogram histogram) {
+        Map<String, Object> summary = new LinkedHashMap<String, Object>();
+        summary.put("requests", histogram.getTotalCount());
+        summary.put(THROUGHPUT, (double) histogram.getTotalCount()
+                / this.config.getDurationSeconds());
+        summary.put(P50, histogram.getValueAtPercentile(50) / 1000.0);
+        summary.put(P99, histogram.getValueAtPercentile(99) / 1000.0);
+        summary.put(P999, histogram.getValueAtPercentile(99.9) / 1000.0);
+        return summary;
+    }
+
+    private void report(String name, Map<String, Object> summary) {
+        logger.info(String.format("%-8s %10d %10.1f %10.2f %10.2f %10.2f", name,
+                summary.get("requests"), summary.get(THROUGHPUT), summary.get(P50),
+                summary.get(P99), summary.get(P999)));
+    }
+
+    private static Map<String, Object> baselineOf(Map<String, Object> results) {
+        Map<String, Object> baseline = new LinkedHashMap<String, Object>();
+        for (String key : new String[]{THROUGHPUT, P50, P99, P999}) {
+            baseline.put(key, results.get(key));
+        }
+        return baseline;
+    }
+
+    private static List<String> compare(Map<String, Object> results, Map<String, Number> baseline,
+            double tolerance) {
+        List<String> failures = new ArrayList<String>();
+        double throughput = ((Number) results.get(THROUGHPUT)).doubleValue();
+        double baselineThroughput = baseline.get(THROUGHPUT).doubleValue();
+        if (throughput < baselineThroughput * (1 - tolerance)) {
+            failures.add(String.format("throughput of %.1f req/s is below the baseline of %.1f",
+                    throughput, baselineThroughput));
+        }
+        for (String percentile : new String[]{P50, P99}) {
+            double latency = ((Number) results.get(percentile)).doubleValue();
+            double baselineLatency = baseline.get(percentile).doubleValue();
+            if (latency > baselineLatency * (1 + tolerance)) {
+                failures.add(String.format("%s latency of %.2f ms is above the baseline of %.2f",
+                        percentile, latency, baselineLatency));
+            }
+        }
+        return failures;
+    }
+}
@@ -0,0 +1,210 @@
+package org.library.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.library.domain.Book;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single client of a {@link LoadTest}, performing one request after another until the test ends.
+ * Each request is an {@link Operation} picked at random according to the configured mix. Updates
+ * and deletes only target {@link Book}s created by the same client, so clients never interfere
+ * with each other. The latency of each request made once the warmup is over is recorded in a
+ * {@link Histogram} per {@link Operation}, in microseconds.
+ * 
+ * @author dylants
+ * 
+ */
+public class LoadTestClient implements Runnable {
+
+    private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final Long EXISTING_BOOK_ID = 1L;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Random random = new Random();
+
+    private final String apiUrl;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final long measureStart;
+    private final long end;
+
+    private final Map<Operation, Histogram> histograms = new EnumMap<Operation, Histogram>(
+            Operation.class);
+    private final List<Long> bookIds = new ArrayList<Long>();
+    private long errors;
+
+    /**
+     * Creates a {@link LoadTestClient}
+     * 
+     * @param apiUrl
+     *            The base URL of the API
+     * @param mix
+     *            The weight of each {@link Operation}
+     * @param measureStart
+     *            The {@link System#nanoTime()} after which to record latencies
+     * @param end
+     *            The {@link System#nanoTime()} at which to stop
+     */
+    public LoadTestClient(String apiUrl, Map<Operation, Integer> mix, long measureStart, long end) {
+        this.apiUrl = apiUrl;
+        this.operations = mix.keySet().toArray(new Operation[mix.size()]);
+        this.cumulativeWeights = new int[this.operations.length];
+        int total = 0;
+        for (int i = 0; i < this.operations.length; i++) {
+            total += mix.get(this.operations[i]);
+            this.cumulativeWeights[i] = total;
+        }
+        this.measureStart = measureStart;
+        this.end = end;
+        for (Operation operation : Operation.values()) {
+            this.histograms.put(operation, new Histogram(HIGHEST_LATENCY, SIGNIFICANT_DIGITS));
+        }
+    }
+
+    @Override
+    public void run() {
+        long start;
+        while ((start = System.nanoTime()) < this.end) {
+            Operation operation = this.pickOperation();
+            boolean succeeded;
+            try {
+                succeeded = this.perform(operation);
+            } catch (IOException e) {
+                logger.debug("{} request failed", operation, e);
+                succeeded = false;
+            }
+            if (start >= this.measureStart) {
+                long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+                this.histograms.get(operation).recordValue(Math.min(latency, HIGHEST_LATENCY));
+                if (!succeeded) {
+                    this.errors++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the latencies recorded for each {@link Operation}, in microseconds
+     */
+    public Map<Operation, Histogram> getHistograms() {
+        return histograms;
+    }
+
+    /**
+     * @return the number of requests that failed
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    private Operation pickOperation() {
+        int value = this.random.nextInt(this.cumulativeWeights[this.cumulativeWeights.length - 1]);
+        Operation operation = this.operations[this.operations.length - 1];
+        for (int i = 0; i < this.cumulativeWeights.length; i++) {
+            if (value < this.cumulativeWeights[i]) {
+                operation = this.operations[i];
+                break;
+            }
+        }
+        // create a book first if there's none of our own to update or delete
+        if ((operation == Operation.PUT || operation == Operation.DELETE)
+                && this.bookIds.isEmpty()) {
+            operation = Operation.POST;
+        }
+        return operation;
+    }
+
+    private boolean perform(Operation operation) throws IOException {
+        switch (operation) {
+            case GET :
+                Long id = this.bookIds.isEmpty() || this.random.nextBoolean()
+                        ? EXISTING_BOOK_ID
+                        : this.bookIds.get(this.random.nextInt(this.bookIds.size()));
+                return this.request("GET", "/books/" + id, null) != null;
+            case LIST :
+                return this.request("GET", "/books?limit=100", null) != null;
+            case POST :
+                String created = this.request("POST", "/books", this.createBook());
+                if (created == null) {
+                    return false;
+                }
+                this.bookIds.add(this.objectMapper.readTree(created).get("id").asLong());
+                return true;
+            case PUT :
+                Long updateId = this.bookIds.get(this.random.nextInt(this.bookIds.size()));
+                return this.request("PUT", "/books/" + updateId, this.createBook()) != null;
+            case DELETE :
+                Long deleteId = this.bookIds.remove(this.random.nextInt(this.bookIds.size()));
+                return this.request("DELETE", "/books/" + deleteId, null) != null;
+            default :
+                throw new IllegalArgumentException("unknown operation: " + operation);
+        }
+    }
+
+    private byte[] createBook() throws IOException {
+        Book book = new Book();
+        book.setTitle("Load Test Volume " + this.random.nextInt(1000000));
+        book.setAuthor("Load Tester " + this.random.nextInt(100));
+        return this.objectMapper.writeValueAsBytes(book);
+    }
+
+    /**
+     * Performs the request, returning the response body, or <code>null</code> if the request was
+     * not successful
+     */
+    private String request(String method, String path, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(this.apiUrl + path)
+                .openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Accept", "application/json");
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+        }
+
+        int status = connection.getResponseCode();
+        // always read the whole response, so the connection can be kept alive
+        InputStream in = status < 400 ? connection.getInputStream() : connection
+                .getErrorStream();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        if (in != null) {
+            try {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    content.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        if (status >= 300) {
+            logger.debug("{} {} returned {}", method, path, status);
+            return null;
+        }
+        return content.toString("UTF-8");
+    }
+}
@@ -0,0 +1,115 @@
+package org.library.loadtest;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The configuration of a {@link LoadTest}, read from system properties:
+ * <ul>
+ * <li>loadtest.clients: the number of concurrent clients (default 16)</li>
+ * <li>loadtest.warmup: the seconds to run before measuring (default 10)</li>
+ * <li>loadtest.duration: the seconds to measure (default 30)</li>
+ * <li>loadtest.mix: the weight of each {@link Operation}, such as
+ * <code>get:60,list:10,post:10,put:10,delete:10</code> (the default)</li>
+ * <li>loadtest.baseline: the baseline file to compare the results with</li>
+ * <li>loadtest.tolerance: the fraction by which the results may be worse than the baseline
+ * (default 0.3)</li>
+ * <li>loadtest.updateBaseline: whether to store the results as the new baseline instead of
+ * comparing them (default false)</li>
+ * <li>loadtest.results: the file to write the results to</li>
+ * </ul>
+ * 
+ * @author dylants
+ * 
+ */
+public class LoadTestConfig {
+
+    private final int clients = Integer.getInteger("loadtest.clients", 16);
+    private final int warmupSeconds = Integer.getInteger("loadtest.warmup", 10);
+    private final int durationSeconds = Integer.getInteger("loadtest.duration", 30);
+    private final Map<Operation, Integer> mix = parseMix(System.getProperty("loadtest.mix",
+            "get:60,list:10,post:10,put:10,delete:10"));
+    private final File baseline = new File(System.getProperty("loadtest.baseline",
+            "src/loadtest/resources/baseline.json"));
+    private final double tolerance = Double.parseDouble(System.getProperty("loadtest.tolerance",
+            "0.3"));
+    private final boolean updateBaseline = Boolean.getBoolean("loadtest.updateBaseline");
+    private final File results = new File(System.getProperty("loadtest.results",
+            "target/loadtest-result.json"));
+
+    /**
+     * @return the number of concurrent clients
+     */
+    public int getClients() {
+        return clients;
+    }
+
+    /**
+     * @return the seconds to run before measuring
+     */
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    /**
+     * @return the seconds to measure
+     */
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    /**
+     * @return the weight of each {@link Operation}
+     */
+    public Map<Operation, Integer> getMix() {
+        return mix;
+    }
+
+    /**
+     * @return the baseline file to compare the results with
+     */
+    public File getBaseline() {
+        return baseline;
+    }
+
+    /**
+     * @return the fraction by which the results may be worse than the baseline
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * @return whether to store the results as the new baseline
+     */
+    public boolean isUpdateBaseline() {
+        return updateBaseline;
+    }
+
+    /**
+     * @return the file to write the results to
+     */
+    public File getResults() {
+        return results;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d clients, %ds warmup, %ds duration, mix %s", clients,
+                warmupSeconds, durationSeconds, mix);
+    }
+
+    private static Map<Operation, Integer> parseMix(String value) {
+        Map<Operation, Integer> mix = new LinkedHashMap<Operation, Integer>();
+        for (String entry : value.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("invalid mix entry: " + entry);
+            }
+            mix.put(Operation.valueOf(parts[0].trim().toUpperCase()),
+                    Integer.valueOf(parts[1].trim()));
+        }
+        return mix;
+    }
+}
@@ -0,0 +1,31 @@
+package org.library.loadtest;
+
+/**
+ * The operations a {@link LoadTestClient} performs on the /books API
+ * 
+ * @author dylants
+ * 
+ */
+public enum Operation {
+
+    /**
+     * GET a single book
+     */
+    GET,
+    /**
+     * GET a page of books
+     */
+    LIST,
+    /**
+     * POST a new book
+     */
+    POST,
+    /**
+     * PUT an update to a book created by the client
+     */
+    PUT,
+    /**
+     * DELETE a book created by the client
+     */
+    DELETE
+}
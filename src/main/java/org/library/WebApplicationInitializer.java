@@ -1,12 +1,25 @@
 package org.library;
 
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterRegistration;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.xml.transform.Source;
 
 import org.library.config.data.DataConfig;
 import org.library.config.exception.IncludeMessageSourceExceptionResolver;
+import org.library.service.BookChangeCounter;
+import org.library.web.AdmissionControlFilter;
+import org.library.web.BookChangeTracker;
+import org.library.web.BooksSnapshotHttpMessageConverter;
+import org.library.web.CompressionFilter;
+import org.library.web.MappingJacksonSmileHttpMessageConverter;
+import org.library.web.RequestMetrics;
+import org.library.web.RequestMetricsInterceptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,16 +28,30 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.ComponentScan.Filter;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.support.ReloadableResourceBundleMessageSource;
+import org.springframework.core.Conventions;
 import org.springframework.core.env.Environment;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.data.web.config.EnableSpringDataWebSupport;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.ResourceHttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJacksonHttpMessageConverter;
+import org.springframework.http.converter.support.AllEncompassingFormHttpMessageConverter;
+import org.springframework.http.converter.xml.Jaxb2RootElementHttpMessageConverter;
+import org.springframework.http.converter.xml.SourceHttpMessageConverter;
 import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Controller;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.DelegatingFilterProxy;
+import org.springframework.web.servlet.FrameworkServlet;
 import org.springframework.web.servlet.HandlerExceptionResolver;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 import org.springframework.web.servlet.support.AbstractAnnotationConfigDispatcherServletInitializer;
 
@@ -59,6 +86,42 @@ public class WebApplicationInitializer extends AbstractAnnotationConfigDispatche
         return new String[]{"/api/*"};
     }
 
+    @Override
+    protected javax.servlet.Filter[] getServletFilters() {
+        /*
+         * The filters are beans of the servlet's context, so that they share the BookChangeTracker
+         * and RequestMetrics of our controllers. They're looked up on the first request, once the
+         * dispatcher servlet has started. Admission control comes first, so the requests it sheds
+         * cost as little as possible.
+         */
+        return new javax.servlet.Filter[]{new ServletFilterProxy("admissionControlFilter"),
+                new ServletFilterProxy("compressionFilter")};
+    }
+
+    @Override
+    protected FilterRegistration.Dynamic registerServletFilter(ServletContext servletContext,
+            javax.servlet.Filter filter) {
+        /*
+         * Spring names each filter after its class, which would give each of our proxies the same
+         * name, so that all but the first fail to register. Name them after their beans instead.
+         */
+        String filterName = filter instanceof ServletFilterProxy ? ((ServletFilterProxy) filter)
+                .getTargetBeanName() : Conventions.getVariableName(filter);
+        FilterRegistration.Dynamic registration = servletContext.addFilter(filterName, filter);
+        if (registration == null) {
+            throw new IllegalStateException("a filter named " + filterName
+                    + " is already registered");
+        }
+        registration.setAsyncSupported(isAsyncSupported());
+        EnumSet<DispatcherType> dispatcherTypes = EnumSet.of(DispatcherType.REQUEST,
+                DispatcherType.FORWARD, DispatcherType.INCLUDE);
+        if (isAsyncSupported()) {
+            dispatcherTypes.add(DispatcherType.ASYNC);
+        }
+        registration.addMappingForServletNames(dispatcherTypes, false, getServletName());
+        return registration;
+    }
+
     @Override
     public void onStartup(ServletContext servletContext) throws ServletException {
         // set the default profile to "development"
@@ -81,6 +144,16 @@ public class WebApplicationInitializer extends AbstractAnnotationConfigDispatche
     @EnableJpaRepositories
     public static class RootContextConfiguration {
 
+        /**
+         * The number of threads running the repository work of asynchronous requests
+         */
+        public static final int REPOSITORY_THREADS = 20;
+        /**
+         * The number of asynchronous requests which may wait for a repository thread, beyond
+         * which requests are rejected
+         */
+        public static final int REPOSITORY_QUEUE_CAPACITY = 200;
+
         /**
          * Part of the JPA configuration is done based on the {@link Environment}, and will be
          * supplied via this {@link DataConfig} bean
@@ -100,6 +173,23 @@ public class WebApplicationInitializer extends AbstractAnnotationConfigDispatche
                     .getObject());
             return transactionManager;
         }
+
+        /**
+         * Asynchronous requests run their repository work on this bounded executor, releasing the
+         * container's threads while the database is slow. Once all threads are busy and the queue
+         * is full, further work is rejected rather than piling up.
+         * 
+         * @return The {@link ThreadPoolTaskExecutor} running the repository work
+         */
+        @Bean
+        public ThreadPoolTaskExecutor repositoryExecutor() {
+            ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+            executor.setCorePoolSize(REPOSITORY_THREADS);
+            executor.setMaxPoolSize(REPOSITORY_THREADS);
+            executor.setQueueCapacity(REPOSITORY_QUEUE_CAPACITY);
+            executor.setThreadNamePrefix("repository-");
+            return executor;
+        }
     }
 
     /**
@@ -115,8 +205,62 @@ public class WebApplicationInitializer extends AbstractAnnotationConfigDispatche
     @ComponentScan(includeFilters = @Filter({Controller.class, Component.class}), useDefaultFilters = false)
     public static class ServletContextConfiguration extends WebMvcConfigurerAdapter {
 
+        /**
+         * The property holding the minimum size of the body of a compressed response, in bytes
+         */
+        public static final String COMPRESSION_THRESHOLD_PROPERTY = "compression.threshold";
+        /**
+         * The property holding the number of requests per second allowed for each client
+         */
+        public static final String ADMISSION_CLIENT_RATE_PROPERTY = "admission.clientRate";
+        /**
+         * The property holding the number of requests each client may send at once
+         */
+        public static final String ADMISSION_CLIENT_BURST_PROPERTY = "admission.clientBurst";
+        /**
+         * The property holding the minimum limit of the requests handled at the same time
+         */
+        public static final String ADMISSION_MIN_IN_FLIGHT_PROPERTY = "admission.minInFlight";
+        /**
+         * The property holding the maximum limit of the requests handled at the same time
+         */
+        public static final String ADMISSION_MAX_IN_FLIGHT_PROPERTY = "admission.maxInFlight";
+        /**
+         * The property holding the limit of the long-running (export, import, stream and bulk)
+         * requests handled at the same time
+         */
+        public static final String ADMISSION_MAX_LONG_RUNNING_PROPERTY =
+                "admission.maxLongRunning";
+        /**
+         * The property holding the latency within which requests are expected to be handled, in
+         * milliseconds
+         */
+        public static final String ADMISSION_TARGET_LATENCY_PROPERTY = "admission.targetLatency";
+        /**
+         * The property holding the comma separated addresses of the proxies trusted to name the
+         * clients they forward requests for
+         */
+        public static final String ADMISSION_TRUSTED_PROXIES_PROPERTY =
+                "admission.trustedProxies";
+        /**
+         * The property holding the header the trusted proxies name clients with, rather than by
+         * the address they forwarded the request for
+         */
+        public static final String ADMISSION_CLIENT_HEADER_PROPERTY = "admission.clientHeader";
+        /**
+         * The property holding the time the count of the changes to the books is used for before
+         * it's read again, in milliseconds
+         */
+        public static final String CHANGES_MAX_AGE_PROPERTY = "changes.maxAge";
+
         private final Logger logger = LoggerFactory.getLogger(getClass());
 
+        @Autowired
+        private Environment environment;
+
+        @Autowired
+        private BookChangeCounter bookChangeCounter;
+
         @Override
         public void configureHandlerExceptionResolvers(
                 List<HandlerExceptionResolver> exceptionResolvers) {
@@ -132,6 +276,107 @@ public class WebApplicationInitializer extends AbstractAnnotationConfigDispatche
             exceptionResolvers.add(exceptionResolver);
         }
 
+        @Override
+        public void configureMessageConverters(List<HttpMessageConverter<?>> converters) {
+            /*
+             * Configuring any converter replaces Spring's defaults, so the defaults we rely on are
+             * listed here as well, followed by the Smile (binary JSON) converter our service
+             * callers may ask for. The snapshots of all the books come first, as they're written
+             * in the form serialized by the others.
+             */
+            logger.debug("adding the MappingJacksonSmileHttpMessageConverter to the converters");
+            StringHttpMessageConverter stringConverter = new StringHttpMessageConverter();
+            stringConverter.setWriteAcceptCharset(false);
+            converters.add(new ByteArrayHttpMessageConverter());
+            converters.add(stringConverter);
+            converters.add(new ResourceHttpMessageConverter());
+            converters.add(new SourceHttpMessageConverter<Source>());
+            converters.add(new AllEncompassingFormHttpMessageConverter());
+            converters.add(new Jaxb2RootElementHttpMessageConverter());
+            converters.add(new MappingJacksonHttpMessageConverter());
+            converters.add(new MappingJacksonSmileHttpMessageConverter());
+            converters.add(0, new BooksSnapshotHttpMessageConverter(converters));
+        }
+
+        @Override
+        public void addInterceptors(InterceptorRegistry registry) {
+            // record the latency and status of every request in our request metrics
+            logger.debug("adding our RequestMetricsInterceptor to the interceptors");
+            registry.addInterceptor(new RequestMetricsInterceptor(requestMetrics()));
+        }
+
+        /**
+         * Tracks the changes made to the books, seeing those made through other instances once
+         * the count read is older than the {@value #CHANGES_MAX_AGE_PROPERTY} property (a system
+         * property, or a context parameter), or {@value BookChangeTracker#DEFAULT_MAX_AGE}
+         * milliseconds by default
+         * 
+         * @return The {@link BookChangeTracker}
+         */
+        @Bean
+        public BookChangeTracker bookChangeTracker() {
+            long maxAge = this.environment.getProperty(CHANGES_MAX_AGE_PROPERTY, Long.class,
+                    BookChangeTracker.DEFAULT_MAX_AGE);
+            logger.debug("reading the count of the changes to the books every {} ms", maxAge);
+            return new BookChangeTracker(this.bookChangeCounter, maxAge);
+        }
+
+        /**
+         * Compresses the responses of clients which accept it, once their body reaches the size
+         * of the {@value #COMPRESSION_THRESHOLD_PROPERTY} property (a system property, or a
+         * context parameter), or {@value CompressionFilter#DEFAULT_MIN_COMPRESSION_SIZE} bytes by
+         * default
+         * 
+         * @return The {@link CompressionFilter}
+         */
+        @Bean
+        public CompressionFilter compressionFilter() {
+            int minCompressionSize = this.environment.getProperty(COMPRESSION_THRESHOLD_PROPERTY,
+                    Integer.class, CompressionFilter.DEFAULT_MIN_COMPRESSION_SIZE);
+            logger.debug("compressing responses of at least {} bytes", minCompressionSize);
+            return new CompressionFilter(bookChangeTracker(), minCompressionSize);
+        }
+
+        /**
+         * Rejects the requests of clients over their rate, and those beyond the adaptive limit of
+         * requests in flight, configured by the admission properties (system properties, or
+         * context parameters) or the defaults of the {@link AdmissionControlFilter}
+         * 
+         * @return The {@link AdmissionControlFilter}
+         */
+        @Bean
+        public AdmissionControlFilter admissionControlFilter() {
+            double clientRate = this.environment.getProperty(ADMISSION_CLIENT_RATE_PROPERTY,
+                    Double.class, AdmissionControlFilter.DEFAULT_CLIENT_RATE);
+            int clientBurst = this.environment.getProperty(ADMISSION_CLIENT_BURST_PROPERTY,
+                    Integer.class, AdmissionControlFilter.DEFAULT_CLIENT_BURST);
+            int minInFlight = this.environment.getProperty(ADMISSION_MIN_IN_FLIGHT_PROPERTY,
+                    Integer.class, AdmissionControlFilter.DEFAULT_MIN_IN_FLIGHT);
+            int maxInFlight = this.environment.getProperty(ADMISSION_MAX_IN_FLIGHT_PROPERTY,
+                    Integer.class, AdmissionControlFilter.DEFAULT_MAX_IN_FLIGHT);
+            int maxLongRunning = this.environment.getProperty(
+                    ADMISSION_MAX_LONG_RUNNING_PROPERTY, Integer.class,
+                    AdmissionControlFilter.DEFAULT_MAX_LONG_RUNNING);
+            long targetLatency = this.environment.getProperty(ADMISSION_TARGET_LATENCY_PROPERTY,
+                    Long.class, AdmissionControlFilter.DEFAULT_TARGET_LATENCY);
+            logger.debug("allowing {} requests per second per client, up to {} in flight",
+                    clientRate, maxInFlight);
+            AdmissionControlFilter admissionControlFilter = new AdmissionControlFilter(
+                    requestMetrics(), clientRate, clientBurst, minInFlight, maxInFlight,
+                    maxLongRunning, targetLatency);
+            admissionControlFilter.setTrustedProxies(Arrays.asList(StringUtils
+                    .trimArrayElements(StringUtils.commaDelimitedListToStringArray(this.environment
+                            .getProperty(ADMISSION_TRUSTED_PROXIES_PROPERTY, "")))));
+            admissionControlFilter.setClientHeader(StringUtils.trimWhitespace(this.environment
+                    .getProperty(ADMISSION_CLIENT_HEADER_PROPERTY)));
+            return admissionControlFilter;
+        }
+
+        @Bean
+        public RequestMetrics requestMetrics() {
+            return new RequestMetrics();
+        }
+
         @Bean
         public ReloadableResourceBundleMessageSource messageSource() {
             logger.debug("loading the MessageSource error messages");
@@ -142,4 +387,24 @@ public class WebApplicationInitializer extends AbstractAnnotationConfigDispatche
         }
 
     }
+
+    /**
+     * A {@link DelegatingFilterProxy} to a filter bean of the dispatcher servlet's context
+     * 
+     * @author dylants
+     * 
+     */
+    private class ServletFilterProxy extends DelegatingFilterProxy {
+
+        public ServletFilterProxy(String targetBeanName) {
+            super(targetBeanName);
+            setContextAttribute(FrameworkServlet.SERVLET_CONTEXT_PREFIX
+                    + WebApplicationInitializer.this.getServletName());
+        }
+
+        @Override
+        protected String getTargetBeanName() {
+            return super.getTargetBeanName();
+        }
+    }
 }
\ No newline at end of file
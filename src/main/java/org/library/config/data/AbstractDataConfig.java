@@ -0,0 +1,119 @@
+package org.library.config.data;
+
+import java.util.Properties;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.library.persistence.PooledDataSource;
+import org.library.persistence.SessionTimestampQueryCacheFactory;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+
+/**
+ * Provides the configuration shared by each {@link DataConfig}, regardless of the environment
+ * 
+ * @author dylants
+ * 
+ */
+public abstract class AbstractDataConfig implements DataConfig {
+
+    /**
+     * The location of the Ehcache configuration, which declares the size, time to live and
+     * eviction policy of each second-level cache region
+     */
+    public static final String CACHE_CONFIGURATION = "/cache/ehcache.xml";
+
+    /**
+     * The number of statements sent to the database in a single JDBC batch
+     */
+    public static final int JDBC_BATCH_SIZE = 50;
+
+    /**
+     * The default maximum number of connections held by a {@link PooledDataSource}
+     */
+    public static final int POOL_MAX_ACTIVE = 50;
+
+    /**
+     * The default number of prepared statements cached per pooled connection
+     */
+    public static final int POOL_STATEMENT_CACHE_SIZE = 50;
+
+    /**
+     * The default time in milliseconds a pooled connection is trusted after being validated
+     */
+    public static final long POOL_VALIDATION_INTERVAL = 30000;
+
+    /**
+     * The time in milliseconds to wait for a pooled connection before failing
+     */
+    public static final int POOL_MAX_WAIT = 10000;
+
+    /**
+     * Returns the JPA properties common to all environments, to be set on the
+     * {@link LocalContainerEntityManagerFactoryBean}. Subclasses may add to these.
+     * 
+     * @return The JPA properties common to all environments
+     */
+    protected Properties jpaProperties() {
+        Properties properties = new Properties();
+        // cache only those entities marked as cacheable in the second-level cache
+        properties.setProperty("javax.persistence.sharedCache.mode", "ENABLE_SELECTIVE");
+        properties.setProperty("hibernate.cache.use_second_level_cache", "true");
+        properties.setProperty("hibernate.cache.use_query_cache", "true");
+        // stamp cached query results with the time their session started (see the factory)
+        properties.setProperty("hibernate.cache.query_cache_factory",
+                SessionTimestampQueryCacheFactory.class.getName());
+        // share a single CacheManager among all the EntityManager factories in the JVM
+        properties.setProperty("hibernate.cache.region.factory_class",
+                "org.hibernate.cache.ehcache.SingletonEhCacheRegionFactory");
+        properties.setProperty("net.sf.ehcache.configurationResourceName", CACHE_CONFIGURATION);
+        // send inserts and updates to the database in JDBC batches, ordered so that statements
+        // for the same table end up in the same batch
+        properties.setProperty("hibernate.jdbc.batch_size", String.valueOf(JDBC_BATCH_SIZE));
+        properties.setProperty("hibernate.order_inserts", "true");
+        properties.setProperty("hibernate.order_updates", "true");
+        // batch the versioned entities too, whose optimistic lock checks rely on the row count
+        // of each statement in a batch, which both HSQLDB and MySQL report
+        properties.setProperty("hibernate.jdbc.batch_versioned_data", "true");
+        // gather the statistics needed to size the caches
+        properties.setProperty("hibernate.generate_statistics", "true");
+        return properties;
+    }
+
+    /**
+     * Returns the configuration of a {@link PooledDataSource} common to all environments.
+     * Subclasses set how connections are made, by a URL or from another
+     * {@link javax.sql.DataSource}.
+     * <p>
+     * Threads waiting on a connection are served in the order they arrived, so no request is
+     * starved when the pool is saturated. Connections are validated when borrowed, but no more
+     * often than the <code>validationInterval</code>, and cache their prepared statements.
+     * 
+     * @param maxActive
+     *            The maximum number of connections held
+     * @param statementCacheSize
+     *            The number of prepared statements cached per connection
+     * @param validationInterval
+     *            The time in milliseconds a connection is trusted after being validated
+     * @param validationQuery
+     *            The query validating a connection
+     * @return The configuration of the pool
+     */
+    protected PoolProperties poolProperties(int maxActive, int statementCacheSize,
+            long validationInterval, String validationQuery) {
+        PoolProperties poolProperties = new PoolProperties();
+        poolProperties.setMaxActive(maxActive);
+        poolProperties.setMaxIdle(maxActive);
+        poolProperties.setInitialSize(Math.min(10, maxActive));
+        poolProperties.setMinIdle(Math.min(10, maxActive));
+        poolProperties.setMaxWait(POOL_MAX_WAIT);
+        poolProperties.setFairQueue(true);
+        poolProperties.setTestOnBorrow(true);
+        poolProperties.setTestWhileIdle(true);
+        poolProperties.setValidationQuery(validationQuery);
+        poolProperties.setValidationInterval(validationInterval);
+        // reset the auto-commit and read-only state the transactions leave behind, cache the
+        // prepared statements and close the statements a caller leaves open
+        poolProperties.setJdbcInterceptors("ConnectionState;StatementFinalizer;"
+                + "StatementCache(prepared=true,callable=false,max=" + statementCacheSize + ")");
+        return poolProperties;
+    }
+}
\ No newline at end of file
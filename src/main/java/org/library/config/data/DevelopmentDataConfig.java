@@ -2,18 +2,18 @@ package org.library.config.data;
 
 import javax.sql.DataSource;
 
-import org.codehaus.jackson.JsonParser;
-import org.codehaus.jackson.map.DeserializationConfig;
-import org.codehaus.jackson.map.ObjectMapper;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.library.persistence.BookDataLoader;
+import org.library.persistence.PooledDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.env.Environment;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
-import org.springframework.data.repository.init.JacksonRepositoryPopulatorFactoryBean;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
@@ -28,15 +28,21 @@ import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
  */
 @Configuration
 @Profile("development")
-public class DevelopmentDataConfig implements DataConfig {
+public class DevelopmentDataConfig extends AbstractDataConfig {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     @Override
     @Bean
     public DataSource dataSource() {
-        logger.info("for development, using an HSQL DataSource");
-        return new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL).build();
+        logger.info("for development, using a pooled HSQL DataSource");
+        // pool the connections as in production, so the pool can be observed and tuned
+        PoolProperties poolProperties = poolProperties(POOL_MAX_ACTIVE,
+                POOL_STATEMENT_CACHE_SIZE, POOL_VALIDATION_INTERVAL,
+                "select 1 from INFORMATION_SCHEMA.SYSTEM_USERS");
+        poolProperties.setDataSource(new EmbeddedDatabaseBuilder().setType(
+                EmbeddedDatabaseType.HSQL).build());
+        return new PooledDataSource(poolProperties);
     }
 
     @Override
@@ -53,28 +59,24 @@ public class DevelopmentDataConfig implements DataConfig {
         em.setPackagesToScan("org.library");
         // set the data source (database configuration)
         em.setDataSource(dataSource());
+        // additional configuration properties
+        em.setJpaProperties(jpaProperties());
 
         return em;
     }
 
     /**
-     * Pre-populate the database with the information specified in the data/data.json file
+     * Pre-populate the database with the information specified in the data/data.json file. The
+     * schema is generated by Hibernate, so this waits on the {@link #entityManagerFactory()}.
      * 
-     * @return The {@link JacksonRepositoryPopulatorFactoryBean} which will perform the operations
-     *         necessary to pre-populate the database
+     * @return The {@link BookDataLoader} which will stream the books into the database
      */
     @Bean
-    public JacksonRepositoryPopulatorFactoryBean repositoryPopulator() {
+    @DependsOn("entityManagerFactory")
+    public BookDataLoader bookDataLoader() {
         String dataLocation = "data/data.json";
-        logger.info("populating the repository with the data found in {}", dataLocation);
+        logger.info("populating the database with the data found in {}", dataLocation);
         Resource sourceData = new ClassPathResource(dataLocation);
-
-        JacksonRepositoryPopulatorFactoryBean factory = new JacksonRepositoryPopulatorFactoryBean();
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
-        mapper.configure(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        factory.setMapper(mapper);
-        factory.setResources(new Resource[]{sourceData});
-        return factory;
+        return new BookDataLoader(dataSource(), sourceData, JDBC_BATCH_SIZE);
     }
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package org.library.config.data;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import javax.naming.Context;
@@ -7,39 +9,144 @@ import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.library.persistence.PooledDataSource;
+import org.library.persistence.ReadWriteRoutingDataSource;
+import org.library.persistence.ReadWriteRoutingDataSource.ReplicaSelection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.env.Environment;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.Database;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.util.StringUtils;
 
 /**
  * A {@link DataConfig} for the production {@link Environment}
+ * <p>
+ * The primary database is looked up via JNDI, using whatever pool the container configures, unless
+ * the {@link #URL_PROPERTY} is set. In that case the application connects to the URL through a
+ * {@link PooledDataSource} of its own, which it can tune and observe.
+ * <p>
+ * Should the {@link #REPLICAS_PROPERTY} name the JNDI locations of replicas of the database,
+ * read-only transactions are sent to those replicas through a {@link ReadWriteRoutingDataSource}.
  * 
  * @author dylants
  * 
  */
 @Configuration
 @Profile("production")
-public class ProductionDataConfig implements DataConfig {
+public class ProductionDataConfig extends AbstractDataConfig implements DisposableBean {
+
+    /**
+     * The JNDI location of the primary database
+     */
+    public static final String PRIMARY_LOCATION = "java:comp/env/jdbc/web";
+
+    /**
+     * The property holding the JDBC URL of the primary database, to connect through a
+     * {@link PooledDataSource} rather than the one found via JNDI
+     */
+    public static final String URL_PROPERTY = "datasource.url";
+
+    /**
+     * The property holding the user name to connect to the {@link #URL_PROPERTY} with
+     */
+    public static final String USERNAME_PROPERTY = "datasource.username";
+
+    /**
+     * The property holding the password to connect to the {@link #URL_PROPERTY} with
+     */
+    public static final String PASSWORD_PROPERTY = "datasource.password";
+
+    /**
+     * The property holding the maximum number of pooled connections
+     */
+    public static final String POOL_MAX_ACTIVE_PROPERTY = "datasource.pool.maxActive";
+
+    /**
+     * The property holding the number of prepared statements cached per pooled connection
+     */
+    public static final String POOL_STATEMENT_CACHE_SIZE_PROPERTY =
+            "datasource.pool.statementCacheSize";
+
+    /**
+     * The property holding the time in milliseconds a pooled connection is trusted after being
+     * validated
+     */
+    public static final String POOL_VALIDATION_INTERVAL_PROPERTY =
+            "datasource.pool.validationInterval";
+
+    /**
+     * The property holding the comma separated JNDI locations of the replicas of the database, if
+     * any
+     */
+    public static final String REPLICAS_PROPERTY = "datasource.replicas";
+
+    /**
+     * The property holding how read-only transactions are spread among the replicas:
+     * <code>round-robin</code> (the default) or <code>least-loaded</code>
+     */
+    public static final String REPLICA_SELECTION_PROPERTY = "datasource.replicas.selection";
+
+    /**
+     * The property holding the time in milliseconds after a write during which reads go to the
+     * primary database
+     */
+    public static final String READ_YOUR_WRITES_WINDOW_PROPERTY =
+            "datasource.replicas.readYourWritesWindow";
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    // the system properties and environment variables until the context's is autowired
+    @Autowired
+    private Environment environment = new StandardEnvironment();
+
+    // the pool created by this, if any, to be closed along with the context
+    private PooledDataSource pooledDataSource;
+
     @Override
     @Bean
     public DataSource dataSource() {
-        logger.info("for production, attempting to load the DataSource via JNDI");
-        try {
-            // attempt to load the DataSource via JNDI
-            Context ctx = new InitialContext();
-            return (DataSource) ctx.lookup("java:comp/env/jdbc/web");
-        } catch (NamingException e) {
-            throw new RuntimeException(e);
+        DataSource primary;
+        String url = this.environment.getProperty(URL_PROPERTY);
+        if (StringUtils.hasText(url)) {
+            logger.info("for production, using a pooled DataSource connecting to {}", url);
+            primary = this.createPooledDataSource(url);
+        } else {
+            logger.info("for production, attempting to load the DataSource via JNDI");
+            primary = this.lookupDataSource(PRIMARY_LOCATION);
         }
+        String[] locations = StringUtils.commaDelimitedListToStringArray(this.environment
+                .getProperty(REPLICAS_PROPERTY, ""));
+        if (locations.length == 0) {
+            return primary;
+        }
+
+        List<DataSource> replicas = new ArrayList<DataSource>();
+        for (String location : locations) {
+            replicas.add(this.lookupDataSource(location.trim()));
+        }
+        ReadWriteRoutingDataSource routingDataSource = new ReadWriteRoutingDataSource(primary,
+                replicas);
+        String replicaSelection = this.environment.getProperty(REPLICA_SELECTION_PROPERTY,
+                "round-robin");
+        routingDataSource.setReplicaSelection(ReplicaSelection.valueOf(replicaSelection.trim()
+                .toUpperCase().replace('-', '_')));
+        routingDataSource.setReadYourWritesWindow(this.environment.getProperty(
+                READ_YOUR_WRITES_WINDOW_PROPERTY, Long.class,
+                ReadWriteRoutingDataSource.DEFAULT_READ_YOUR_WRITES_WINDOW));
+        logger.info("routing read-only transactions to {} replicas ({})", replicas.size(),
+                replicaSelection);
+        // only take a connection once the transaction is known to be read-only or not
+        return new LazyConnectionDataSourceProxy(routingDataSource);
     }
 
     @Override
@@ -58,17 +165,63 @@ public class ProductionDataConfig implements DataConfig {
         em.setDataSource(dataSource());
 
         // additional configuration properties
-        em.setJpaProperties(new Properties() {
-            private static final long serialVersionUID = 44378104567306969L;
-            {
-                // Set the dialect to MySQL
-                setProperty("hibernate.dialect", "org.hibernate.dialect.MySQL5Dialect");
-                // on each start, this will wipe out existing tables and create new
-                // use "update" to only update existing tables and not start new
-                setProperty("hibernate.hbm2ddl.auto", "create");
-            }
-        });
+        Properties properties = jpaProperties();
+        // Set the dialect to MySQL
+        properties.setProperty("hibernate.dialect", "org.hibernate.dialect.MySQL5Dialect");
+        // on each start, this will wipe out existing tables and create new
+        // use "update" to only update existing tables and not start new
+        properties.setProperty("hibernate.hbm2ddl.auto", "create");
+        em.setJpaProperties(properties);
 
         return em;
     }
+
+    @Override
+    public void destroy() {
+        // the pool may be hidden behind the routing DataSource, so close it here
+        if (this.pooledDataSource != null) {
+            this.pooledDataSource.close();
+        }
+    }
+
+    /**
+     * Internal method that creates a {@link PooledDataSource} connecting to the MySQL database at
+     * the <code>url</code>
+     * 
+     * @param url
+     *            The JDBC URL of the database
+     * @return The {@link PooledDataSource}
+     */
+    protected PooledDataSource createPooledDataSource(String url) {
+        PoolProperties poolProperties = poolProperties(
+                this.environment.getProperty(POOL_MAX_ACTIVE_PROPERTY, Integer.class,
+                        POOL_MAX_ACTIVE),
+                this.environment.getProperty(POOL_STATEMENT_CACHE_SIZE_PROPERTY, Integer.class,
+                        POOL_STATEMENT_CACHE_SIZE),
+                this.environment.getProperty(POOL_VALIDATION_INTERVAL_PROPERTY, Long.class,
+                        POOL_VALIDATION_INTERVAL), "select 1");
+        poolProperties.setDriverClassName("com.mysql.jdbc.Driver");
+        poolProperties.setUrl(url);
+        poolProperties.setUsername(this.environment.getProperty(USERNAME_PROPERTY));
+        poolProperties.setPassword(this.environment.getProperty(PASSWORD_PROPERTY));
+        this.pooledDataSource = new PooledDataSource(poolProperties);
+        return this.pooledDataSource;
+    }
+
+    /**
+     * Internal method that looks up the {@link DataSource} at the JNDI <code>location</code>
+     * 
+     * @param location
+     *            The JNDI location of the {@link DataSource}
+     * @return The {@link DataSource}
+     */
+    protected DataSource lookupDataSource(String location) {
+        try {
+            // attempt to load the DataSource via JNDI
+            Context ctx = new InitialContext();
+            return (DataSource) ctx.lookup(location);
+        } catch (NamingException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
\ No newline at end of file
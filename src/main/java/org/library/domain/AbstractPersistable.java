@@ -5,15 +5,30 @@ import java.io.Serializable;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.MappedSuperclass;
+import javax.persistence.PrePersist;
+import javax.persistence.Version;
 
 import org.codehaus.jackson.annotate.JsonIgnore;
 import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.library.persistence.VersionSeed;
 import org.springframework.data.domain.Persistable;
 
 /**
  * Borrows heavily from Spring's {@link org.springframework.data.jpa.domain.AbstractPersistable},
  * but was changed so that we can specify the IDs ourselves without the ID dynamically generated.
- * This was necessary because of the initial creation done in the data.json file.
+ * This was necessary because of the initial creation done in the data.json file. Each entity also
+ * carries a version, incremented whenever it's updated, which guards against lost updates without
+ * holding any locks.
+ * <p>
+ * The version of a new entity starts at the {@link VersionSeed} of the transaction creating it,
+ * should there be one. Our services seed each transaction writing {@link Book}s with the count of
+ * the changes made to the {@link Book}s (see {@link org.library.service.BookChangeCounter}),
+ * counted before any {@link Book} is written. That count is shared by every instance through the
+ * database and grows by one for every such transaction, while a version grows by at most one per
+ * transaction, so a {@link Book} deleted and created again with the same ID starts above any
+ * version the one before reached, whichever instance creates it and whatever their clocks.
+ * Entities created without a seed start at 0.
  * 
  * @author dylants
  * 
@@ -27,9 +42,28 @@ public abstract class AbstractPersistable<ID extends Serializable> implements Pe
 
     @Id
     @GeneratedValue(generator = "IdOrGenerated")
-    @GenericGenerator(name = "IdOrGenerated", strategy = "org.library.persistence.UseExistingOrGenerateIdGenerator")
+    @GenericGenerator(name = "IdOrGenerated", strategy = "org.library.persistence.UseExistingOrGenerateIdGenerator", parameters = {
+            @Parameter(name = "table_name", value = "id_block"),
+            @Parameter(name = "increment_size", value = "50")})
     protected ID id;
 
+    // 0 rather than null, so that Hibernate doesn't take entities with a supplied ID to be new,
+    // and merges them with any existing row (the version they're created at is seeded on persist)
+    @Version
+    protected Long version = 0L;
+
+    /**
+     * Seeds the version of the entity being created with the {@link VersionSeed} of the
+     * transaction, if there's one
+     */
+    @PrePersist
+    protected void seedVersion() {
+        Long seed = VersionSeed.get();
+        if (seed != null) {
+            this.version = seed;
+        }
+    }
+
     @JsonIgnore
     public boolean isNew() {
         return null == getId();
@@ -50,4 +84,20 @@ public abstract class AbstractPersistable<ID extends Serializable> implements Pe
         this.id = id;
     }
 
+    /**
+     * @return the version
+     */
+    @JsonIgnore
+    public Long getVersion() {
+        return version;
+    }
+
+    /**
+     * @param version
+     *            the version to set
+     */
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
 }
\ No newline at end of file
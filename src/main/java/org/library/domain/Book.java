@@ -1,17 +1,32 @@
 package org.library.domain;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.Index;
+import org.hibernate.annotations.Table;
 import org.hibernate.validator.constraints.NotBlank;
 
 /**
  * A JPA {@link Entity} representation of a Book, which extends {@link AbstractPersistable} to
- * provide generic methods.
+ * provide generic methods. {@link Book}s are held in the second-level cache region named after
+ * this class, configured in cache/ehcache.xml. Updates only write the columns which changed.
+ * <p>
+ * The generated schema indexes the title, and the author followed by the title, so that filtering
+ * on either (exactly or by prefix) and sorting by them are index seeks rather than table scans.
  * 
  * @author dylants
  * 
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@DynamicUpdate
+@Table(appliesTo = "Book", indexes = {@Index(name = "idx_book_title", columnNames = "title"),
+        @Index(name = "idx_book_author_title", columnNames = {"author", "title"})})
 public class Book extends AbstractPersistable<Long> {
 
     private static final long serialVersionUID = 9126262074862025864L;
@@ -0,0 +1,80 @@
+package org.library.domain;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.annotate.JsonAnyGetter;
+import org.codehaus.jackson.annotate.JsonIgnore;
+
+/**
+ * A projection of a {@link Book} holding only some of its fields, read straight from their
+ * columns rather than loaded as a (managed) {@link Book}. Only the projected fields are
+ * serialized, in the order they were projected in.
+ * 
+ * @author dylants
+ * 
+ */
+public class BookProjection {
+
+    /**
+     * The fields of a {@link Book} which may be projected, in the order they're serialized in
+     */
+    public static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList("id",
+            "title", "author"));
+
+    private final Long version;
+    private final Map<String, Object> fields = new LinkedHashMap<String, Object>();
+
+    /**
+     * Creates a {@link BookProjection} of a {@link Book} at the <code>version</code>
+     * 
+     * @param version
+     *            The version of the {@link Book}
+     */
+    public BookProjection(Long version) {
+        this.version = version;
+    }
+
+    /**
+     * @return the id, if projected
+     */
+    @JsonIgnore
+    public Long getId() {
+        return (Long) this.fields.get("id");
+    }
+
+    /**
+     * @return the version of the {@link Book}, which is always read
+     */
+    @JsonIgnore
+    public Long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return the projected fields, by field name
+     */
+    @JsonAnyGetter
+    public Map<String, Object> getFields() {
+        return this.fields;
+    }
+
+    /**
+     * @param name
+     *            the name of the projected field
+     * @param value
+     *            the value of the projected field
+     */
+    public void setField(String name, Object value) {
+        this.fields.put(name, value);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Book projection at version: %s, fields: %s", this.version,
+                this.fields);
+    }
+}
\ No newline at end of file
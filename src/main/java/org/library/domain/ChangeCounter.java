@@ -0,0 +1,57 @@
+package org.library.domain;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * A JPA {@link Entity} representation of a named counter of changes, held in the database so that
+ * every instance of the application sees the same count. A counter is incremented within each
+ * transaction changing what it counts, so the count changes exactly when the changes are
+ * committed.
+ * 
+ * @author dylants
+ * 
+ */
+@Entity
+public class ChangeCounter {
+
+    @Id
+    private String name;
+
+    private long changes;
+
+    /**
+     * Creates an empty {@link ChangeCounter}, as required by JPA
+     */
+    protected ChangeCounter() {
+    }
+
+    /**
+     * Creates the {@link ChangeCounter} with the <code>name</code>, starting at
+     * <code>changes</code>
+     * 
+     * @param name
+     *            The name of the counter
+     * @param changes
+     *            The count to start at
+     */
+    public ChangeCounter(String name, long changes) {
+        this.name = name;
+        this.changes = changes;
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of changes counted
+     */
+    public long getChanges() {
+        return changes;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,79 @@
+package org.library.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * A histogram of latencies in microseconds, reported in milliseconds as their mean and
+ * percentiles.
+ * <p>
+ * Recording is lock-free and never allocates: the latencies are recorded in a fixed size
+ * {@link Recorder}, which hands its recorded values over to the cumulative {@link Histogram} when
+ * the percentiles are read, without blocking the threads recording at the same time.
+ * 
+ * @author dylants
+ * 
+ */
+public class LatencyHistogram {
+
+    /**
+     * The highest latency tracked, in microseconds, above which latencies are recorded as this
+     */
+    public static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toMicros(1);
+    /**
+     * The number of significant digits the latencies are recorded with
+     */
+    public static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Recorder recorder = new Recorder(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+
+    // guarded by this, only used when reading the percentiles
+    private final Histogram latencies = new Histogram(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+    private Histogram intervalLatencies;
+
+    /**
+     * Records a latency, clamped to between zero and the {@link #HIGHEST_LATENCY}
+     * 
+     * @param latency
+     *            The latency in microseconds
+     */
+    public void record(long latency) {
+        this.recorder.recordValue(Math.max(0, Math.min(latency, HIGHEST_LATENCY)));
+    }
+
+    /**
+     * Returns the mean, the 50th, 90th, 99th and 99.9th percentiles and the maximum of the
+     * latencies recorded so far, in milliseconds
+     * 
+     * @return The mean, percentiles and maximum of the latencies, keyed by name
+     */
+    public synchronized Map<String, Object> getPercentiles() {
+        // move the latencies recorded since the last time into the cumulative histogram
+        this.intervalLatencies = this.recorder.getIntervalHistogram(this.intervalLatencies);
+        this.latencies.add(this.intervalLatencies);
+
+        Map<String, Object> percentiles = new LinkedHashMap<String, Object>();
+        percentiles.put("mean", this.latencies.getMean() / 1000);
+        percentiles.put("p50", this.toMillis(this.latencies.getValueAtPercentile(50)));
+        percentiles.put("p90", this.toMillis(this.latencies.getValueAtPercentile(90)));
+        percentiles.put("p99", this.toMillis(this.latencies.getValueAtPercentile(99)));
+        percentiles.put("p999", this.toMillis(this.latencies.getValueAtPercentile(99.9)));
+        percentiles.put("max", this.toMillis(this.latencies.getMaxValue()));
+        return percentiles;
+    }
+
+    /**
+     * Internal method that converts a latency in microseconds to milliseconds
+     * 
+     * @param latency
+     *            The latency in microseconds
+     * @return The latency in milliseconds
+     */
+    protected double toMillis(long latency) {
+        return latency / 1000d;
+    }
+}
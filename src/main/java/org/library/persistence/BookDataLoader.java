@@ -0,0 +1,218 @@
+package org.library.persistence;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.library.domain.Book;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Loads the {@link Book}s of a JSON file (an array of {@link Book}s, such as the data/data.json
+ * file) straight into the database. Rather than reading the whole file and saving each
+ * {@link Book} through JPA, the file is parsed incrementally with Jackson's streaming API and the
+ * rows are inserted with batched JDBC statements, committed in chunks of {@value #CHUNK_SIZE}. So
+ * memory use stays flat however large the file is, and the time taken is mostly that of reading it
+ * and writing the rows.
+ * <p>
+ * The {@link Book}s are only loaded into an empty table, so loading into a database which is
+ * already populated (by an earlier run, or another context sharing it) leaves it as it is. A
+ * {@link Book} without an ID is given the one following the highest ID read so far. As the rows
+ * bypass Hibernate, the load must complete before any ID is generated, since the
+ * {@link UseExistingOrGenerateIdGenerator} seeds its IDs from the highest existing one.
+ * 
+ * @author dylants
+ * 
+ */
+public class BookDataLoader implements InitializingBean {
+
+    /**
+     * The number of rows committed in each transaction
+     */
+    public static final int CHUNK_SIZE = 5000;
+
+    private static final String INSERT_SQL = "insert into Book (id, version, title, author) "
+            + "values (?, 0, ?, ?)";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final DataSource dataSource;
+    private final Resource resource;
+    private final int batchSize;
+    private int loaded;
+
+    /**
+     * Creates a {@link BookDataLoader} loading the {@link Book}s of the <code>resource</code>
+     * 
+     * @param dataSource
+     *            The {@link DataSource} to load the {@link Book}s into
+     * @param resource
+     *            The JSON file holding the {@link Book}s, which may contain comments
+     * @param batchSize
+     *            The number of rows sent to the database in each JDBC batch
+     */
+    public BookDataLoader(DataSource dataSource, Resource resource, int batchSize) {
+        this.dataSource = dataSource;
+        this.resource = resource;
+        this.batchSize = batchSize;
+        this.jsonFactory.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
+    }
+
+    @Override
+    public void afterPropertiesSet() throws IOException, SQLException {
+        this.load();
+    }
+
+    /**
+     * @return the number of {@link Book}s this loader has loaded
+     */
+    public int getLoaded() {
+        return this.loaded;
+    }
+
+    /**
+     * Loads the {@link Book}s of the resource, unless there are {@link Book}s already
+     * 
+     * @return The number of {@link Book}s loaded
+     * @throws IOException
+     *             If the resource cannot be read, or doesn't hold an array of valid {@link Book}s
+     * @throws SQLException
+     *             If an error occurs inserting the {@link Book}s
+     */
+    public int load() throws IOException, SQLException {
+        Connection connection = DataSourceUtils.getConnection(this.dataSource);
+        try {
+            if (this.hasBooks(connection)) {
+                logger.info("books exist already, so not loading the books found in {}",
+                        this.resource);
+                return 0;
+            }
+
+            long start = System.nanoTime();
+            int count = this.load(connection);
+            long millis = Math.max((System.nanoTime() - start) / 1000000, 1);
+            logger.info("loaded {} books from {} in {} ms ({} rows/s)", count, this.resource,
+                    millis, count * 1000L / millis);
+            this.loaded += count;
+            return count;
+        } finally {
+            DataSourceUtils.releaseConnection(connection, this.dataSource);
+        }
+    }
+
+    /**
+     * Internal method that determines if there are any {@link Book}s in the database
+     * 
+     * @param connection
+     *            The {@link Connection} to the database
+     * @return <code>true</code> if there's at least one {@link Book}
+     * @throws SQLException
+     *             If an error occurs querying the database
+     */
+    protected boolean hasBooks(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.setMaxRows(1);
+            ResultSet resultSet = statement.executeQuery("select id from Book");
+            return resultSet.next();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Internal method that streams the {@link Book}s of the resource into the database, using the
+     * <code>connection</code>
+     * 
+     * @param connection
+     *            The {@link Connection} to the database
+     * @return The number of {@link Book}s loaded
+     * @throws IOException
+     *             If the resource cannot be read, or doesn't hold an array of valid {@link Book}s
+     * @throws SQLException
+     *             If an error occurs inserting the {@link Book}s
+     */
+    protected int load(Connection connection) throws IOException, SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        JsonParser parser = this.jsonFactory.createJsonParser(this.resource.getInputStream());
+        PreparedStatement insert = connection.prepareStatement(INSERT_SQL);
+        try {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException("expected an array of books",
+                        parser.getCurrentLocation());
+            }
+
+            int count = 0;
+            long maxId = 0;
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                Long id = null;
+                String title = null;
+                String author = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if ("id".equals(field) && value != JsonToken.VALUE_NULL) {
+                        id = parser.getLongValue();
+                    } else if ("title".equals(field) && value != JsonToken.VALUE_NULL) {
+                        title = parser.getText();
+                    } else if ("author".equals(field) && value != JsonToken.VALUE_NULL) {
+                        author = parser.getText();
+                    } else {
+                        // such as Spring Data's "_class" type hint
+                        parser.skipChildren();
+                    }
+                }
+                if (!StringUtils.hasText(title) || !StringUtils.hasText(author)) {
+                    throw new JsonParseException("books must have a title and author",
+                            parser.getCurrentLocation());
+                }
+                if (id == null) {
+                    id = maxId + 1;
+                }
+                maxId = Math.max(maxId, id);
+
+                insert.setLong(1, id);
+                insert.setString(2, title);
+                insert.setString(3, author);
+                insert.addBatch();
+                count++;
+                if (count % this.batchSize == 0) {
+                    insert.executeBatch();
+                }
+                if (count % CHUNK_SIZE == 0) {
+                    connection.commit();
+                    logger.debug("loaded {} books so far", count);
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+            return count;
+        } catch (IOException e) {
+            connection.rollback();
+            throw e;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            insert.close();
+            parser.close();
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.library.persistence;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.action.spi.Executable;
+import org.hibernate.cache.spi.CacheKey;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * An SQL statement writing (updating or deleting) the single entity with an ID, executed through
+ * the session's {@link org.hibernate.engine.spi.ActionQueue} so that the second-level cache is
+ * kept as it would be for a write of the loaded entity.
+ * <p>
+ * Hibernate can't tell which entities a bulk <code>UPDATE</code> or <code>DELETE</code> (in HQL
+ * or SQL) changes, so it evicts the whole cache region of the entity. As this statement writes
+ * only the entity with the ID, it locks only that entity's cache entry until the transaction
+ * completes, as Hibernate's own entity actions do. Cached queries over the entity are invalidated
+ * as for any other write.
+ * 
+ * @author dylants
+ * 
+ */
+public class EntityStatementAction implements Executable {
+
+    private final SessionImplementor session;
+    private final EntityPersister persister;
+    private final Serializable id;
+    private final String sql;
+    private final Object[] parameters;
+
+    private CacheKey cacheKey;
+    private SoftLock lock;
+    private int rowCount;
+
+    /**
+     * Creates an {@link EntityStatementAction}
+     * 
+     * @param session
+     *            The session to execute the statement within
+     * @param entityClass
+     *            The class of the entity written by the statement
+     * @param id
+     *            The ID of the entity written by the statement
+     * @param sql
+     *            The SQL statement
+     * @param parameters
+     *            The values of the parameters of the statement, in order
+     */
+    public EntityStatementAction(SessionImplementor session, Class<?> entityClass,
+            Serializable id, String sql, Object... parameters) {
+        this.session = session;
+        this.persister = session.getFactory().getEntityPersister(entityClass.getName());
+        this.id = id;
+        this.sql = sql;
+        this.parameters = parameters;
+    }
+
+    /**
+     * @return the number of rows written by the statement, once executed
+     */
+    public int getRowCount() {
+        return this.rowCount;
+    }
+
+    @Override
+    public Serializable[] getPropertySpaces() {
+        return this.persister.getQuerySpaces();
+    }
+
+    @Override
+    public void beforeExecutions() {
+    }
+
+    @Override
+    public void execute() throws HibernateException {
+        if (this.persister.hasCache()) {
+            // until the transaction completes, the entity is read from the database, and no
+            // transaction started before then may cache what it read
+            this.cacheKey = this.session.generateCacheKey(this.id,
+                    this.persister.getIdentifierType(), this.persister.getRootEntityName());
+            this.lock = this.persister.getCacheAccessStrategy().lockItem(this.cacheKey, null);
+        }
+        this.rowCount = ((Session) this.session).doReturningWork(new ReturningWork<Integer>() {
+
+            @Override
+            public Integer execute(Connection connection) throws SQLException {
+                PreparedStatement statement = connection.prepareStatement(sql);
+                try {
+                    for (int i = 0; i < parameters.length; i++) {
+                        statement.setObject(i + 1, parameters[i]);
+                    }
+                    return statement.executeUpdate();
+                } finally {
+                    statement.close();
+                }
+            }
+        });
+    }
+
+    @Override
+    public AfterTransactionCompletionProcess getAfterTransactionCompletionProcess() {
+        if (this.cacheKey == null) {
+            return null;
+        }
+        return new AfterTransactionCompletionProcess() {
+
+            @Override
+            public void doAfterTransactionCompletion(boolean success, SessionImplementor session) {
+                persister.getCacheAccessStrategy().unlockItem(cacheKey, lock);
+            }
+        };
+    }
+
+    @Override
+    public BeforeTransactionCompletionProcess getBeforeTransactionCompletionProcess() {
+        return null;
+    }
+}
@@ -0,0 +1,96 @@
+package org.library.persistence;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.apache.tomcat.jdbc.pool.PoolConfiguration;
+import org.library.metrics.LatencyHistogram;
+
+/**
+ * A Tomcat JDBC connection pool managed by the application rather than the container, which
+ * records how long each connection takes to borrow. Alongside the size of the pool and the number
+ * of active, idle and waiting connections, this shows when the pool is saturated: requests
+ * queueing for a connection show up as a rising borrow latency.
+ * <p>
+ * As with the endpoint latencies, the borrow latencies are recorded in microseconds in a
+ * {@link LatencyHistogram}.
+ * 
+ * @author dylants
+ * 
+ */
+public class PooledDataSource extends DataSource {
+
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * Creates a {@link PooledDataSource} configured by the <code>poolConfiguration</code>
+     * 
+     * @param poolConfiguration
+     *            The configuration of the pool
+     */
+    public PooledDataSource(PoolConfiguration poolConfiguration) {
+        super(poolConfiguration);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            Connection connection = super.getConnection();
+            this.recordBorrow(start);
+            return connection;
+        } catch (SQLException e) {
+            this.failures.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            Connection connection = super.getConnection(username, password);
+            this.recordBorrow(start);
+            return connection;
+        } catch (SQLException e) {
+            this.failures.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the metrics of the pool, with the borrow latencies in milliseconds
+     * 
+     * @return The metrics of the pool
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("maxActive", this.getMaxActive());
+        metrics.put("size", this.getSize());
+        metrics.put("active", this.getActive());
+        metrics.put("idle", this.getIdle());
+        metrics.put("waiting", this.getWaitCount());
+        metrics.put("borrows", this.borrows.get());
+        metrics.put("failures", this.failures.get());
+        metrics.put("borrowLatency", this.latencies.getPercentiles());
+        return metrics;
+    }
+
+    /**
+     * Internal method that records a connection borrowed from the pool
+     * 
+     * @param start
+     *            The {@link System#nanoTime()} at which the connection was asked for
+     */
+    protected void recordBorrow(long start) {
+        this.borrows.incrementAndGet();
+        this.latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    }
+}
\ No newline at end of file
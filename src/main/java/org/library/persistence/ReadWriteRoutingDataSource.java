@@ -0,0 +1,271 @@
+package org.library.persistence;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * A {@link DataSource} sending read-only transactions to replicas of the primary database, and
+ * everything else to the primary. Each read-only transaction is given one of the replicas, either
+ * in turn (round-robin) or the one with the fewest connections currently borrowed through this
+ * {@link DataSource} (least-loaded). Should the chosen replica fail to supply a connection, the
+ * primary is used instead.
+ * <p>
+ * Replicas lag behind the primary, so for a window after each write (a transaction which isn't
+ * read-only committing, or a connection used outside of a transaction) read-only transactions go
+ * to the primary as well, letting clients read their own writes. The window is kept per instance,
+ * and should cover the usual replication lag.
+ * <p>
+ * Whether a transaction is read-only is only known once it has begun, while the transaction
+ * manager takes its connection as it begins. So this must be wrapped in a
+ * {@link LazyConnectionDataSourceProxy}, which only takes the connection from here on its first
+ * statement.
+ * 
+ * @author dylants
+ * 
+ */
+public class ReadWriteRoutingDataSource extends AbstractDataSource {
+
+    /**
+     * How read-only transactions are spread among the replicas
+     */
+    public static enum ReplicaSelection {
+        /**
+         * Each replica in turn
+         */
+        ROUND_ROBIN,
+        /**
+         * The replica with the fewest borrowed connections
+         */
+        LEAST_LOADED
+    }
+
+    /**
+     * The default time in milliseconds after a write during which reads go to the primary
+     */
+    public static final long DEFAULT_READ_YOUR_WRITES_WINDOW = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final List<AtomicInteger> borrowed = new ArrayList<AtomicInteger>();
+    private final AtomicInteger next = new AtomicInteger();
+    private ReplicaSelection replicaSelection = ReplicaSelection.ROUND_ROBIN;
+    private long readYourWritesWindow = TimeUnit.MILLISECONDS
+            .toNanos(DEFAULT_READ_YOUR_WRITES_WINDOW);
+    // the nanoTime() at which the window after the last write ends, once there was a write
+    private volatile long writeWindowEnd;
+    private volatile boolean written;
+
+    /**
+     * Creates a {@link ReadWriteRoutingDataSource} routing read-only transactions to the
+     * <code>replicas</code>
+     * 
+     * @param primary
+     *            The {@link DataSource} of the primary database
+     * @param replicas
+     *            The {@link DataSource}s of the replicas of the primary database
+     */
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        this.primary = primary;
+        this.replicas = new ArrayList<DataSource>(replicas);
+        for (int i = 0; i < replicas.size(); i++) {
+            this.borrowed.add(new AtomicInteger());
+        }
+    }
+
+    /**
+     * @param replicaSelection
+     *            how read-only transactions are spread among the replicas, round-robin by default
+     */
+    public void setReplicaSelection(ReplicaSelection replicaSelection) {
+        this.replicaSelection = replicaSelection;
+    }
+
+    /**
+     * @param readYourWritesWindow
+     *            the time in milliseconds after a write during which reads go to the primary
+     */
+    public void setReadYourWritesWindow(long readYourWritesWindow) {
+        this.readYourWritesWindow = TimeUnit.MILLISECONDS.toNanos(readYourWritesWindow);
+    }
+
+    /**
+     * @return the {@link DataSource} of the primary database
+     */
+    public DataSource getPrimary() {
+        return this.primary;
+    }
+
+    /**
+     * Returns the number of connections to the replica at the <code>index</code> currently
+     * borrowed through this {@link DataSource}
+     * 
+     * @param index
+     *            The index of the replica
+     * @return The number of borrowed connections
+     */
+    public int getBorrowed(int index) {
+        return this.borrowed.get(index).get();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return this.getConnection(null, null);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            this.recordWrite();
+            return this.getConnection(this.primary, username, password);
+        }
+        if (this.replicas.isEmpty() || this.written && this.nanoTime() - this.writeWindowEnd < 0) {
+            // the replicas may not have caught up with the last write yet
+            return this.getConnection(this.primary, username, password);
+        }
+
+        int index = this.selectReplica();
+        Connection connection;
+        try {
+            connection = this.getConnection(this.replicas.get(index), username, password);
+        } catch (SQLException e) {
+            logger.warn("replica {} failed to supply a connection, using the primary", index, e);
+            return this.getConnection(this.primary, username, password);
+        }
+        return this.createBorrowedConnection(connection, this.borrowed.get(index));
+    }
+
+    /**
+     * Internal method that returns the index of the replica to use for a read-only transaction
+     * 
+     * @return The index of the replica
+     */
+    protected int selectReplica() {
+        // start from the next replica in turn, so ties are spread as well
+        int start = (this.next.getAndIncrement() & Integer.MAX_VALUE) % this.replicas.size();
+        if (this.replicaSelection == ReplicaSelection.ROUND_ROBIN) {
+            return start;
+        }
+        int selected = start;
+        for (int i = 1; i < this.replicas.size(); i++) {
+            int index = (start + i) % this.replicas.size();
+            if (this.borrowed.get(index).get() < this.borrowed.get(selected).get()) {
+                selected = index;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Internal method that opens the window after a write, once the current transaction commits
+     * or, outside of a transaction, immediately
+     */
+    protected void recordWrite() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            this.openWriteWindow();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                            openWriteWindow();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Internal method that opens the window after a write, from now on
+     */
+    protected void openWriteWindow() {
+        this.writeWindowEnd = this.nanoTime() + this.readYourWritesWindow;
+        this.written = true;
+    }
+
+    /**
+     * Internal method that returns the current value of the clock timing the window after a
+     * write, in nanoseconds. This is {@link System#nanoTime()}, which tests may replace.
+     * 
+     * @return The current value of the clock in nanoseconds
+     */
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Internal method that returns a connection from the <code>dataSource</code>, with the
+     * credentials if supplied
+     * 
+     * @param dataSource
+     *            The {@link DataSource}
+     * @param username
+     *            The user name, or <code>null</code> for the default
+     * @param password
+     *            The password
+     * @return The {@link Connection}
+     * @throws SQLException
+     *             If the <code>dataSource</code> fails to supply a connection
+     */
+    protected Connection getConnection(DataSource dataSource, String username, String password)
+            throws SQLException {
+        return username == null ? dataSource.getConnection() : dataSource.getConnection(username,
+                password);
+    }
+
+    /**
+     * Internal method that counts the <code>connection</code> as borrowed until it's closed
+     * 
+     * @param connection
+     *            The {@link Connection} to a replica
+     * @param borrowed
+     *            The number of borrowed connections to the replica
+     * @return The {@link Connection} to hand out
+     */
+    protected Connection createBorrowedConnection(final Connection connection,
+            final AtomicInteger borrowed) {
+        borrowed.incrementAndGet();
+        final AtomicBoolean closed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
+                new Class<?>[]{ConnectionProxy.class}, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        if (method.getName().equals("getTargetConnection")) {
+                            return connection;
+                        }
+                        if (method.getName().equals("close") && closed.compareAndSet(false, true)) {
+                            borrowed.decrementAndGet();
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        }
+                    }
+                });
+    }
+}
@@ -0,0 +1,99 @@
+package org.library.persistence;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.persistence.EntityNotFoundException;
+
+import org.hibernate.HibernateException;
+import org.hibernate.UnresolvableObjectException;
+import org.hibernate.cache.internal.StandardQueryCache;
+import org.hibernate.cache.spi.QueryKey;
+import org.hibernate.cache.spi.UpdateTimestampsCache;
+import org.hibernate.cfg.Settings;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.type.Type;
+import org.hibernate.type.TypeHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link StandardQueryCache} that stamps the cached results with the time the session started,
+ * rather than the time the results are put in the cache. Hibernate's implementation uses the
+ * latter, so results read just before a concurrent update or delete committed could be stamped
+ * after that change invalidated the query cache, and then be served as up to date: a page of
+ * {@link org.library.domain.Book}s could include a {@link org.library.domain.Book} deleted since,
+ * failing the request once that {@link org.library.domain.Book} couldn't be found. Results are
+ * always read after the session started, so stamping them with that time never lets them outlive
+ * a change they might have missed.
+ * <p>
+ * Cached results only hold the IDs of the entities, which are loaded once the results are read
+ * from the cache, so an entity can still be deleted in between. Rather than failing the query,
+ * such results are evicted and treated as a cache miss, so the query runs against the database.
+ * 
+ * @author dylants
+ * 
+ */
+public class SessionTimestampQueryCache extends StandardQueryCache {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public SessionTimestampQueryCache(Settings settings, Properties props,
+            UpdateTimestampsCache updateTimestampsCache, String regionName) {
+        super(settings, props, updateTimestampsCache, regionName);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public List get(QueryKey key, Type[] returnTypes, boolean isNaturalKeyLookup, Set spaces,
+            SessionImplementor session) throws HibernateException {
+        try {
+            return super.get(key, returnTypes, isNaturalKeyLookup, spaces, session);
+        } catch (EntityNotFoundException e) {
+            return this.evictUnresolvable(key, e);
+        } catch (UnresolvableObjectException e) {
+            return this.evictUnresolvable(key, e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean put(QueryKey key, Type[] returnTypes, List result, boolean isNaturalKeyLookup,
+            SessionImplementor session) throws HibernateException {
+        if (isNaturalKeyLookup && result.isEmpty()) {
+            return false;
+        }
+        // the same layout as the standard query cache: the timestamp followed by the results
+        List<Object> cacheable = new ArrayList<Object>(result.size() + 1);
+        cacheable.add(session.getTimestamp());
+        boolean isSingleResult = returnTypes.length == 1;
+        for (Object row : result) {
+            Serializable cacheItem = isSingleResult ? returnTypes[0].disassemble(row, session,
+                    null) : TypeHelper.disassemble((Object[]) row, returnTypes, null, session,
+                    null);
+            cacheable.add(cacheItem);
+        }
+        this.getRegion().put(key, cacheable);
+        return true;
+    }
+
+    /**
+     * Internal method that evicts the cached results of <code>key</code>, which refer to an entity
+     * that no longer exists, returning <code>null</code> so the query runs against the database
+     * 
+     * @param key
+     *            The key of the cached results
+     * @param e
+     *            The exception thrown when loading the entity
+     * @return <code>null</code>, as the results are no longer cached
+     */
+    @SuppressWarnings("rawtypes")
+    protected List evictUnresolvable(QueryKey key, RuntimeException e) {
+        logger.debug("evicting cached results referring to a missing entity: {}", e.getMessage());
+        this.getRegion().evict(key);
+        return null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,26 @@
+package org.library.persistence;
+
+import java.util.Properties;
+
+import org.hibernate.HibernateException;
+import org.hibernate.cache.spi.QueryCache;
+import org.hibernate.cache.spi.QueryCacheFactory;
+import org.hibernate.cache.spi.UpdateTimestampsCache;
+import org.hibernate.cfg.Settings;
+
+/**
+ * Creates {@link SessionTimestampQueryCache}s, configured through the
+ * <code>hibernate.cache.query_cache_factory</code> property
+ * 
+ * @author dylants
+ * 
+ */
+public class SessionTimestampQueryCacheFactory implements QueryCacheFactory {
+
+    @Override
+    public QueryCache getQueryCache(String regionName,
+            UpdateTimestampsCache updateTimestampsCache, Settings settings, Properties props)
+            throws HibernateException {
+        return new SessionTimestampQueryCache(settings, props, updateTimestampsCache, regionName);
+    }
+}
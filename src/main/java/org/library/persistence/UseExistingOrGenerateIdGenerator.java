@@ -1,34 +1,315 @@
 package org.library.persistence;
 
 import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.dialect.Dialect;
 import org.hibernate.engine.spi.SessionImplementor;
-import org.hibernate.id.IncrementGenerator;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.IdentifierGeneratorHelper;
+import org.hibernate.id.IntegralDataTypeHolder;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.id.enhanced.AccessCallback;
+import org.hibernate.id.enhanced.Optimizer;
+import org.hibernate.id.enhanced.OptimizerFactory;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.jdbc.AbstractReturningWork;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * This becomes our strategy for generating IDs for our entities. We want to be able to generate
  * data through the data.json file, and in doing so, need to the ability to specify the ID of the
  * entity we create (so we can access it later). But at the same time, we want to be able to
  * generate the ID when creating these entities from user data. This implementation allows us to do
- * both, by using our supplied ID when generated and incrementing the highest ID of the entity in
- * concern when generating the ID here (using the parent class implementation).
+ * both, by using our supplied ID when generated and leasing blocks of IDs from a shared table when
+ * generating the ID here.
+ * <p>
+ * Each entity table has a row in the block table holding the start of the next free block of IDs.
+ * Leasing a block adds the block size to that row and reads the result back, in a transaction of
+ * its own: the update locks the row until that transaction commits, so any number of instances
+ * sharing the database lease distinct blocks, whatever the isolation level, without retrying. The
+ * IDs within a leased block are then handed out in memory (using Hibernate's "pooled-lo"
+ * optimizer), so only one in every block size inserts needs the extra round trip. The row is
+ * seeded from the highest existing ID of the entity table the first time it is used, which leaves
+ * room for any IDs supplied up until then.
+ * <p>
+ * A supplied ID at or past the start of the next free block advances the row past it, so no block
+ * leased afterwards holds the ID. The row is advanced a block beyond the ID, and each instance
+ * remembers how far the row is known to be, so that IDs supplied in ascending order (as by an
+ * import) only advance it once per block. A supplied ID before the next free block is used as is,
+ * as it's most likely the ID of an entity which existed before (being created again once deleted).
+ * Such an ID may however lie in a block already leased, and should only be supplied for entities
+ * which had it before: otherwise an entity later given that ID by the generator fails to be
+ * inserted, on the primary key.
+ * <p>
+ * The following parameters can be supplied to configure the generator:
+ * <ul>
+ * <li>{@value #TABLE_PARAM}: the name of the block table, defaults to
+ * {@value #DEFAULT_TABLE}</li>
+ * <li>{@value #INCREMENT_PARAM}: the number of IDs in a block, defaults to
+ * {@value #DEFAULT_INCREMENT}</li>
+ * </ul>
  * 
  * @author dylants
  * 
  */
-public class UseExistingOrGenerateIdGenerator extends IncrementGenerator {
+public class UseExistingOrGenerateIdGenerator
+        implements
+            PersistentIdentifierGenerator,
+            Configurable {
+
+    public static final String TABLE_PARAM = "table_name";
+    public static final String DEFAULT_TABLE = "id_block";
+    public static final String INCREMENT_PARAM = "increment_size";
+    public static final int DEFAULT_INCREMENT = 50;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    // the start of the next free block, as last read from the row, which only ever grows
+    private final AtomicLong nextFreeId = new AtomicLong(Long.MIN_VALUE);
+
+    private String tableName;
+    private String segmentValue;
+    private Class<?> identifierType;
+    private Optimizer optimizer;
+
+    private String selectQuery;
+    private String lockingSelectQuery;
+    private String insertQuery;
+    private String leaseQuery;
+    private String advanceQuery;
+
+    @Override
+    public void configure(Type type, Properties params, Dialect dialect) throws MappingException {
+        this.tableName = ConfigurationHelper.getString(TABLE_PARAM, params, DEFAULT_TABLE);
+        int incrementSize = ConfigurationHelper
+                .getInt(INCREMENT_PARAM, params, DEFAULT_INCREMENT);
+        // each entity table leases its IDs from its own row
+        String entityTable = params.getProperty(TABLE);
+        String entityPk = params.getProperty(PK);
+        this.segmentValue = entityTable;
+        this.identifierType = type.getReturnedClass();
+        // the seeded row sets the initial value, so the optimizer is never given one
+        this.optimizer = OptimizerFactory.buildOptimizer(OptimizerFactory.POOL_LO,
+                this.identifierType, incrementSize, -1);
+
+        this.selectQuery = "select next_val from " + this.tableName + " where segment_name = ?";
+        this.lockingSelectQuery = this.selectQuery + dialect.getForUpdateString();
+        this.insertQuery = "insert into " + this.tableName + " (segment_name, next_val)"
+                + " select ?, coalesce(max(" + entityPk + "), 0) + 1 from " + entityTable;
+        this.leaseQuery = "update " + this.tableName + " set next_val = next_val + ?"
+                + " where segment_name = ?";
+        this.advanceQuery = "update " + this.tableName + " set next_val = ?"
+                + " where segment_name = ? and next_val <= ?";
+    }
 
     @Override
-    public Serializable generate(SessionImplementor session, Object obj) {
+    public Serializable generate(final SessionImplementor session, Object obj) {
         // pull the ID from the object
         Serializable id = session.getEntityPersister(null, obj).getClassMetadata()
                 .getIdentifier(obj, session);
-        // if it exists, use it
+        // if it exists, use it, making sure no block leased from now on holds it
         if (id != null) {
+            this.advancePast(session, id);
             return id;
         } else {
-            // use the parent class to generate the next ID to use
-            return super.generate(session, obj);
+            // otherwise hand out the next ID of our block, leasing a new block when needed
+            return this.optimizer.generate(new AccessCallback() {
+                @Override
+                public IntegralDataTypeHolder getNextValue() {
+                    return session.getTransactionCoordinator().getTransaction()
+                            .createIsolationDelegate().delegateWork(new LeaseBlockWork(), true);
+                }
+            });
+        }
+    }
+
+    /**
+     * Internal method that advances the row of the block table past the supplied <code>id</code>,
+     * unless the row is already known to be past it
+     * 
+     * @param session
+     *            The session the entity is created in
+     * @param id
+     *            The supplied ID
+     */
+    protected void advancePast(SessionImplementor session, Serializable id) {
+        if (!(id instanceof Number) || ((Number) id).longValue() < this.nextFreeId.get()) {
+            return;
+        }
+        session.getTransactionCoordinator().getTransaction().createIsolationDelegate()
+                .delegateWork(new AdvanceBlockWork(((Number) id).longValue()), true);
+    }
+
+    /**
+     * Internal method that records the start of the next free block read from the row, keeping
+     * the highest read so far
+     * 
+     * @param nextValue
+     *            The start of the next free block
+     */
+    protected void recordNextFreeId(long nextValue) {
+        long known;
+        do {
+            known = this.nextFreeId.get();
+        } while (nextValue > known && !this.nextFreeId.compareAndSet(known, nextValue));
+    }
+
+    @Override
+    public String[] sqlCreateStrings(Dialect dialect) throws HibernateException {
+        return new String[]{dialect.getCreateTableString() + " " + this.tableName
+                + " (segment_name " + dialect.getTypeName(Types.VARCHAR, 255, 0, 0)
+                + " not null, next_val " + dialect.getTypeName(Types.BIGINT)
+                + ", primary key (segment_name))"};
+    }
+
+    @Override
+    public String[] sqlDropStrings(Dialect dialect) throws HibernateException {
+        StringBuilder sqlDropString = new StringBuilder("drop table ");
+        if (dialect.supportsIfExistsBeforeTableName()) {
+            sqlDropString.append("if exists ");
+        }
+        sqlDropString.append(this.tableName).append(dialect.getCascadeConstraintsString());
+        if (dialect.supportsIfExistsAfterTableName()) {
+            sqlDropString.append(" if exists");
+        }
+        return new String[]{sqlDropString.toString()};
+    }
+
+    @Override
+    public Object generatorKey() {
+        return this.tableName;
+    }
+
+    /**
+     * The work on the row of the block table, seeding it on first use
+     */
+    private abstract class BlockWork<T> extends AbstractReturningWork<T> {
+
+        /**
+         * Runs the <code>update</code> of the row, seeding the row and running the update again
+         * if it doesn't exist yet, returning the number of rows updated
+         */
+        protected int updateOrSeed(Connection connection, String update, long value, Long bound)
+                throws SQLException {
+            int updated = this.update(connection, update, value, bound);
+            if (updated == 0 && this.selectNextValue(connection, false) == null) {
+                // first use of this row, so seed it from the existing IDs
+                this.insertNextValue(connection);
+                updated = this.update(connection, update, value, bound);
+                if (updated == 0 && this.selectNextValue(connection, true) == null) {
+                    throw new SQLException("unable to seed the ID block for " + segmentValue);
+                }
+            }
+            return updated;
+        }
+
+        /**
+         * Returns the start of the next free block held by the row, or <code>null</code> if there
+         * is no row yet. A <code>current</code> read locks the row, and so reads the latest value
+         * rather than that of the transaction's snapshot (as a plain read may on MySQL).
+         */
+        protected Long selectNextValue(Connection connection, boolean current)
+                throws SQLException {
+            PreparedStatement select = connection.prepareStatement(current ? lockingSelectQuery
+                    : selectQuery);
+            try {
+                select.setString(1, segmentValue);
+                ResultSet results = select.executeQuery();
+                try {
+                    return results.next() ? results.getLong(1) : null;
+                } finally {
+                    results.close();
+                }
+            } finally {
+                select.close();
+            }
+        }
+
+        private int update(Connection connection, String update, long value, Long bound)
+                throws SQLException {
+            PreparedStatement statement = connection.prepareStatement(update);
+            try {
+                statement.setLong(1, value);
+                statement.setString(2, segmentValue);
+                if (bound != null) {
+                    statement.setLong(3, bound);
+                }
+                return statement.executeUpdate();
+            } finally {
+                statement.close();
+            }
+        }
+
+        private void insertNextValue(Connection connection) throws SQLException {
+            PreparedStatement insert = connection.prepareStatement(insertQuery);
+            try {
+                insert.setString(1, segmentValue);
+                insert.executeUpdate();
+            } catch (SQLException e) {
+                // most likely another instance seeded the row first, which the update then sees
+                logger.debug("unable to seed the ID block for {}: {}", segmentValue,
+                        e.getMessage());
+            } finally {
+                insert.close();
+            }
+        }
+    }
+
+    /**
+     * Leases the next block of IDs, returning the first ID of the block
+     */
+    private class LeaseBlockWork extends BlockWork<IntegralDataTypeHolder> {
+
+        @Override
+        public IntegralDataTypeHolder execute(Connection connection) throws SQLException {
+            int incrementSize = optimizer.getIncrementSize();
+            // the row stays locked until this transaction commits, so the value read back is the
+            // end of the block leased here, whatever other instances do in the meantime
+            this.updateOrSeed(connection, leaseQuery, incrementSize, null);
+            long nextValue = this.selectNextValue(connection, false);
+            recordNextFreeId(nextValue);
+            long blockStart = nextValue - incrementSize;
+            logger.debug("leased block of {} IDs starting at {} for {}", incrementSize,
+                    blockStart, segmentValue);
+            return IdentifierGeneratorHelper.getIntegralDataTypeHolder(identifierType)
+                    .initialize(blockStart);
+        }
+    }
+
+    /**
+     * Advances the start of the next free block a block beyond a supplied ID, unless it's
+     * already past the ID
+     */
+    private class AdvanceBlockWork extends BlockWork<Void> {
+
+        private final long id;
+
+        public AdvanceBlockWork(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public Void execute(Connection connection) throws SQLException {
+            long nextValue = this.id + optimizer.getIncrementSize();
+            if (this.updateOrSeed(connection, advanceQuery, nextValue, this.id) == 1) {
+                logger.debug("advanced the ID block past supplied ID {} for {}", this.id,
+                        segmentValue);
+            } else {
+                nextValue = this.selectNextValue(connection, true);
+            }
+            recordNextFreeId(nextValue);
+            return null;
         }
     }
 
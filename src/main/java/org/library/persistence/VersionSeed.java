@@ -0,0 +1,57 @@
+package org.library.persistence;
+
+import org.library.domain.AbstractPersistable;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Holds the version the entities created within the current transaction start at, which
+ * {@link AbstractPersistable} reads as an entity is persisted. The seed is bound to the
+ * transaction (as one of its resources), and dropped once the transaction completes.
+ * 
+ * @author dylants
+ * 
+ */
+public final class VersionSeed {
+
+    // the key the seed is bound to the transaction with
+    private static final Object KEY = VersionSeed.class;
+
+    private VersionSeed() {
+    }
+
+    /**
+     * Sets the version the entities created within the current transaction start at, replacing
+     * any set before
+     * 
+     * @param seed
+     *            The version the entities created start at
+     * @throws IllegalStateException
+     *             If there's no transaction
+     */
+    public static void set(long seed) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("a version can only be seeded within a transaction");
+        }
+        if (TransactionSynchronizationManager.unbindResourceIfPossible(KEY) == null) {
+            TransactionSynchronizationManager
+                    .registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                        @Override
+                        public void afterCompletion(int status) {
+                            TransactionSynchronizationManager.unbindResourceIfPossible(KEY);
+                        }
+                    });
+        }
+        TransactionSynchronizationManager.bindResource(KEY, seed);
+    }
+
+    /**
+     * Returns the version the entities created within the current transaction start at
+     * 
+     * @return The version the entities created start at, or <code>null</code> if none was set
+     */
+    public static Long get() {
+        return (Long) TransactionSynchronizationManager.getResource(KEY);
+    }
+}
\ No newline at end of file
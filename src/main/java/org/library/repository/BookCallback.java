@@ -0,0 +1,27 @@
+package org.library.repository;
+
+import java.io.IOException;
+
+import org.library.domain.Book;
+
+/**
+ * A callback handed each {@link Book} read while scrolling over the {@link BookRepository}. This
+ * allows callers to process (for example, write out) {@link Book}s one at a time without holding
+ * the whole collection in memory.
+ * 
+ * @author dylants
+ * 
+ */
+public interface BookCallback {
+
+    /**
+     * Processes a single {@link Book}. The {@link Book} is detached shortly after this returns,
+     * so implementations should not hold on to it.
+     * 
+     * @param book
+     *            The {@link Book} read from the repository
+     * @throws IOException
+     *             If an I/O error occurs while processing the {@link Book}
+     */
+    public void doWithBook(Book book) throws IOException;
+}
@@ -1,15 +1,55 @@
 package org.library.repository;
 
+import java.util.List;
+
+import javax.persistence.QueryHint;
+
 import org.library.domain.Book;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
 
 /**
  * Provides a repository interface around the {@link Book} object, by utilizing Spring's
- * {@link PagingAndSortingRepository}
+ * {@link PagingAndSortingRepository}, along with the custom operations in
+ * {@link BookRepositoryCustom}
  * 
  * @author dylants
  * 
  */
-public interface BookRepository extends PagingAndSortingRepository<Book, Long> {
+public interface BookRepository
+        extends
+            PagingAndSortingRepository<Book, Long>,
+            BookRepositoryCustom {
+
+    /**
+     * Returns the {@link Book}s with an ID greater than <code>id</code>, ordered by ID. This is
+     * used for keyset (cursor) pagination: the last ID of one page becomes the <code>id</code> of
+     * the next, so every page is an index seek on the primary key no matter how deep it is. The
+     * supplied {@link Pageable} should always request the first page, and only serves to limit
+     * the number of results. The results are held in the query cache until {@link Book}s are
+     * next written.
+     * 
+     * @param id
+     *            The ID after which to start the page
+     * @param pageable
+     *            The {@link Pageable} limiting the size of the page
+     * @return The {@link Book}s with an ID greater than <code>id</code>, ordered by ID
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+    public List<Book> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    /**
+     * Returns the version of the {@link Book} with the <code>id</code>, read from the database
+     * 
+     * @param id
+     *            The ID of the {@link Book}
+     * @return The version of the {@link Book}, or <code>null</code> if none has the
+     *         <code>id</code>
+     */
+    @Query("select b.version from Book b where b.id = :id")
+    public Long findVersion(@Param("id") Long id);
 
 }
\ No newline at end of file
@@ -0,0 +1,185 @@
+package org.library.repository;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.library.domain.Book;
+import org.library.domain.BookProjection;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Custom operations on {@link Book}s which cannot be expressed as Spring Data query methods. These
+ * are implemented in {@link BookRepositoryImpl} and made available through the
+ * {@link BookRepository}.
+ * 
+ * @author dylants
+ * 
+ */
+public interface BookRepositoryCustom {
+
+    /**
+     * Ending a filter value with this makes it match as a prefix
+     */
+    public static final String PREFIX_WILDCARD = "*";
+
+    /**
+     * Scrolls over all the {@link Book}s ordered by ID using a forward-only cursor, handing each
+     * to the <code>callback</code>. The persistence context is cleared every
+     * <code>fetchSize</code> {@link Book}s, so memory use stays flat however many {@link Book}s
+     * are stored.
+     * 
+     * @param fetchSize
+     *            The JDBC fetch size (on databases other than MySQL, which streams one row at a
+     *            time), which is also how often the persistence context is cleared
+     * @param callback
+     *            The {@link BookCallback} handed each {@link Book}
+     * @throws IOException
+     *             If the {@link BookCallback} fails to process a {@link Book}
+     */
+    @Transactional(readOnly = true)
+    public void scrollAll(int fetchSize, BookCallback callback) throws IOException;
+
+    /**
+     * Returns {@link BookProjection}s of up to <code>limit</code> {@link Book}s with an ID
+     * greater than <code>after</code>, ordered by ID. Only the columns of the <code>fields</code>
+     * (and the version) are selected.
+     * 
+     * @param fields
+     *            The fields to project, which must be among {@link BookProjection#FIELDS}
+     * @param after
+     *            The ID after which to start
+     * @param limit
+     *            The maximum number of {@link Book}s to return, or <code>null</code> for all of
+     *            them
+     * @return The {@link BookProjection}s, ordered by ID
+     * @throws IllegalArgumentException
+     *             If a field can't be projected
+     */
+    @Transactional(readOnly = true)
+    public List<BookProjection> findProjections(List<String> fields, Long after, Integer limit);
+
+    /**
+     * Returns {@link BookProjection}s of up to <code>limit</code> {@link Book}s matching the
+     * <code>author</code> and the <code>title</code>, ordered by the <code>sort</code>, skipping
+     * the first <code>offset</code>. The {@link Book}s are matched as by
+     * {@link #findBooks(String, String, Sort, int, int)}, but only the columns of the
+     * <code>fields</code> (and the version) are selected.
+     * 
+     * @param fields
+     *            The fields to project, which must be among {@link BookProjection#FIELDS}
+     * @param author
+     *            The author to match, or <code>null</code> for any author
+     * @param title
+     *            The title to match, or <code>null</code> for any title
+     * @param sort
+     *            The {@link Sort} of the {@link Book}s, on their ID, title or author
+     * @param offset
+     *            The number of matching {@link Book}s to skip
+     * @param limit
+     *            The maximum number of {@link Book}s to return
+     * @return The {@link BookProjection}s, ordered by the <code>sort</code>
+     * @throws IllegalArgumentException
+     *             If a field can't be projected
+     */
+    @Transactional(readOnly = true)
+    public List<BookProjection> findProjections(List<String> fields, String author, String title,
+            Sort sort, int offset, int limit);
+
+    /**
+     * Returns a {@link BookProjection} of the {@link Book} with the <code>id</code>. Only the
+     * columns of the <code>fields</code> (and the version) are selected.
+     * 
+     * @param id
+     *            The ID of the {@link Book}
+     * @param fields
+     *            The fields to project, which must be among {@link BookProjection#FIELDS}
+     * @return The {@link BookProjection}, or <code>null</code> if the {@link Book} doesn't exist
+     * @throws IllegalArgumentException
+     *             If a field can't be projected
+     */
+    @Transactional(readOnly = true)
+    public BookProjection findProjection(Long id, List<String> fields);
+
+    /**
+     * Returns up to <code>limit</code> {@link Book}s matching the <code>author</code> and the
+     * <code>title</code>, ordered by the <code>sort</code>, skipping the first
+     * <code>offset</code>. A value matches exactly, unless it ends with the
+     * {@value #PREFIX_WILDCARD} wildcard, in which case it matches as a prefix. The query is
+     * built with the Criteria API, so that the values are bound as parameters.
+     * 
+     * @param author
+     *            The author to match, or <code>null</code> for any author
+     * @param title
+     *            The title to match, or <code>null</code> for any title
+     * @param sort
+     *            The {@link Sort} of the {@link Book}s, on their ID, title or author
+     * @param offset
+     *            The number of matching {@link Book}s to skip
+     * @param limit
+     *            The maximum number of {@link Book}s to return
+     * @return The matching {@link Book}s, ordered by the <code>sort</code>
+     */
+    @Transactional(readOnly = true)
+    public List<Book> findBooks(String author, String title, Sort sort, int offset, int limit);
+
+    /**
+     * Updates the title and author of the {@link Book} with the <code>id</code> in a single
+     * statement, without loading the {@link Book} first, incrementing its version. Only the
+     * {@link Book} is evicted from the second-level cache.
+     * 
+     * @param id
+     *            The ID of the {@link Book} to update
+     * @param title
+     *            The new title
+     * @param author
+     *            The new author
+     * @return The number of {@link Book}s updated, which is 0 if none has the <code>id</code>
+     */
+    @Transactional
+    public int updateBook(Long id, String title, String author);
+
+    /**
+     * Updates the title and author of the {@link Book} with the <code>id</code> in a single
+     * statement, as {@link #updateBook(Long, String, String)}, but only if the {@link Book} is
+     * still at the <code>version</code>
+     * 
+     * @param id
+     *            The ID of the {@link Book} to update
+     * @param version
+     *            The version the {@link Book} must be at
+     * @param title
+     *            The new title
+     * @param author
+     *            The new author
+     * @return The number of {@link Book}s updated, which is 0 if none has the <code>id</code> and
+     *         <code>version</code>
+     */
+    @Transactional
+    public int updateBook(Long id, Long version, String title, String author);
+
+    /**
+     * Deletes the {@link Book} with the <code>id</code> in a single statement, without loading
+     * the {@link Book} first. Only the {@link Book} is evicted from the second-level cache.
+     * 
+     * @param id
+     *            The ID of the {@link Book} to delete
+     * @return The number of {@link Book}s deleted, which is 0 if none has the <code>id</code>
+     */
+    @Transactional
+    public int deleteBook(Long id);
+
+    /**
+     * Deletes the {@link Book} with the <code>id</code> in a single statement, as
+     * {@link #deleteBook(Long)}, but only if the {@link Book} is still at the <code>version</code>
+     * 
+     * @param id
+     *            The ID of the {@link Book} to delete
+     * @param version
+     *            The version the {@link Book} must be at
+     * @return The number of {@link Book}s deleted, which is 0 if none has the <code>id</code> and
+     *         <code>version</code>
+     */
+    @Transactional
+    public int deleteBook(Long id, Long version);
+}
\ No newline at end of file
@@ -0,0 +1,310 @@
+package org.library.repository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.library.domain.Book;
+import org.library.domain.BookProjection;
+import org.library.persistence.EntityStatementAction;
+import org.springframework.data.domain.Sort;
+
+/**
+ * The implementation of {@link BookRepositoryCustom}, picked up by Spring Data by naming
+ * convention and merged into the {@link BookRepository}. This drops down to Hibernate's
+ * {@link Session} where JPA doesn't offer what we need.
+ * 
+ * @author dylants
+ * 
+ */
+public class BookRepositoryImpl implements BookRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public void scrollAll(int fetchSize, BookCallback callback) throws IOException {
+        Session session = this.entityManager.unwrap(Session.class);
+        ScrollableResults results = session.createQuery("from Book b order by b.id")
+                .setFetchSize(this.getStreamingFetchSize(session, fetchSize)).setReadOnly(true)
+                .setCacheMode(CacheMode.IGNORE).scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            int count = 0;
+            while (results.next()) {
+                callback.doWithBook((Book) results.get(0));
+                // detach what we've handed out so the persistence context doesn't grow
+                if (++count % fetchSize == 0) {
+                    session.clear();
+                }
+            }
+        } finally {
+            results.close();
+        }
+    }
+
+    @Override
+    public List<BookProjection> findProjections(List<String> fields, Long after, Integer limit) {
+        TypedQuery<Object[]> query = this.createProjectionQuery(fields, "b.id > :after")
+                .setParameter("after", after);
+        if (limit != null) {
+            query.setMaxResults(limit);
+        }
+        return this.toProjections(fields, query.getResultList());
+    }
+
+    @Override
+    public BookProjection findProjection(Long id, List<String> fields) {
+        List<BookProjection> projections = this.toProjections(fields, this
+                .createProjectionQuery(fields, "b.id = :id").setParameter("id", id)
+                .getResultList());
+        return projections.isEmpty() ? null : projections.get(0);
+    }
+
+    @Override
+    public List<BookProjection> findProjections(List<String> fields, String author, String title,
+            Sort sort, int offset, int limit) {
+        CriteriaBuilder builder = this.entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = builder.createQuery(Object[].class);
+        Root<Book> book = query.from(Book.class);
+
+        List<Selection<?>> selections = new ArrayList<Selection<?>>();
+        selections.add(book.get("version"));
+        for (String field : fields) {
+            // the fields are part of the query, so only known fields may get this far
+            if (!BookProjection.FIELDS.contains(field)) {
+                throw new IllegalArgumentException("field " + field + " can't be projected");
+            }
+            selections.add(book.get(field));
+        }
+        query.multiselect(selections);
+        query.where(this.createMatches(builder, book, author, title));
+        query.orderBy(this.createOrders(builder, book, sort));
+
+        return this.toProjections(fields, this.entityManager.createQuery(query)
+                .setFirstResult(offset).setMaxResults(limit).getResultList());
+    }
+
+    @Override
+    public List<Book> findBooks(String author, String title, Sort sort, int offset, int limit) {
+        CriteriaBuilder builder = this.entityManager.getCriteriaBuilder();
+        CriteriaQuery<Book> query = builder.createQuery(Book.class);
+        Root<Book> book = query.from(Book.class);
+        query.where(this.createMatches(builder, book, author, title));
+        query.orderBy(this.createOrders(builder, book, sort));
+
+        return this.entityManager.createQuery(query).setFirstResult(offset).setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public int updateBook(Long id, String title, String author) {
+        return this.executeOnBook(id, "update Book set title = ?, author = ?, "
+                + "version = version + 1 where id = ?", title, author, id);
+    }
+
+    @Override
+    public int updateBook(Long id, Long version, String title, String author) {
+        return this.executeOnBook(id, "update Book set title = ?, author = ?, "
+                + "version = version + 1 where id = ? and version = ?", title, author, id, version);
+    }
+
+    @Override
+    public int deleteBook(Long id) {
+        return this.executeOnBook(id, "delete from Book where id = ?", id);
+    }
+
+    @Override
+    public int deleteBook(Long id, Long version) {
+        return this.executeOnBook(id, "delete from Book where id = ? and version = ?", id,
+                version);
+    }
+
+    /**
+     * Internal method that executes the <code>sql</code> statement writing the {@link Book} with
+     * the <code>id</code>, as an {@link EntityStatementAction} so that only that {@link Book} is
+     * evicted from the second-level cache
+     * 
+     * @param id
+     *            The ID of the {@link Book} written by the statement
+     * @param sql
+     *            The SQL statement
+     * @param parameters
+     *            The values of the parameters of the statement, in order
+     * @return The number of rows written
+     */
+    protected int executeOnBook(Long id, String sql, Object... parameters) {
+        EventSource session = this.entityManager.unwrap(EventSource.class);
+        EntityStatementAction action = new EntityStatementAction(session, Book.class, id, sql,
+                parameters);
+        session.getActionQueue().execute(action);
+        return action.getRowCount();
+    }
+
+    /**
+     * Internal method that returns the JDBC fetch size making the driver stream the rows of a
+     * query, rather than read them all into memory. This is the <code>fetchSize</code>, except on
+     * MySQL, whose driver only streams when the fetch size is {@link Integer#MIN_VALUE}, and then
+     * one row at a time. No other statement may run on the connection while the rows stream,
+     * which holds for the {@link BookCallback}s as they only write out the {@link Book}s.
+     * 
+     * @param session
+     *            The {@link Session} running the query
+     * @param fetchSize
+     *            The number of rows to fetch at a time
+     * @return The JDBC fetch size
+     */
+    protected int getStreamingFetchSize(Session session, int fetchSize) {
+        Dialect dialect = ((SessionFactoryImplementor) session.getSessionFactory()).getDialect();
+        return dialect instanceof MySQLDialect ? Integer.MIN_VALUE : fetchSize;
+    }
+
+    /**
+     * Internal method that creates the predicates matching the <code>author</code> and the
+     * <code>title</code>, as {@link #createMatch(CriteriaBuilder, Expression, String)} does
+     * 
+     * @param builder
+     *            The {@link CriteriaBuilder}
+     * @param book
+     *            The root {@link Book} of the query
+     * @param author
+     *            The author to match, or <code>null</code> for any author
+     * @param title
+     *            The title to match, or <code>null</code> for any title
+     * @return The {@link Predicate}s
+     */
+    protected Predicate[] createMatches(CriteriaBuilder builder, Root<Book> book, String author,
+            String title) {
+        List<Predicate> predicates = new ArrayList<Predicate>();
+        if (author != null) {
+            predicates.add(this.createMatch(builder, book.<String> get("author"), author));
+        }
+        if (title != null) {
+            predicates.add(this.createMatch(builder, book.<String> get("title"), title));
+        }
+        return predicates.toArray(new Predicate[predicates.size()]);
+    }
+
+    /**
+     * Internal method that creates the orders of the <code>sort</code>
+     * 
+     * @param builder
+     *            The {@link CriteriaBuilder}
+     * @param book
+     *            The root {@link Book} of the query
+     * @param sort
+     *            The {@link Sort} of the {@link Book}s
+     * @return The {@link Order}s
+     */
+    protected List<Order> createOrders(CriteriaBuilder builder, Root<Book> book, Sort sort) {
+        List<Order> orders = new ArrayList<Order>();
+        for (Sort.Order order : sort) {
+            Expression<?> property = book.get(order.getProperty());
+            orders.add(order.isAscending() ? builder.asc(property) : builder.desc(property));
+        }
+        return orders;
+    }
+
+    /**
+     * Internal method that creates the predicate matching the <code>value</code>, exactly or (if
+     * it ends with the {@value BookRepositoryCustom#PREFIX_WILDCARD} wildcard) as a prefix. A
+     * prefix is matched with <code>LIKE</code>, which the database answers from an index as it has
+     * no leading wildcard.
+     * 
+     * @param builder
+     *            The {@link CriteriaBuilder}
+     * @param property
+     *            The property to match
+     * @param value
+     *            The value to match
+     * @return The {@link Predicate}
+     */
+    protected Predicate createMatch(CriteriaBuilder builder, Expression<String> property,
+            String value) {
+        if (!value.endsWith(PREFIX_WILDCARD)) {
+            return builder.equal(property, value);
+        }
+        String prefix = value.substring(0, value.length() - PREFIX_WILDCARD.length());
+        // Hibernate binds an escape character as a parameter, which not all databases accept, so
+        // LIKE is given the prefix up to any character it treats specially, and the whole prefix
+        // is then compared literally
+        int special = prefix.length();
+        for (char c : new char[]{'%', '_', '\\'}) {
+            if (prefix.indexOf(c) >= 0) {
+                special = Math.min(special, prefix.indexOf(c));
+            }
+        }
+        Predicate like = builder.like(property, prefix.substring(0, special) + "%");
+        if (special == prefix.length()) {
+            return like;
+        }
+        return builder.and(like, builder.equal(builder.substring(property, 1, prefix.length()),
+                prefix));
+    }
+
+    /**
+     * Internal method that creates the query selecting the version and the columns of the
+     * <code>fields</code> of the {@link Book}s matching the <code>condition</code>, ordered by ID
+     * 
+     * @param fields
+     *            The fields to project
+     * @param condition
+     *            The JPQL condition on the {@link Book} <code>b</code>
+     * @return The query
+     * @throws IllegalArgumentException
+     *             If a field can't be projected
+     */
+    protected TypedQuery<Object[]> createProjectionQuery(List<String> fields, String condition) {
+        StringBuilder jpql = new StringBuilder("select b.version");
+        for (String field : fields) {
+            // the fields are part of the query, so only known fields may get this far
+            if (!BookProjection.FIELDS.contains(field)) {
+                throw new IllegalArgumentException("field " + field + " can't be projected");
+            }
+            jpql.append(", b.").append(field);
+        }
+        jpql.append(" from Book b where ").append(condition).append(" order by b.id");
+        return this.entityManager.createQuery(jpql.toString(), Object[].class);
+    }
+
+    /**
+     * Internal method that converts the <code>rows</code> selected by a projection query to
+     * {@link BookProjection}s
+     * 
+     * @param fields
+     *            The projected fields, in the order they were selected in
+     * @param rows
+     *            The selected rows, each starting with the version
+     * @return The {@link BookProjection}s
+     */
+    protected List<BookProjection> toProjections(List<String> fields, List<Object[]> rows) {
+        List<BookProjection> projections = new ArrayList<BookProjection>(rows.size());
+        for (Object[] row : rows) {
+            BookProjection projection = new BookProjection((Long) row[0]);
+            for (int i = 0; i < fields.size(); i++) {
+                projection.setField(fields.get(i), row[i + 1]);
+            }
+            projections.add(projection);
+        }
+        return projections;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,42 @@
+package org.library.repository;
+
+import org.library.domain.ChangeCounter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * Provides a repository interface around the {@link ChangeCounter} object, by utilizing Spring's
+ * {@link JpaRepository}
+ * 
+ * @author dylants
+ * 
+ */
+public interface ChangeCounterRepository extends JpaRepository<ChangeCounter, String> {
+
+    /**
+     * Increments the {@link ChangeCounter} with the <code>name</code> in a single statement,
+     * which holds a lock on its row until the transaction ends
+     * 
+     * @param name
+     *            The name of the {@link ChangeCounter}
+     * @return The number of {@link ChangeCounter}s incremented, which is 0 if none has the
+     *         <code>name</code>
+     */
+    @Modifying
+    @Query("update ChangeCounter c set c.changes = c.changes + 1 where c.name = :name")
+    public int increment(@Param("name") String name);
+
+    /**
+     * Returns the number of changes counted by the {@link ChangeCounter} with the
+     * <code>name</code>, read from the database
+     * 
+     * @param name
+     *            The name of the {@link ChangeCounter}
+     * @return The number of changes, or <code>null</code> if none has the <code>name</code>
+     */
+    @Query("select c.changes from ChangeCounter c where c.name = :name")
+    public Long findChanges(@Param("name") String name);
+
+}
\ No newline at end of file
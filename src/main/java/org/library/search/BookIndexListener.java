@@ -0,0 +1,49 @@
+package org.library.search;
+
+import org.library.domain.Book;
+
+/**
+ * Receives the changes made to the {@link BookSearchIndex}, to maintain structures derived from
+ * the indexed {@link Book}s. The methods are called while the index is locked for writing, so
+ * they're never called concurrently.
+ * 
+ * @author dylants
+ * 
+ */
+public interface BookIndexListener {
+
+    /**
+     * Called when the index is cleared, before it's rebuilt from all the {@link Book}s
+     */
+    public void indexCleared();
+
+    /**
+     * Called once the index has been rebuilt from all the {@link Book}s
+     */
+    public void indexRebuilt();
+
+    /**
+     * Called when a {@link Book} is added to the index
+     * 
+     * @param id
+     *            The ID of the {@link Book}
+     * @param title
+     *            The title of the {@link Book}
+     * @param author
+     *            The author of the {@link Book}
+     */
+    public void bookAdded(Long id, String title, String author);
+
+    /**
+     * Called when a {@link Book} is removed from the index, either because it was deleted or
+     * before it's added again with its updated values
+     * 
+     * @param id
+     *            The ID of the {@link Book}
+     * @param title
+     *            The title of the {@link Book} as it was indexed
+     * @param author
+     *            The author of the {@link Book} as it was indexed
+     */
+    public void bookRemoved(Long id, String title, String author);
+}
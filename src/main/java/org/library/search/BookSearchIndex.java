@@ -0,0 +1,420 @@
+package org.library.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.library.domain.Book;
+import org.library.repository.BookCallback;
+import org.library.repository.BookRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * An in-memory inverted index over the title and author of the {@link Book}s, used to search
+ * {@link Book}s without touching the database. The text is split into lower-cased terms of letters
+ * and digits, and each term maps to a {@link PostingsList} of the documents containing it. Terms
+ * in the title carry more weight than terms in the author. A search returns the {@link Book}s
+ * containing all the terms of the query, ranked by BM25.
+ * <p>
+ * The index is built from the {@link BookRepository} once the application context is refreshed,
+ * and must then be kept up to date through {@link #index(Book)} and {@link #remove(Long)} whenever
+ * a {@link Book} is saved or deleted. Documents are only ever appended: updating a {@link Book}
+ * marks its old document as deleted and adds a new one. Once the deleted documents outnumber the
+ * live ones, the index is compacted. Every change is passed on to the {@link BookIndexListener}s,
+ * to maintain structures derived from the indexed {@link Book}s.
+ * 
+ * @author dylants
+ * 
+ */
+@Component
+public class BookSearchIndex implements ApplicationListener<ContextRefreshedEvent> {
+
+    /**
+     * The weight of a term appearing in the title of a {@link Book}
+     */
+    public static final int TITLE_WEIGHT = 2;
+    /**
+     * The weight of a term appearing in the author of a {@link Book}
+     */
+    public static final int AUTHOR_WEIGHT = 1;
+
+    // BM25 term frequency saturation and length normalization
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int BUILD_FETCH_SIZE = 500;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final BookRepository bookRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private List<BookIndexListener> listeners = Collections.emptyList();
+
+    // the terms, and the document store holding the book of each document number
+    private Map<String, PostingsList> postings;
+    private long[] ids;
+    private String[] titles;
+    private String[] authors;
+    private int[] lengths;
+    private BitSet deleted;
+    private Map<Long, Integer> docsById;
+    private int docCount;
+    private int deletedCount;
+    private long totalLength;
+
+    @Autowired
+    public BookSearchIndex(BookRepository bookRepository) {
+        this.bookRepository = bookRepository;
+        this.clear();
+    }
+
+    /**
+     * @param listeners
+     *            the listeners to notify of changes to the index
+     */
+    @Autowired(required = false)
+    public void setListeners(List<BookIndexListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        this.rebuild();
+    }
+
+    /**
+     * Rebuilds the index from all the {@link Book}s in the {@link BookRepository}
+     */
+    public void rebuild() {
+        this.lock.writeLock().lock();
+        try {
+            this.clear();
+            for (BookIndexListener listener : this.listeners) {
+                listener.indexCleared();
+            }
+            this.bookRepository.scrollAll(BUILD_FETCH_SIZE, new BookCallback() {
+                @Override
+                public void doWithBook(Book book) {
+                    add(book.getId(), book.getTitle(), book.getAuthor());
+                }
+            });
+            for (BookIndexListener listener : this.listeners) {
+                listener.indexRebuilt();
+            }
+            logger.info("built search index of {} books with {} terms", this.docsById.size(),
+                    this.postings.size());
+        } catch (IOException e) {
+            // our callback doesn't do any I/O
+            throw new IllegalStateException(e);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the <code>book</code> to the index, replacing any previous version of it. This must be
+     * called once the <code>book</code> has been saved.
+     * 
+     * @param book
+     *            The saved {@link Book}
+     */
+    public void index(Book book) {
+        this.lock.writeLock().lock();
+        try {
+            this.delete(book.getId());
+            this.add(book.getId(), book.getTitle(), book.getAuthor());
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the {@link Book} with the <code>bookId</code> from the index. This must be called
+     * once the {@link Book} has been deleted.
+     * 
+     * @param bookId
+     *            The ID of the deleted {@link Book}
+     */
+    public void remove(Long bookId) {
+        this.lock.writeLock().lock();
+        try {
+            this.delete(bookId);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Searches for the {@link Book}s whose title or author contain all the terms of the
+     * <code>query</code>, returning up to <code>limit</code> {@link Book}s, best match first. The
+     * {@link Book}s returned are built from the index, and are not managed entities.
+     * 
+     * @param query
+     *            The text to search for
+     * @param limit
+     *            The maximum number of {@link Book}s to return
+     * @return The matching {@link Book}s, best match first
+     */
+    public List<Book> search(String query, int limit) {
+        Set<String> terms = new LinkedHashSet<String>(tokenize(query));
+        if (terms.isEmpty() || limit < 1) {
+            return Collections.emptyList();
+        }
+
+        this.lock.readLock().lock();
+        try {
+            // every term must match, so a missing term means there's nothing to find
+            PostingsList[] lists = new PostingsList[terms.size()];
+            int t = 0;
+            for (String term : terms) {
+                lists[t] = this.postings.get(term);
+                if (lists[t] == null) {
+                    return Collections.emptyList();
+                }
+                t++;
+            }
+            // walk the rarest term, and seek through the others
+            Arrays.sort(lists, new Comparator<PostingsList>() {
+                @Override
+                public int compare(PostingsList a, PostingsList b) {
+                    return Integer.compare(a.size(), b.size());
+                }
+            });
+            double[] idfs = new double[lists.length];
+            int liveCount = this.docsById.size();
+            for (int i = 0; i < lists.length; i++) {
+                double df = lists[i].size();
+                idfs[i] = Math.log(1 + (liveCount - df + 0.5) / (df + 0.5));
+            }
+            double averageLength = liveCount == 0 ? 1 : (double) this.totalLength / liveCount;
+
+            PriorityQueue<ScoredDoc> top = new PriorityQueue<ScoredDoc>(limit);
+            int[] positions = new int[lists.length];
+            candidates : for (int p = 0; p < lists[0].size(); p++) {
+                int doc = lists[0].doc(p);
+                if (this.deleted.get(doc)) {
+                    continue;
+                }
+                double norm = K1 * (1 - B + B * this.lengths[doc] / averageLength);
+                double score = 0;
+                for (int i = 0; i < lists.length; i++) {
+                    if (i > 0) {
+                        positions[i] = lists[i].advance(doc, positions[i]);
+                        if (positions[i] == lists[i].size()) {
+                            // this term has no more documents, so neither will the query
+                            break candidates;
+                        }
+                        if (lists[i].doc(positions[i]) != doc) {
+                            continue candidates;
+                        }
+                    }
+                    int weight = lists[i].weight(i == 0 ? p : positions[i]);
+                    score += idfs[i] * weight * (K1 + 1) / (weight + norm);
+                }
+                if (top.size() < limit) {
+                    top.add(new ScoredDoc(doc, score));
+                } else if (score > top.peek().score) {
+                    top.poll();
+                    top.add(new ScoredDoc(doc, score));
+                }
+            }
+
+            Book[] books = new Book[top.size()];
+            for (int i = books.length - 1; i >= 0; i--) {
+                books[i] = this.createBook(top.poll().doc);
+            }
+            return Arrays.asList(books);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits the <code>text</code> into lower-cased terms made up of letters and digits
+     * 
+     * @param text
+     *            The text to split, which may be <code>null</code>
+     * @return The terms of the <code>text</code>, in order
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<String>();
+        if (text == null) {
+            return terms;
+        }
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lowerCase.length(); i++) {
+            boolean termChar = i < lowerCase.length()
+                    && Character.isLetterOrDigit(lowerCase.charAt(i));
+            if (termChar && start < 0) {
+                start = i;
+            } else if (!termChar && start >= 0) {
+                terms.add(lowerCase.substring(start, i));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Internal method that adds a document for the {@link Book}, which must not be in the index
+     */
+    private void add(Long id, String title, String author) {
+        this.addDocument(id, title, author);
+        for (BookIndexListener listener : this.listeners) {
+            listener.bookAdded(id, title, author);
+        }
+    }
+
+    /**
+     * Internal method that marks the document of the {@link Book} with the <code>id</code> as
+     * deleted, if there is one
+     */
+    private void delete(Long id) {
+        Integer doc = this.docsById.get(id);
+        if (doc != null) {
+            // read these first, deleting the document may compact the index
+            String title = this.titles[doc];
+            String author = this.authors[doc];
+            this.deleteDocument(id);
+            for (BookIndexListener listener : this.listeners) {
+                listener.bookRemoved(id, title, author);
+            }
+        }
+    }
+
+    private void addDocument(Long id, String title, String author) {
+        Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+        int length = this.addWeights(weights, title, TITLE_WEIGHT)
+                + this.addWeights(weights, author, AUTHOR_WEIGHT);
+
+        int doc = this.docCount++;
+        if (doc == this.ids.length) {
+            int capacity = this.ids.length << 1;
+            this.ids = Arrays.copyOf(this.ids, capacity);
+            this.titles = Arrays.copyOf(this.titles, capacity);
+            this.authors = Arrays.copyOf(this.authors, capacity);
+            this.lengths = Arrays.copyOf(this.lengths, capacity);
+        }
+        this.ids[doc] = id;
+        this.titles[doc] = title;
+        this.authors[doc] = author;
+        this.lengths[doc] = length;
+        this.docsById.put(id, doc);
+        this.totalLength += length;
+
+        for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+            PostingsList list = this.postings.get(entry.getKey());
+            if (list == null) {
+                list = new PostingsList();
+                this.postings.put(entry.getKey(), list);
+            }
+            list.add(doc, entry.getValue());
+        }
+    }
+
+    private int addWeights(Map<String, Integer> weights, String text, int weight) {
+        List<String> terms = tokenize(text);
+        for (String term : terms) {
+            Integer current = weights.get(term);
+            weights.put(term, current == null ? weight : current + weight);
+        }
+        return terms.size() * weight;
+    }
+
+    /**
+     * Internal method that marks the document of the {@link Book} with the <code>id</code> as
+     * deleted, compacting the index once most documents are deleted
+     */
+    private void deleteDocument(Long id) {
+        Integer doc = this.docsById.remove(id);
+        if (doc == null) {
+            return;
+        }
+        this.deleted.set(doc);
+        this.deletedCount++;
+        this.totalLength -= this.lengths[doc];
+        // the postings are only ever appended to, so reclaim the space of the deleted documents
+        // once they outnumber the live ones
+        if (this.deletedCount > Math.max(this.docsById.size(), INITIAL_CAPACITY)) {
+            this.compact();
+        }
+    }
+
+    private void compact() {
+        logger.debug("compacting search index of {} documents, {} deleted", this.docCount,
+                this.deletedCount);
+        long[] ids = this.ids;
+        String[] titles = this.titles;
+        String[] authors = this.authors;
+        BitSet deleted = this.deleted;
+        int docCount = this.docCount;
+        this.clear();
+        for (int doc = 0; doc < docCount; doc++) {
+            if (!deleted.get(doc)) {
+                this.addDocument(ids[doc], titles[doc], authors[doc]);
+            }
+        }
+    }
+
+    private void clear() {
+        this.postings = new HashMap<String, PostingsList>();
+        this.ids = new long[INITIAL_CAPACITY];
+        this.titles = new String[INITIAL_CAPACITY];
+        this.authors = new String[INITIAL_CAPACITY];
+        this.lengths = new int[INITIAL_CAPACITY];
+        this.deleted = new BitSet();
+        this.docsById = new HashMap<Long, Integer>();
+        this.docCount = 0;
+        this.deletedCount = 0;
+        this.totalLength = 0;
+    }
+
+    private Book createBook(int doc) {
+        Book book = new Book();
+        book.setId(this.ids[doc]);
+        book.setTitle(this.titles[doc]);
+        book.setAuthor(this.authors[doc]);
+        return book;
+    }
+
+    /**
+     * A document with its score, ordered from the lowest score up so the lowest scoring document
+     * of the top documents is always at the head of the queue
+     */
+    private static class ScoredDoc implements Comparable<ScoredDoc> {
+
+        private final int doc;
+        private final double score;
+
+        ScoredDoc(int doc, double score) {
+            this.doc = doc;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(ScoredDoc other) {
+            int result = Double.compare(this.score, other.score);
+            // on equal scores, prefer the older document
+            return result != 0 ? result : Integer.compare(other.doc, this.doc);
+        }
+    }
+}
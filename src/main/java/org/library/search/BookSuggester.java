@@ -0,0 +1,120 @@
+package org.library.search;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.library.domain.Book;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Suggests completions of the title or author of {@link Book}s as they're typed, most popular
+ * first, where the popularity of a title or author is the number of {@link Book}s having it. Each
+ * field is held in a {@link PrefixIndex}, kept up to date by listening to the
+ * {@link BookSearchIndex}, so suggestions never touch the database.
+ * 
+ * @author dylants
+ * 
+ */
+@Component
+public class BookSuggester implements BookIndexListener {
+
+    /**
+     * The field holding the title of the {@link Book}s
+     */
+    public static final String TITLE = "title";
+    /**
+     * The field holding the author of the {@link Book}s
+     */
+    public static final String AUTHOR = "author";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final PrefixIndex titles = new PrefixIndex();
+    private final PrefixIndex authors = new PrefixIndex();
+
+    /**
+     * Returns up to <code>limit</code> of the most popular values of the <code>field</code> that
+     * start with the <code>prefix</code>, ignoring case
+     * 
+     * @param field
+     *            The field to suggest values of, either {@value #TITLE} or {@value #AUTHOR}
+     * @param prefix
+     *            The prefix typed so far
+     * @param limit
+     *            The maximum number of suggestions to return
+     * @return The suggestions, most popular first
+     * @throws IllegalArgumentException
+     *             If the <code>field</code> is unknown
+     */
+    public List<Suggestion> suggest(String field, String prefix, int limit) {
+        PrefixIndex index;
+        if (TITLE.equals(field)) {
+            index = this.titles;
+        } else if (AUTHOR.equals(field)) {
+            index = this.authors;
+        } else {
+            throw new IllegalArgumentException("unknown field: " + field);
+        }
+        if (prefix == null) {
+            return Collections.emptyList();
+        }
+
+        this.lock.readLock().lock();
+        try {
+            return index.suggest(prefix, limit);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void indexCleared() {
+        this.lock.writeLock().lock();
+        try {
+            this.titles.clear();
+            this.authors.clear();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void indexRebuilt() {
+        this.lock.writeLock().lock();
+        try {
+            this.titles.loaded();
+            this.authors.loaded();
+            logger.info("built suggestions of {} titles and {} authors", this.titles.size(),
+                    this.authors.size());
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void bookAdded(Long id, String title, String author) {
+        this.lock.writeLock().lock();
+        try {
+            this.titles.add(title);
+            this.authors.add(author);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void bookRemoved(Long id, String title, String author) {
+        this.lock.writeLock().lock();
+        try {
+            this.titles.remove(title);
+            this.authors.remove(author);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+}
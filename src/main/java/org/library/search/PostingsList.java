@@ -0,0 +1,90 @@
+package org.library.search;
+
+import java.util.Arrays;
+
+/**
+ * The postings list of a single term: the (ascending) document numbers containing the term, along
+ * with the weight of the term within each document. Both are held in primitive arrays which grow
+ * as needed.
+ * 
+ * @author dylants
+ * 
+ */
+class PostingsList {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] docs = new int[INITIAL_CAPACITY];
+    private int[] weights = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Appends the <code>doc</code>, which must be greater than any document already added
+     * 
+     * @param doc
+     *            The document number
+     * @param weight
+     *            The weight of the term within the document
+     */
+    void add(int doc, int weight) {
+        if (this.size == this.docs.length) {
+            int capacity = this.size + (this.size >> 1) + 1;
+            this.docs = Arrays.copyOf(this.docs, capacity);
+            this.weights = Arrays.copyOf(this.weights, capacity);
+        }
+        this.docs[this.size] = doc;
+        this.weights[this.size] = weight;
+        this.size++;
+    }
+
+    /**
+     * @return the number of documents in the list
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @param index
+     *            The position in the list
+     * @return the document number at the <code>index</code>
+     */
+    int doc(int index) {
+        return this.docs[index];
+    }
+
+    /**
+     * @param index
+     *            The position in the list
+     * @return the weight of the term within the document at the <code>index</code>
+     */
+    int weight(int index) {
+        return this.weights[index];
+    }
+
+    /**
+     * Returns the position of the first document not less than <code>doc</code>, starting the
+     * search at <code>from</code>. This gallops ahead before a binary search, so stepping through
+     * a long list with increasing documents stays cheap.
+     * 
+     * @param doc
+     *            The document number to advance to
+     * @param from
+     *            The position to start from
+     * @return The position of the first document not less than <code>doc</code>, or the size of
+     *         the list if there is none
+     */
+    int advance(int doc, int from) {
+        int step = 1;
+        int low = from;
+        int high = from;
+        while (high < this.size && this.docs[high] < doc) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, this.size);
+        int index = Arrays.binarySearch(this.docs, low, high, doc);
+        return index < 0 ? -index - 1 : index;
+    }
+}
@@ -0,0 +1,287 @@
+package org.library.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Counts the distinct values of a single field, and finds the most popular values starting with a
+ * prefix. The values are held as a sorted array of lower-cased keys, so the values starting with a
+ * prefix form a contiguous range found with two binary searches. A segment tree over the counts of
+ * the keys then yields the top values of that range in <code>O(k log n)</code>, however many values
+ * the range holds.
+ * <p>
+ * Counts of existing keys are updated in place. New keys go to a small sorted delta, which is
+ * merged into the arrays once it grows past a fraction of their size. While loading, counts are
+ * gathered in a hash map and sorted once at the end.
+ * 
+ * @author dylants
+ * 
+ */
+class PrefixIndex {
+
+    private static final int MIN_MERGE_SIZE = 1024;
+    private static final String[] NO_STRINGS = new String[0];
+
+    private String[] keys = NO_STRINGS;
+    private String[] texts = NO_STRINGS;
+    private int[] counts = new int[0];
+    // tree[1] is the root, tree[keys.length + i] the leaf of key i, each node holding the index
+    // of the key with the highest count below it
+    private int[] tree = new int[0];
+
+    private final TreeMap<String, Entry> delta = new TreeMap<String, Entry>();
+    private Map<String, Entry> loading;
+
+    /**
+     * Removes all the values, and starts loading
+     */
+    void clear() {
+        this.keys = NO_STRINGS;
+        this.texts = NO_STRINGS;
+        this.counts = new int[0];
+        this.tree = new int[0];
+        this.delta.clear();
+        this.loading = new HashMap<String, Entry>();
+    }
+
+    /**
+     * Finishes loading, building the sorted arrays from the loaded values
+     */
+    void loaded() {
+        if (this.loading != null) {
+            this.build(this.loading.values());
+            this.loading = null;
+        }
+    }
+
+    /**
+     * @param value
+     *            The value to count, which may be <code>null</code>
+     */
+    void add(String value) {
+        this.adjust(value, 1);
+    }
+
+    /**
+     * @param value
+     *            The value to no longer count, which may be <code>null</code>
+     */
+    void remove(String value) {
+        this.adjust(value, -1);
+    }
+
+    /**
+     * Returns up to <code>limit</code> of the most popular values starting with the
+     * <code>prefix</code>, ignoring case
+     * 
+     * @param prefix
+     *            The prefix of the values
+     * @param limit
+     *            The maximum number of values to return
+     * @return The most popular values, most popular first
+     */
+    List<Suggestion> suggest(String prefix, int limit) {
+        if (prefix == null || limit < 1) {
+            return Collections.emptyList();
+        }
+        // keep any trailing space, it marks the end of a word
+        String from = prefix.replaceFirst("^\\s+", "").toLowerCase(Locale.ROOT);
+        String to = from + Character.MAX_VALUE;
+
+        List<Suggestion> suggestions = new ArrayList<Suggestion>();
+        int low = lowerBound(this.keys, from);
+        int high = lowerBound(this.keys, to);
+        if (low < high) {
+            // take ranges in order of their highest count, splitting each around its maximum
+            PriorityQueue<int[]> ranges = new PriorityQueue<int[]>(limit * 2,
+                    new Comparator<int[]>() {
+                        @Override
+                        public int compare(int[] a, int[] b) {
+                            return compareKeys(a[2], b[2]);
+                        }
+                    });
+            ranges.add(new int[]{low, high, this.max(low, high)});
+            while (!ranges.isEmpty() && suggestions.size() < limit) {
+                int[] range = ranges.poll();
+                int index = range[2];
+                if (this.counts[index] <= 0) {
+                    break;
+                }
+                suggestions.add(new Suggestion(this.texts[index], this.counts[index]));
+                if (range[0] < index) {
+                    ranges.add(new int[]{range[0], index, this.max(range[0], index)});
+                }
+                if (index + 1 < range[1]) {
+                    ranges.add(new int[]{index + 1, range[1], this.max(index + 1, range[1])});
+                }
+            }
+        }
+        for (Entry entry : this.delta.subMap(from, to).values()) {
+            suggestions.add(new Suggestion(entry.text, entry.count));
+        }
+
+        Collections.sort(suggestions, new Comparator<Suggestion>() {
+            @Override
+            public int compare(Suggestion a, Suggestion b) {
+                int result = Integer.compare(b.getCount(), a.getCount());
+                return result != 0 ? result : a.getText().compareToIgnoreCase(b.getText());
+            }
+        });
+        return suggestions.size() > limit ? suggestions.subList(0, limit) : suggestions;
+    }
+
+    /**
+     * @return the number of distinct values
+     */
+    int size() {
+        return this.keys.length + this.delta.size()
+                + (this.loading == null ? 0 : this.loading.size());
+    }
+
+    private void adjust(String value, int amount) {
+        String key = normalize(value);
+        if (key == null) {
+            return;
+        }
+        if (this.loading != null) {
+            this.adjust(this.loading, key, value, amount);
+            return;
+        }
+        int index = Arrays.binarySearch(this.keys, key);
+        if (index >= 0) {
+            this.counts[index] += amount;
+            for (int node = (index + this.keys.length) >> 1; node > 0; node >>= 1) {
+                this.tree[node] = this.better(this.tree[node << 1], this.tree[(node << 1) + 1]);
+            }
+            return;
+        }
+        this.adjust(this.delta, key, value, amount);
+        if (this.delta.size() > Math.max(MIN_MERGE_SIZE, this.keys.length >> 4)) {
+            List<Entry> entries = new ArrayList<Entry>(this.keys.length + this.delta.size());
+            for (int i = 0; i < this.keys.length; i++) {
+                entries.add(new Entry(this.keys[i], this.texts[i], this.counts[i]));
+            }
+            entries.addAll(this.delta.values());
+            this.delta.clear();
+            this.build(entries);
+        }
+    }
+
+    private void adjust(Map<String, Entry> entries, String key, String value, int amount) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            if (amount > 0) {
+                entries.put(key, new Entry(key, value.trim(), amount));
+            }
+        } else {
+            entry.count += amount;
+            if (entry.count <= 0) {
+                entries.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Builds the sorted arrays and the tree from the <code>entries</code>, dropping those no longer
+     * counted
+     */
+    private void build(Collection<Entry> entries) {
+        List<Entry> sorted = new ArrayList<Entry>(entries.size());
+        for (Entry entry : entries) {
+            if (entry.count > 0) {
+                sorted.add(entry);
+            }
+        }
+        Collections.sort(sorted, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.key.compareTo(b.key);
+            }
+        });
+
+        int size = sorted.size();
+        this.keys = new String[size];
+        this.texts = new String[size];
+        this.counts = new int[size];
+        for (int i = 0; i < size; i++) {
+            Entry entry = sorted.get(i);
+            this.keys[i] = entry.key;
+            // most values are already lower case, so share the string when we can
+            this.texts[i] = entry.text.equals(entry.key) ? entry.key : entry.text;
+            this.counts[i] = entry.count;
+        }
+        this.tree = new int[size << 1];
+        for (int i = 0; i < size; i++) {
+            this.tree[size + i] = i;
+        }
+        for (int node = size - 1; node > 0; node--) {
+            this.tree[node] = this.better(this.tree[node << 1], this.tree[(node << 1) + 1]);
+        }
+    }
+
+    /**
+     * Returns the index of the key with the highest count from <code>low</code> up to
+     * <code>high</code>
+     */
+    private int max(int low, int high) {
+        int result = low;
+        for (low += this.keys.length, high += this.keys.length; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1) {
+                result = this.better(result, this.tree[low++]);
+            }
+            if ((high & 1) == 1) {
+                result = this.better(result, this.tree[--high]);
+            }
+        }
+        return result;
+    }
+
+    private int better(int a, int b) {
+        return this.compareKeys(a, b) <= 0 ? a : b;
+    }
+
+    /**
+     * Orders the keys by count, highest first, and then alphabetically
+     */
+    private int compareKeys(int a, int b) {
+        int result = Integer.compare(this.counts[b], this.counts[a]);
+        return result != 0 ? result : Integer.compare(a, b);
+    }
+
+    private static int lowerBound(String[] keys, String key) {
+        int index = Arrays.binarySearch(keys, key);
+        return index < 0 ? -index - 1 : index;
+    }
+
+    private static String normalize(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * A counted value
+     */
+    private static class Entry {
+
+        private final String key;
+        private final String text;
+        private int count;
+
+        Entry(String key, String text, int count) {
+            this.key = key;
+            this.text = text;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.library.search;
+
+import org.library.domain.Book;
+
+/**
+ * A completion of a prefix, along with its popularity: the number of {@link Book}s holding the
+ * suggested text
+ * 
+ * @author dylants
+ * 
+ */
+public class Suggestion {
+
+    private final String text;
+    private final int count;
+
+    public Suggestion(String text, int count) {
+        this.text = text;
+        this.count = count;
+    }
+
+    /**
+     * @return the suggested text
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the number of books holding the suggested text
+     */
+    public int getCount() {
+        return count;
+    }
+
+}
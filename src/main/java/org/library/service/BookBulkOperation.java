@@ -0,0 +1,67 @@
+package org.library.service;
+
+import org.library.domain.Book;
+
+/**
+ * A single operation of a bulk request on {@link Book}s, which creates, updates or deletes one
+ * {@link Book}
+ * 
+ * @author dylants
+ * 
+ */
+public class BookBulkOperation {
+
+    public static final String CREATE = "create";
+    public static final String UPDATE = "update";
+    public static final String DELETE = "delete";
+
+    private String action;
+    private Long id;
+    private Book book;
+
+    /**
+     * @return the action, one of {@value #CREATE}, {@value #UPDATE} or {@value #DELETE}
+     */
+    public String getAction() {
+        return action;
+    }
+
+    /**
+     * @param action
+     *            the action to set
+     */
+    public void setAction(String action) {
+        this.action = action;
+    }
+
+    /**
+     * @return the ID of the {@link Book} to update or delete
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * @param id
+     *            the id to set
+     */
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the {@link Book} to create, or the data to update the {@link Book} with
+     */
+    public Book getBook() {
+        return book;
+    }
+
+    /**
+     * @param book
+     *            the book to set
+     */
+    public void setBook(Book book) {
+        this.book = book;
+    }
+
+}
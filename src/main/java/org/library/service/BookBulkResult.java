@@ -0,0 +1,47 @@
+package org.library.service;
+
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+import org.codehaus.jackson.map.annotate.JsonSerialize.Inclusion;
+
+/**
+ * The result of a single {@link BookBulkOperation}, holding the HTTP status code the operation
+ * would have had as an individual request
+ * 
+ * @author dylants
+ * 
+ */
+@JsonSerialize(include = Inclusion.NON_NULL)
+public class BookBulkResult {
+
+    private final int status;
+    private final Long id;
+    private final String error;
+
+    public BookBulkResult(int status, Long id, String error) {
+        this.status = status;
+        this.id = id;
+        this.error = error;
+    }
+
+    /**
+     * @return the HTTP status code of the operation
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the ID of the affected book, if known
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * @return the reason the operation failed, if it did
+     */
+    public String getError() {
+        return error;
+    }
+
+}
@@ -0,0 +1,275 @@
+package org.library.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.hibernate.exception.ConstraintViolationException;
+import org.library.domain.Book;
+import org.library.repository.BookRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Executes bulk requests of {@link BookBulkOperation}s. Rather than one transaction per
+ * operation, the operations are executed in chunks of {@value #CHUNK_SIZE}, each chunk within a
+ * single transaction and persistence context. The existing {@link Book}s a chunk updates or
+ * deletes are loaded with a single query, and the resulting inserts, updates and deletes are sent
+ * to the database in JDBC batches (see <code>hibernate.jdbc.batch_size</code>).
+ * <p>
+ * Each operation gets its own {@link BookBulkResult}: invalid operations fail on their own without
+ * affecting the rest of the chunk. Should the database reject a chunk, the chunk is rolled back and
+ * its operations retried one at a time, so that only the offending operations fail.
+ * 
+ * @author dylants
+ * 
+ */
+@Service
+public class BookBulkService {
+
+    /**
+     * The number of operations executed within a single transaction
+     */
+    public static final int CHUNK_SIZE = 500;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final BookRepository bookRepository;
+    private final BookChangeCounter bookChangeCounter;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public BookBulkService(BookRepository bookRepository, BookChangeCounter bookChangeCounter,
+            PlatformTransactionManager transactionManager) {
+        this.bookRepository = bookRepository;
+        this.bookChangeCounter = bookChangeCounter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.validator = Validation.buildDefaultValidatorFactory().getValidator();
+    }
+
+    /**
+     * Executes the <code>operations</code>, returning a {@link BookBulkResult} for each, in the
+     * same order as the <code>operations</code>
+     * 
+     * @param operations
+     *            The {@link BookBulkOperation}s to execute
+     * @return The {@link BookBulkResult} of each of the <code>operations</code>
+     */
+    public List<BookBulkResult> execute(List<BookBulkOperation> operations) {
+        BookBulkResult[] results = new BookBulkResult[operations.size()];
+        for (int start = 0; start < operations.size(); start += CHUNK_SIZE) {
+            int end = Math.min(start + CHUNK_SIZE, operations.size());
+            logger.debug("executing bulk operations {} to {}", start, end - 1);
+            try {
+                this.executeChunk(operations, start, end, results);
+            } catch (RuntimeException e) {
+                logger.debug("bulk operations {} to {} failed, retrying individually: {}", start,
+                        end - 1, e.getMessage());
+                for (int i = start; i < end; i++) {
+                    try {
+                        this.executeChunk(operations, i, i + 1, results);
+                    } catch (RuntimeException ex) {
+                        logger.debug("bulk operation {} failed", i, ex);
+                        results[i] = this.createFailedResult(operations.get(i), ex);
+                    }
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Internal method that executes the <code>operations</code> from <code>start</code> up to
+     * <code>end</code> within a single transaction, storing their {@link BookBulkResult}s in
+     * <code>results</code>
+     * 
+     * @param operations
+     *            All the {@link BookBulkOperation}s
+     * @param start
+     *            The index of the first operation of the chunk
+     * @param end
+     *            The index after the last operation of the chunk
+     * @param results
+     *            The {@link BookBulkResult}s of all the <code>operations</code>
+     */
+    protected void executeChunk(final List<BookBulkOperation> operations, final int start,
+            final int end, final BookBulkResult[] results) {
+        this.transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                // count the change first, so the counter is always the first row locked
+                bookChangeCounter.countChange();
+                // validate up front, and load all the books to update or delete in one query
+                List<Long> ids = new ArrayList<Long>();
+                for (int i = start; i < end; i++) {
+                    BookBulkOperation operation = operations.get(i);
+                    results[i] = validate(operation);
+                    if (results[i] == null && getId(operation) != null) {
+                        ids.add(getId(operation));
+                    }
+                }
+                Map<Long, Book> existingBooks = new HashMap<Long, Book>();
+                if (!ids.isEmpty()) {
+                    for (Book book : bookRepository.findAll(ids)) {
+                        existingBooks.put(book.getId(), book);
+                    }
+                }
+
+                boolean changed = false;
+                for (int i = start; i < end; i++) {
+                    if (results[i] == null) {
+                        results[i] = execute(operations.get(i), existingBooks);
+                        changed |= results[i].getStatus() < HttpStatus.MULTIPLE_CHOICES.value();
+                    }
+                }
+                // flush here so the database rejects the chunk within this callback
+                entityManager.flush();
+                if (!changed) {
+                    // nothing changed, so neither must the count
+                    status.setRollbackOnly();
+                }
+            }
+        });
+    }
+
+    /**
+     * Internal method that executes a single valid <code>operation</code>
+     * 
+     * @param operation
+     *            The {@link BookBulkOperation} to execute
+     * @param existingBooks
+     *            The existing {@link Book}s of the chunk, by ID
+     * @return The {@link BookBulkResult} of the <code>operation</code>
+     */
+    protected BookBulkResult execute(BookBulkOperation operation, Map<Long, Book> existingBooks) {
+        String action = operation.getAction();
+        Book existingBook = existingBooks.get(this.getId(operation));
+        if (BookBulkOperation.CREATE.equals(action)) {
+            Book book = operation.getBook();
+            if (existingBook != null) {
+                return new BookBulkResult(HttpStatus.CONFLICT.value(), book.getId(),
+                        "book already exists");
+            }
+            if (book.getId() == null) {
+                this.entityManager.persist(book);
+            } else {
+                // books created with a supplied ID aren't new as far as Hibernate is concerned
+                book = this.entityManager.merge(book);
+            }
+            existingBooks.put(book.getId(), book);
+            return new BookBulkResult(HttpStatus.CREATED.value(), book.getId(), null);
+        }
+
+        if (existingBook == null) {
+            return new BookBulkResult(HttpStatus.NOT_FOUND.value(), operation.getId(),
+                    "book not found");
+        }
+        if (BookBulkOperation.UPDATE.equals(action)) {
+            existingBook.setTitle(operation.getBook().getTitle());
+            existingBook.setAuthor(operation.getBook().getAuthor());
+        } else {
+            this.entityManager.remove(existingBook);
+            existingBooks.remove(operation.getId());
+        }
+        return new BookBulkResult(HttpStatus.OK.value(), operation.getId(), null);
+    }
+
+    /**
+     * Internal method that validates the <code>operation</code>
+     * 
+     * @param operation
+     *            The {@link BookBulkOperation} to validate
+     * @return A failed {@link BookBulkResult} if the <code>operation</code> is invalid,
+     *         <code>null</code> otherwise
+     */
+    protected BookBulkResult validate(BookBulkOperation operation) {
+        String action = operation.getAction();
+        Long id = operation.getId();
+        if (!BookBulkOperation.CREATE.equals(action) && !BookBulkOperation.UPDATE.equals(action)
+                && !BookBulkOperation.DELETE.equals(action)) {
+            return new BookBulkResult(HttpStatus.BAD_REQUEST.value(), id, "unknown action: "
+                    + action);
+        }
+        if (!BookBulkOperation.CREATE.equals(action) && id == null) {
+            return new BookBulkResult(HttpStatus.BAD_REQUEST.value(), null, "id is required");
+        }
+        if (BookBulkOperation.DELETE.equals(action)) {
+            return null;
+        }
+
+        Book book = operation.getBook();
+        if (book == null) {
+            return new BookBulkResult(HttpStatus.BAD_REQUEST.value(), id, "book is required");
+        }
+        Set<ConstraintViolation<Book>> violations = this.validator.validate(book);
+        if (!violations.isEmpty()) {
+            StringBuilder error = new StringBuilder();
+            for (ConstraintViolation<Book> violation : violations) {
+                if (error.length() > 0) {
+                    error.append(", ");
+                }
+                error.append(violation.getPropertyPath()).append(" ")
+                        .append(violation.getMessage());
+            }
+            return new BookBulkResult(HttpStatus.BAD_REQUEST.value(), id, error.toString());
+        }
+        return null;
+    }
+
+    /**
+     * Internal method that returns the ID of the {@link Book} the <code>operation</code> acts
+     * on, which for creates is the (optional) ID of the {@link Book} to create
+     * 
+     * @param operation
+     *            The {@link BookBulkOperation}
+     * @return The ID of the {@link Book} the <code>operation</code> acts on, if known
+     */
+    protected Long getId(BookBulkOperation operation) {
+        if (BookBulkOperation.CREATE.equals(operation.getAction())) {
+            return operation.getBook() == null ? null : operation.getBook().getId();
+        }
+        return operation.getId();
+    }
+
+    /**
+     * Internal method that creates the {@link BookBulkResult} of an <code>operation</code> the
+     * database rejected
+     * 
+     * @param operation
+     *            The {@link BookBulkOperation} that failed
+     * @param e
+     *            The exception the operation failed with
+     * @return The failed {@link BookBulkResult}
+     */
+    protected BookBulkResult createFailedResult(BookBulkOperation operation, RuntimeException e) {
+        Long id = this.getId(operation);
+        if (ExceptionUtils.indexOfThrowable(e, ConstraintViolationException.class) >= 0) {
+            return new BookBulkResult(HttpStatus.CONFLICT.value(), id, "conflicts with an "
+                    + "existing book");
+        }
+        return new BookBulkResult(HttpStatus.INTERNAL_SERVER_ERROR.value(), id,
+                ExceptionUtils.getRootCauseMessage(e));
+    }
+
+}
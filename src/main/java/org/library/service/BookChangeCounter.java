@@ -0,0 +1,118 @@
+package org.library.service;
+
+import javax.annotation.PostConstruct;
+
+import org.library.domain.Book;
+import org.library.domain.ChangeCounter;
+import org.library.persistence.VersionSeed;
+import org.library.repository.ChangeCounterRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Counts the changes made to the {@link Book}s in a {@link ChangeCounter} named
+ * {@value #BOOKS}, shared by every instance of the application through the database. Each
+ * transaction creating, updating or deleting {@link Book}s increments the count before writing
+ * any {@link Book}, so the count changes exactly when (and on whichever instance) the changes are
+ * committed. The new count also seeds the version of the {@link Book}s the transaction creates
+ * (see {@link VersionSeed}).
+ * <p>
+ * Incrementing locks the counter's row until the transaction ends, so transactions writing
+ * {@link Book}s commit one at a time, which is the price of a count every instance agrees on. As
+ * the counter is the first row each of them locks, they never deadlock. The counter is created
+ * starting at the current time in milliseconds, so that a database created again never repeats a
+ * count of the one before.
+ * 
+ * @author dylants
+ * 
+ */
+@Service
+public class BookChangeCounter {
+
+    /**
+     * The name of the {@link ChangeCounter} of the changes made to the {@link Book}s
+     */
+    public static final String BOOKS = "books";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ChangeCounterRepository changeCounterRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    @Autowired
+    public BookChangeCounter(ChangeCounterRepository changeCounterRepository,
+            PlatformTransactionManager transactionManager) {
+        this.changeCounterRepository = changeCounterRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Creates the counter, unless it exists already. Should another instance create it at the
+     * same time, the counter it created is used.
+     */
+    @PostConstruct
+    public void createCounter() {
+        try {
+            this.transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    if (changeCounterRepository.findChanges(BOOKS) == null) {
+                        changeCounterRepository.saveAndFlush(new ChangeCounter(BOOKS, System
+                                .currentTimeMillis()));
+                    }
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            if (this.getChanges() == null) {
+                throw e;
+            }
+            logger.debug("change counter {} was created by another instance", BOOKS);
+        }
+    }
+
+    /**
+     * Returns the number of changes made to the {@link Book}s
+     * 
+     * @return The number of changes made to the {@link Book}s, or <code>null</code> if the counter
+     *         doesn't exist
+     */
+    public Long getChanges() {
+        return this.readOnlyTransactionTemplate.execute(new TransactionCallback<Long>() {
+
+            @Override
+            public Long doInTransaction(TransactionStatus status) {
+                return changeCounterRepository.findChanges(BOOKS);
+            }
+        });
+    }
+
+    /**
+     * Counts a change to the {@link Book}s, seeding the version of the {@link Book}s created by
+     * the transaction with the new count. This must be called within the transaction making the
+     * change, before any {@link Book} is written. Should the transaction turn out to change
+     * nothing, it's best rolled back, so that the count doesn't change either.
+     * 
+     * @return The new count
+     * @throws IllegalStateException
+     *             If the counter doesn't exist
+     */
+    public long countChange() {
+        if (this.changeCounterRepository.increment(BOOKS) == 0) {
+            throw new IllegalStateException("no change counter named " + BOOKS);
+        }
+        long changes = this.changeCounterRepository.findChanges(BOOKS);
+        VersionSeed.set(changes);
+        return changes;
+    }
+}
\ No newline at end of file
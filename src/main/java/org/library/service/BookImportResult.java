@@ -0,0 +1,57 @@
+package org.library.service;
+
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+import org.codehaus.jackson.map.annotate.JsonSerialize.Inclusion;
+
+/**
+ * The result of an import of {@link org.library.domain.Book}s, holding the HTTP status code of
+ * the import along with its checkpoint: the number of records of the file which have been
+ * imported, and so may be skipped when resuming a failed import.
+ * 
+ * @author dylants
+ * 
+ */
+@JsonSerialize(include = Inclusion.NON_NULL)
+public class BookImportResult {
+
+    private final int status;
+    private final long imported;
+    private final long checkpoint;
+    private final String error;
+
+    public BookImportResult(int status, long imported, long checkpoint, String error) {
+        this.status = status;
+        this.imported = imported;
+        this.checkpoint = checkpoint;
+        this.error = error;
+    }
+
+    /**
+     * @return the HTTP status code of the import
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the number of books created or updated by the import
+     */
+    public long getImported() {
+        return imported;
+    }
+
+    /**
+     * @return the number of records of the file imported so far, including any skipped
+     */
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * @return the reason the import failed, if it did
+     */
+    public String getError() {
+        return error;
+    }
+
+}
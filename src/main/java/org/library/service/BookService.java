@@ -0,0 +1,562 @@
+package org.library.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+
+import org.library.domain.Book;
+import org.library.domain.BookProjection;
+import org.library.persistence.EntityStatementAction;
+import org.library.repository.BookRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Reads and writes single {@link Book}s or pages of them, each operation within its own
+ * transaction. Reads run in read-only transactions, so Hibernate neither dirty checks nor flushes
+ * the {@link Book}s it loads. Updates and deletes go straight to the database with a single
+ * <code>UPDATE</code> or <code>DELETE</code> statement rather than loading the {@link Book} first,
+ * the number of affected rows telling whether the {@link Book} existed.
+ * <p>
+ * As each such statement writes a single {@link Book}, only that {@link Book}'s entry in the
+ * second-level cache is locked and evicted (see {@link EntityStatementAction}), while the other
+ * cached {@link Book}s are kept. Cached queries over the {@link Book}s are invalidated as for any
+ * other write.
+ * <p>
+ * Writes may be made conditional on the version of the {@link Book}, failing with an
+ * {@link OptimisticLockingFailureException} if the {@link Book} has since been changed. The check
+ * is part of the statement making the change, so no lock is held beyond it.
+ * 
+ * @author dylants
+ * 
+ */
+@Service
+public class BookService {
+
+    /**
+     * The fields of a {@link Book} which may be changed by a patch
+     */
+    public static final Set<String> PATCHABLE_FIELDS = new HashSet<String>(Arrays.asList("title",
+            "author"));
+    /**
+     * The fields {@link Book}s may be sorted by
+     */
+    public static final Set<String> SORTABLE_FIELDS = new HashSet<String>(Arrays.asList("id",
+            "title", "author"));
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final BookRepository bookRepository;
+    private final BookChangeCounter bookChangeCounter;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final Validator validator;
+
+    @Autowired
+    public BookService(BookRepository bookRepository, BookChangeCounter bookChangeCounter,
+            PlatformTransactionManager transactionManager) {
+        this.bookRepository = bookRepository;
+        this.bookChangeCounter = bookChangeCounter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.validator = Validation.buildDefaultValidatorFactory().getValidator();
+    }
+
+    /**
+     * Returns all the {@link Book}s
+     * 
+     * @return All the {@link Book}s
+     */
+    public Iterable<Book> findAllBooks() {
+        return this.readOnlyTransactionTemplate.execute(new TransactionCallback<Iterable<Book>>() {
+
+            @Override
+            public Iterable<Book> doInTransaction(TransactionStatus status) {
+                return bookRepository.findAll();
+            }
+        });
+    }
+
+    /**
+     * Returns up to <code>limit</code> {@link Book}s with an ID greater than <code>after</code>,
+     * ordered by ID
+     * 
+     * @param after
+     *            The ID after which to start
+     * @param limit
+     *            The maximum number of {@link Book}s to return
+     * @return The {@link Book}s with an ID greater than <code>after</code>, ordered by ID
+     */
+    public List<Book> findBooksAfter(final Long after, final int limit) {
+        return this.readOnlyTransactionTemplate.execute(new TransactionCallback<List<Book>>() {
+
+            @Override
+            public List<Book> doInTransaction(TransactionStatus status) {
+                // always request the first "page", the cursor does the seeking
+                return bookRepository.findByIdGreaterThanOrderByIdAsc(after, new PageRequest(0,
+                        limit));
+            }
+        });
+    }
+
+    /**
+     * Returns up to <code>limit</code> {@link Book}s matching the <code>author</code> and the
+     * <code>title</code>, ordered by the <code>sort</code>, skipping the first
+     * <code>offset</code>. A value ending with {@link BookRepository#PREFIX_WILDCARD} matches as
+     * a prefix, otherwise it matches exactly.
+     * 
+     * @param author
+     *            The author to match, or <code>null</code> for any author
+     * @param title
+     *            The title to match, or <code>null</code> for any title
+     * @param sort
+     *            The fields to sort by, each prefixed with "-" for a descending sort
+     * @param offset
+     *            The number of matching {@link Book}s to skip
+     * @param limit
+     *            The maximum number of {@link Book}s to return
+     * @return The matching {@link Book}s, ordered by the <code>sort</code> and then by ID
+     * @throws IllegalArgumentException
+     *             If the <code>sort</code> holds a field which can't be sorted by
+     */
+    public List<Book> findBooks(final String author, final String title, List<String> sort,
+            final int offset, final int limit) {
+        final Sort bookSort = this.getSort(sort);
+        return this.readOnlyTransactionTemplate.execute(new TransactionCallback<List<Book>>() {
+
+            @Override
+            public List<Book> doInTransaction(TransactionStatus status) {
+                return bookRepository.findBooks(author, title, bookSort, offset, limit);
+            }
+        });
+    }
+
+    /**
+     * Returns the {@link Book} with the <code>bookId</code>
+     * 
+     * @param bookId
+     *            The ID of the {@link Book}
+     * @return The {@link Book}, or <code>null</code> if it doesn't exist
+     */
+    public Book findBook(final Long bookId) {
+        return this.readOnlyTransactionTemplate.execute(new TransactionCallback<Book>() {
+
+            @Override
+            public Book doInTransaction(TransactionStatus status) {
+                return bookRepository.findOne(bookId);
+            }
+        });
+    }
+
+    /**
+     * Returns the version of the {@link Book} with the <code>bookId</code>, read from the database
+     * without loading the {@link Book}
+     * 
+     * @param bookId
+     *            The ID of the {@link Book}
+     * @return The version of the {@link Book}, or <code>null</code> if it doesn't exist
+     */
+    public Long findBookVersion(final Long bookId) {
+        return this.readOnlyTransactionTemplate.execute(new TransactionCallback<Long>() {
+
+            @Override
+            public Long doInTransaction(TransactionStatus status) {
+                return bookRepository.findVersion(bookId);
+            }
+        });
+    }
+
+    /**
+     * Returns {@link BookProjection}s holding only the <code>fields</code> of up to
+     * <code>limit</code> {@link Book}s with an ID greater than <code>after</code>, ordered by ID.
+     * Only the columns of the <code>fields</code> are read, and no {@link Book} is loaded.
+     * 
+     * @param fields
+     *            The fields to project, to which the ID is always added
+     * @param after
+     *            The ID after which to start
+     * @param limit
+     *            The maximum number of {@link Book}s to return, or <code>null</code> for all of
+     *            them
+     * @return The {@link BookProjection}s, ordered by ID
+     * @throws IllegalArgumentException
+     *             If the <code>fields</code> hold a field which can't be projected
+     */
+    public List<BookProjection> findBookProjections(Collection<String> fields, final Long after,
+            final Integer limit) {
+        final List<String> projectedFields = this.getProjectedFields(fields);
+        return this.readOnlyTransactionTemplate
+                .execute(new TransactionCallback<List<BookProjection>>() {
+
+                    @Override
+                    public List<BookProjection> doInTransaction(TransactionStatus status) {
+                        return bookRepository.findProjections(projectedFields, after, limit);
+                    }
+                });
+    }
+
+    /**
+     * Returns {@link BookProjection}s holding only the <code>fields</code> of up to
+     * <code>limit</code> {@link Book}s matching the <code>author</code> and the <code>title</code>,
+     * ordered by the <code>sort</code>, skipping the first <code>offset</code>. The {@link Book}s
+     * are matched as by {@link #findBooks(String, String, List, int, int)}, but only the columns
+     * of the <code>fields</code> are read, and no {@link Book} is loaded.
+     * 
+     * @param fields
+     *            The fields to project, to which the ID is always added
+     * @param author
+     *            The author to match, or <code>null</code> for any author
+     * @param title
+     *            The title to match, or <code>null</code> for any title
+     * @param sort
+     *            The fields to sort by, each prefixed with "-" for a descending sort
+     * @param offset
+     *            The number of matching {@link Book}s to skip
+     * @param limit
+     *            The maximum number of {@link Book}s to return
+     * @return The {@link BookProjection}s, ordered by the <code>sort</code> and then by ID
+     * @throws IllegalArgumentException
+     *             If the <code>fields</code> hold a field which can't be projected, or the
+     *             <code>sort</code> a field which can't be sorted by
+     */
+    public List<BookProjection> findBookProjections(Collection<String> fields,
+            final String author, final String title, List<String> sort, final int offset,
+            final int limit) {
+        final List<String> projectedFields = this.getProjectedFields(fields);
+        final Sort bookSort = this.getSort(sort);
+        return this.readOnlyTransactionTemplate
+                .execute(new TransactionCallback<List<BookProjection>>() {
+
+                    @Override
+                    public List<BookProjection> doInTransaction(TransactionStatus status) {
+                        return bookRepository.findProjections(projectedFields, author, title,
+                                bookSort, offset, limit);
+                    }
+                });
+    }
+
+    /**
+     * Returns a {@link BookProjection} holding only the <code>fields</code> of the {@link Book}
+     * with the <code>bookId</code>. Only the columns of the <code>fields</code> are read, and no
+     * {@link Book} is loaded.
+     * 
+     * @param bookId
+     *            The ID of the {@link Book}
+     * @param fields
+     *            The fields to project, to which the ID is always added
+     * @return The {@link BookProjection}, or <code>null</code> if the {@link Book} doesn't exist
+     * @throws IllegalArgumentException
+     *             If the <code>fields</code> hold a field which can't be projected
+     */
+    public BookProjection findBookProjection(final Long bookId, Collection<String> fields) {
+        final List<String> projectedFields = this.getProjectedFields(fields);
+        return this.readOnlyTransactionTemplate.execute(new TransactionCallback<BookProjection>() {
+
+            @Override
+            public BookProjection doInTransaction(TransactionStatus status) {
+                return bookRepository.findProjection(bookId, projectedFields);
+            }
+        });
+    }
+
+    /**
+     * Creates the <code>book</code>, which may have an ID supplied as long as no {@link Book} has
+     * it already
+     * 
+     * @param book
+     *            The {@link Book} to create
+     * @return The created {@link Book}
+     * @throws DuplicateKeyException
+     *             If a {@link Book} with the ID of the <code>book</code> already exists
+     */
+    public Book createBook(final Book book) {
+        return this.transactionTemplate.execute(new TransactionCallback<Book>() {
+
+            @Override
+            public Book doInTransaction(TransactionStatus status) {
+                bookChangeCounter.countChange();
+                if (book.getId() != null) {
+                    if (bookRepository.exists(book.getId())) {
+                        throw new DuplicateKeyException("book with id " + book.getId()
+                                + " already exists");
+                    }
+                    // books created with a supplied ID aren't new as far as Hibernate is
+                    // concerned, and would be merged with any book given the ID meanwhile
+                    book.setVersion(null);
+                }
+                return bookRepository.save(book);
+            }
+        });
+    }
+
+    /**
+     * Updates the {@link Book} with the <code>bookId</code> to the title and author of the
+     * <code>book</code>, in a single statement
+     * 
+     * @param bookId
+     *            The ID of the {@link Book} to update
+     * @param book
+     *            The {@link Book} holding the new title and author
+     * @param expectedVersion
+     *            The version the {@link Book} must be at, or <code>null</code> to update any
+     *            version
+     * @return The updated {@link Book} with its new version, or <code>null</code> if it doesn't
+     *         exist
+     * @throws OptimisticLockingFailureException
+     *             If the {@link Book} isn't at the <code>expectedVersion</code>
+     */
+    public Book updateBook(final Long bookId, final Book book, final Long expectedVersion) {
+        Long version = this.transactionTemplate.execute(new TransactionCallback<Long>() {
+
+            @Override
+            public Long doInTransaction(TransactionStatus status) {
+                bookChangeCounter.countChange();
+                if (expectedVersion == null) {
+                    if (bookRepository.updateBook(bookId, book.getTitle(), book.getAuthor()) == 0) {
+                        status.setRollbackOnly();
+                        return null;
+                    }
+                    // the version the book was at isn't known, so read back the new one
+                    return bookRepository.findVersion(bookId);
+                }
+                if (bookRepository.updateBook(bookId, expectedVersion, book.getTitle(),
+                        book.getAuthor()) == 0) {
+                    checkExists(bookId, expectedVersion);
+                    status.setRollbackOnly();
+                    return null;
+                }
+                return expectedVersion + 1;
+            }
+        });
+        if (version == null) {
+            logger.debug("no book with id {} to update", bookId);
+            return null;
+        }
+        book.setId(bookId);
+        book.setVersion(version);
+        return book;
+    }
+
+    /**
+     * Applies the JSON merge <code>patch</code> to the {@link Book} with the <code>bookId</code>,
+     * changing only the fields the <code>patch</code> holds. The {@link Book} is changed in place,
+     * so the resulting <code>UPDATE</code> statement only writes the columns which changed (if
+     * any), and checks the version the {@link Book} was read at.
+     * 
+     * @param bookId
+     *            The ID of the {@link Book} to patch
+     * @param patch
+     *            The new values of the fields to change, by field name
+     * @param expectedVersion
+     *            The version the {@link Book} must be at, or <code>null</code> to patch any
+     *            version
+     * @return The patched {@link Book} with its new version, or <code>null</code> if it doesn't
+     *         exist
+     * @throws IllegalArgumentException
+     *             If the <code>patch</code> holds a field which can't be changed, or a value which
+     *             isn't valid
+     * @throws OptimisticLockingFailureException
+     *             If the {@link Book} isn't at the <code>expectedVersion</code>, or is changed
+     *             while being patched
+     */
+    public Book patchBook(final Long bookId, final Map<String, Object> patch,
+            final Long expectedVersion) {
+        // check the patch up front, so an invalid patch never reaches the database
+        this.validatePatch(patch);
+        return this.transactionTemplate.execute(new TransactionCallback<Book>() {
+
+            @Override
+            public Book doInTransaction(TransactionStatus status) {
+                bookChangeCounter.countChange();
+                Book book = bookRepository.findOne(bookId);
+                if (book == null) {
+                    logger.debug("no book with id {} to patch", bookId);
+                    status.setRollbackOnly();
+                    return null;
+                }
+                if (expectedVersion != null && !expectedVersion.equals(book.getVersion())) {
+                    throw new OptimisticLockingFailureException("book with id " + bookId
+                            + " is at version " + book.getVersion() + ", not "
+                            + expectedVersion);
+                }
+                if (patch.containsKey("title")) {
+                    book.setTitle((String) patch.get("title"));
+                }
+                if (patch.containsKey("author")) {
+                    book.setAuthor((String) patch.get("author"));
+                }
+                // the changes are flushed when the transaction commits
+                return book;
+            }
+        });
+    }
+
+    /**
+     * Deletes the {@link Book} with the <code>bookId</code>, in a single statement
+     * 
+     * @param bookId
+     *            The ID of the {@link Book} to delete
+     * @param expectedVersion
+     *            The version the {@link Book} must be at, or <code>null</code> to delete any
+     *            version
+     * @return <code>true</code> if the {@link Book} was deleted, <code>false</code> if it
+     *         doesn't exist
+     * @throws OptimisticLockingFailureException
+     *             If the {@link Book} isn't at the <code>expectedVersion</code>
+     */
+    public boolean deleteBook(final Long bookId, final Long expectedVersion) {
+        int deleted = this.transactionTemplate.execute(new TransactionCallback<Integer>() {
+
+            @Override
+            public Integer doInTransaction(TransactionStatus status) {
+                bookChangeCounter.countChange();
+                int count;
+                if (expectedVersion == null) {
+                    count = bookRepository.deleteBook(bookId);
+                } else {
+                    count = bookRepository.deleteBook(bookId, expectedVersion);
+                    if (count == 0) {
+                        checkExists(bookId, expectedVersion);
+                    }
+                }
+                if (count == 0) {
+                    // nothing changed, so neither must the count
+                    status.setRollbackOnly();
+                }
+                return count;
+            }
+        });
+        if (deleted == 0) {
+            logger.debug("no book with id {} to delete", bookId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Internal method that tells apart the two reasons a conditional write may have changed
+     * nothing: the {@link Book} with the <code>bookId</code> doesn't exist, or it isn't at the
+     * <code>expectedVersion</code>
+     * 
+     * @param bookId
+     *            The ID of the {@link Book} written
+     * @param expectedVersion
+     *            The version the {@link Book} had to be at
+     * @throws OptimisticLockingFailureException
+     *             If the {@link Book} exists, and so isn't at the <code>expectedVersion</code>
+     */
+    protected void checkExists(Long bookId, Long expectedVersion) {
+        Long version = this.bookRepository.findVersion(bookId);
+        if (version != null) {
+            throw new OptimisticLockingFailureException("book with id " + bookId
+                    + " is at version " + version + ", not " + expectedVersion);
+        }
+    }
+
+    /**
+     * Internal method that returns the fields to project for the requested <code>fields</code>:
+     * the ID, followed by the requested fields in the order of {@link BookProjection#FIELDS}
+     * 
+     * @param fields
+     *            The requested fields
+     * @return The fields to project
+     * @throws IllegalArgumentException
+     *             If the <code>fields</code> hold a field which can't be projected
+     */
+    protected List<String> getProjectedFields(Collection<String> fields) {
+        for (String field : fields) {
+            if (!BookProjection.FIELDS.contains(field)) {
+                throw new IllegalArgumentException("field " + field + " can't be projected");
+            }
+        }
+        List<String> projectedFields = new ArrayList<String>();
+        for (String field : BookProjection.FIELDS) {
+            // the ID is always projected, to identify the book
+            if (field.equals("id") || fields.contains(field)) {
+                projectedFields.add(field);
+            }
+        }
+        return projectedFields;
+    }
+
+    /**
+     * Internal method that returns the {@link Sort} for the requested <code>sort</code>, which
+     * always ends with the ID so that pages of equal values are stable
+     * 
+     * @param sort
+     *            The fields to sort by, each prefixed with "-" for a descending sort
+     * @return The {@link Sort}
+     * @throws IllegalArgumentException
+     *             If the <code>sort</code> holds a field which can't be sorted by
+     */
+    protected Sort getSort(List<String> sort) {
+        List<Sort.Order> orders = new ArrayList<Sort.Order>();
+        boolean sortedById = false;
+        for (String field : sort) {
+            Direction direction = Direction.ASC;
+            if (field.startsWith("-")) {
+                direction = Direction.DESC;
+                field = field.substring(1);
+            }
+            if (!SORTABLE_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("books can't be sorted by " + field);
+            }
+            orders.add(new Sort.Order(direction, field));
+            sortedById |= field.equals("id");
+        }
+        if (!sortedById) {
+            orders.add(new Sort.Order(Direction.ASC, "id"));
+        }
+        return new Sort(orders);
+    }
+
+    /**
+     * Internal method that validates the fields and values of the <code>patch</code> against the
+     * constraints of a {@link Book}. A <code>null</code> value removes the field, which is never
+     * valid as all the patchable fields are required.
+     * 
+     * @param patch
+     *            The new values of the fields to change, by field name
+     * @throws IllegalArgumentException
+     *             If the <code>patch</code> holds a field which can't be changed, or a value which
+     *             isn't valid
+     */
+    protected void validatePatch(Map<String, Object> patch) {
+        for (Map.Entry<String, Object> field : patch.entrySet()) {
+            if (!PATCHABLE_FIELDS.contains(field.getKey())) {
+                throw new IllegalArgumentException("field " + field.getKey()
+                        + " can't be patched");
+            }
+            if (field.getValue() != null && !(field.getValue() instanceof String)) {
+                throw new IllegalArgumentException("field " + field.getKey()
+                        + " must be a string");
+            }
+            Set<ConstraintViolation<Book>> violations = this.validator.validateValue(Book.class,
+                    field.getKey(), field.getValue());
+            if (!violations.isEmpty()) {
+                throw new IllegalArgumentException("field " + field.getKey() + " "
+                        + violations.iterator().next().getMessage());
+            }
+        }
+    }
+}
\ No newline at end of file
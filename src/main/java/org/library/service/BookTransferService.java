@@ -0,0 +1,238 @@
+package org.library.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.library.domain.Book;
+import org.library.repository.BookCallback;
+import org.library.repository.BookRepository;
+import org.library.transfer.BookReader;
+import org.library.transfer.BookWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Imports and exports the whole catalog of {@link Book}s, to move it between environments. Both
+ * stream the {@link Book}s, so memory use doesn't grow with the number of {@link Book}s:
+ * <ul>
+ * <li>exports read the {@link Book}s with a forward-only cursor, writing each as it's read</li>
+ * <li>imports read a chunk of {@link Book}s at a time, creating or updating (by ID) the chunk
+ * within a single transaction, using JDBC batching (see <code>hibernate.jdbc.batch_size</code>)
+ * </li>
+ * </ul>
+ * An import stops at the first invalid {@link Book}, rolling back its chunk. The chunks committed
+ * before it stay imported, and the {@link BookImportResult} holds the number of records they
+ * span as a checkpoint, so the import can be resumed from there once the file is corrected.
+ * 
+ * @author dylants
+ * 
+ */
+@Service
+public class BookTransferService {
+
+    /**
+     * The number of {@link Book}s fetched from the database at a time when exporting
+     */
+    public static final int FETCH_SIZE = 500;
+    /**
+     * The number of {@link Book}s imported within a single transaction, unless specified
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+    /**
+     * The maximum number of {@link Book}s imported within a single transaction
+     */
+    public static final int MAX_CHUNK_SIZE = 10000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final BookRepository bookRepository;
+    private final BookChangeCounter bookChangeCounter;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public BookTransferService(BookRepository bookRepository,
+            BookChangeCounter bookChangeCounter, PlatformTransactionManager transactionManager) {
+        this.bookRepository = bookRepository;
+        this.bookChangeCounter = bookChangeCounter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.validator = Validation.buildDefaultValidatorFactory().getValidator();
+    }
+
+    /**
+     * Writes all the {@link Book}s, ordered by ID, to the <code>writer</code>
+     * 
+     * @param writer
+     *            The {@link BookWriter} to write to, which is left open
+     * @throws IOException
+     *             If an error occurs writing the {@link Book}s
+     */
+    public void exportBooks(BookWriter writer) throws IOException {
+        this.bookRepository.scrollAll(FETCH_SIZE, writer);
+    }
+
+    /**
+     * Creates or updates (by ID) the {@link Book}s read from the <code>reader</code>, in chunks
+     * of <code>chunkSize</code> {@link Book}s each within a single transaction
+     * 
+     * @param reader
+     *            The {@link BookReader} to read from, which is left open
+     * @param chunkSize
+     *            The number of {@link Book}s to import within a single transaction
+     * @param skip
+     *            The number of records to skip, such as the checkpoint of a failed import
+     * @param callback
+     *            The {@link BookCallback} handed each imported {@link Book} once its chunk
+     *            commits
+     * @return The {@link BookImportResult} of the import
+     */
+    public BookImportResult importBooks(BookReader reader, int chunkSize, long skip,
+            BookCallback callback) {
+        long checkpoint = 0;
+        long imported = 0;
+        List<Book> chunk = new ArrayList<Book>(chunkSize);
+        try {
+            Book book;
+            while ((book = reader.readBook()) != null) {
+                if (checkpoint < skip) {
+                    checkpoint++;
+                    continue;
+                }
+                String error = this.validate(book);
+                if (error != null) {
+                    throw new IllegalArgumentException("record " + (checkpoint + chunk.size() + 1)
+                            + ": " + error);
+                }
+                chunk.add(book);
+                if (chunk.size() == chunkSize) {
+                    this.importChunk(chunk, callback);
+                    checkpoint += chunk.size();
+                    imported += chunk.size();
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                this.importChunk(chunk, callback);
+                checkpoint += chunk.size();
+                imported += chunk.size();
+            }
+            logger.debug("imported {} books", imported);
+            return new BookImportResult(HttpStatus.OK.value(), imported, checkpoint, null);
+        } catch (IOException e) {
+            logger.debug("import failed after record {}", checkpoint, e);
+            return new BookImportResult(HttpStatus.BAD_REQUEST.value(), imported, checkpoint,
+                    e.getMessage());
+        } catch (IllegalArgumentException e) {
+            logger.debug("import failed after record {}", checkpoint, e);
+            return new BookImportResult(HttpStatus.BAD_REQUEST.value(), imported, checkpoint,
+                    e.getMessage());
+        } catch (RuntimeException e) {
+            logger.warn("import failed after record {}", checkpoint, e);
+            return new BookImportResult(HttpStatus.INTERNAL_SERVER_ERROR.value(), imported,
+                    checkpoint, ExceptionUtils.getRootCauseMessage(e));
+        }
+    }
+
+    /**
+     * Internal method that creates or updates the <code>books</code> within a single
+     * transaction, handing each to the <code>callback</code> once it commits
+     * 
+     * @param books
+     *            The {@link Book}s to import
+     * @param callback
+     *            The {@link BookCallback} handed each imported {@link Book}
+     * @throws IOException
+     *             If the <code>callback</code> fails
+     */
+    protected void importChunk(final List<Book> books, BookCallback callback) throws IOException {
+        this.transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                // count the change first, so the counter is always the first row locked
+                bookChangeCounter.countChange();
+                // load all the books to update in one query
+                List<Long> ids = new ArrayList<Long>();
+                for (Book book : books) {
+                    if (book.getId() != null) {
+                        ids.add(book.getId());
+                    }
+                }
+                Map<Long, Book> existingBooks = new HashMap<Long, Book>();
+                if (!ids.isEmpty()) {
+                    for (Book book : bookRepository.findAll(ids)) {
+                        existingBooks.put(book.getId(), book);
+                    }
+                }
+
+                for (int i = 0; i < books.size(); i++) {
+                    Book book = books.get(i);
+                    Book existingBook = book.getId() == null ? null : existingBooks.get(book
+                            .getId());
+                    if (existingBook != null) {
+                        existingBook.setTitle(book.getTitle());
+                        existingBook.setAuthor(book.getAuthor());
+                        book = existingBook;
+                    } else if (book.getId() == null) {
+                        entityManager.persist(book);
+                    } else {
+                        // books created with a supplied ID aren't new as far as Hibernate is
+                        // concerned
+                        book.setVersion(null);
+                        book = entityManager.merge(book);
+                        existingBooks.put(book.getId(), book);
+                    }
+                    books.set(i, book);
+                }
+                // flush here so the database rejects the chunk within this callback
+                entityManager.flush();
+            }
+        });
+        for (Book book : books) {
+            callback.doWithBook(book);
+        }
+    }
+
+    /**
+     * Internal method that validates the <code>book</code>
+     * 
+     * @param book
+     *            The {@link Book} to validate
+     * @return The reason the <code>book</code> is invalid, or <code>null</code> if it's valid
+     */
+    protected String validate(Book book) {
+        Set<ConstraintViolation<Book>> violations = this.validator.validate(book);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        StringBuilder error = new StringBuilder();
+        for (ConstraintViolation<Book> violation : violations) {
+            if (error.length() > 0) {
+                error.append(", ");
+            }
+            error.append(violation.getPropertyPath()).append(" ").append(violation.getMessage());
+        }
+        return error.toString();
+    }
+
+}
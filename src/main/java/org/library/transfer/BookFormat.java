@@ -0,0 +1,129 @@
+package org.library.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.library.domain.Book;
+import org.springframework.http.MediaType;
+
+/**
+ * The formats {@link Book}s may be imported from and exported to. Both are line oriented, so
+ * files of any size can be streamed a {@link Book} at a time.
+ * 
+ * @author dylants
+ * 
+ */
+public enum BookFormat {
+
+    /**
+     * Newline delimited JSON, a JSON object per {@link Book}
+     */
+    NDJSON(BookFormat.APPLICATION_NDJSON_VALUE) {
+
+        @Override
+        public BookReader createReader(InputStream inputStream) throws IOException {
+            return new NdjsonBookReader(inputStream);
+        }
+
+        @Override
+        public BookWriter createWriter(OutputStream outputStream) throws IOException {
+            return new NdjsonBookWriter(outputStream);
+        }
+    },
+
+    /**
+     * CSV with a header, a record per {@link Book}
+     */
+    CSV(BookFormat.TEXT_CSV_VALUE) {
+
+        @Override
+        public BookReader createReader(InputStream inputStream) {
+            return new CsvBookReader(inputStream);
+        }
+
+        @Override
+        public BookWriter createWriter(OutputStream outputStream) throws IOException {
+            return new CsvBookWriter(outputStream);
+        }
+    };
+
+    /**
+     * The media type of newline delimited JSON
+     */
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    /**
+     * The media type of CSV
+     */
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    private final MediaType mediaType;
+
+    private BookFormat(String mediaType) {
+        this.mediaType = MediaType.parseMediaType(mediaType);
+    }
+
+    /**
+     * @return the media type of the format
+     */
+    public MediaType getMediaType() {
+        return this.mediaType;
+    }
+
+    /**
+     * Creates a {@link BookReader} reading {@link Book}s in this format from the
+     * <code>inputStream</code>
+     * 
+     * @param inputStream
+     *            The {@link InputStream} to read from
+     * @return The {@link BookReader}
+     * @throws IOException
+     *             If an error occurs reading the <code>inputStream</code>
+     */
+    public abstract BookReader createReader(InputStream inputStream) throws IOException;
+
+    /**
+     * Creates a {@link BookWriter} writing {@link Book}s in this format to the
+     * <code>outputStream</code>
+     * 
+     * @param outputStream
+     *            The {@link OutputStream} to write to
+     * @return The {@link BookWriter}
+     * @throws IOException
+     *             If an error occurs writing to the <code>outputStream</code>
+     */
+    public abstract BookWriter createWriter(OutputStream outputStream) throws IOException;
+
+    /**
+     * Returns the {@link BookFormat} with the <code>name</code>, ignoring case
+     * 
+     * @param name
+     *            The name of the format
+     * @return The {@link BookFormat}, or <code>null</code> if there's none
+     */
+    public static BookFormat forName(String name) {
+        for (BookFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the {@link BookFormat} of the <code>mediaType</code>, ignoring any parameters
+     * 
+     * @param mediaType
+     *            The media type
+     * @return The {@link BookFormat}, or <code>null</code> if there's none
+     */
+    public static BookFormat forMediaType(MediaType mediaType) {
+        for (BookFormat format : values()) {
+            if (format.mediaType.getType().equals(mediaType.getType())
+                    && format.mediaType.getSubtype().equals(mediaType.getSubtype())) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,26 @@
+package org.library.transfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.library.domain.Book;
+
+/**
+ * Reads {@link Book}s one at a time from a file of some {@link BookFormat}, so that files of any
+ * size can be read without holding their {@link Book}s in memory.
+ * 
+ * @author dylants
+ * 
+ */
+public interface BookReader extends Closeable {
+
+    /**
+     * Reads the next {@link Book}. The {@link Book} holds the ID, title and author read, any of
+     * which may be missing.
+     * 
+     * @return The next {@link Book}, or <code>null</code> once all have been read
+     * @throws IOException
+     *             If an error occurs reading, or the file isn't valid in its {@link BookFormat}
+     */
+    public Book readBook() throws IOException;
+}
@@ -0,0 +1,17 @@
+package org.library.transfer;
+
+import java.io.Closeable;
+
+import org.library.domain.Book;
+import org.library.repository.BookCallback;
+
+/**
+ * Writes {@link Book}s one at a time to a file of some {@link BookFormat}, as each is handed to
+ * {@link #doWithBook(Book)}. Closing the {@link BookWriter} writes anything still buffered and
+ * closes the underlying stream.
+ * 
+ * @author dylants
+ * 
+ */
+public interface BookWriter extends BookCallback, Closeable {
+}
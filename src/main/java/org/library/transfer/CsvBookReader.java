@@ -0,0 +1,167 @@
+package org.library.transfer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.library.domain.Book;
+import org.springframework.util.StringUtils;
+
+/**
+ * Reads {@link Book}s from CSV (RFC 4180), a {@link Book} per record. The first record is a header
+ * naming the columns, which must include <code>title</code> and <code>author</code> and may
+ * include <code>id</code>, in any order. Other columns are ignored. Fields may be quoted, in which
+ * case they may hold commas, line breaks and (doubled) quotes. The records are parsed a character
+ * at a time from the stream, so only the current record is ever held in memory.
+ * 
+ * @author dylants
+ * 
+ */
+public class CsvBookReader implements BookReader {
+
+    private final Reader reader;
+    private Map<String, Integer> columns;
+    private long line = 1;
+
+    /**
+     * Creates a {@link CsvBookReader} reading UTF-8 encoded CSV from the <code>inputStream</code>
+     * 
+     * @param inputStream
+     *            The {@link InputStream} to read from
+     */
+    public CsvBookReader(InputStream inputStream) {
+        this.reader = new BufferedReader(new InputStreamReader(inputStream,
+                Charset.forName("UTF-8")));
+    }
+
+    @Override
+    public Book readBook() throws IOException {
+        if (this.columns == null) {
+            List<String> header = this.readRecord();
+            if (header == null) {
+                return null;
+            }
+            this.columns = this.readColumns(header);
+        }
+
+        List<String> record;
+        long start;
+        do {
+            start = this.line;
+            record = this.readRecord();
+            // skip blank lines, such as a trailing one
+        } while (record != null && record.size() == 1 && record.get(0).isEmpty());
+        if (record == null) {
+            return null;
+        }
+
+        Book book = new Book();
+        String id = this.getField(record, "id");
+        if (StringUtils.hasText(id)) {
+            try {
+                book.setId(Long.valueOf(id.trim()));
+            } catch (NumberFormatException e) {
+                throw new IOException("invalid id on line " + start + ": " + id);
+            }
+        }
+        book.setTitle(this.getField(record, "title"));
+        book.setAuthor(this.getField(record, "author"));
+        return book;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+    /**
+     * Internal method that reads the columns named by the <code>header</code>
+     * 
+     * @param header
+     *            The header record
+     * @return The index of each column, by name
+     * @throws IOException
+     *             If the <code>header</code> doesn't name the title and author columns
+     */
+    protected Map<String, Integer> readColumns(List<String> header) throws IOException {
+        Map<String, Integer> columns = new HashMap<String, Integer>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().toLowerCase(), i);
+        }
+        if (!columns.containsKey("title") || !columns.containsKey("author")) {
+            throw new IOException("the header must name the title and author columns, but was: "
+                    + header);
+        }
+        return columns;
+    }
+
+    /**
+     * Internal method that returns the field of the <code>column</code> in the
+     * <code>record</code>
+     * 
+     * @param record
+     *            The fields of the record
+     * @param column
+     *            The name of the column
+     * @return The field, or <code>null</code> if the <code>record</code> has no such field
+     */
+    protected String getField(List<String> record, String column) {
+        Integer index = this.columns.get(column);
+        return index == null || index >= record.size() ? null : record.get(index);
+    }
+
+    /**
+     * Internal method that reads the fields of the next record
+     * 
+     * @return The fields of the record, or <code>null</code> at the end of the stream
+     * @throws IOException
+     *             If an error occurs reading, or a quoted field isn't terminated
+     */
+    protected List<String> readRecord() throws IOException {
+        int c = this.reader.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        long start = this.line;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("unterminated quoted field starting on line " + start);
+                }
+                if (c == '"') {
+                    c = this.reader.read();
+                    if (c != '"') {
+                        // the closing quote, the character after it is read as usual
+                        quoted = false;
+                        continue;
+                    }
+                } else if (c == '\n') {
+                    this.line++;
+                }
+                field.append((char) c);
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                fields.add(field.toString());
+                this.line++;
+                return fields;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = this.reader.read();
+        }
+    }
+}
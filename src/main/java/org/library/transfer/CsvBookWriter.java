@@ -0,0 +1,73 @@
+package org.library.transfer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import org.library.domain.Book;
+
+/**
+ * Writes {@link Book}s as UTF-8 encoded CSV (RFC 4180): a header naming the <code>id</code>,
+ * <code>title</code> and <code>author</code> columns, followed by a record per {@link Book}.
+ * Fields holding commas, quotes or line breaks are quoted.
+ * 
+ * @author dylants
+ * 
+ */
+public class CsvBookWriter implements BookWriter {
+
+    private static final String LINE_BREAK = "\r\n";
+
+    private final Writer writer;
+
+    /**
+     * Creates a {@link CsvBookWriter} writing to the <code>outputStream</code>, writing the header
+     * 
+     * @param outputStream
+     *            The {@link OutputStream} to write to
+     * @throws IOException
+     *             If an error occurs writing to the <code>outputStream</code>
+     */
+    public CsvBookWriter(OutputStream outputStream) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(outputStream,
+                Charset.forName("UTF-8")));
+        this.writer.write("id,title,author" + LINE_BREAK);
+    }
+
+    @Override
+    public void doWithBook(Book book) throws IOException {
+        this.writer.write(String.valueOf(book.getId()));
+        this.writer.write(',');
+        this.writeField(book.getTitle());
+        this.writer.write(',');
+        this.writeField(book.getAuthor());
+        this.writer.write(LINE_BREAK);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.writer.close();
+    }
+
+    /**
+     * Internal method that writes the <code>field</code>, quoting it if needed
+     * 
+     * @param field
+     *            The field to write
+     * @throws IOException
+     *             If an error occurs writing the <code>field</code>
+     */
+    protected void writeField(String field) throws IOException {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0
+                && field.indexOf('\r') < 0) {
+            this.writer.write(field);
+            return;
+        }
+        this.writer.write('"');
+        this.writer.write(field.replace("\"", "\"\""));
+        this.writer.write('"');
+    }
+}
@@ -0,0 +1,56 @@
+package org.library.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.DeserializationConfig;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.library.domain.Book;
+
+/**
+ * Reads {@link Book}s from newline delimited JSON: a JSON object per {@link Book}, one after the
+ * other. The objects are parsed incrementally from the stream, one at a time. Unknown fields (such
+ * as the version) are ignored.
+ * 
+ * @author dylants
+ * 
+ */
+public class NdjsonBookReader implements BookReader {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().configure(
+            DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final JsonParser parser;
+
+    /**
+     * Creates a {@link NdjsonBookReader} reading from the <code>inputStream</code>
+     * 
+     * @param inputStream
+     *            The {@link InputStream} to read from
+     * @throws IOException
+     *             If an error occurs reading the <code>inputStream</code>
+     */
+    public NdjsonBookReader(InputStream inputStream) throws IOException {
+        this.parser = OBJECT_MAPPER.getJsonFactory().createJsonParser(inputStream);
+    }
+
+    @Override
+    public Book readBook() throws IOException {
+        JsonToken token = this.parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException("expected a book", this.parser.getCurrentLocation());
+        }
+        return OBJECT_MAPPER.readValue(this.parser, Book.class);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.parser.close();
+    }
+}
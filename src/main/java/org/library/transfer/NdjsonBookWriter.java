@@ -0,0 +1,51 @@
+package org.library.transfer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.util.MinimalPrettyPrinter;
+import org.library.domain.Book;
+
+/**
+ * Writes {@link Book}s as newline delimited JSON: the ID, title and author of each {@link Book}
+ * as a JSON object on a line of its own.
+ * 
+ * @author dylants
+ * 
+ */
+public class NdjsonBookWriter implements BookWriter {
+
+    private final JsonGenerator generator;
+
+    /**
+     * Creates a {@link NdjsonBookWriter} writing to the <code>outputStream</code>
+     * 
+     * @param outputStream
+     *            The {@link OutputStream} to write to
+     * @throws IOException
+     *             If an error occurs writing to the <code>outputStream</code>
+     */
+    public NdjsonBookWriter(OutputStream outputStream) throws IOException {
+        this.generator = new JsonFactory().createJsonGenerator(outputStream, JsonEncoding.UTF8);
+        // each object ends its own line, so nothing is needed between them
+        this.generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+    }
+
+    @Override
+    public void doWithBook(Book book) throws IOException {
+        this.generator.writeStartObject();
+        this.generator.writeNumberField("id", book.getId());
+        this.generator.writeStringField("title", book.getTitle());
+        this.generator.writeStringField("author", book.getAuthor());
+        this.generator.writeEndObject();
+        this.generator.writeRaw('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.generator.close();
+    }
+}
@@ -0,0 +1,434 @@
+package org.library.web;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Sheds the load of clients sending more requests than their share, and of the requests the
+ * application can't handle in time, rejecting them at once rather than letting them queue.
+ * <p>
+ * Each client (named by its address, as nothing authenticates the headers a client could name
+ * itself with) is given a {@link TokenBucket}: a request beyond the client's rate and burst is
+ * rejected with <code>429 Too Many Requests</code>, and a <code>Retry-After</code> of when the
+ * client may try again. Once there are {@link #MAX_CLIENTS} buckets, those unused long enough to
+ * fill up again are dropped, at most once a second. Should there still be too many, the clients
+ * without a bucket share a single one until room is made.
+ * <p>
+ * Behind a load balancer or reverse proxy every request comes from the proxy's address, so the
+ * addresses of the proxies may be trusted. The client of a request from a trusted proxy is then
+ * named by the client header, should one be set (such as an API key the proxy has
+ * authenticated), or otherwise by the address the proxies forwarded the request for: the last
+ * address of the <code>X-Forwarded-For</code> header which isn't a trusted proxy, as addresses
+ * before it may have been made up by the client.
+ * <p>
+ * The number of requests handled at the same time is also limited, rejecting those beyond the
+ * limit with <code>503 Service Unavailable</code>. The limit adapts to how quickly requests are
+ * handled: it grows by one for every limit's worth of requests completing within the target
+ * latency, and shrinks by a tenth when one doesn't, within the minimum and maximum. It shrinks at
+ * most once per limit's worth of requests, so a burst of slow requests (all slowed by the same
+ * cause) shrinks it once, rather than once for each of them.
+ * <p>
+ * Exporting, importing, streaming and bulk requests are slow by design, so they neither count
+ * towards nor adapt the limit. They have a fixed limit of their own instead.
+ * <p>
+ * The counters are all atomic, so the filter takes no locks. Asynchronous requests count as in
+ * flight until they complete, and their asynchronous dispatches aren't filtered. The rejected
+ * requests are recorded in the {@link RequestMetrics} by their status code.
+ * 
+ * @author dylants
+ * 
+ */
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    /**
+     * The status code of a request rejected for exceeding the rate of its client
+     */
+    public static final int SC_TOO_MANY_REQUESTS = 429;
+    /**
+     * The maximum number of clients with a {@link TokenBucket}
+     */
+    public static final int MAX_CLIENTS = 10000;
+    /**
+     * The minimum time between two sweeps of the unused {@link TokenBucket}s, in nanoseconds
+     */
+    public static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * The default number of requests per second allowed for each client
+     */
+    public static final double DEFAULT_CLIENT_RATE = 50;
+    /**
+     * The default number of requests each client may send at once, above its rate
+     */
+    public static final int DEFAULT_CLIENT_BURST = 100;
+    /**
+     * The default minimum limit of the requests handled at the same time
+     */
+    public static final int DEFAULT_MIN_IN_FLIGHT = 10;
+    /**
+     * The default maximum limit of the requests handled at the same time
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 200;
+    /**
+     * The default limit of the long-running requests handled at the same time
+     */
+    public static final int DEFAULT_MAX_LONG_RUNNING = 4;
+    /**
+     * The default latency within which requests are expected to be handled, in milliseconds
+     */
+    public static final long DEFAULT_TARGET_LATENCY = 500;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final RequestMetrics requestMetrics;
+    private final double clientRate;
+    private final int clientBurst;
+    private final int minInFlight;
+    private final int maxInFlight;
+    private final int maxLongRunning;
+    private final long targetLatency;
+    private Set<String> trustedProxies = Collections.emptySet();
+    private String clientHeader;
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+    // shared by the clients without a bucket of their own while there are too many clients
+    private final TokenBucket overflowBucket;
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger longRunning = new AtomicInteger();
+    // the number of requests completed, and that number when the limit last shrank
+    private final AtomicLong completions = new AtomicLong();
+    private final AtomicLong lastDecrease = new AtomicLong();
+    // the bits of the (fractional) limit of the requests in flight
+    private final AtomicLong inFlightLimit;
+
+    /**
+     * Creates the filter
+     * 
+     * @param requestMetrics
+     *            The {@link RequestMetrics} recording the rejected requests
+     * @param clientRate
+     *            The number of requests per second allowed for each client
+     * @param clientBurst
+     *            The number of requests each client may send at once, above its rate
+     * @param minInFlight
+     *            The minimum limit of the requests handled at the same time
+     * @param maxInFlight
+     *            The maximum limit of the requests handled at the same time, which is also the
+     *            initial limit
+     * @param maxLongRunning
+     *            The limit of the long-running requests handled at the same time
+     * @param targetLatency
+     *            The latency within which requests are expected to be handled, in milliseconds
+     */
+    public AdmissionControlFilter(RequestMetrics requestMetrics, double clientRate,
+            int clientBurst, int minInFlight, int maxInFlight, int maxLongRunning,
+            long targetLatency) {
+        if (clientRate <= 0 || clientBurst < 1 || minInFlight < 1 || maxInFlight < minInFlight
+                || maxLongRunning < 1) {
+            throw new IllegalArgumentException("invalid admission control limits");
+        }
+        this.requestMetrics = requestMetrics;
+        this.clientRate = clientRate;
+        this.clientBurst = clientBurst;
+        this.minInFlight = minInFlight;
+        this.maxInFlight = maxInFlight;
+        this.maxLongRunning = maxLongRunning;
+        this.targetLatency = TimeUnit.MILLISECONDS.toNanos(targetLatency);
+        this.overflowBucket = new TokenBucket(clientRate, clientBurst);
+        this.inFlightLimit = new AtomicLong(Double.doubleToLongBits(maxInFlight));
+        // let the first slow request shrink the limit
+        this.lastDecrease.set(-maxInFlight);
+    }
+
+    /**
+     * Sets the addresses of the proxies trusted to name the clients they forward requests for
+     * 
+     * @param trustedProxies
+     *            The addresses of the trusted proxies
+     */
+    public void setTrustedProxies(Collection<String> trustedProxies) {
+        this.trustedProxies = new HashSet<String>(trustedProxies);
+    }
+
+    /**
+     * Sets the header the trusted proxies name the client of a request with, in place of its
+     * address
+     * 
+     * @param clientHeader
+     *            The name of the header, or <code>null</code> to name clients by their address
+     */
+    public void setClientHeader(String clientHeader) {
+        this.clientHeader = clientHeader;
+    }
+
+    /**
+     * Returns the number of requests currently handled, other than the long-running ones
+     * 
+     * @return The number of requests in flight
+     */
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * Returns the number of long-running requests currently handled
+     * 
+     * @return The number of long-running requests in flight
+     */
+    public int getLongRunning() {
+        return this.longRunning.get();
+    }
+
+    /**
+     * Returns the current limit of the requests handled at the same time
+     * 
+     * @return The limit of the requests in flight
+     */
+    public int getInFlightLimit() {
+        return (int) Double.longBitsToDouble(this.inFlightLimit.get());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+            FilterChain filterChain) throws ServletException, IOException {
+        String client = this.getClient(request);
+        long wait = this.getBucket(client).tryAcquire();
+        if (wait > 0) {
+            logger.debug("rejecting request of client {} over its rate", client);
+            this.reject(response, SC_TOO_MANY_REQUESTS, wait);
+            return;
+        }
+        final boolean longRunning = this.isLongRunning(request);
+        AtomicInteger counter = longRunning ? this.longRunning : this.inFlight;
+        int limit = longRunning ? this.maxLongRunning : this.getInFlightLimit();
+        if (counter.incrementAndGet() > limit) {
+            counter.decrementAndGet();
+            logger.debug("rejecting request of client {} over the in flight limit", client);
+            this.reject(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    TimeUnit.SECONDS.toNanos(1));
+            return;
+        }
+
+        final long start = System.nanoTime();
+        boolean asyncStarted = false;
+        try {
+            filterChain.doFilter(request, response);
+            asyncStarted = this.isAsyncStarted(request);
+        } finally {
+            if (!asyncStarted) {
+                this.complete(longRunning, System.nanoTime() - start);
+            }
+        }
+        if (asyncStarted) {
+            /*
+             * The request remains in flight until its asynchronous processing ends. It can't end
+             * before this initial dispatch returns to the container, so the listener isn't missed.
+             */
+            request.getAsyncContext().addListener(new AsyncListener() {
+
+                private final AtomicBoolean completed = new AtomicBoolean();
+
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    this.complete();
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    this.complete();
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    this.complete();
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                    // still the same request
+                }
+
+                private void complete() {
+                    if (this.completed.compareAndSet(false, true)) {
+                        AdmissionControlFilter.this.complete(longRunning, System.nanoTime()
+                                - start);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Internal method that names the client sending the <code>request</code>, by its address, or
+     * as named by the trusted proxies it came through
+     * 
+     * @param request
+     *            The request
+     * @return The name of the client
+     */
+    protected String getClient(HttpServletRequest request) {
+        String address = request.getRemoteAddr();
+        if (!this.trustedProxies.contains(address)) {
+            return address;
+        }
+        if (this.clientHeader != null) {
+            String client = request.getHeader(this.clientHeader);
+            if (StringUtils.hasText(client)) {
+                return this.clientHeader + ": " + client.trim();
+            }
+        }
+        // the proxies each append the address they received the request from
+        String[] forwardedFor = StringUtils.collectionToCommaDelimitedString(
+                Collections.list(request.getHeaders("X-Forwarded-For"))).split(",");
+        for (int i = forwardedFor.length - 1; i >= 0; i--) {
+            String forwarded = forwardedFor[i].trim();
+            if (!forwarded.isEmpty()) {
+                address = forwarded;
+                if (!this.trustedProxies.contains(address)) {
+                    break;
+                }
+            }
+        }
+        return address;
+    }
+
+    /**
+     * Internal method that returns the {@link TokenBucket} of the <code>client</code>, creating
+     * it the first time, or the shared one while there are too many clients
+     * 
+     * @param client
+     *            The name of the client
+     * @return The {@link TokenBucket} of the client
+     */
+    protected TokenBucket getBucket(String client) {
+        TokenBucket bucket = this.buckets.get(client);
+        if (bucket == null) {
+            if (this.buckets.size() >= MAX_CLIENTS) {
+                this.sweepBuckets();
+                if (this.buckets.size() >= MAX_CLIENTS) {
+                    return this.overflowBucket;
+                }
+            }
+            TokenBucket created = new TokenBucket(this.clientRate, this.clientBurst);
+            bucket = this.buckets.putIfAbsent(client, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Internal method that makes room for new clients by dropping the buckets of the clients gone
+     * quiet, which are full. A single thread sweeps at a time, at most once per
+     * {@link #SWEEP_INTERVAL}, so new clients don't each pay for a scan of all the buckets.
+     */
+    protected void sweepBuckets() {
+        long now = System.nanoTime();
+        long nextSweep = this.nextSweep.get();
+        if (now - nextSweep < 0 || !this.nextSweep.compareAndSet(nextSweep, now + SWEEP_INTERVAL)) {
+            return;
+        }
+        for (Iterator<TokenBucket> it = this.buckets.values().iterator(); it.hasNext();) {
+            if (it.next().isFull()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Internal method that determines if the <code>request</code> is slow by design: an export,
+     * import, stream or bulk request
+     * 
+     * @param request
+     *            The request
+     * @return <code>true</code> if the request is long-running, <code>false</code> otherwise
+     */
+    protected boolean isLongRunning(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        return uri.endsWith("/books/export") || uri.endsWith("/books/import")
+                || uri.endsWith("/books/_bulk")
+                || (uri.endsWith("/books") && "true".equals(request.getParameter("stream")));
+    }
+
+    /**
+     * Internal method that ends a request in flight, adapting the limit to its
+     * <code>latency</code> unless it's long-running
+     * 
+     * @param longRunning
+     *            Whether the request is long-running
+     * @param latency
+     *            The time taken to handle the request, in nanoseconds
+     */
+    protected void complete(boolean longRunning, long latency) {
+        if (longRunning) {
+            this.longRunning.decrementAndGet();
+            return;
+        }
+        this.inFlight.decrementAndGet();
+        long completions = this.completions.incrementAndGet();
+        boolean slow = latency > this.targetLatency;
+        if (slow) {
+            // shrink once per limit's worth of requests, by whichever request gets here first
+            long lastDecrease = this.lastDecrease.get();
+            if (completions - lastDecrease < this.getInFlightLimit()
+                    || !this.lastDecrease.compareAndSet(lastDecrease, completions)) {
+                return;
+            }
+        }
+        while (true) {
+            long bits = this.inFlightLimit.get();
+            double limit = Double.longBitsToDouble(bits);
+            double adapted = slow ? limit * 0.9 : limit + 1 / limit;
+            adapted = Math.max(this.minInFlight, Math.min(adapted, this.maxInFlight));
+            if (adapted == limit
+                    || this.inFlightLimit.compareAndSet(bits, Double.doubleToLongBits(adapted))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Internal method that rejects a request with the <code>status</code>, telling the client
+     * when to retry
+     * 
+     * @param response
+     *            The response
+     * @param status
+     *            The status code of the response
+     * @param wait
+     *            The time after which the client may retry, in nanoseconds
+     * @throws IOException
+     *             If an error occurs sending the response
+     */
+    protected void reject(HttpServletResponse response, int status, long wait)
+            throws IOException {
+        this.requestMetrics.recordStatus(status);
+        // in whole seconds, rounded up
+        long retryAfter = Math.max(1, (wait + TimeUnit.SECONDS.toNanos(1) - 1)
+                / TimeUnit.SECONDS.toNanos(1));
+        response.setHeader("Retry-After", Long.toString(retryAfter));
+        response.sendError(status);
+    }
+}
@@ -0,0 +1,123 @@
+package org.library.web;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.library.domain.Book;
+import org.library.service.BookChangeCounter;
+
+/**
+ * Keeps track of changes made to the {@link Book}s, to supply a strong entity tag (ETag) for the
+ * collection of {@link Book}s without reading them from the database. The version of the
+ * collection is the count of the {@link BookChangeCounter}, which every instance of the
+ * application shares through the database, so all instances hand out the same tag for the same
+ * {@link Book}s. (A single {@link Book} needs no tracking, as it carries its own version.)
+ * <p>
+ * Rather than querying the count on every request, the count read is used for up to the max age.
+ * Changes made through this instance are seen at once, while changes made through other
+ * instances are seen once the count read is older than the max age, which bounds how long a stale
+ * tag (and whatever is cached under it) may be served.
+ * 
+ * @author dylants
+ * 
+ */
+public class BookChangeTracker {
+
+    /**
+     * The default time a count read is used for, in milliseconds
+     */
+    public static final long DEFAULT_MAX_AGE = 1000;
+
+    private final BookChangeCounter bookChangeCounter;
+    private final long maxAge;
+    // the changes made through this instance, so that a count read before them isn't used
+    private final AtomicLong localChanges = new AtomicLong();
+    private volatile CountRead countRead;
+
+    /**
+     * Creates the {@link BookChangeTracker}
+     * 
+     * @param bookChangeCounter
+     *            The {@link BookChangeCounter} holding the count of the changes made through
+     *            every instance
+     * @param maxAge
+     *            The time a count read is used for, in milliseconds, which is as long as the
+     *            changes made through other instances may go unseen
+     */
+    public BookChangeTracker(BookChangeCounter bookChangeCounter, long maxAge) {
+        this.bookChangeCounter = bookChangeCounter;
+        this.maxAge = TimeUnit.MILLISECONDS.toNanos(maxAge);
+    }
+
+    /**
+     * Returns the current version of the collection of {@link Book}s, which changes whenever any
+     * {@link Book} is created, updated or deleted
+     * 
+     * @return The current version of the collection of {@link Book}s
+     * @throws IllegalStateException
+     *             If the changes to the {@link Book}s aren't counted
+     */
+    public long getCollectionVersion() {
+        CountRead current = this.countRead;
+        long localChanges = this.localChanges.get();
+        // take the time before reading, so a count is never used for longer than the max age
+        long now = this.nanoTime();
+        if (current == null || current.localChanges != localChanges
+                || now - current.readAt >= this.maxAge) {
+            Long changes = this.bookChangeCounter.getChanges();
+            if (changes == null) {
+                throw new IllegalStateException("the changes to the books aren't counted");
+            }
+            current = new CountRead(changes, localChanges, now);
+            this.countRead = current;
+        }
+        return current.changes;
+    }
+
+    /**
+     * Returns the ETag of the collection of {@link Book}s. Read this before reading the
+     * {@link Book}s themselves, so that the tag is never newer than the data it is sent with.
+     * 
+     * @return The ETag of the collection of {@link Book}s
+     * @throws IllegalStateException
+     *             If the changes to the {@link Book}s aren't counted
+     */
+    public String getCollectionETag() {
+        return "\"" + Long.toString(this.getCollectionVersion(), Character.MAX_RADIX) + "\"";
+    }
+
+    /**
+     * Records that a {@link Book} was created, updated or deleted through this instance, so that
+     * the count is read again. This must be called once the change has been committed.
+     */
+    public void booksChanged() {
+        this.localChanges.incrementAndGet();
+    }
+
+    /**
+     * Internal method that returns the current value of the clock timing the age of the count
+     * read, in nanoseconds. This is {@link System#nanoTime()}, which tests may replace.
+     * 
+     * @return The current value of the clock in nanoseconds
+     */
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * A count of the changes, along with the changes made through this instance and the time
+     * when it was read
+     */
+    private static final class CountRead {
+
+        private final long changes;
+        private final long localChanges;
+        private final long readAt;
+
+        private CountRead(long changes, long localChanges, long readAt) {
+            this.changes = changes;
+            this.localChanges = localChanges;
+            this.readAt = readAt;
+        }
+    }
+}
\ No newline at end of file
@@ -1,87 +1,683 @@
 package org.library.web;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
+import org.codehaus.jackson.map.ObjectMapper;
 import org.library.domain.Book;
+import org.library.domain.BookProjection;
+import org.library.repository.BookCallback;
 import org.library.repository.BookRepository;
+import org.library.search.BookSearchIndex;
+import org.library.search.BookSuggester;
+import org.library.search.Suggestion;
+import org.library.service.BookBulkOperation;
+import org.library.service.BookBulkResult;
+import org.library.service.BookBulkService;
+import org.library.service.BookImportResult;
+import org.library.service.BookService;
+import org.library.service.BookTransferService;
+import org.library.transfer.BookFormat;
+import org.library.transfer.BookReader;
+import org.library.transfer.BookWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.hateoas.Link;
 import org.springframework.hateoas.Resource;
 import org.springframework.hateoas.Resources;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 /**
- * Provides REST API endpoints to access {@link Book}s
+ * Provides REST API endpoints to access {@link Book}s. Responses carry an ETag, and GET requests
+ * with a matching <code>If-None-Match</code> header are answered with a 304 status code without
+ * serializing any {@link Book}s. The ETag of the collection of {@link Book}s is supplied by the
+ * {@link BookChangeTracker} from a count of the changes which every instance shares, so the
+ * collection isn't even read, while the ETag of a single {@link Book} is its version, compared
+ * before the {@link Book} is loaded. As versions start at the shared count when a {@link Book}
+ * is created, a {@link Book} created again with the same ID never matches the ETag of the one
+ * before.
+ * <p>
+ * PUT, PATCH and DELETE requests with an <code>If-Match</code> header only change the
+ * {@link Book} if it's still at the version of the ETag, and are otherwise answered with a 412
+ * status code. This protects against lost updates without holding locks across requests.
+ * <p>
+ * Besides JSON (the default) and XML, {@link Book}s may be asked for as Smile (binary JSON) with
+ * the <code>Accept</code> header, which is smaller and cheaper to parse for our service callers.
+ * <p>
+ * All the {@link Book}s are served from a {@link BooksSnapshot} kept by the
+ * {@link BooksSnapshotCache}, already serialized, so while they haven't changed they're neither
+ * read, assembled nor serialized again.
+ * <p>
+ * List views needing only some fields of the {@link Book}s may ask for them with the
+ * <code>fields</code> parameter, in which case only the columns of those fields are read, into
+ * {@link BookProjection}s holding nothing else.
+ * <p>
+ * The whole catalog may be exported to and imported from newline delimited JSON or CSV, streamed
+ * by the {@link BookTransferService} so that memory use doesn't grow with the size of the catalog.
+ * <p>
+ * The endpoints reading and writing single {@link Book}s or pages of them are asynchronous: their
+ * repository work runs on a bounded executor, releasing the container's thread while the database
+ * is slow. Should the executor be saturated, or the work not complete in time, requests are
+ * answered with a 503 status code.
  * 
  * @author dylants
  * 
  */
 @Controller
 @RequestMapping(value = "/books", produces = {MediaType.APPLICATION_JSON_VALUE,
-        MediaType.TEXT_XML_VALUE})
+        MediaType.TEXT_XML_VALUE, MappingJacksonSmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
 public class BooksController {
 
+    /**
+     * The number of {@link Book}s returned in a page when only the <code>after</code> cursor is
+     * supplied
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    /**
+     * The maximum number of {@link Book}s returned in a single page
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+    /**
+     * The number of {@link Book}s returned by a search when no <code>limit</code> is supplied
+     */
+    public static final int DEFAULT_SEARCH_SIZE = 20;
+    /**
+     * The number of suggestions returned when no <code>limit</code> is supplied
+     */
+    public static final int DEFAULT_SUGGEST_SIZE = 10;
+    /**
+     * The time in milliseconds asynchronous requests may take before they're answered with a 503
+     * status code
+     */
+    public static final long ASYNC_TIMEOUT = 30000;
+    /**
+     * The number of seconds clients are asked to wait before retrying rejected requests
+     */
+    public static final int RETRY_AFTER = 1;
+    /**
+     * The media type of a JSON merge patch (RFC 7396)
+     */
+    public static final String MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+    /**
+     * The version expected of a {@link Book} when the <code>If-Match</code> header lists no ETag
+     * of a {@link Book}, which no {@link Book} is ever at
+     */
+    public static final long UNMATCHED_VERSION = -1;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private final BookRepository bookRepository;
+    private final BookService bookService;
     private final BookResourceAssembler bookResourceAssembler;
     private final BooksResourceAssembler booksResourceAssembler;
+    private final BooksResourceStreamer booksResourceStreamer;
+    private final BooksSnapshotCache booksSnapshotCache;
+    private final BookChangeTracker bookChangeTracker;
+    private final BookBulkService bookBulkService;
+    private final BookTransferService bookTransferService;
+    private final BookSearchIndex bookSearchIndex;
+    private final BookSuggester bookSuggester;
+    private final AsyncTaskExecutor repositoryExecutor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Autowired
-    public BooksController(BookRepository bookRepository,
+    public BooksController(BookService bookService,
             BookResourceAssembler bookResourceAssembler,
-            BooksResourceAssembler booksResourceAssembler) {
-        this.bookRepository = bookRepository;
+            BooksResourceAssembler booksResourceAssembler,
+            BooksResourceStreamer booksResourceStreamer, BooksSnapshotCache booksSnapshotCache,
+            BookChangeTracker bookChangeTracker, BookBulkService bookBulkService,
+            BookTransferService bookTransferService, BookSearchIndex bookSearchIndex,
+            BookSuggester bookSuggester, AsyncTaskExecutor repositoryExecutor) {
+        this.bookService = bookService;
         this.bookResourceAssembler = bookResourceAssembler;
         this.booksResourceAssembler = booksResourceAssembler;
+        this.booksResourceStreamer = booksResourceStreamer;
+        this.booksSnapshotCache = booksSnapshotCache;
+        this.bookChangeTracker = bookChangeTracker;
+        this.bookBulkService = bookBulkService;
+        this.bookTransferService = bookTransferService;
+        this.bookSearchIndex = bookSearchIndex;
+        this.bookSuggester = bookSuggester;
+        this.repositoryExecutor = repositoryExecutor;
     }
 
     /**
-     * Returns all the {@link Book}s as {@link Resources} stored in our {@link BookRepository}
+     * Returns the {@link Book}s as {@link Resources} stored in our {@link BookRepository}. When
+     * neither <code>after</code> nor <code>limit</code> are supplied, all the {@link Book}s are
+     * returned. Otherwise a single page of {@link Book}s is returned using keyset (cursor)
+     * pagination: the page holds the {@link Book}s with an ID greater than <code>after</code>,
+     * ordered by ID, and includes a <code>next</code> link to the following page when there may
+     * be more {@link Book}s to return.
+     * <p>
+     * The {@link Book}s may be filtered by <code>author</code> and <code>title</code>, each
+     * matching exactly or, when ending with {@link BookRepository#PREFIX_WILDCARD}, as a prefix,
+     * and sorted by any of their fields. Such a page is offset based instead, as the cursor only
+     * follows the order of the IDs: its <code>next</code> link holds the <code>offset</code> of
+     * the following page.
      * 
-     * @return All the {@link Book}s as {@link Resources} stored in our {@link BookRepository}
+     * @param after
+     *            The ID of the last {@link Book} of the previous page (optional)
+     * @param limit
+     *            The maximum number of {@link Book}s in the page (optional)
+     * @param author
+     *            The author to filter by (optional)
+     * @param title
+     *            The title to filter by (optional)
+     * @param sort
+     *            The comma separated fields to sort by, each prefixed with "-" for a descending
+     *            sort (optional)
+     * @param offset
+     *            The number of matching {@link Book}s preceding the page (optional)
+     * @param ifNoneMatch
+     *            The ETag(s) held by the client (optional)
+     * @return The {@link Book}s as {@link Resources} stored in our {@link BookRepository}
      */
     @RequestMapping(method = RequestMethod.GET)
     @ResponseBody
-    public ResponseEntity<Resources<Resource<Book>>> findAllBooks() {
-        logger.debug("GET request on all books");
-        Iterable<Book> books = this.bookRepository.findAll();
+    public DeferredResult<ResponseEntity<Resources<Resource<Book>>>> findAllBooks(
+            @RequestParam(value = "after", required = false) final Long after,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "author", required = false) String author,
+            @RequestParam(value = "title", required = false) String title,
+            @RequestParam(value = "sort", required = false) String sort,
+            @RequestParam(value = "offset", required = false) Integer offset,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        final HttpHeaders headers = this.createETagHeaders(this.bookChangeTracker
+                .getCollectionETag());
+        if (this.isNotModified(ifNoneMatch, headers)) {
+            logger.debug("books not modified, returning 304 status code");
+            return this.completed(new ResponseEntity<Resources<Resource<Book>>>(headers,
+                    HttpStatus.NOT_MODIFIED));
+        }
+
+        if (author != null || title != null || sort != null || offset != null) {
+            if (after != null) {
+                logger.debug("after with filter or sort, returning 400 status code");
+                return this.completed(new ResponseEntity<Resources<Resource<Book>>>(
+                        HttpStatus.BAD_REQUEST));
+            }
+            return this.findMatchingBooks(author, title, sort, offset, limit, headers);
+        }
+
+        if (after == null && limit == null) {
+            logger.debug("GET request on all books");
+            // while the books haven't changed, the snapshot is returned without repository work
+            BooksSnapshot snapshot = this.booksSnapshotCache.getCurrentSnapshot();
+            if (snapshot != null) {
+                return this.completed(this.createSnapshotResponse(snapshot));
+            }
+            return this.executeAsync(new Callable<ResponseEntity<Resources<Resource<Book>>>>() {
+
+                @Override
+                public ResponseEntity<Resources<Resource<Book>>> call() {
+                    return createSnapshotResponse(booksSnapshotCache.getSnapshot());
+                }
+            });
+        }
+
+        logger.debug("GET request on page of books after {} with limit {}", after, limit);
+        if (limit == null) {
+            limit = DEFAULT_PAGE_SIZE;
+        } else if (limit < 1) {
+            logger.debug("invalid limit, returning 400 status code");
+            return this.completed(new ResponseEntity<Resources<Resource<Book>>>(
+                    HttpStatus.BAD_REQUEST));
+        }
+        final int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+
+        return this.executeAsync(new Callable<ResponseEntity<Resources<Resource<Book>>>>() {
+
+            @Override
+            public ResponseEntity<Resources<Resource<Book>>> call() {
+                List<Book> books = bookService.findBooksAfter(after == null ? Long.MIN_VALUE
+                        : after, pageSize);
+                Resources<Resource<Book>> resources = booksResourceAssembler.toResource(books);
+
+                // a full page means there may be more books, so link to the next page
+                if (books.size() == pageSize) {
+                    resources.add(createNextLink(books.get(books.size() - 1).getId(), pageSize));
+                }
+                return new ResponseEntity<Resources<Resource<Book>>>(resources, headers,
+                        HttpStatus.OK);
+            }
+        });
+    }
+
+    /**
+     * Internal method that returns the page of {@link Book}s matching the <code>author</code>
+     * and <code>title</code>, ordered by the <code>sort</code>, following the first
+     * <code>offset</code>
+     * 
+     * @param author
+     *            The author to filter by, or <code>null</code>
+     * @param title
+     *            The title to filter by, or <code>null</code>
+     * @param sort
+     *            The comma separated fields to sort by, or <code>null</code> to sort by ID
+     * @param offset
+     *            The number of matching {@link Book}s preceding the page, or <code>null</code>
+     * @param limit
+     *            The maximum number of {@link Book}s in the page, or <code>null</code>
+     * @param headers
+     *            The headers of the response
+     * @return The page of matching {@link Book}s as {@link Resources}
+     */
+    protected DeferredResult<ResponseEntity<Resources<Resource<Book>>>> findMatchingBooks(
+            final String author, final String title, String sort, Integer offset, Integer limit,
+            final HttpHeaders headers) {
+        logger.debug("GET request on books by author {} and title {}, sorted by {}, from {}",
+                author, title, sort, offset);
+        if ((limit != null && limit < 1) || (offset != null && offset < 0)) {
+            logger.debug("invalid limit or offset, returning 400 status code");
+            return this.completed(new ResponseEntity<Resources<Resource<Book>>>(
+                    HttpStatus.BAD_REQUEST));
+        }
+        final List<String> sortFields = sort == null ? new ArrayList<String>() : this
+                .readFields(sort);
+        final int start = offset == null ? 0 : offset;
+        final int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+
+        return this.executeAsync(new Callable<ResponseEntity<Resources<Resource<Book>>>>() {
+
+            @Override
+            public ResponseEntity<Resources<Resource<Book>>> call() {
+                List<Book> books;
+                try {
+                    books = bookService.findBooks(author, title, sortFields, start, pageSize);
+                } catch (IllegalArgumentException e) {
+                    logger.debug("invalid sort ({}), returning 400 status code", e.getMessage());
+                    return new ResponseEntity<Resources<Resource<Book>>>(HttpStatus.BAD_REQUEST);
+                }
+                Resources<Resource<Book>> resources = booksResourceAssembler.toResource(books);
+
+                // a full page means there may be more books, so link to the next page
+                if (books.size() == pageSize) {
+                    String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                            .replaceQueryParam("offset", start + pageSize)
+                            .replaceQueryParam("limit", pageSize).build().toUriString();
+                    resources.add(new Link(next, Link.REL_NEXT));
+                }
+                return new ResponseEntity<Resources<Resource<Book>>>(resources, headers,
+                        HttpStatus.OK);
+            }
+        });
+    }
+
+    /**
+     * Returns only the <code>fields</code> of the {@link Book}s stored in our
+     * {@link BookRepository}, as {@link Resources} of {@link BookProjection}s. Only the columns
+     * of the <code>fields</code> are read, and only the <code>fields</code> (and the ID, which is
+     * always returned) are serialized. The {@link BookProjection}s are filtered, sorted and paged
+     * in the same way as the {@link Book}s are.
+     * 
+     * @param fields
+     *            The comma separated fields to return (id, title and author)
+     * @param after
+     *            The ID of the last {@link Book} of the previous page (optional)
+     * @param limit
+     *            The maximum number of {@link Book}s in the page (optional)
+     * @param author
+     *            The author to filter by (optional)
+     * @param title
+     *            The title to filter by (optional)
+     * @param sort
+     *            The comma separated fields to sort by, each prefixed with "-" for a descending
+     *            sort (optional)
+     * @param offset
+     *            The number of matching {@link Book}s preceding the page (optional)
+     * @param ifNoneMatch
+     *            The ETag(s) held by the client (optional)
+     * @return The {@link BookProjection}s as {@link Resources}
+     */
+    @RequestMapping(method = RequestMethod.GET, params = {"fields", "stream!=true"})
+    @ResponseBody
+    public DeferredResult<ResponseEntity<Resources<BookProjection>>> findAllBookFields(
+            @RequestParam("fields") String fields,
+            @RequestParam(value = "after", required = false) final Long after,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "author", required = false) String author,
+            @RequestParam(value = "title", required = false) String title,
+            @RequestParam(value = "sort", required = false) String sort,
+            @RequestParam(value = "offset", required = false) Integer offset,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        logger.debug("GET request on fields {} of books after {} with limit {}", fields, after,
+                limit);
+        final HttpHeaders headers = this.createETagHeaders(this.bookChangeTracker
+                .getCollectionETag());
+        if (this.isNotModified(ifNoneMatch, headers)) {
+            logger.debug("books not modified, returning 304 status code");
+            return this.completed(new ResponseEntity<Resources<BookProjection>>(headers,
+                    HttpStatus.NOT_MODIFIED));
+        }
+
+        if (author != null || title != null || sort != null || offset != null) {
+            if (after != null) {
+                logger.debug("after with filter or sort, returning 400 status code");
+                return this.completed(new ResponseEntity<Resources<BookProjection>>(
+                        HttpStatus.BAD_REQUEST));
+            }
+            return this.findMatchingBookFields(this.readFields(fields), author, title, sort,
+                    offset, limit, headers);
+        }
+
+        if (limit != null && limit < 1) {
+            logger.debug("invalid limit, returning 400 status code");
+            return this.completed(new ResponseEntity<Resources<BookProjection>>(
+                    HttpStatus.BAD_REQUEST));
+        }
+        // without a cursor or limit all the books are returned, as they are without fields
+        final Integer pageSize = after == null && limit == null ? null : Math.min(
+                limit == null ? DEFAULT_PAGE_SIZE : limit, MAX_PAGE_SIZE);
+        final List<String> fieldNames = this.readFields(fields);
+
+        return this.executeAsync(new Callable<ResponseEntity<Resources<BookProjection>>>() {
+
+            @Override
+            public ResponseEntity<Resources<BookProjection>> call() {
+                List<BookProjection> projections;
+                try {
+                    projections = bookService.findBookProjections(fieldNames,
+                            after == null ? Long.MIN_VALUE : after, pageSize);
+                } catch (IllegalArgumentException e) {
+                    logger.debug("invalid fields ({}), returning 400 status code", e.getMessage());
+                    return new ResponseEntity<Resources<BookProjection>>(HttpStatus.BAD_REQUEST);
+                }
+                Resources<BookProjection> resources = new Resources<BookProjection>(projections);
+
+                // a full page means there may be more books, so link to the next page
+                if (pageSize != null && projections.size() == pageSize) {
+                    resources.add(createNextLink(projections.get(projections.size() - 1)
+                            .getId(), pageSize));
+                }
+                return new ResponseEntity<Resources<BookProjection>>(resources, headers,
+                        HttpStatus.OK);
+            }
+        });
+    }
+
+    /**
+     * Internal method that returns only the <code>fieldNames</code> of the page of {@link Book}s
+     * matching the <code>author</code> and <code>title</code>, ordered by the <code>sort</code>,
+     * following the first <code>offset</code>
+     * 
+     * @param fieldNames
+     *            The names of the fields to return
+     * @param author
+     *            The author to filter by, or <code>null</code>
+     * @param title
+     *            The title to filter by, or <code>null</code>
+     * @param sort
+     *            The comma separated fields to sort by, or <code>null</code> to sort by ID
+     * @param offset
+     *            The number of matching {@link Book}s preceding the page, or <code>null</code>
+     * @param limit
+     *            The maximum number of {@link Book}s in the page, or <code>null</code>
+     * @param headers
+     *            The headers of the response
+     * @return The page of {@link BookProjection}s of the matching {@link Book}s as
+     *         {@link Resources}
+     */
+    protected DeferredResult<ResponseEntity<Resources<BookProjection>>> findMatchingBookFields(
+            final List<String> fieldNames, final String author, final String title, String sort,
+            Integer offset, Integer limit, final HttpHeaders headers) {
+        logger.debug("GET request on fields {} of books by author {} and title {}, sorted by {},"
+                + " from {}", fieldNames, author, title, sort, offset);
+        if ((limit != null && limit < 1) || (offset != null && offset < 0)) {
+            logger.debug("invalid limit or offset, returning 400 status code");
+            return this.completed(new ResponseEntity<Resources<BookProjection>>(
+                    HttpStatus.BAD_REQUEST));
+        }
+        final List<String> sortFields = sort == null ? new ArrayList<String>() : this
+                .readFields(sort);
+        final int start = offset == null ? 0 : offset;
+        final int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+
+        return this.executeAsync(new Callable<ResponseEntity<Resources<BookProjection>>>() {
+
+            @Override
+            public ResponseEntity<Resources<BookProjection>> call() {
+                List<BookProjection> projections;
+                try {
+                    projections = bookService.findBookProjections(fieldNames, author, title,
+                            sortFields, start, pageSize);
+                } catch (IllegalArgumentException e) {
+                    logger.debug("invalid fields or sort ({}), returning 400 status code",
+                            e.getMessage());
+                    return new ResponseEntity<Resources<BookProjection>>(HttpStatus.BAD_REQUEST);
+                }
+                Resources<BookProjection> resources = new Resources<BookProjection>(projections);
+
+                // a full page means there may be more books, so link to the next page
+                if (projections.size() == pageSize) {
+                    String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                            .replaceQueryParam("offset", start + pageSize)
+                            .replaceQueryParam("limit", pageSize).build().toUriString();
+                    resources.add(new Link(next, Link.REL_NEXT));
+                }
+                return new ResponseEntity<Resources<BookProjection>>(resources, headers,
+                        HttpStatus.OK);
+            }
+        });
+    }
+
+    /**
+     * Streams all the {@link Book}s stored in our {@link BookRepository} as JSON {@link Resources}
+     * directly to the response. This is intended for exports of the whole collection: the
+     * {@link Book}s are written as they are read from the database, so memory use and the time
+     * to the first byte don't grow with the number of {@link Book}s.
+     * 
+     * @param ifNoneMatch
+     *            The ETag(s) held by the client (optional)
+     * @param response
+     *            The {@link HttpServletResponse} to stream the {@link Book}s to
+     * @throws IOException
+     *             If an error occurs writing the response
+     */
+    @RequestMapping(method = RequestMethod.GET, params = "stream=true",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public void streamAllBooks(
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
+            HttpServletResponse response) throws IOException {
+        logger.debug("GET request to stream all books");
+        HttpHeaders headers = this.createETagHeaders(this.bookChangeTracker.getCollectionETag());
+        response.setHeader("ETag", headers.getETag());
+        if (this.isNotModified(ifNoneMatch, headers)) {
+            logger.debug("books not modified, returning 304 status code");
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        this.booksResourceStreamer.writeBooks(response.getOutputStream());
+    }
+
+    /**
+     * Searches the title and author of the {@link Book}s for all the terms of the query
+     * <code>q</code>, returning the matching {@link Book}s as {@link Resources}, best match first.
+     * Searches are answered from the {@link BookSearchIndex}, without touching the database.
+     * 
+     * @param q
+     *            The text to search for
+     * @param limit
+     *            The maximum number of {@link Book}s to return (optional)
+     * @return The matching {@link Book}s as {@link Resources}, best match first
+     */
+    @RequestMapping(value = "/search", method = RequestMethod.GET)
+    @ResponseBody
+    public ResponseEntity<Resources<Resource<Book>>> searchBooks(@RequestParam("q") String q,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        logger.debug("GET request to search books for {} with limit {}", q, limit);
+        if (limit == null) {
+            limit = DEFAULT_SEARCH_SIZE;
+        } else if (limit < 1) {
+            logger.debug("invalid limit, returning 400 status code");
+            return new ResponseEntity<Resources<Resource<Book>>>(HttpStatus.BAD_REQUEST);
+        }
+        List<Book> books = this.bookSearchIndex.search(q, Math.min(limit, MAX_PAGE_SIZE));
         Resources<Resource<Book>> resources = this.booksResourceAssembler.toResource(books);
         return new ResponseEntity<Resources<Resource<Book>>>(resources, HttpStatus.OK);
     }
 
+    /**
+     * Suggests completions of the <code>prefix</code> typed so far for the <code>field</code>
+     * (title or author) of the {@link Book}s, most popular first. Suggestions are answered from
+     * the {@link BookSuggester}, without touching the database.
+     * 
+     * @param prefix
+     *            The prefix typed so far
+     * @param field
+     *            The field to suggest values of, either title (the default) or author
+     * @param limit
+     *            The maximum number of suggestions to return (optional)
+     * @return The {@link Suggestion}s, most popular first
+     */
+    @RequestMapping(value = "/suggest", method = RequestMethod.GET,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<List<Suggestion>> suggestBooks(@RequestParam("prefix") String prefix,
+            @RequestParam(value = "field", defaultValue = BookSuggester.TITLE) String field,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        logger.debug("GET request to suggest book {} for {} with limit {}", field, prefix, limit);
+        if (limit == null) {
+            limit = DEFAULT_SUGGEST_SIZE;
+        }
+        boolean validField = BookSuggester.TITLE.equals(field)
+                || BookSuggester.AUTHOR.equals(field);
+        if (limit < 1 || !validField) {
+            logger.debug("invalid field or limit, returning 400 status code");
+            return new ResponseEntity<List<Suggestion>>(HttpStatus.BAD_REQUEST);
+        }
+        List<Suggestion> suggestions = this.bookSuggester.suggest(field, prefix,
+                Math.min(limit, MAX_PAGE_SIZE));
+        return new ResponseEntity<List<Suggestion>>(suggestions, HttpStatus.OK);
+    }
+
     /**
      * Returns the single book that has the <code>bookId</code>
      * 
-     * @param book
-     *            The {@link Book} to retrieve
+     * @param bookId
+     *            The ID of the {@link Book} to retrieve
+     * @param ifNoneMatch
+     *            The ETag(s) held by the client (optional)
      * @return The {@link Book} {@link Resource}
      */
     @RequestMapping(value = "/{bookId}", method = RequestMethod.GET)
     @ResponseBody
-    public ResponseEntity<Resource<Book>> findBook(@PathVariable("bookId") Book book) {
-        if (book == null) {
-            logger.debug("book not found, returning 404 status code");
-            return new ResponseEntity<Resource<Book>>(HttpStatus.NOT_FOUND);
-        }
+    public DeferredResult<ResponseEntity<Resource<Book>>> findBook(
+            @PathVariable final Long bookId,
+            @RequestHeader(value = "If-None-Match", required = false) final String ifNoneMatch) {
+        return this.executeAsync(new Callable<ResponseEntity<Resource<Book>>>() {
+
+            @Override
+            public ResponseEntity<Resource<Book>> call() {
+                if (ifNoneMatch != null) {
+                    // only the version is needed to tell whether the client's book is current
+                    Long version = bookService.findBookVersion(bookId);
+                    if (version == null) {
+                        logger.debug("book not found, returning 404 status code");
+                        return new ResponseEntity<Resource<Book>>(HttpStatus.NOT_FOUND);
+                    }
+                    HttpHeaders headers = createETagHeaders(createETag(version));
+                    if (isNotModified(ifNoneMatch, headers)) {
+                        logger.debug("book not modified, returning 304 status code");
+                        return new ResponseEntity<Resource<Book>>(headers,
+                                HttpStatus.NOT_MODIFIED);
+                    }
+                }
+
+                // usually a hit in the second-level cache
+                Book book = bookService.findBook(bookId);
+                if (book == null) {
+                    logger.debug("book not found, returning 404 status code");
+                    return new ResponseEntity<Resource<Book>>(HttpStatus.NOT_FOUND);
+                }
+
+                HttpHeaders headers = createETagHeaders(createETag(book));
+                logger.debug("book found, returning {}", book);
+                Resource<Book> resource = bookResourceAssembler.toResource(book);
+                return new ResponseEntity<Resource<Book>>(resource, headers, HttpStatus.OK);
+            }
+        });
+    }
+
+    /**
+     * Returns only the <code>fields</code> of the single book that has the <code>bookId</code>,
+     * as a {@link BookProjection}. Only the columns of the <code>fields</code> are read, and only
+     * the <code>fields</code> (and the ID, which is always returned) are serialized.
+     * 
+     * @param bookId
+     *            The ID of the {@link Book} to retrieve
+     * @param fields
+     *            The comma separated fields to return (id, title and author)
+     * @param ifNoneMatch
+     *            The ETag(s) held by the client (optional)
+     * @return The {@link BookProjection}
+     */
+    @RequestMapping(value = "/{bookId}", method = RequestMethod.GET, params = "fields")
+    @ResponseBody
+    public DeferredResult<ResponseEntity<BookProjection>> findBookFields(
+            @PathVariable final Long bookId, @RequestParam("fields") String fields,
+            @RequestHeader(value = "If-None-Match", required = false) final String ifNoneMatch) {
+        logger.debug("GET request on fields {} of book with id {}", fields, bookId);
+        final List<String> fieldNames = this.readFields(fields);
+        return this.executeAsync(new Callable<ResponseEntity<BookProjection>>() {
 
-        logger.debug("book found, returning {}", book);
-        Resource<Book> resource = this.bookResourceAssembler.toResource(book);
-        return new ResponseEntity<Resource<Book>>(resource, HttpStatus.OK);
+            @Override
+            public ResponseEntity<BookProjection> call() {
+                BookProjection projection;
+                try {
+                    projection = bookService.findBookProjection(bookId, fieldNames);
+                } catch (IllegalArgumentException e) {
+                    logger.debug("invalid fields ({}), returning 400 status code", e.getMessage());
+                    return new ResponseEntity<BookProjection>(HttpStatus.BAD_REQUEST);
+                }
+                if (projection == null) {
+                    logger.debug("book not found, returning 404 status code");
+                    return new ResponseEntity<BookProjection>(HttpStatus.NOT_FOUND);
+                }
+
+                HttpHeaders headers = createETagHeaders(createETag(projection));
+                if (isNotModified(ifNoneMatch, headers)) {
+                    logger.debug("book not modified, returning 304 status code");
+                    return new ResponseEntity<BookProjection>(headers, HttpStatus.NOT_MODIFIED);
+                }
+
+                logger.debug("book found, returning {}", projection);
+                return new ResponseEntity<BookProjection>(projection, headers, HttpStatus.OK);
+            }
+        });
     }
 
     /**
      * Creates a new {@link Book} in our {@link BookRepository} based on the incoming
-     * <code>book</code>
+     * <code>book</code>. Should the <code>book</code> have the ID of an existing {@link Book}, it's
+     * answered with a 409 status code, leaving the existing {@link Book} as it was.
      * 
      * @param book
      *            The incoming {@link Book} to be stored
@@ -89,14 +685,30 @@ public class BooksController {
      */
     @RequestMapping(method = RequestMethod.POST)
     @ResponseBody
-    public ResponseEntity<Resource<Book>> addBook(@RequestBody @Valid Book book) {
-        // Here we're guaranteed to have a valid Book, so let's save it
-        logger.debug("creating book {}", book);
-        book = this.bookRepository.save(book);
+    public DeferredResult<ResponseEntity<Resource<Book>>> addBook(
+            @RequestBody @Valid final Book book) {
+        return this.executeAsync(new Callable<ResponseEntity<Resource<Book>>>() {
+
+            @Override
+            public ResponseEntity<Resource<Book>> call() {
+                // Here we're guaranteed to have a valid Book, so let's save it
+                logger.debug("creating book {}", book);
+                Book savedBook;
+                try {
+                    savedBook = bookService.createBook(book);
+                } catch (DataIntegrityViolationException e) {
+                    // either found up front, or created by another request meanwhile
+                    logger.debug("book exists ({}), returning 409 status code", e.getMessage());
+                    return new ResponseEntity<Resource<Book>>(HttpStatus.CONFLICT);
+                }
+                bookSaved(savedBook);
 
-        logger.debug("returning created book {}", book);
-        return new ResponseEntity<Resource<Book>>(this.bookResourceAssembler.toResource(book),
-                HttpStatus.CREATED);
+                logger.debug("returning created book {}", savedBook);
+                return new ResponseEntity<Resource<Book>>(
+                        bookResourceAssembler.toResource(savedBook),
+                        createETagHeaders(createETag(savedBook)), HttpStatus.CREATED);
+            }
+        });
     }
 
     /**
@@ -106,30 +718,102 @@ public class BooksController {
      *            The ID of the {@link Book} to update
      * @param book
      *            The incoming {@link Book} used to update
+     * @param ifMatch
+     *            The ETag(s) of the versions of the {@link Book} which may be updated (optional)
      * @return The updated {@link Book} {@link Resource}
      */
     @RequestMapping(value = "/{bookId}", method = RequestMethod.PUT)
     @ResponseBody
-    public ResponseEntity<Resource<Book>> updateBook(@PathVariable Long bookId,
-            @RequestBody @Valid Book book) {
+    public DeferredResult<ResponseEntity<Resource<Book>>> updateBook(
+            @PathVariable final Long bookId, @RequestBody @Valid final Book book,
+            @RequestHeader(value = "If-Match", required = false) final String ifMatch) {
         logger.debug("PUT request for book with id {}, updating book to {}", bookId, book);
-        // attempt to find the book by ID
-        Book existingBook = this.bookRepository.findOne(bookId);
+        final Long expectedVersion = this.getExpectedVersion(ifMatch);
+        return this.executeAsync(new Callable<ResponseEntity<Resource<Book>>>() {
 
-        // if it's not found, return 404
-        if (existingBook == null) {
-            logger.debug("book not found, returning 404 status code");
-            return new ResponseEntity<Resource<Book>>(HttpStatus.NOT_FOUND);
+            @Override
+            public ResponseEntity<Resource<Book>> call() {
+                // update the book in place, which tells us whether it exists
+                Book savedBook;
+                try {
+                    savedBook = bookService.updateBook(bookId, book, expectedVersion);
+                } catch (OptimisticLockingFailureException e) {
+                    logger.debug("book changed ({}), returning 412 status code", e.getMessage());
+                    return new ResponseEntity<Resource<Book>>(HttpStatus.PRECONDITION_FAILED);
+                }
+
+                // if it's not found, return 404 (or 412 if a version was expected)
+                if (savedBook == null) {
+                    return new ResponseEntity<Resource<Book>>(getNotFoundStatus(ifMatch));
+                }
+                bookSaved(savedBook);
+
+                logger.debug("returning updated book {}", savedBook);
+                return new ResponseEntity<Resource<Book>>(
+                        bookResourceAssembler.toResource(savedBook),
+                        createETagHeaders(createETag(savedBook)), HttpStatus.OK);
+            }
+        });
+    }
+
+    /**
+     * Partially updates an existing {@link Book} with a JSON merge <code>patch</code>, changing
+     * only the fields the <code>patch</code> holds. Only the columns which changed are written to
+     * the database.
+     * 
+     * @param bookId
+     *            The ID of the {@link Book} to patch
+     * @param patch
+     *            The JSON merge patch, an object holding the new values of the fields to change
+     * @param ifMatch
+     *            The ETag(s) of the versions of the {@link Book} which may be patched (optional)
+     * @return The {@link ResponseEntity} containing the patched {@link Book}, or the
+     *         {@link HttpStatus} code with the result of the operation
+     */
+    @RequestMapping(value = "/{bookId}", method = RequestMethod.PATCH, consumes = {
+            MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    @ResponseBody
+    public DeferredResult<ResponseEntity<Resource<Book>>> patchBook(
+            @PathVariable final Long bookId, @RequestBody String patch,
+            @RequestHeader(value = "If-Match", required = false) final String ifMatch) {
+        logger.debug("PATCH request for book with id {}, patching book with {}", bookId, patch);
+        final Long expectedVersion = this.getExpectedVersion(ifMatch);
+        // the message converters only read application/json, so the patch is parsed here
+        final Map<String, Object> fields;
+        try {
+            fields = this.readPatch(patch);
+        } catch (IOException e) {
+            logger.debug("invalid patch, returning 400 status code", e);
+            return this.completed(new ResponseEntity<Resource<Book>>(HttpStatus.BAD_REQUEST));
         }
 
-        logger.debug("book to update found with data {}", existingBook);
-        // make sure the book we're to save has the correct ID
-        book.setId(bookId);
-        book = this.bookRepository.save(book);
+        return this.executeAsync(new Callable<ResponseEntity<Resource<Book>>>() {
+
+            @Override
+            public ResponseEntity<Resource<Book>> call() {
+                Book patchedBook;
+                try {
+                    patchedBook = bookService.patchBook(bookId, fields, expectedVersion);
+                } catch (IllegalArgumentException e) {
+                    logger.debug("invalid patch ({}), returning 400 status code", e.getMessage());
+                    return new ResponseEntity<Resource<Book>>(HttpStatus.BAD_REQUEST);
+                } catch (OptimisticLockingFailureException e) {
+                    logger.debug("book changed ({}), returning 412 status code", e.getMessage());
+                    return new ResponseEntity<Resource<Book>>(HttpStatus.PRECONDITION_FAILED);
+                }
+
+                // if it's not found, return 404 (or 412 if a version was expected)
+                if (patchedBook == null) {
+                    return new ResponseEntity<Resource<Book>>(getNotFoundStatus(ifMatch));
+                }
+                bookSaved(patchedBook);
 
-        logger.debug("returning updated book {}", book);
-        return new ResponseEntity<Resource<Book>>(this.bookResourceAssembler.toResource(book),
-                HttpStatus.OK);
+                logger.debug("returning patched book {}", patchedBook);
+                return new ResponseEntity<Resource<Book>>(
+                        bookResourceAssembler.toResource(patchedBook),
+                        createETagHeaders(createETag(patchedBook)), HttpStatus.OK);
+            }
+        });
     }
 
     /**
@@ -137,23 +821,448 @@ public class BooksController {
      * 
      * @param bookId
      *            The ID of the {@link Book} to delete
+     * @param ifMatch
+     *            The ETag(s) of the versions of the {@link Book} which may be deleted (optional)
      * @return The {@link ResponseEntity} with the {@link HttpStatus} code with the result of the
      *         operation
      */
     @RequestMapping(value = "/{bookId}", method = RequestMethod.DELETE)
-    public ResponseEntity<Void> deleteBook(@PathVariable Long bookId) {
+    public DeferredResult<ResponseEntity<Void>> deleteBook(@PathVariable final Long bookId,
+            @RequestHeader(value = "If-Match", required = false) final String ifMatch) {
         logger.debug("DELETE request for book with id {}", bookId);
-        // attempt to find the book by ID
-        Book book = this.bookRepository.findOne(bookId);
+        final Long expectedVersion = this.getExpectedVersion(ifMatch);
+        return this.executeAsync(new Callable<ResponseEntity<Void>>() {
+
+            @Override
+            public ResponseEntity<Void> call() {
+                // delete the book in place, which tells us whether it existed
+                boolean deleted;
+                try {
+                    deleted = bookService.deleteBook(bookId, expectedVersion);
+                } catch (OptimisticLockingFailureException e) {
+                    logger.debug("book changed ({}), returning 412 status code", e.getMessage());
+                    return new ResponseEntity<Void>(HttpStatus.PRECONDITION_FAILED);
+                }
+
+                // if it's not found, return 404 (or 412 if a version was expected)
+                if (!deleted) {
+                    return new ResponseEntity<Void>(getNotFoundStatus(ifMatch));
+                }
+
+                logger.debug("book with id {} deleted", bookId);
+                bookDeleted(bookId);
+                return new ResponseEntity<Void>(HttpStatus.OK);
+            }
+        });
+    }
+
+    /**
+     * Executes a bulk request of create, update and delete <code>operations</code> on
+     * {@link Book}s, in chunked transactions using JDBC batching. This is intended for
+     * synchronizing large numbers of {@link Book}s, which would otherwise take one request (and
+     * one transaction) per {@link Book}.
+     * 
+     * @param operations
+     *            The {@link BookBulkOperation}s to execute
+     * @return The {@link BookBulkResult} of each operation, in the order of the
+     *         <code>operations</code>
+     */
+    @RequestMapping(value = "/_bulk", method = RequestMethod.POST,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<List<BookBulkResult>> bulkBooks(
+            @RequestBody List<BookBulkOperation> operations) {
+        logger.debug("bulk request with {} operations", operations.size());
+        List<BookBulkResult> results = this.bookBulkService.execute(operations);
+        for (int i = 0; i < results.size(); i++) {
+            BookBulkResult result = results.get(i);
+            if (result.getStatus() >= HttpStatus.BAD_REQUEST.value()) {
+                continue;
+            }
+            BookBulkOperation operation = operations.get(i);
+            if (BookBulkOperation.DELETE.equals(operation.getAction())) {
+                this.bookDeleted(result.getId());
+            } else {
+                operation.getBook().setId(result.getId());
+                this.bookSaved(operation.getBook());
+            }
+        }
+        return new ResponseEntity<List<BookBulkResult>>(results, HttpStatus.OK);
+    }
+
+    /**
+     * Exports all the {@link Book}s, ordered by ID, streaming them directly to the response in the
+     * <code>format</code>. The {@link Book}s are written as they are read from the database, so
+     * memory use doesn't grow with the number of {@link Book}s.
+     * 
+     * @param format
+     *            The name of the {@link BookFormat} to export to, <code>ndjson</code> by default
+     * @param response
+     *            The {@link HttpServletResponse} to stream the {@link Book}s to
+     * @throws IOException
+     *             If an error occurs writing the response
+     */
+    @RequestMapping(value = "/export", method = RequestMethod.GET, produces = {
+            BookFormat.APPLICATION_NDJSON_VALUE, BookFormat.TEXT_CSV_VALUE})
+    public void exportBooks(
+            @RequestParam(value = "format", defaultValue = "ndjson") String format,
+            HttpServletResponse response) throws IOException {
+        logger.debug("GET request to export all books as {}", format);
+        BookFormat bookFormat = BookFormat.forName(format);
+        if (bookFormat == null) {
+            logger.debug("unknown format, returning 400 status code");
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        response.setHeader("ETag", this.createETagHeaders(
+                this.bookChangeTracker.getCollectionETag()).getETag());
+        response.setContentType(bookFormat.getMediaType().toString());
+        response.setCharacterEncoding("UTF-8");
+        BookWriter writer = bookFormat.createWriter(response.getOutputStream());
+        try {
+            this.bookTransferService.exportBooks(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Imports the {@link Book}s of the request body, in newline delimited JSON or CSV (as given by
+     * the <code>Content-Type</code>). {@link Book}s with the ID of an existing {@link Book}
+     * update it, other {@link Book}s are created. The body is read as it arrives and imported in
+     * chunks of <code>chunkSize</code> {@link Book}s, each within a single transaction, so memory
+     * use doesn't grow with the number of {@link Book}s.
+     * <p>
+     * Should a {@link Book} be invalid, the import stops and the {@link BookImportResult} holds
+     * the number of records imported so far as a checkpoint. Once the file is corrected, the
+     * import may be resumed by supplying the checkpoint as <code>skip</code>.
+     * 
+     * @param chunkSize
+     *            The number of {@link Book}s to import within a single transaction (optional)
+     * @param skip
+     *            The number of records to skip (optional)
+     * @param request
+     *            The {@link HttpServletRequest} holding the {@link Book}s
+     * @return The {@link BookImportResult} of the import
+     * @throws IOException
+     *             If an error occurs reading the request
+     */
+    @RequestMapping(value = "/import", method = RequestMethod.POST, consumes = {
+            BookFormat.APPLICATION_NDJSON_VALUE, BookFormat.TEXT_CSV_VALUE},
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<BookImportResult> importBooks(
+            @RequestParam(value = "chunkSize", required = false) Integer chunkSize,
+            @RequestParam(value = "skip", defaultValue = "0") long skip,
+            HttpServletRequest request) throws IOException {
+        logger.debug("POST request to import books in chunks of {}, skipping {}", chunkSize, skip);
+        if (chunkSize == null) {
+            chunkSize = BookTransferService.DEFAULT_CHUNK_SIZE;
+        }
+        if (chunkSize < 1 || chunkSize > BookTransferService.MAX_CHUNK_SIZE || skip < 0) {
+            logger.debug("invalid chunk size or skip, returning 400 status code");
+            return new ResponseEntity<BookImportResult>(HttpStatus.BAD_REQUEST);
+        }
+        BookFormat bookFormat = BookFormat.forMediaType(MediaType.parseMediaType(request
+                .getContentType()));
+        BookReader reader = bookFormat.createReader(request.getInputStream());
+        BookImportResult result;
+        try {
+            result = this.bookTransferService.importBooks(reader, chunkSize, skip,
+                    new BookCallback() {
+                        @Override
+                        public void doWithBook(Book book) {
+                            bookSaved(book);
+                        }
+                    });
+        } finally {
+            reader.close();
+        }
+        logger.debug("imported {} books, returning {} status code", result.getImported(),
+                result.getStatus());
+        return new ResponseEntity<BookImportResult>(result, HttpStatus.valueOf(result
+                .getStatus()));
+    }
+
+    /**
+     * Internal method that runs the <code>task</code> on the repository executor, returning a
+     * {@link DeferredResult} which is set with the response of the <code>task</code> once it
+     * completes. The current request is exposed to the <code>task</code> (to build links), and
+     * should the executor reject the <code>task</code> or the <code>task</code> not complete in
+     * time, the response has a 503 status code.
+     * 
+     * @param task
+     *            The task creating the response, which may use the {@link BookService}
+     * @return The {@link DeferredResult} set with the response
+     */
+    protected <T> DeferredResult<ResponseEntity<T>> executeAsync(
+            final Callable<ResponseEntity<T>> task) {
+        final DeferredResult<ResponseEntity<T>> deferredResult = new DeferredResult<ResponseEntity<T>>(
+                ASYNC_TIMEOUT, this.<T> createUnavailableResponse());
+        final RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        try {
+            this.repositoryExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    // don't bother once the request has timed out waiting in the queue
+                    if (deferredResult.isSetOrExpired()) {
+                        return;
+                    }
+                    RequestContextHolder.setRequestAttributes(requestAttributes);
+                    try {
+                        deferredResult.setResult(task.call());
+                    } catch (Exception e) {
+                        deferredResult.setErrorResult(e);
+                    } finally {
+                        RequestContextHolder.resetRequestAttributes();
+                    }
+                }
+            });
+        } catch (TaskRejectedException e) {
+            logger.debug("repository executor saturated, returning 503 status code");
+            deferredResult.setResult(this.<T> createUnavailableResponse());
+        }
+        return deferredResult;
+    }
+
+    /**
+     * Internal method that returns a {@link DeferredResult} already set with the
+     * <code>response</code>, for requests answered without any repository work
+     * 
+     * @param response
+     *            The response
+     * @return The {@link DeferredResult} set with the <code>response</code>
+     */
+    protected <T> DeferredResult<ResponseEntity<T>> completed(ResponseEntity<T> response) {
+        DeferredResult<ResponseEntity<T>> deferredResult = new DeferredResult<ResponseEntity<T>>();
+        deferredResult.setResult(response);
+        return deferredResult;
+    }
+
+    /**
+     * Internal method that creates the response holding the <code>snapshot</code> of all the
+     * {@link Book}s, with the ETag it was read at
+     * 
+     * @param snapshot
+     *            The {@link BooksSnapshot}
+     * @return The response holding the <code>snapshot</code>
+     */
+    protected ResponseEntity<Resources<Resource<Book>>> createSnapshotResponse(
+            BooksSnapshot snapshot) {
+        return new ResponseEntity<Resources<Resource<Book>>>(snapshot,
+                this.createETagHeaders(snapshot.getETag()), HttpStatus.OK);
+    }
+
+    /**
+     * Internal method that reads the comma separated <code>fields</code> parameter
+     * 
+     * @param fields
+     *            The comma separated fields
+     * @return The names of the fields
+     */
+    protected List<String> readFields(String fields) {
+        List<String> fieldNames = new ArrayList<String>();
+        for (String field : fields.split(",")) {
+            if (!field.trim().isEmpty()) {
+                fieldNames.add(field.trim());
+            }
+        }
+        return fieldNames;
+    }
+
+    /**
+     * Internal method that creates the <code>next</code> link to the page of
+     * <code>pageSize</code> {@link Book}s following the {@link Book} with the <code>lastId</code>,
+     * keeping the other parameters of the current request
+     * 
+     * @param lastId
+     *            The ID of the last {@link Book} of the current page
+     * @param pageSize
+     *            The maximum number of {@link Book}s in the page
+     * @return The <code>next</code> {@link Link}
+     */
+    protected Link createNextLink(Long lastId, int pageSize) {
+        String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("after", lastId).replaceQueryParam("limit", pageSize).build()
+                .toUriString();
+        return new Link(next, Link.REL_NEXT);
+    }
+
+    /**
+     * Internal method that reads the fields of the JSON merge <code>patch</code>
+     * 
+     * @param patch
+     *            The JSON merge patch
+     * @return The new values of the fields to change, by field name
+     * @throws IOException
+     *             If the <code>patch</code> isn't a JSON object
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> readPatch(String patch) throws IOException {
+        Object fields = this.objectMapper.readValue(patch, Object.class);
+        if (!(fields instanceof Map)) {
+            throw new IOException("patch must be a JSON object");
+        }
+        return (Map<String, Object>) fields;
+    }
+
+    /**
+     * Internal method that creates the response with a 503 status code, asking the client to
+     * retry after {@value #RETRY_AFTER} second(s)
+     * 
+     * @return The response with a 503 status code
+     */
+    protected <T> ResponseEntity<T> createUnavailableResponse() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Retry-After", Integer.toString(RETRY_AFTER));
+        return new ResponseEntity<T>(headers, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Internal method that records the <code>book</code> was created or updated, which must be
+     * called once the <code>book</code> has been saved
+     * 
+     * @param book
+     *            The saved {@link Book}
+     */
+    protected void bookSaved(Book book) {
+        this.bookChangeTracker.booksChanged();
+        this.bookSearchIndex.index(book);
+    }
+
+    /**
+     * Internal method that records the {@link Book} with the <code>bookId</code> was deleted,
+     * which must be called once the {@link Book} has been deleted
+     * 
+     * @param bookId
+     *            The ID of the deleted {@link Book}
+     */
+    protected void bookDeleted(Long bookId) {
+        this.bookChangeTracker.booksChanged();
+        this.bookSearchIndex.remove(bookId);
+    }
+
+    /**
+     * Internal method that creates the ETag of the <code>book</code>, which is its version
+     * 
+     * @param book
+     *            The {@link Book}
+     * @return The ETag of the <code>book</code>
+     */
+    protected String createETag(Book book) {
+        return this.createETag(book.getVersion());
+    }
+
+    /**
+     * Internal method that creates the ETag of the {@link Book} of the <code>projection</code>,
+     * which is its version (always read, whatever the projected fields)
+     * 
+     * @param projection
+     *            The {@link BookProjection}
+     * @return The ETag of the {@link Book}
+     */
+    protected String createETag(BookProjection projection) {
+        return this.createETag(projection.getVersion());
+    }
+
+    /**
+     * Internal method that creates the ETag of a {@link Book} at the <code>version</code>
+     * 
+     * @param version
+     *            The version of the {@link Book}
+     * @return The ETag of the {@link Book}
+     */
+    protected String createETag(Long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Internal method that returns the version a {@link Book} must be at to match the
+     * <code>If-Match</code> header, which is the version of the first (strong) ETag it lists.
+     * Should it list no ETag of a {@link Book}, the {@value #UNMATCHED_VERSION} version is
+     * returned, which no {@link Book} is ever at.
+     * 
+     * @param ifMatch
+     *            The value of the <code>If-Match</code> header, which may be <code>null</code>
+     * @return The version the {@link Book} must be at, or <code>null</code> if it may be at any
+     *         version (there's no header, or it's "*")
+     */
+    protected Long getExpectedVersion(String ifMatch) {
+        if (ifMatch == null) {
+            return null;
+        }
+        for (String etag : ifMatch.split(",")) {
+            etag = etag.trim();
+            if (etag.equals("*")) {
+                return null;
+            }
+            // weak ETags never match, as the comparison must be strong
+            if (etag.length() > 2 && etag.startsWith("\"") && etag.endsWith("\"")) {
+                try {
+                    return Long.valueOf(etag.substring(1, etag.length() - 1));
+                } catch (NumberFormatException e) {
+                    logger.debug("ignoring ETag {} which isn't of a book", etag);
+                }
+            }
+        }
+        return UNMATCHED_VERSION;
+    }
 
-        // if it's not found, return 404
-        if (book == null) {
-            logger.debug("book not found, returning 404 status code");
-            return new ResponseEntity<Void>(HttpStatus.NOT_FOUND);
+    /**
+     * Internal method that returns the status code of a write to a {@link Book} which doesn't
+     * exist: a 404, unless the write had an <code>If-Match</code> header which can't match a
+     * missing {@link Book}, in which case it's a 412
+     * 
+     * @param ifMatch
+     *            The value of the <code>If-Match</code> header, which may be <code>null</code>
+     * @return The {@link HttpStatus} of the write
+     */
+    protected HttpStatus getNotFoundStatus(String ifMatch) {
+        if (ifMatch != null) {
+            logger.debug("book not found, returning 412 status code");
+            return HttpStatus.PRECONDITION_FAILED;
         }
+        logger.debug("book not found, returning 404 status code");
+        return HttpStatus.NOT_FOUND;
+    }
+
+    /**
+     * Internal method that creates the {@link HttpHeaders} holding the <code>etag</code>
+     * 
+     * @param etag
+     *            The ETag of the response
+     * @return The {@link HttpHeaders} holding the <code>etag</code>
+     */
+    protected HttpHeaders createETagHeaders(String etag) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        return headers;
+    }
 
-        logger.debug("book found, deleting {}", book);
-        this.bookRepository.delete(book);
-        return new ResponseEntity<Void>(HttpStatus.OK);
+    /**
+     * Internal method that determines if the client already holds the current representation,
+     * which is the case when the <code>If-None-Match</code> header lists the ETag of the
+     * response (or is "*")
+     * 
+     * @param ifNoneMatch
+     *            The value of the <code>If-None-Match</code> header, which may be
+     *            <code>null</code>
+     * @param headers
+     *            The {@link HttpHeaders} of the response, holding the current ETag
+     * @return <code>true</code> if the client holds the current representation,
+     *         <code>false</code> otherwise
+     */
+    protected boolean isNotModified(String ifNoneMatch, HttpHeaders headers) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String etag : ifNoneMatch.split(",")) {
+            etag = etag.trim();
+            if (etag.equals("*") || etag.equals(headers.getETag())) {
+                return true;
+            }
+        }
+        return false;
     }
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+package org.library.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.library.domain.Book;
+import org.library.repository.BookCallback;
+import org.library.repository.BookRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.Resources;
+import org.springframework.stereotype.Component;
+
+/**
+ * Streams all the {@link Book}s in our {@link BookRepository} as JSON {@link Resources}, in the
+ * same format the {@link BooksResourceAssembler} output would be serialized to. Unlike the
+ * {@link BooksResourceAssembler}, the {@link Book}s are read with a forward-only cursor and each
+ * {@link Resource} is written as soon as it is read, so memory use stays flat and the first bytes
+ * are sent immediately regardless of how many {@link Book}s are stored.
+ * 
+ * @author dylants
+ * 
+ */
+@Component
+public class BooksResourceStreamer {
+
+    /**
+     * The number of {@link Book}s fetched from the database at a time
+     */
+    public static final int FETCH_SIZE = 500;
+
+    private final BookRepository bookRepository;
+    private final BookResourceAssembler bookResourceAssembler;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Creates a {@link BooksResourceStreamer}
+     * 
+     * @param bookRepository
+     *            The {@link BookRepository} to read the {@link Book}s from
+     * @param bookResourceAssembler
+     *            The {@link BookResourceAssembler} used to convert each {@link Book}
+     */
+    @Autowired
+    public BooksResourceStreamer(BookRepository bookRepository,
+            BookResourceAssembler bookResourceAssembler) {
+        this.bookRepository = bookRepository;
+        this.bookResourceAssembler = bookResourceAssembler;
+        this.objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * Writes all the {@link Book}s as JSON {@link Resources} to the <code>outputStream</code>
+     * 
+     * @param outputStream
+     *            The {@link OutputStream} to write to, which is closed once complete
+     * @throws IOException
+     *             If an error occurs writing to the <code>outputStream</code>
+     */
+    public void writeBooks(OutputStream outputStream) throws IOException {
+        final JsonGenerator generator = this.objectMapper.getJsonFactory().createJsonGenerator(
+                outputStream, JsonEncoding.UTF8);
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("links");
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("content");
+        this.bookRepository.scrollAll(FETCH_SIZE, new BookCallback() {
+            @Override
+            public void doWithBook(Book book) throws IOException {
+                generator.writeObject(bookResourceAssembler.toResource(book));
+            }
+        });
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.close();
+    }
+}
@@ -0,0 +1,74 @@
+package org.library.web;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.codehaus.jackson.annotate.JsonIgnore;
+import org.library.domain.Book;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.Resources;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.MediaType;
+
+/**
+ * A snapshot of all the {@link Book}s as {@link Resources}, at the ETag of the collection it was
+ * read at. Along with the {@link Resources}, the snapshot holds their serialized form for each
+ * media type they've been written as, so that the {@link BooksSnapshotHttpMessageConverter} only
+ * serializes them once. A snapshot never changes once read; a new one is read when the
+ * {@link Book}s change.
+ * 
+ * @author dylants
+ * 
+ */
+public class BooksSnapshot extends Resources<Resource<Book>> {
+
+    private final String etag;
+    private final ConcurrentMap<MediaType, HttpEntity<byte[]>> serialized = new ConcurrentHashMap<MediaType, HttpEntity<byte[]>>();
+
+    /**
+     * Creates a {@link BooksSnapshot} of the <code>resources</code>
+     * 
+     * @param etag
+     *            The ETag of the collection of {@link Book}s, read before the {@link Book}s
+     * @param resources
+     *            The {@link Book}s as {@link Resources}
+     */
+    public BooksSnapshot(String etag, Resources<Resource<Book>> resources) {
+        super(resources.getContent(), resources.getLinks());
+        this.etag = etag;
+    }
+
+    /**
+     * Returns the ETag of the collection of {@link Book}s this snapshot was read at
+     * 
+     * @return The ETag of the collection of {@link Book}s
+     */
+    @JsonIgnore
+    public String getETag() {
+        return this.etag;
+    }
+
+    /**
+     * Returns the serialized form of this snapshot in the <code>mediaType</code>
+     * 
+     * @param mediaType
+     *            The media type
+     * @return The serialized {@link Resources} with their content type, or <code>null</code> if
+     *         they haven't been serialized in the <code>mediaType</code> yet
+     */
+    public HttpEntity<byte[]> getSerialized(MediaType mediaType) {
+        return this.serialized.get(mediaType);
+    }
+
+    /**
+     * Keeps the serialized form of this snapshot in the <code>mediaType</code>
+     * 
+     * @param mediaType
+     *            The media type
+     * @param serialized
+     *            The serialized {@link Resources} with their content type
+     */
+    public void setSerialized(MediaType mediaType, HttpEntity<byte[]> serialized) {
+        this.serialized.put(mediaType, serialized);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+package org.library.web;
+
+import org.library.domain.Book;
+import org.library.service.BookService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches a {@link BooksSnapshot} of all the {@link Book}s, so that requests for all the
+ * {@link Book}s are answered without reading, assembling or serializing them again while nothing
+ * has changed. The snapshot is valid for as long as the ETag of the collection supplied by the
+ * {@link BookChangeTracker} is the one it was read at, so each create, update or delete
+ * invalidates it atomically, without any locking. As the ETag is derived from the count of the
+ * changes every instance shares, a create, update or delete made through another instance
+ * invalidates the snapshot as well, at the latest once the count the {@link BookChangeTracker}
+ * read is older than its max age.
+ * <p>
+ * A stale snapshot is rebuilt by a single thread: requests arriving meanwhile wait for the new
+ * snapshot rather than each reading all the {@link Book}s, so a burst of writes followed by reads
+ * doesn't stampede the database.
+ * 
+ * @author dylants
+ * 
+ */
+@Component
+public class BooksSnapshotCache {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final BookService bookService;
+    private final BooksResourceAssembler booksResourceAssembler;
+    private final BookChangeTracker bookChangeTracker;
+    private final Object rebuildLock = new Object();
+    private volatile BooksSnapshot snapshot;
+
+    @Autowired
+    public BooksSnapshotCache(BookService bookService,
+            BooksResourceAssembler booksResourceAssembler, BookChangeTracker bookChangeTracker) {
+        this.bookService = bookService;
+        this.booksResourceAssembler = booksResourceAssembler;
+        this.bookChangeTracker = bookChangeTracker;
+    }
+
+    /**
+     * Returns the cached {@link BooksSnapshot}, if the {@link Book}s haven't changed since it was
+     * read. This never reads the {@link Book}s.
+     * 
+     * @return The current {@link BooksSnapshot}, or <code>null</code> if there's none
+     */
+    public BooksSnapshot getCurrentSnapshot() {
+        BooksSnapshot current = this.snapshot;
+        if (current != null
+                && current.getETag().equals(this.bookChangeTracker.getCollectionETag())) {
+            return current;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the current {@link BooksSnapshot}, reading all the {@link Book}s into a new one if
+     * they've changed since the cached one was read
+     * 
+     * @return The current {@link BooksSnapshot}
+     */
+    public BooksSnapshot getSnapshot() {
+        BooksSnapshot current = this.getCurrentSnapshot();
+        if (current != null) {
+            return current;
+        }
+        synchronized (this.rebuildLock) {
+            // another thread may have rebuilt the snapshot while we waited
+            current = this.getCurrentSnapshot();
+            if (current == null) {
+                // read the ETag before the books, so it's never newer than them
+                String etag = this.bookChangeTracker.getCollectionETag();
+                Iterable<Book> books = this.bookService.findAllBooks();
+                current = new BooksSnapshot(etag, this.booksResourceAssembler.toResource(books));
+                this.snapshot = current;
+                logger.debug("rebuilt snapshot of {} books at {}", current.getContent().size(),
+                        etag);
+            }
+            return current;
+        }
+    }
+}
\ No newline at end of file
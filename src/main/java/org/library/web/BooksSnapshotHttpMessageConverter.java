@@ -0,0 +1,159 @@
+package org.library.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.library.domain.Book;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.Resources;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+/**
+ * Writes {@link BooksSnapshot}s in the serialized form they hold, so an unchanged collection of
+ * {@link Book}s is serialized once rather than for every request. The first time a snapshot is
+ * written in a media type, it's serialized by the converter which would otherwise have written its
+ * {@link Resources}, and the bytes and content type that converter wrote are kept in the snapshot.
+ * Responses are therefore identical to those of the other converters.
+ * 
+ * @author dylants
+ * 
+ */
+public class BooksSnapshotHttpMessageConverter implements HttpMessageConverter<BooksSnapshot> {
+
+    private final List<HttpMessageConverter<?>> converters;
+
+    /**
+     * Creates a {@link BooksSnapshotHttpMessageConverter} serializing the snapshots with the
+     * <code>converters</code>
+     * 
+     * @param converters
+     *            The {@link HttpMessageConverter}s which would otherwise write the {@link Resources}
+     */
+    public BooksSnapshotHttpMessageConverter(List<HttpMessageConverter<?>> converters) {
+        this.converters = new ArrayList<HttpMessageConverter<?>>(converters);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return BooksSnapshot.class.isAssignableFrom(clazz) && this.getConverter(mediaType) != null;
+    }
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes() {
+        List<MediaType> mediaTypes = new ArrayList<MediaType>();
+        for (HttpMessageConverter<?> converter : this.converters) {
+            if (converter.canWrite(Resources.class, null)) {
+                mediaTypes.addAll(converter.getSupportedMediaTypes());
+            }
+        }
+        return mediaTypes;
+    }
+
+    @Override
+    public BooksSnapshot read(Class<? extends BooksSnapshot> clazz, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        throw new UnsupportedOperationException("snapshots are never read");
+    }
+
+    @Override
+    public void write(BooksSnapshot snapshot, MediaType contentType,
+            HttpOutputMessage outputMessage) throws IOException, HttpMessageNotWritableException {
+        // only the charset changes the serialized form, so other parameters are dropped
+        MediaType mediaType = contentType.getCharSet() == null ? new MediaType(contentType
+                .getType(), contentType.getSubtype()) : new MediaType(contentType.getType(),
+                contentType.getSubtype(), contentType.getCharSet());
+        HttpEntity<byte[]> serialized = snapshot.getSerialized(mediaType);
+        if (serialized == null) {
+            // requests waiting on the same snapshot share a single serialization
+            synchronized (snapshot) {
+                serialized = snapshot.getSerialized(mediaType);
+                if (serialized == null) {
+                    serialized = this.serialize(snapshot, mediaType);
+                    snapshot.setSerialized(mediaType, serialized);
+                }
+            }
+        }
+
+        byte[] body = serialized.getBody();
+        outputMessage.getHeaders().setContentType(serialized.getHeaders().getContentType());
+        outputMessage.getHeaders().setContentLength(body.length);
+        outputMessage.getBody().write(body);
+    }
+
+    /**
+     * Internal method that serializes the {@link Resources} of the <code>snapshot</code> in the
+     * <code>mediaType</code>, with the converter which would otherwise have written them
+     * 
+     * @param snapshot
+     *            The {@link BooksSnapshot} to serialize
+     * @param mediaType
+     *            The media type to serialize the <code>snapshot</code> in
+     * @return The serialized {@link Resources} with their content type
+     * @throws IOException
+     *             If an error occurs serializing the <code>snapshot</code>
+     */
+    @SuppressWarnings("unchecked")
+    protected HttpEntity<byte[]> serialize(BooksSnapshot snapshot, MediaType mediaType)
+            throws IOException {
+        HttpMessageConverter<Object> converter = (HttpMessageConverter<Object>) this
+                .getConverter(mediaType);
+        BufferingOutputMessage outputMessage = new BufferingOutputMessage();
+        // the converters know nothing of snapshots, so they're given plain resources
+        converter.write(new Resources<Resource<Book>>(snapshot.getContent(), snapshot.getLinks()),
+                mediaType, outputMessage);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(outputMessage.getHeaders().getContentType());
+        return new HttpEntity<byte[]>(outputMessage.body.toByteArray(), headers);
+    }
+
+    /**
+     * Internal method that returns the first of the converters able to write {@link Resources} in
+     * the <code>mediaType</code>
+     * 
+     * @param mediaType
+     *            The media type
+     * @return The {@link HttpMessageConverter}, or <code>null</code> if there's none
+     */
+    protected HttpMessageConverter<?> getConverter(MediaType mediaType) {
+        for (HttpMessageConverter<?> converter : this.converters) {
+            if (converter.canWrite(Resources.class, mediaType)) {
+                return converter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * An {@link HttpOutputMessage} holding its body in memory
+     */
+    private static class BufferingOutputMessage implements HttpOutputMessage {
+
+        private final HttpHeaders headers = new HttpHeaders();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return this.headers;
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return this.body;
+        }
+    }
+}
\ No newline at end of file
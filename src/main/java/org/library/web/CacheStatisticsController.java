@@ -0,0 +1,93 @@
+package org.library.web;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Provides a REST API endpoint exposing the hit, miss and eviction counters of Hibernate's
+ * second-level and query caches, used to size the cache regions
+ * 
+ * @author dylants
+ * 
+ */
+@Controller
+@RequestMapping(value = "/cache", produces = MediaType.APPLICATION_JSON_VALUE)
+public class CacheStatisticsController {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final SessionFactory sessionFactory;
+
+    @Autowired
+    public CacheStatisticsController(EntityManagerFactory entityManagerFactory) {
+        // JPA 2.0 offers no way to unwrap the factory, so go through an EntityManager
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            this.sessionFactory = entityManager.unwrap(Session.class).getSessionFactory();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Returns the statistics of each second-level cache region, along with those of the query
+     * cache
+     * 
+     * @return The cache statistics
+     */
+    @RequestMapping(method = RequestMethod.GET)
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> findCacheStatistics() {
+        logger.debug("GET request on cache statistics");
+        Statistics statistics = this.sessionFactory.getStatistics();
+        CacheManager cacheManager = CacheManager.getInstance();
+
+        Map<String, Object> regions = new LinkedHashMap<String, Object>();
+        for (String regionName : statistics.getSecondLevelCacheRegionNames()) {
+            SecondLevelCacheStatistics regionStatistics = statistics
+                    .getSecondLevelCacheStatistics(regionName);
+            Map<String, Object> region = new LinkedHashMap<String, Object>();
+            region.put("hits", regionStatistics.getHitCount());
+            region.put("misses", regionStatistics.getMissCount());
+            region.put("puts", regionStatistics.getPutCount());
+            region.put("size", regionStatistics.getElementCountInMemory());
+            // Hibernate doesn't track evictions, but Ehcache does
+            Ehcache cache = cacheManager.getEhcache(regionName);
+            if (cache != null) {
+                region.put("evictions", cache.getStatistics().getEvictionCount());
+            }
+            regions.put(regionName, region);
+        }
+
+        Map<String, Object> queryCache = new LinkedHashMap<String, Object>();
+        queryCache.put("hits", statistics.getQueryCacheHitCount());
+        queryCache.put("misses", statistics.getQueryCacheMissCount());
+        queryCache.put("puts", statistics.getQueryCachePutCount());
+
+        Map<String, Object> cacheStatistics = new LinkedHashMap<String, Object>();
+        cacheStatistics.put("regions", regions);
+        cacheStatistics.put("queryCache", queryCache);
+        return new ResponseEntity<Map<String, Object>>(cacheStatistics, HttpStatus.OK);
+    }
+}
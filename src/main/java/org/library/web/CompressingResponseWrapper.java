@@ -0,0 +1,426 @@
+package org.library.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Compresses the body of a response with gzip once it reaches a minimum size. The body is held in
+ * a buffer until it reaches the minimum size, and is then compressed as it's written, so large
+ * (even streamed) bodies never have to fit in memory. Smaller bodies are written as they are, with
+ * their length, when the response is finished.
+ * <p>
+ * Only successful responses without a <code>Content-Encoding</code> of their own are compressed.
+ * Optionally, a copy of the compressed body is kept (up to a maximum size), so that it may be
+ * cached.
+ * <p>
+ * The bytes of a compressed body differ from those of the body as it is, so a compressed response
+ * can't carry the same ETag: its ETag is suffixed with {@value #GZIP_ETAG_SUFFIX} (within the
+ * quotes). A 304 response carries the suffixed ETag too, if the request listed it.
+ * 
+ * @author dylants
+ * 
+ */
+public class CompressingResponseWrapper extends HttpServletResponseWrapper {
+
+    /**
+     * The suffix of the ETag of a compressed response, within its quotes
+     */
+    public static final String GZIP_ETAG_SUFFIX = "-gzip";
+    /**
+     * The <code>Vary</code> header of a compressed response: the responses of our controllers
+     * are negotiated on the <code>Accept</code> header as well as the
+     * <code>Accept-Encoding</code>
+     */
+    public static final String VARY = "Accept-Encoding, Accept";
+
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    private final int minCompressionSize;
+    private final int maxCopySize;
+
+    // the state of the body: buffered, compressed, or (when both are null) written as it is
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private GZIPOutputStream gzip;
+    private ByteArrayOutputStream copy;
+
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+    private boolean gzipETagRequested;
+
+    /**
+     * Wraps the <code>response</code>, compressing its body once it reaches the
+     * <code>minCompressionSize</code>
+     * 
+     * @param response
+     *            The response to wrap
+     * @param minCompressionSize
+     *            The size at which the body is compressed, in bytes
+     * @param maxCopySize
+     *            The maximum size of the compressed body of which a copy is kept, in bytes, or 0
+     *            to keep no copy
+     */
+    public CompressingResponseWrapper(HttpServletResponse response, int minCompressionSize,
+            int maxCopySize) {
+        super(response);
+        this.minCompressionSize = minCompressionSize;
+        this.maxCopySize = maxCopySize;
+    }
+
+    /**
+     * Returns the ETag of the compressed representation of the response with the
+     * <code>etag</code>
+     * 
+     * @param etag
+     *            The ETag of the response as it is, which may be <code>null</code>
+     * @return The ETag suffixed with {@value #GZIP_ETAG_SUFFIX}, or the <code>etag</code> itself
+     *         if it isn't quoted or is suffixed already
+     */
+    public static String toGzipETag(String etag) {
+        if (etag == null || !etag.endsWith("\"") || etag.endsWith(GZIP_ETAG_SUFFIX + "\"")) {
+            return etag;
+        }
+        return etag.substring(0, etag.length() - 1) + GZIP_ETAG_SUFFIX + "\"";
+    }
+
+    /**
+     * Returns the ETags listed by the <code>etags</code> (the value of an
+     * <code>If-None-Match</code> or <code>If-Match</code> header), with the suffix of compressed
+     * responses removed from each, so that they match the ETags of the responses as they are
+     * 
+     * @param etags
+     *            The ETags, which may be <code>null</code>
+     * @return The ETags without the suffix of compressed responses
+     */
+    public static String fromGzipETags(String etags) {
+        return etags == null ? null : etags.replace(GZIP_ETAG_SUFFIX + "\"", "\"");
+    }
+
+    /**
+     * Sets whether the request listed the ETag of a compressed response, in which case a 304
+     * response carries the suffixed ETag as well
+     * 
+     * @param gzipETagRequested
+     *            <code>true</code> if the request listed the ETag of a compressed response
+     */
+    public void setGzipETagRequested(boolean gzipETagRequested) {
+        this.gzipETagRequested = gzipETagRequested;
+    }
+
+    /**
+     * Finishes the response, writing out what remains of the body. This must be called once the
+     * response is complete.
+     * 
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (this.writer != null) {
+            this.writer.flush();
+        }
+        if (this.gzip != null) {
+            this.gzip.finish();
+            this.gzip.flush();
+        } else if (this.buffer != null) {
+            if (this.buffer.size() > 0) {
+                this.getResponse().setContentLength(this.buffer.size());
+            }
+            this.writeBuffer();
+        }
+    }
+
+    /**
+     * Returns the compressed body, if it was compressed and isn't larger than the maximum size of
+     * the copy. This is only complete once the response is finished.
+     * 
+     * @return The compressed body, or <code>null</code> if there's no copy of it
+     */
+    public byte[] getCompressedBody() {
+        return this.copy == null ? null : this.copy.toByteArray();
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (this.outputStream == null) {
+            this.outputStream = new CompressingOutputStream();
+        }
+        return this.outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (this.writer == null) {
+            this.writer = new PrintWriter(new OutputStreamWriter(this.getOutputStream(),
+                    this.getCharacterEncoding()));
+        }
+        return this.writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (this.writer != null) {
+            this.writer.flush();
+        }
+        // a buffered body is held until we know whether to compress it
+        if (this.buffer == null) {
+            this.getOutputStream().flush();
+            super.flushBuffer();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        if (this.buffer != null) {
+            this.buffer.reset();
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        if (this.buffer != null) {
+            this.buffer.reset();
+        }
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        this.buffer = null;
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        this.buffer = null;
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        this.buffer = null;
+        super.sendRedirect(location);
+    }
+
+    /*
+     * The length of the body is only known once it's finished (and is unknown if compressed), so
+     * any length set beforehand is dropped unless the body is written as it is.
+     */
+
+    @Override
+    public void setContentLength(int len) {
+        if (this.isWrittenAsIs()) {
+            super.setContentLength(len);
+        }
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        if (this.isWrittenAsIs()) {
+            super.setContentLengthLong(len);
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (this.isWrittenAsIs() || !"Content-Length".equalsIgnoreCase(name)) {
+            super.setHeader(name, this.getHeaderValue(name, value));
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (this.isWrittenAsIs() || !"Content-Length".equalsIgnoreCase(name)) {
+            super.addHeader(name, this.getHeaderValue(name, value));
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (this.isWrittenAsIs() || !"Content-Length".equalsIgnoreCase(name)) {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (this.isWrittenAsIs() || !"Content-Length".equalsIgnoreCase(name)) {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    /**
+     * Internal method that returns the value of the header with the <code>name</code> to set: an
+     * ETag is suffixed if the body is compressed, or if the response is a 304 to a request which
+     * listed the suffixed ETag
+     * 
+     * @param name
+     *            The name of the header
+     * @param value
+     *            The value of the header
+     * @return The value of the header to set
+     */
+    protected String getHeaderValue(String name, String value) {
+        if ("ETag".equalsIgnoreCase(name)
+                && (this.gzip != null || this.gzipETagRequested
+                        && this.getStatus() == HttpServletResponse.SC_NOT_MODIFIED)) {
+            return toGzipETag(value);
+        }
+        return value;
+    }
+
+    /**
+     * Internal method that determines if the body is written as it is, neither buffered nor
+     * compressed
+     * 
+     * @return <code>true</code> if the body is written as it is, <code>false</code> otherwise
+     */
+    protected boolean isWrittenAsIs() {
+        return this.buffer == null && this.gzip == null;
+    }
+
+    /**
+     * Internal method that determines if the response may be compressed: it must be successful
+     * (with a body), and not already have a <code>Content-Encoding</code>
+     * 
+     * @return <code>true</code> if the response may be compressed, <code>false</code> otherwise
+     */
+    protected boolean isCompressible() {
+        int status = this.getStatus();
+        return status >= HttpServletResponse.SC_OK
+                && status < HttpServletResponse.SC_MULTIPLE_CHOICES
+                && status != HttpServletResponse.SC_NO_CONTENT
+                && status != HttpServletResponse.SC_PARTIAL_CONTENT
+                && !this.containsHeader("Content-Encoding");
+    }
+
+    /**
+     * Internal method that starts compressing the body, once the buffered body has reached the
+     * minimum size. If the response may not be compressed, the body is written as it is instead.
+     * 
+     * @throws IOException
+     */
+    protected void startCompressing() throws IOException {
+        if (!this.isCompressible()) {
+            this.writeBuffer();
+            return;
+        }
+        HttpServletResponse response = (HttpServletResponse) this.getResponse();
+        response.setHeader("Content-Encoding", "gzip");
+        response.addHeader("Vary", VARY);
+        // the ETag was set for the body as it is
+        if (response.getHeader("ETag") != null) {
+            response.setHeader("ETag", toGzipETag(response.getHeader("ETag")));
+        }
+        OutputStream out = response.getOutputStream();
+        if (this.maxCopySize > 0) {
+            this.copy = new ByteArrayOutputStream();
+            out = new CopyingOutputStream(out);
+        }
+        this.gzip = new GZIPOutputStream(out, GZIP_BUFFER_SIZE, true);
+        this.buffer.writeTo(this.gzip);
+        this.buffer = null;
+    }
+
+    /**
+     * Internal method that writes the buffered body as it is, after which the body is no longer
+     * buffered
+     * 
+     * @throws IOException
+     */
+    protected void writeBuffer() throws IOException {
+        ByteArrayOutputStream body = this.buffer;
+        this.buffer = null;
+        if (body != null && body.size() > 0) {
+            body.writeTo(this.getResponse().getOutputStream());
+        }
+    }
+
+    /**
+     * The {@link ServletOutputStream} of the response, buffering, compressing or writing the body
+     * as it is
+     */
+    private class CompressingOutputStream extends ServletOutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (gzip != null) {
+                gzip.write(b, off, len);
+            } else if (buffer != null) {
+                buffer.write(b, off, len);
+                if (buffer.size() >= minCompressionSize) {
+                    startCompressing();
+                }
+            } else {
+                getResponse().getOutputStream().write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // a buffered body is held until we know whether to compress it
+            if (gzip != null) {
+                gzip.flush();
+            } else if (buffer == null) {
+                getResponse().getOutputStream().flush();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            throw new UnsupportedOperationException("only blocking writes are supported");
+        }
+    }
+
+    /**
+     * Writes the compressed body to the response, keeping a copy of it until it's larger than the
+     * maximum size of the copy
+     */
+    private class CopyingOutputStream extends OutputStream {
+
+        private final OutputStream out;
+
+        public CopyingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            if (copy != null) {
+                if (copy.size() + len > maxCopySize) {
+                    copy = null;
+                } else {
+                    copy.write(b, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.out.flush();
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package org.library.web;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Compresses responses with gzip for clients which accept it (with the
+ * <code>Accept-Encoding</code> header), once their body reaches a minimum size. Smaller bodies
+ * gain too little from compression to be worth the CPU.
+ * <p>
+ * Compressing the same large response for every request would burn CPU as well, so the
+ * compressed responses of the collection of {@link org.library.domain.Book}s (those carrying the
+ * ETag of the {@link BookChangeTracker}) are cached, keyed by the request, until the collection
+ * next changes (through any instance, as seen by the {@link BookChangeTracker} within its max
+ * age). Repeated requests are then answered with a copy of the cached bytes, without reaching our
+ * controllers at all (and so without being recorded in the {@link RequestMetrics}). Requests with
+ * an <code>If-None-Match</code> header skip the cache, as the controllers answer them cheaply
+ * anyway.
+ * <p>
+ * Compressed responses carry their own ETag (see {@link CompressingResponseWrapper}), which
+ * clients send back in their <code>If-None-Match</code> and <code>If-Match</code> headers. The
+ * suffix is removed from those before they reach our controllers, which only know the ETags of
+ * the responses as they are.
+ * <p>
+ * Asynchronous requests are compressed when they complete, in their last dispatch.
+ * 
+ * @author dylants
+ * 
+ */
+public class CompressionFilter extends OncePerRequestFilter {
+
+    /**
+     * The default minimum size of the body of a compressed response, in bytes
+     */
+    public static final int DEFAULT_MIN_COMPRESSION_SIZE = 1024;
+    /**
+     * The maximum number of compressed responses cached
+     */
+    public static final int MAX_CACHED_RESPONSES = 64;
+    /**
+     * The maximum size of a cached compressed response, in bytes
+     */
+    public static final int MAX_CACHED_RESPONSE_SIZE = 1024 * 1024;
+
+    private static final String CACHE_KEY_ATTRIBUTE = CompressionFilter.class.getName()
+            + ".cacheKey";
+    private static final String CACHE_ETAG_ATTRIBUTE = CompressionFilter.class.getName()
+            + ".cacheETag";
+    // the headers listing ETags, which may be those of compressed responses
+    private static final String[] CONDITIONAL_HEADERS = {"If-None-Match", "If-Match"};
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final BookChangeTracker bookChangeTracker;
+    private final int minCompressionSize;
+    private final ConcurrentMap<String, CompressedResponse> cache = new ConcurrentHashMap<String, CompressedResponse>();
+
+    /**
+     * Creates the filter, compressing bodies of at least <code>minCompressionSize</code> bytes
+     * 
+     * @param bookChangeTracker
+     *            The {@link BookChangeTracker} supplying the ETag of the collection of
+     *            {@link org.library.domain.Book}s
+     * @param minCompressionSize
+     *            The minimum size of the body of a compressed response, in bytes
+     */
+    public CompressionFilter(BookChangeTracker bookChangeTracker, int minCompressionSize) {
+        this.bookChangeTracker = bookChangeTracker;
+        this.minCompressionSize = minCompressionSize;
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        // asynchronous requests complete (and are compressed) in a later dispatch
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+            FilterChain filterChain) throws ServletException, IOException {
+        boolean gzipETagRequested = this.isGzipETagRequested(request);
+        if (gzipETagRequested) {
+            request = new GzipETagRequestWrapper(request);
+        }
+        if (!this.acceptsGzip(request)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        CompressingResponseWrapper wrapper;
+        if (response instanceof CompressingResponseWrapper) {
+            // an asynchronous dispatch, resuming the response of the initial dispatch
+            wrapper = (CompressingResponseWrapper) response;
+        } else {
+            String cacheKey = this.getCacheKey(request);
+            if (cacheKey != null && !this.isAsyncDispatch(request)) {
+                String etag = this.bookChangeTracker.getCollectionETag();
+                CompressedResponse cached = this.cache.get(cacheKey);
+                if (cached != null && cached.etag.equals(etag)) {
+                    logger.debug("returning cached compressed response for {}", cacheKey);
+                    cached.writeTo(response);
+                    return;
+                }
+                // read the ETag before the response, so it's never newer than the response
+                request.setAttribute(CACHE_KEY_ATTRIBUTE, cacheKey);
+                request.setAttribute(CACHE_ETAG_ATTRIBUTE, etag);
+            }
+            wrapper = new CompressingResponseWrapper(response, this.minCompressionSize,
+                    cacheKey == null ? 0 : MAX_CACHED_RESPONSE_SIZE);
+            wrapper.setGzipETagRequested(gzipETagRequested);
+        }
+
+        filterChain.doFilter(request, wrapper);
+        if (this.isAsyncStarted(request)) {
+            return;
+        }
+        wrapper.finish();
+        this.cacheResponse(request, wrapper);
+    }
+
+    /**
+     * Internal method that determines if the client accepts gzip compressed responses
+     * 
+     * @param request
+     *            The request
+     * @return <code>true</code> if the client accepts gzip, <code>false</code> otherwise
+     */
+    protected boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null || "HEAD".equals(request.getMethod())) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim();
+            if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+                // "q=0" means gzip isn't acceptable
+                for (int i = 1; i < parameters.length; i++) {
+                    String parameter = parameters[i].trim();
+                    if (parameter.startsWith("q=")) {
+                        try {
+                            return Double.parseDouble(parameter.substring(2)) > 0;
+                        } catch (NumberFormatException e) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Internal method that determines if the <code>If-None-Match</code> or <code>If-Match</code>
+     * header of the <code>request</code> lists the ETag of a compressed response
+     * 
+     * @param request
+     *            The request
+     * @return <code>true</code> if the request lists the ETag of a compressed response,
+     *         <code>false</code> otherwise
+     */
+    protected boolean isGzipETagRequested(HttpServletRequest request) {
+        for (String name : CONDITIONAL_HEADERS) {
+            for (Enumeration<String> etags = request.getHeaders(name); etags != null
+                    && etags.hasMoreElements();) {
+                String etag = etags.nextElement();
+                if (!etag.equals(CompressingResponseWrapper.fromGzipETags(etag))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Internal method that returns the key of the cached compressed response to the
+     * <code>request</code>, made up of everything which may change the response
+     * 
+     * @param request
+     *            The request
+     * @return The key of the cached compressed response, or <code>null</code> if the response
+     *         can't be cached
+     */
+    protected String getCacheKey(HttpServletRequest request) {
+        if (!"GET".equals(request.getMethod()) || request.getHeader("If-None-Match") != null) {
+            return null;
+        }
+        StringBuilder cacheKey = new StringBuilder(request.getRequestURI());
+        if (request.getQueryString() != null) {
+            cacheKey.append('?').append(request.getQueryString());
+        }
+        return cacheKey.append(' ').append(request.getHeader("Accept")).toString();
+    }
+
+    /**
+     * Internal method that caches the compressed response, if it's a (complete) representation
+     * of the collection of {@link org.library.domain.Book}s at the ETag read before the response
+     * 
+     * @param request
+     *            The request
+     * @param wrapper
+     *            The {@link CompressingResponseWrapper} of the finished response
+     */
+    protected void cacheResponse(HttpServletRequest request, CompressingResponseWrapper wrapper) {
+        String cacheKey = (String) request.getAttribute(CACHE_KEY_ATTRIBUTE);
+        String etag = (String) request.getAttribute(CACHE_ETAG_ATTRIBUTE);
+        byte[] body = wrapper.getCompressedBody();
+        if (cacheKey == null || body == null || wrapper.getStatus() != HttpServletResponse.SC_OK
+                || !CompressingResponseWrapper.toGzipETag(etag).equals(wrapper.getHeader("ETag"))) {
+            return;
+        }
+        if (this.cache.size() >= MAX_CACHED_RESPONSES) {
+            // make room by dropping the responses the collection has since changed from
+            String currentETag = this.bookChangeTracker.getCollectionETag();
+            for (Iterator<CompressedResponse> it = this.cache.values().iterator(); it.hasNext();) {
+                if (!it.next().etag.equals(currentETag)) {
+                    it.remove();
+                }
+            }
+            if (this.cache.size() >= MAX_CACHED_RESPONSES) {
+                return;
+            }
+        }
+        this.cache.put(cacheKey, new CompressedResponse(etag, wrapper.getContentType(), body));
+    }
+
+    /**
+     * A request with the suffix of compressed responses removed from the ETags listed by its
+     * <code>If-None-Match</code> and <code>If-Match</code> headers
+     */
+    private static class GzipETagRequestWrapper extends HttpServletRequestWrapper {
+
+        public GzipETagRequestWrapper(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            String value = super.getHeader(name);
+            return isConditionalHeader(name) ? CompressingResponseWrapper.fromGzipETags(value)
+                    : value;
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            Enumeration<String> values = super.getHeaders(name);
+            if (values == null || !isConditionalHeader(name)) {
+                return values;
+            }
+            List<String> etags = new ArrayList<String>();
+            while (values.hasMoreElements()) {
+                etags.add(CompressingResponseWrapper.fromGzipETags(values.nextElement()));
+            }
+            return Collections.enumeration(etags);
+        }
+
+        /**
+         * Internal method that determines if the header with the <code>name</code> lists ETags
+         * to match
+         * 
+         * @param name
+         *            The name of the header
+         * @return <code>true</code> if the header lists ETags to match, <code>false</code>
+         *         otherwise
+         */
+        protected boolean isConditionalHeader(String name) {
+            for (String conditionalHeader : CONDITIONAL_HEADERS) {
+                if (conditionalHeader.equalsIgnoreCase(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A cached compressed response
+     */
+    private static class CompressedResponse {
+
+        private final String etag;
+        private final String contentType;
+        private final byte[] body;
+
+        public CompressedResponse(String etag, String contentType, byte[] body) {
+            this.etag = etag;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        /**
+         * Writes this compressed response to the <code>response</code>
+         * 
+         * @param response
+         *            The response to write to
+         * @throws IOException
+         */
+        public void writeTo(HttpServletResponse response) throws IOException {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(this.contentType);
+            response.setHeader("ETag", CompressingResponseWrapper.toGzipETag(this.etag));
+            response.setHeader("Content-Encoding", "gzip");
+            response.addHeader("Vary", CompressingResponseWrapper.VARY);
+            response.setContentLength(this.body.length);
+            response.getOutputStream().write(this.body);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.library.web;
+
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.library.persistence.PooledDataSource;
+import org.library.persistence.ReadWriteRoutingDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Provides a REST API endpoint exposing the metrics of the {@link PooledDataSource} connecting to
+ * the (primary) database: the size of the pool, the number of active, idle and waiting
+ * connections, and the latency of borrowing a connection, used to find when the pool is
+ * saturated. Should the connections be pooled by the container instead, there are no metrics to
+ * expose.
+ * 
+ * @author dylants
+ * 
+ */
+@Controller
+@RequestMapping(value = "/pool", produces = MediaType.APPLICATION_JSON_VALUE)
+public class ConnectionPoolController {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final PooledDataSource pooledDataSource;
+
+    @Autowired
+    public ConnectionPoolController(DataSource dataSource) {
+        this.pooledDataSource = this.findPooledDataSource(dataSource);
+    }
+
+    /**
+     * Returns the metrics of the connection pool, with the latencies in milliseconds
+     * 
+     * @return The metrics of the connection pool, or not found if the connections aren't pooled
+     *         by the application
+     */
+    @RequestMapping(method = RequestMethod.GET)
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> findPoolMetrics() {
+        logger.debug("GET request on connection pool metrics");
+        if (this.pooledDataSource == null) {
+            return new ResponseEntity<Map<String, Object>>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<Map<String, Object>>(this.pooledDataSource.getMetrics(),
+                HttpStatus.OK);
+    }
+
+    /**
+     * Internal method that finds the {@link PooledDataSource} behind the <code>dataSource</code>
+     * 
+     * @param dataSource
+     *            The {@link DataSource} used by the application
+     * @return The {@link PooledDataSource}, or <code>null</code> if there is none
+     */
+    protected PooledDataSource findPooledDataSource(DataSource dataSource) {
+        while (true) {
+            if (dataSource instanceof PooledDataSource) {
+                return (PooledDataSource) dataSource;
+            } else if (dataSource instanceof DelegatingDataSource) {
+                dataSource = ((DelegatingDataSource) dataSource).getTargetDataSource();
+            } else if (dataSource instanceof ReadWriteRoutingDataSource) {
+                dataSource = ((ReadWriteRoutingDataSource) dataSource).getPrimary();
+            } else {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.library.web;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.library.metrics.LatencyHistogram;
+
+/**
+ * Holds the metrics of a single endpoint (handler method): the number of requests, the number of
+ * those that failed, and a {@link LatencyHistogram} of their latencies in microseconds.
+ * Recording is lock-free and never allocates.
+ * 
+ * @author dylants
+ * 
+ */
+public class EndpointMetrics {
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * Records a request handled by this endpoint
+     * 
+     * @param latency
+     *            The time taken to handle the request, in microseconds
+     * @param error
+     *            Whether the request failed
+     */
+    public void record(long latency, boolean error) {
+        this.requests.incrementAndGet();
+        if (error) {
+            this.errors.incrementAndGet();
+        }
+        this.latencies.record(latency);
+    }
+
+    /**
+     * Returns the number of requests handled by this endpoint
+     * 
+     * @return The number of requests
+     */
+    public long getRequests() {
+        return this.requests.get();
+    }
+
+    /**
+     * Returns the number of requests handled by this endpoint that failed
+     * 
+     * @return The number of failed requests
+     */
+    public long getErrors() {
+        return this.errors.get();
+    }
+
+    /**
+     * Returns the metrics of this endpoint, with the latencies in milliseconds
+     * 
+     * @param uptime
+     *            The time over which the requests were recorded, in seconds, used to calculate
+     *            the throughput
+     * @return The metrics of this endpoint
+     */
+    public Map<String, Object> getMetrics(double uptime) {
+        long requestCount = this.requests.get();
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("requests", requestCount);
+        metrics.put("errors", this.errors.get());
+        metrics.put("throughput", uptime > 0 ? requestCount / uptime : 0);
+        metrics.put("latency", this.latencies.getPercentiles());
+        return metrics;
+    }
+}
\ No newline at end of file
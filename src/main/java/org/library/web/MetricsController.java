@@ -0,0 +1,49 @@
+package org.library.web;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Provides a REST API endpoint exposing the {@link RequestMetrics}: the number of requests, errors
+ * and throughput of each endpoint along with its latency percentiles, and the number of responses
+ * sent with each status code
+ * 
+ * @author dylants
+ * 
+ */
+@Controller
+@RequestMapping(value = "/metrics", produces = MediaType.APPLICATION_JSON_VALUE)
+public class MetricsController {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final RequestMetrics requestMetrics;
+
+    @Autowired
+    public MetricsController(RequestMetrics requestMetrics) {
+        this.requestMetrics = requestMetrics;
+    }
+
+    /**
+     * Returns the request metrics, with the latencies in milliseconds
+     * 
+     * @return The request metrics
+     */
+    @RequestMapping(method = RequestMethod.GET)
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> findMetrics() {
+        logger.debug("GET request on metrics");
+        return new ResponseEntity<Map<String, Object>>(this.requestMetrics.getMetrics(),
+                HttpStatus.OK);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,97 @@
+package org.library.web;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Holds the metrics of the requests handled by this instance: the {@link EndpointMetrics} of each
+ * endpoint, named after its handler method (such as <code>findAllBooks</code>), along with the
+ * number of responses sent with each status code. The metrics are kept in memory since this
+ * instance started.
+ * 
+ * @author dylants
+ * 
+ */
+public class RequestMetrics {
+
+    private final long startTime = System.nanoTime();
+    private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+    // indexed by the status code itself, which is always below 600
+    private final AtomicLongArray statuses = new AtomicLongArray(600);
+
+    /**
+     * Returns the {@link EndpointMetrics} of the endpoint with the <code>name</code>, creating
+     * them the first time. Hold on to the result to avoid the lookup when recording.
+     * 
+     * @param name
+     *            The name of the endpoint
+     * @return The {@link EndpointMetrics} of the endpoint
+     */
+    public EndpointMetrics getEndpointMetrics(String name) {
+        EndpointMetrics endpointMetrics = this.endpoints.get(name);
+        if (endpointMetrics == null) {
+            EndpointMetrics created = new EndpointMetrics();
+            endpointMetrics = this.endpoints.putIfAbsent(name, created);
+            if (endpointMetrics == null) {
+                endpointMetrics = created;
+            }
+        }
+        return endpointMetrics;
+    }
+
+    /**
+     * Records a response sent with the <code>status</code> code
+     * 
+     * @param status
+     *            The status code of the response
+     */
+    public void recordStatus(int status) {
+        if (status >= 0 && status < this.statuses.length()) {
+            this.statuses.incrementAndGet(status);
+        }
+    }
+
+    /**
+     * Returns the number of responses sent with the <code>status</code> code
+     * 
+     * @param status
+     *            The status code
+     * @return The number of responses sent with the <code>status</code> code
+     */
+    public long getStatusCount(int status) {
+        return this.statuses.get(status);
+    }
+
+    /**
+     * Returns the metrics of each endpoint, along with the number of responses sent with each
+     * status code
+     * 
+     * @return The request metrics
+     */
+    public Map<String, Object> getMetrics() {
+        double uptime = (System.nanoTime() - this.startTime) / 1e9;
+
+        Map<String, Object> endpointMetrics = new TreeMap<String, Object>();
+        for (Map.Entry<String, EndpointMetrics> entry : this.endpoints.entrySet()) {
+            endpointMetrics.put(entry.getKey(), entry.getValue().getMetrics(uptime));
+        }
+
+        Map<String, Object> statusCounts = new TreeMap<String, Object>();
+        for (int status = 0; status < this.statuses.length(); status++) {
+            long count = this.statuses.get(status);
+            if (count > 0) {
+                statusCounts.put(Integer.toString(status), count);
+            }
+        }
+
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("uptime", uptime);
+        metrics.put("endpoints", endpointMetrics);
+        metrics.put("statuses", statusCounts);
+        return metrics;
+    }
+}
\ No newline at end of file
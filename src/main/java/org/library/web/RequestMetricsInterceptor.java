@@ -0,0 +1,99 @@
+package org.library.web;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/**
+ * Records the {@link RequestMetrics} of the requests handled by our controllers: the latency of
+ * each request, and whether it failed, against the endpoint named after its handler method, along
+ * with the status code of each response. A request fails when it is answered with a server error
+ * (5xx) or an exception is left unhandled, in which case the response is counted as a 500.
+ * <p>
+ * Nothing is allocated when recording, once each endpoint has been seen: the start time of the
+ * request is kept in a slot of the handling thread rather than in a (boxed) request attribute,
+ * and the {@link EndpointMetrics} are looked up by the handler's {@link Method}. Only asynchronous
+ * requests, which complete in a later dispatch, carry their start time over in a request
+ * attribute.
+ * 
+ * @author dylants
+ * 
+ */
+public class RequestMetricsInterceptor extends HandlerInterceptorAdapter {
+
+    private static final String START_TIME_ATTRIBUTE = RequestMetricsInterceptor.class.getName()
+            + ".startTime";
+
+    private final RequestMetrics requestMetrics;
+    private final ConcurrentMap<Method, EndpointMetrics> endpoints = new ConcurrentHashMap<Method, EndpointMetrics>();
+
+    private final ThreadLocal<long[]> startTime = new ThreadLocal<long[]>() {
+
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    public RequestMetricsInterceptor(RequestMetrics requestMetrics) {
+        this.requestMetrics = requestMetrics;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response,
+            Object handler) throws Exception {
+        // an asynchronous request resumes with the start time of its first dispatch
+        Object asyncStartTime = request.getAttribute(START_TIME_ATTRIBUTE);
+        if (asyncStartTime != null) {
+            request.removeAttribute(START_TIME_ATTRIBUTE);
+            this.startTime.get()[0] = (Long) asyncStartTime;
+        } else {
+            this.startTime.get()[0] = System.nanoTime();
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request,
+            HttpServletResponse response, Object handler) throws Exception {
+        // the request completes in a later dispatch, possibly on another thread
+        request.setAttribute(START_TIME_ATTRIBUTE, this.startTime.get()[0]);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+            Object handler, Exception ex) throws Exception {
+        long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime()
+                - this.startTime.get()[0]);
+        int status = ex == null ? response.getStatus()
+                : HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        this.requestMetrics.recordStatus(status);
+        if (handler instanceof HandlerMethod) {
+            this.getEndpointMetrics(((HandlerMethod) handler).getMethod()).record(latency,
+                    status >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Internal method that returns the {@link EndpointMetrics} of the handler <code>method</code>
+     * 
+     * @param method
+     *            The handler method
+     * @return The {@link EndpointMetrics} of the handler <code>method</code>
+     */
+    protected EndpointMetrics getEndpointMetrics(Method method) {
+        EndpointMetrics endpointMetrics = this.endpoints.get(method);
+        if (endpointMetrics == null) {
+            endpointMetrics = this.requestMetrics.getEndpointMetrics(method.getName());
+            this.endpoints.put(method, endpointMetrics);
+        }
+        return endpointMetrics;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+package org.library.web;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket refilled at a steady rate up to a capacity (the burst): each request takes a
+ * token, and is rejected when the bucket is empty.
+ * <p>
+ * Rather than a count of tokens and the time of the last refill, which would need updating
+ * together, the bucket is kept as the single time at which it will be full again (the generic cell
+ * rate algorithm). Taking a token pushes that time back by the time a token takes to refill, so a
+ * request is allowed as long as the time stays within the burst of now. This is a single
+ * compare-and-set, so the bucket is lock-free.
+ * 
+ * @author dylants
+ * 
+ */
+public class TokenBucket {
+
+    // the time taken to refill a single token, and the whole bucket, in nanoseconds
+    private final long refillTime;
+    private final long capacityTime;
+    // the System.nanoTime() at which the bucket will be full again
+    private final AtomicLong fullTime;
+
+    /**
+     * Creates a full {@link TokenBucket}
+     * 
+     * @param rate
+     *            The number of tokens added per second
+     * @param capacity
+     *            The maximum number of tokens held
+     */
+    public TokenBucket(double rate, int capacity) {
+        this.refillTime = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        this.capacityTime = this.refillTime * capacity;
+        this.fullTime = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes a token from the bucket, if there is one
+     * 
+     * @return <code>0</code> if a token was taken, otherwise the time in nanoseconds until there
+     *         will be one
+     */
+    public long tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long fullTime = this.fullTime.get();
+            // a bucket full since then is only full as of now
+            long nextFullTime = (fullTime - now < 0 ? now : fullTime) + this.refillTime;
+            long wait = nextFullTime - now - this.capacityTime;
+            if (wait > 0) {
+                return wait;
+            }
+            if (this.fullTime.compareAndSet(fullTime, nextFullTime)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Determines if the bucket is full, that is if it hasn't been used for a while
+     * 
+     * @return <code>true</code> if the bucket is full, <code>false</code> otherwise
+     */
+    public boolean isFull() {
+        return this.fullTime.get() - System.nanoTime() <= 0;
+    }
+}
\ No newline at end of file
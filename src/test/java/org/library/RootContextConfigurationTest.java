@@ -5,8 +5,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.library.config.data.DevelopmentDataConfig;
 import org.library.config.data.ProductionDataConfig;
+import org.library.persistence.BookDataLoader;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.repository.init.JacksonRepositoryPopulatorFactoryBean;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
@@ -23,7 +23,7 @@ public class RootContextConfigurationTest {
     @Autowired
     public PlatformTransactionManager transactionManager;
     @Autowired
-    public JacksonRepositoryPopulatorFactoryBean repositoryPopulator;
+    public BookDataLoader bookDataLoader;
 
     @Test
     public void testTransactionManager() {
@@ -31,8 +31,8 @@ public class RootContextConfigurationTest {
     }
 
     @Test
-    public void testRepositoryPopulator() {
-        Assert.assertNotNull("repositoryPopulator must not be null", repositoryPopulator);
+    public void testBookDataLoader() {
+        Assert.assertNotNull("bookDataLoader must not be null", bookDataLoader);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+package org.library;
+
+import java.util.ArrayList;
+import java.util.EventListener;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterRegistration;
+import javax.servlet.Servlet;
+import javax.servlet.ServletRegistration;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.ContextLoaderListener;
+import org.springframework.web.filter.DelegatingFilterProxy;
+
+/**
+ * A test of the {@link WebApplicationInitializer}, registering the dispatcher servlet and its
+ * filters as a container would on startup
+ * 
+ * @author dylants
+ * 
+ */
+public class WebApplicationInitializerTest {
+
+    /**
+     * Tests that the dispatcher servlet, the root context and each of the filters are registered,
+     * the filters under names of their own
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testOnStartup() throws Exception {
+        RegisteringServletContext servletContext = new RegisteringServletContext();
+        new WebApplicationInitializer().onStartup(servletContext);
+
+        Assert.assertEquals("default profile must match", "development",
+                servletContext.getInitParameter("spring.profiles.default"));
+        Assert.assertTrue("dispatcher servlet must be registered",
+                servletContext.servlets.containsKey("dispatcher"));
+        Assert.assertTrue("root context must be loaded",
+                servletContext.listeners.get(0) instanceof ContextLoaderListener);
+        Assert.assertArrayEquals("filters must be registered in order", new String[]{
+                "admissionControlFilter", "compressionFilter"}, servletContext.filters.keySet()
+                .toArray());
+        for (Filter filter : servletContext.filters.values()) {
+            Assert.assertTrue("filter must delegate to a bean",
+                    filter instanceof DelegatingFilterProxy);
+        }
+    }
+
+    /**
+     * A {@link MockServletContext} accepting the registrations of the Servlet 3.0 API, which the
+     * mock doesn't support. As a container does, a filter or servlet isn't registered under a
+     * name already taken.
+     */
+    private static class RegisteringServletContext extends MockServletContext {
+
+        private final Map<String, Filter> filters = new LinkedHashMap<String, Filter>();
+        private final Map<String, Servlet> servlets = new LinkedHashMap<String, Servlet>();
+        private final List<EventListener> listeners = new ArrayList<EventListener>();
+
+        @Override
+        public boolean setInitParameter(String name, String value) {
+            if (getInitParameter(name) != null) {
+                return false;
+            }
+            addInitParameter(name, value);
+            return true;
+        }
+
+        @Override
+        public FilterRegistration.Dynamic addFilter(String filterName, Filter filter) {
+            if (this.filters.containsKey(filterName)) {
+                return null;
+            }
+            this.filters.put(filterName, filter);
+            return this.createRegistration(FilterRegistration.Dynamic.class);
+        }
+
+        @Override
+        public ServletRegistration.Dynamic addServlet(String servletName, Servlet servlet) {
+            if (this.servlets.containsKey(servletName)) {
+                return null;
+            }
+            this.servlets.put(servletName, servlet);
+            return this.createRegistration(ServletRegistration.Dynamic.class);
+        }
+
+        @Override
+        public <T extends EventListener> void addListener(T listener) {
+            this.listeners.add(listener);
+        }
+
+        private <T> T createRegistration(Class<T> registrationClass) {
+            T registration = EasyMock.createNiceMock(registrationClass);
+            EasyMock.replay(registration);
+            return registration;
+        }
+    }
+}
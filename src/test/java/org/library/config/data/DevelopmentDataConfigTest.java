@@ -1,6 +1,10 @@
 package org.library.config.data;
 
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
 
 import javax.sql.DataSource;
 
@@ -46,6 +50,23 @@ public class DevelopmentDataConfigTest {
                 .getDriverName().indexOf("HSQL") != -1);
     }
 
+    @Test
+    public void testBookIndexes() throws SQLException {
+        Set<String> indexes = new HashSet<String>();
+        Connection connection = dataSource.getConnection();
+        try {
+            ResultSet resultSet = connection.getMetaData().getIndexInfo(null, null, "BOOK", false,
+                    false);
+            while (resultSet.next()) {
+                indexes.add(resultSet.getString("INDEX_NAME").toLowerCase());
+            }
+        } finally {
+            connection.close();
+        }
+        Assert.assertTrue("title must be indexed", indexes.contains("idx_book_title"));
+        Assert.assertTrue("author must be indexed", indexes.contains("idx_book_author_title"));
+    }
+
     @Test
     public void testEntityManagerFactory() {
         Assert.assertNotNull("EntityManagerFactory must not be null", entityManagerFactory);
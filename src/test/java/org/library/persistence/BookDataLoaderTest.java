@@ -0,0 +1,128 @@
+package org.library.persistence;
+
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonParseException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+/**
+ * A test of the {@link BookDataLoader}, loading {@link org.library.domain.Book}s into an embedded
+ * database of its own through JDBC.
+ * 
+ * @author dylants
+ * 
+ */
+public class BookDataLoaderTest {
+
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setupBefore() {
+        // a database of its own, so the books loaded by the application don't interfere
+        this.dataSource = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL)
+                .setName("bookDataLoaderTest").build();
+        this.jdbcTemplate = new JdbcTemplate(this.dataSource);
+        this.jdbcTemplate.execute("create table Book (id bigint not null primary key, "
+                + "version bigint, title varchar(255), author varchar(255))");
+    }
+
+    @After
+    public void tearDownAfter() {
+        this.dataSource.shutdown();
+    }
+
+    /**
+     * Tests loading {@link org.library.domain.Book}s in several batches, with and without IDs,
+     * ignoring the properties which aren't columns
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoad() throws Exception {
+        String json = "// some books\n[{\"_class\":\"org.library.domain.Book\",\"id\":10,"
+                + "\"title\":\"The Elegant Universe\",\"author\":\"Brian Greene\","
+                + "\"tags\":{\"ignored\":[1,2]}},"
+                + "{\"title\":\"The Fabric of the Cosmos\",\"author\":\"Brian Greene\"},"
+                + "{\"id\":3,\"title\":\"Cosmos\",\"author\":\"Carl Sagan\"}]";
+        // a batch size which doesn't divide the number of books
+        BookDataLoader loader = this.createLoader(json, 2);
+        Assert.assertEquals("all books must be loaded", 3, loader.load());
+        Assert.assertEquals("loaded must match", 3, loader.getLoaded());
+
+        List<Map<String, Object>> rows = this.jdbcTemplate
+                .queryForList("select id, version, title, author from Book order by id");
+        Assert.assertEquals("rows must match", 3, rows.size());
+        Assert.assertEquals("title must match", "Cosmos", rows.get(0).get("title"));
+        Assert.assertEquals("id must match", 10L, ((Number) rows.get(1).get("id")).longValue());
+        Assert.assertEquals("version must match", 0L,
+                ((Number) rows.get(1).get("version")).longValue());
+        // a book without an id follows the highest id before it
+        Assert.assertEquals("id must match", 11L, ((Number) rows.get(2).get("id")).longValue());
+        Assert.assertEquals("title must match", "The Fabric of the Cosmos",
+                rows.get(2).get("title"));
+    }
+
+    /**
+     * Tests that the {@link org.library.domain.Book}s aren't loaded again once the table holds
+     * some
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoad_SkipsPopulatedTable() throws Exception {
+        String json = "[{\"id\":1,\"title\":\"Cosmos\",\"author\":\"Carl Sagan\"}]";
+        Assert.assertEquals("books must be loaded", 1, this.createLoader(json, 50).load());
+        Assert.assertEquals("books must not be loaded again", 0, this.createLoader(json, 50)
+                .load());
+        Assert.assertEquals("rows must match", 1,
+                this.countBooks());
+    }
+
+    /**
+     * Tests the error case of loading an invalid {@link org.library.domain.Book}, which must roll
+     * back the batch it's part of
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoad_InvalidBook() throws Exception {
+        String json = "[{\"id\":1,\"title\":\"Cosmos\",\"author\":\"Carl Sagan\"},"
+                + "{\"id\":2,\"title\":\"\",\"author\":\"Carl Sagan\"}]";
+        try {
+            this.createLoader(json, 1).load();
+            Assert.fail("a book without a title must not be loaded");
+        } catch (JsonParseException e) {
+            // expected
+        }
+        // the uncommitted chunk is rolled back
+        Assert.assertEquals("rows must match", 0,
+                this.countBooks());
+    }
+
+    /**
+     * Internal method that counts the rows of the Book table
+     * 
+     * @return The number of rows
+     */
+    protected int countBooks() {
+        return this.jdbcTemplate.queryForObject("select count(*) from Book", Integer.class);
+    }
+
+    /**
+     * Internal method that creates a {@link BookDataLoader} loading the <code>json</code>
+     */
+    protected BookDataLoader createLoader(String json, int batchSize) {
+        return new BookDataLoader(this.dataSource, new ByteArrayResource(json.getBytes()),
+                batchSize);
+    }
+}
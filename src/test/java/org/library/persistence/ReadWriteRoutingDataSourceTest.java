@@ -0,0 +1,291 @@
+package org.library.persistence;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.library.domain.Book;
+import org.library.persistence.ReadWriteRoutingDataSource.ReplicaSelection;
+import org.library.repository.BookRepository;
+import org.library.service.BookChangeCounter;
+import org.library.service.BookService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.Database;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * A test of the {@link ReadWriteRoutingDataSource}, routing between in-memory databases standing
+ * in for the primary and its replicas, each holding its own name. The window after a write is
+ * timed by a clock the test advances, rather than by waiting.
+ * 
+ * @author dylants
+ * 
+ */
+public class ReadWriteRoutingDataSourceTest {
+
+    private EmbeddedDatabase primary;
+    private EmbeddedDatabase replica1;
+    private EmbeddedDatabase replica2;
+    private ReadWriteRoutingDataSource routingDataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private TransactionTemplate readOnlyTransactionTemplate;
+    // the time in nanoseconds of the clock timing the window after a write
+    private long nanoTime;
+
+    @Before
+    public void setupBefore() {
+        // databases of their own, standing in for the primary and its replicas
+        this.primary = this.createDatabase("primary");
+        this.replica1 = this.createDatabase("replica1");
+        this.replica2 = this.createDatabase("replica2");
+        this.routingDataSource = new ReadWriteRoutingDataSource(this.primary,
+                Arrays.<DataSource> asList(this.replica1, this.replica2)) {
+
+            @Override
+            protected long nanoTime() {
+                return ReadWriteRoutingDataSourceTest.this.nanoTime;
+            }
+        };
+        this.routingDataSource.setReadYourWritesWindow(0);
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(this.routingDataSource);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(
+                dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    @After
+    public void tearDownAfter() {
+        this.primary.shutdown();
+        this.replica1.shutdown();
+        this.replica2.shutdown();
+    }
+
+    /**
+     * Tests that writes go to the primary, and read-only transactions to each replica in turn
+     */
+    @Test
+    public void testRouting() {
+        Assert.assertEquals("writes must go to the primary", "primary",
+                this.findDatabase(this.transactionTemplate));
+        Assert.assertEquals("reads must go to the first replica", "replica1",
+                this.findDatabase(this.readOnlyTransactionTemplate));
+        Assert.assertEquals("reads must go to the second replica", "replica2",
+                this.findDatabase(this.readOnlyTransactionTemplate));
+        Assert.assertEquals("reads must go round to the first replica", "replica1",
+                this.findDatabase(this.readOnlyTransactionTemplate));
+        Assert.assertEquals("borrowed connections must be returned", 0,
+                this.routingDataSource.getBorrowed(0));
+    }
+
+    /**
+     * Tests that read-only transactions go to the primary during the window after a write, and to
+     * the replicas once it has ended
+     */
+    @Test
+    public void testRouting_ReadYourWrites() {
+        this.routingDataSource.setReadYourWritesWindow(200);
+        Assert.assertEquals("writes must go to the primary", "primary",
+                this.findDatabase(this.transactionTemplate));
+        Assert.assertEquals("reads after a write must go to the primary", "primary",
+                this.findDatabase(this.readOnlyTransactionTemplate));
+        this.nanoTime += TimeUnit.MILLISECONDS.toNanos(199);
+        Assert.assertEquals("reads within the window must go to the primary", "primary",
+                this.findDatabase(this.readOnlyTransactionTemplate));
+        this.nanoTime += TimeUnit.MILLISECONDS.toNanos(1);
+        Assert.assertEquals("reads after the window must go to a replica", "replica1",
+                this.findDatabase(this.readOnlyTransactionTemplate));
+    }
+
+    /**
+     * Tests that read-only transactions go to the replica with the fewest borrowed connections,
+     * and that the connections are no longer counted once closed
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testRouting_LeastLoaded() throws Exception {
+        this.routingDataSource.setReplicaSelection(ReplicaSelection.LEAST_LOADED);
+        this.readOnlyTransactionTemplate.execute(new TransactionCallback<Void>() {
+            @Override
+            public Void doInTransaction(TransactionStatus status) {
+                try {
+                    // hold on to a connection to the first replica
+                    Connection connection = routingDataSource.getConnection();
+                    try {
+                        Assert.assertEquals("connection must be borrowed", 1,
+                                routingDataSource.getBorrowed(0));
+                        Assert.assertEquals("reads must go to the least loaded replica",
+                                "replica2", findDatabase(routingDataSource.getConnection()));
+                        Assert.assertEquals("reads must go to the least loaded replica",
+                                "replica2", findDatabase(routingDataSource.getConnection()));
+                    } finally {
+                        connection.close();
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                return null;
+            }
+        });
+        Assert.assertEquals("borrowed connections must be returned", 0,
+                this.routingDataSource.getBorrowed(0));
+        Assert.assertEquals("borrowed connections must be returned", 0,
+                this.routingDataSource.getBorrowed(1));
+    }
+
+    /**
+     * Tests the routing of the transactions of the {@link BookService}, run by a
+     * {@link JpaTransactionManager} with Hibernate behind a {@link LazyConnectionDataSourceProxy}
+     * as in production: a read-only transaction must reach a replica, while a write and the reads
+     * in the window after it must reach the primary
+     */
+    @Test
+    public void testRouting_BookService() {
+        this.routingDataSource.setReadYourWritesWindow(200);
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().registerSingleton("dataSource",
+                new LazyConnectionDataSourceProxy(this.routingDataSource));
+        context.register(JpaConfiguration.class, BookChangeCounter.class);
+        context.refresh();
+        try {
+            // Hibernate creates the schema on the primary, so create the replicas' by hand
+            for (EmbeddedDatabase database : Arrays.asList(this.primary, this.replica1,
+                    this.replica2)) {
+                JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+                if (database != this.primary) {
+                    jdbcTemplate.execute("create table Book (id bigint not null primary key, "
+                            + "version bigint, title varchar(255), author varchar(255))");
+                }
+                jdbcTemplate.update("insert into Book (id, version, title, author) "
+                        + "values (1, 1, ?, 'Carl Sagan')", "Cosmos on the "
+                        + jdbcTemplate.queryForObject("select name from Instance", String.class));
+            }
+            BookService bookService = new BookService(context.getBean(BookRepository.class),
+                    context.getBean(BookChangeCounter.class),
+                    context.getBean(PlatformTransactionManager.class));
+            // the schema and the change counter were created on the primary, so let that window
+            // end
+            this.nanoTime += TimeUnit.MILLISECONDS.toNanos(200);
+
+            Assert.assertEquals("reads must go to a replica", "Cosmos on the replica1",
+                    bookService.findBook(1L).getTitle());
+
+            Book book = new Book();
+            book.setTitle("Contact");
+            book.setAuthor("Carl Sagan");
+            Assert.assertNotNull("writes must go to the primary",
+                    bookService.updateBook(1L, book, null));
+            Assert.assertEquals("reads after a write must go to the primary", "Contact",
+                    bookService.findBook(1L).getTitle());
+
+            this.nanoTime += TimeUnit.MILLISECONDS.toNanos(200);
+            Assert.assertEquals("reads after the window must go to a replica",
+                    "Cosmos on the replica2", bookService.findBook(1L).getTitle());
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * The JPA configuration of {@link #testRouting_BookService()}, as the application's but
+     * without the second-level cache, which the databases of this test would confuse
+     */
+    @Configuration
+    @EnableJpaRepositories(basePackageClasses = BookRepository.class)
+    static class JpaConfiguration {
+
+        @Autowired
+        private DataSource dataSource;
+
+        @Bean
+        public LocalContainerEntityManagerFactoryBean entityManagerFactory() {
+            HibernateJpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
+            vendorAdapter.setDatabase(Database.HSQL);
+            vendorAdapter.setGenerateDdl(true);
+
+            LocalContainerEntityManagerFactoryBean em =
+                    new LocalContainerEntityManagerFactoryBean();
+            em.setJpaVendorAdapter(vendorAdapter);
+            em.setPackagesToScan(Book.class.getPackage().getName());
+            em.setDataSource(this.dataSource);
+            Properties properties = new Properties();
+            properties.setProperty("javax.persistence.sharedCache.mode", "NONE");
+            properties.setProperty("hibernate.cache.use_second_level_cache", "false");
+            em.setJpaProperties(properties);
+            return em;
+        }
+
+        @Bean
+        public PlatformTransactionManager transactionManager() {
+            return new JpaTransactionManager(this.entityManagerFactory().getObject());
+        }
+    }
+
+    /**
+     * Creates an in-memory database holding its <code>name</code>
+     */
+    private EmbeddedDatabase createDatabase(String name) {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL).setName("readWriteRoutingTest-" + name).build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("create table Instance (name varchar(255))");
+        jdbcTemplate.update("insert into Instance (name) values (?)", name);
+        return database;
+    }
+
+    /**
+     * Returns the name of the database used by a transaction of the
+     * <code>transactionTemplate</code>
+     */
+    private String findDatabase(TransactionTemplate transactionTemplate) {
+        return transactionTemplate.execute(new TransactionCallback<String>() {
+            @Override
+            public String doInTransaction(TransactionStatus status) {
+                return jdbcTemplate.queryForObject("select name from Instance", String.class);
+            }
+        });
+    }
+
+    /**
+     * Returns the name of the database of the <code>connection</code>, closing it
+     */
+    private String findDatabase(Connection connection) throws Exception {
+        try {
+            ResultSet resultSet = connection.createStatement().executeQuery(
+                    "select name from Instance");
+            resultSet.next();
+            return resultSet.getString(1);
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package org.library.persistence;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.dialect.HSQLDialect;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.type.LongType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.library.WebApplicationInitializer;
+import org.library.config.data.DevelopmentDataConfig;
+import org.library.domain.Book;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+/**
+ * A test of the {@link UseExistingOrGenerateIdGenerator} against the development database, each
+ * test using its own block table so that the rows leased by one don't affect another.
+ * 
+ * @author dylants
+ * 
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {WebApplicationInitializer.RootContextConfiguration.class,
+        DevelopmentDataConfig.class})
+@ActiveProfiles("development")
+@WebAppConfiguration
+public class UseExistingOrGenerateIdGeneratorTest {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private EntityManager entityManager;
+    private SessionImplementor session;
+
+    @Before
+    public void setupBefore() {
+        this.entityManager = this.entityManagerFactory.createEntityManager();
+        this.session = this.entityManager.unwrap(SessionImplementor.class);
+    }
+
+    @After
+    public void tearDownAfter() {
+        this.entityManager.close();
+    }
+
+    /**
+     * Tests that the ID an entity already has is used, rather than generating one
+     */
+    @Test
+    public void testGenerate_UsesExistingId() {
+        Book book = new Book();
+        book.setId(12345L);
+        Assert.assertEquals("id must match", 12345L,
+                this.createGenerator("id_block_existing").generate(this.session, book));
+    }
+
+    /**
+     * Tests that the first ID generated is greater than those existing when the block table is
+     * first used
+     */
+    @Test
+    public void testGenerate_StartsAfterExistingIds() {
+        // the preloaded book has an id of 1
+        Serializable id = this.createGenerator("id_block_seeded").generate(this.session,
+                new Book());
+        Assert.assertTrue("id must be greater than the existing ids", (Long) id > 1L);
+    }
+
+    /**
+     * Tests that generators sharing a block table, as instances sharing a database do, never
+     * generate the same ID
+     */
+    @Test
+    public void testGenerate_UniqueAcrossInstances() {
+        // two generators sharing a table behave as two instances sharing a database
+        UseExistingOrGenerateIdGenerator first = this.createGenerator("id_block_shared");
+        UseExistingOrGenerateIdGenerator second = this.createGenerator("id_block_shared");
+
+        Set<Serializable> ids = new HashSet<Serializable>();
+        for (int i = 0; i < 25; i++) {
+            Assert.assertTrue("id must be unique",
+                    ids.add(first.generate(this.session, new Book())));
+            Assert.assertTrue("id must be unique",
+                    ids.add(second.generate(this.session, new Book())));
+        }
+    }
+
+    /**
+     * Tests that an ID supplied past the leased blocks is never generated afterwards, by this
+     * generator or another sharing the block table
+     */
+    @Test
+    public void testGenerate_AfterSuppliedId() {
+        UseExistingOrGenerateIdGenerator first = this.createGenerator("id_block_supplied");
+        UseExistingOrGenerateIdGenerator second = this.createGenerator("id_block_supplied");
+        // lease a block, so the supplied id lies past the row once seeded
+        Long leasedId = (Long) first.generate(this.session, new Book());
+
+        Book book = new Book();
+        book.setId(leasedId + 1000);
+        Assert.assertEquals("id must match", book.getId(), first.generate(this.session, book));
+        // an id before the next free block leaves the block table as it is
+        Book existingBook = new Book();
+        existingBook.setId(leasedId);
+        Assert.assertEquals("id must match", leasedId, second.generate(this.session,
+                existingBook));
+
+        Assert.assertTrue("id must be greater than the supplied id",
+                (Long) second.generate(this.session, new Book()) > book.getId());
+    }
+
+    /**
+     * Tests that generators sharing a block table from many threads at once, each with its own
+     * session as instances sharing a database have, never generate the same ID
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGenerate_UniqueUnderContention() throws Exception {
+        final int threads = 8;
+        final int idsPerThread = 100;
+        final Set<Serializable> ids = Collections.newSetFromMap(
+                new ConcurrentHashMap<Serializable, Boolean>());
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < threads; i++) {
+                final UseExistingOrGenerateIdGenerator generator = this
+                        .createGenerator("id_block_contended");
+                results.add(executor.submit(new Callable<Integer>() {
+
+                    @Override
+                    public Integer call() throws Exception {
+                        EntityManager entityManager = entityManagerFactory.createEntityManager();
+                        try {
+                            SessionImplementor session = entityManager
+                                    .unwrap(SessionImplementor.class);
+                            start.await();
+                            int unique = 0;
+                            for (int j = 0; j < idsPerThread; j++) {
+                                if (ids.add(generator.generate(session, new Book()))) {
+                                    unique++;
+                                }
+                            }
+                            return unique;
+                        } finally {
+                            entityManager.close();
+                        }
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> result : results) {
+                Assert.assertEquals("ids must be unique", idsPerThread, result.get(1,
+                        TimeUnit.MINUTES).intValue());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that IDs supplied in ascending order, as by an import, are never generated afterwards,
+     * by this generator or another sharing the block table
+     */
+    @Test
+    public void testGenerate_AfterAscendingSuppliedIds() {
+        UseExistingOrGenerateIdGenerator first = this.createGenerator("id_block_imported");
+        UseExistingOrGenerateIdGenerator second = this.createGenerator("id_block_imported");
+        long lastId = 0;
+        for (long id = 2000; id < 2100; id += 3) {
+            Book book = new Book();
+            book.setId(id);
+            Assert.assertEquals("id must match", id, first.generate(this.session, book));
+            lastId = id;
+        }
+        Assert.assertTrue("id must be greater than the supplied ids",
+                (Long) second.generate(this.session, new Book()) > lastId);
+        Assert.assertTrue("id must be greater than the supplied ids",
+                (Long) first.generate(this.session, new Book()) > lastId);
+    }
+
+    /**
+     * Internal method that creates a {@link UseExistingOrGenerateIdGenerator} for {@link Book}s
+     * using the block table <code>tableName</code>, creating the table if necessary
+     * 
+     * @param tableName
+     *            The name of the block table
+     * @return The {@link UseExistingOrGenerateIdGenerator}
+     */
+    protected UseExistingOrGenerateIdGenerator createGenerator(String tableName) {
+        Properties params = new Properties();
+        params.setProperty(UseExistingOrGenerateIdGenerator.TABLE_PARAM, tableName);
+        params.setProperty(UseExistingOrGenerateIdGenerator.INCREMENT_PARAM, "10");
+        params.setProperty(PersistentIdentifierGenerator.TABLE, "Book");
+        params.setProperty(PersistentIdentifierGenerator.PK, "id");
+        UseExistingOrGenerateIdGenerator generator = new UseExistingOrGenerateIdGenerator();
+        generator.configure(LongType.INSTANCE, params, new HSQLDialect());
+
+        this.entityManager.getTransaction().begin();
+        this.entityManager.createNativeQuery(
+                "create table if not exists " + tableName
+                        + " (segment_name varchar(255) not null, next_val bigint,"
+                        + " primary key (segment_name))").executeUpdate();
+        this.entityManager.getTransaction().commit();
+        return generator;
+    }
+}
@@ -0,0 +1,92 @@
+package org.library.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.library.domain.Book;
+import org.library.repository.BookRepository;
+
+/**
+ * A test of the {@link BookSearchIndex}, indexing {@link Book}s directly rather than loading them
+ * from the {@link BookRepository}, which is mocked.
+ * 
+ * @author dylants
+ * 
+ */
+public class BookSearchIndexTest {
+
+    private BookSearchIndex index;
+
+    @Before
+    public void setupBefore() {
+        BookRepository bookRepository = EasyMock.createNiceMock(BookRepository.class);
+        EasyMock.replay(bookRepository);
+        this.index = new BookSearchIndex(bookRepository);
+    }
+
+    /**
+     * Tests splitting text into lower case terms, dropping the punctuation and whitespace
+     */
+    @Test
+    public void testTokenize() {
+        Assert.assertEquals("terms must match", Arrays.asList("the", "cat", "in", "hat", "2"),
+                BookSearchIndex.tokenize("The Cat-in  HAT, 2!"));
+        Assert.assertTrue("null must have no terms", BookSearchIndex.tokenize(null).isEmpty());
+    }
+
+    /**
+     * Tests that only the {@link Book}s matching all the terms are found, up to the limit
+     */
+    @Test
+    public void testSearch_AllTermsMustMatch() {
+        this.index.index(this.createBook(1L, "Green Eggs and Ham", "Dr. Seuss"));
+        this.index.index(this.createBook(2L, "Ham on Rye", "Charles Bukowski"));
+
+        Assert.assertEquals("both books must be found", 2, this.index.search("ham", 10).size());
+        List<Book> books = this.index.search("seuss ham", 10);
+        Assert.assertEquals("one book must be found", 1, books.size());
+        Assert.assertEquals("id must match", Long.valueOf(1), books.get(0).getId());
+        Assert.assertTrue("no books must be found", this.index.search("ham cheese", 10).isEmpty());
+        Assert.assertEquals("limit must apply", 1, this.index.search("ham", 1).size());
+    }
+
+    /**
+     * Tests that searches still find the live {@link Book}s, and only those, once enough have been
+     * removed for the index to compact
+     */
+    @Test
+    public void testSearch_AfterCompaction() {
+        // index and delete enough books to force the index to compact
+        for (long id = 1; id <= 5000; id++) {
+            this.index.index(this.createBook(id, "Book " + id, "Author " + (id % 10)));
+        }
+        for (long id = 1; id <= 4000; id++) {
+            this.index.remove(id);
+        }
+        this.index.index(this.createBook(4999L, "Updated", "Author 9"));
+
+        // one of the live books no longer has "book" in its title
+        Assert.assertEquals("live books must be found", 999, this.index.search("book", 2000)
+                .size());
+        Assert.assertTrue("deleted book must not be found", this.index.search("10", 10).isEmpty());
+        List<Book> books = this.index.search("author 9", 200);
+        Assert.assertEquals("books must be found", 100, books.size());
+        Assert.assertEquals("updated book must be found", "Updated",
+                this.index.search("updated", 10).get(0).getTitle());
+    }
+
+    /**
+     * Creates a {@link Book} with the <code>id</code>, <code>title</code> and <code>author</code>
+     */
+    private Book createBook(Long id, String title, String author) {
+        Book book = new Book();
+        book.setId(id);
+        book.setTitle(title);
+        book.setAuthor(author);
+        return book;
+    }
+}
@@ -0,0 +1,97 @@
+package org.library.search;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A test of the {@link BookSuggester}, fed the changes to the {@link org.library.domain.Book}s
+ * directly rather than by the {@link BookSearchIndex}.
+ * 
+ * @author dylants
+ * 
+ */
+public class BookSuggesterTest {
+
+    private BookSuggester suggester;
+
+    @Before
+    public void setupBefore() {
+        this.suggester = new BookSuggester();
+        this.suggester.indexCleared();
+        this.suggester.bookAdded(1L, "Green Eggs and Ham", "Dr. Seuss");
+        this.suggester.bookAdded(2L, "The Cat in the Hat", "Dr. Seuss");
+        this.suggester.bookAdded(3L, "Goodnight Moon", "Margaret Wise Brown");
+        this.suggester.bookAdded(4L, "The Runaway Bunny", "Margaret Wise Brown");
+        this.suggester.bookAdded(5L, "Hop on Pop", "Dr. Seuss");
+        this.suggester.indexRebuilt();
+    }
+
+    /**
+     * Tests that the values matching a prefix are suggested with the most popular first, ties
+     * being broken alphabetically, up to the limit
+     */
+    @Test
+    public void testSuggest_MostPopularFirst() {
+        List<Suggestion> suggestions = this.suggester.suggest(BookSuggester.AUTHOR, "", 10);
+        Assert.assertEquals("all authors must be suggested", 2, suggestions.size());
+        Assert.assertEquals("most popular must be first", "Dr. Seuss", suggestions.get(0)
+                .getText());
+        Assert.assertEquals("count must match", 3, suggestions.get(0).getCount());
+
+        suggestions = this.suggester.suggest(BookSuggester.TITLE, "THE ", 10);
+        Assert.assertEquals("titles must be suggested", 2, suggestions.size());
+        Assert.assertEquals("ties must be alphabetical", "The Cat in the Hat", suggestions.get(0)
+                .getText());
+        Assert.assertEquals("limit must apply", 1, this.suggester.suggest(BookSuggester.TITLE,
+                "the", 1).size());
+    }
+
+    /**
+     * Tests that the suggestions and their counts follow the {@link org.library.domain.Book}s
+     * added and removed since the index was built
+     */
+    @Test
+    public void testSuggest_FollowsChanges() {
+        this.suggester.bookRemoved(1L, "Green Eggs and Ham", "Dr. Seuss");
+        this.suggester.bookRemoved(2L, "The Cat in the Hat", "Dr. Seuss");
+        this.suggester.bookAdded(6L, "Madeline", "Ludwig Bemelmans");
+        this.suggester.bookAdded(7L, "Madeline's Rescue", "Ludwig Bemelmans");
+
+        List<Suggestion> suggestions = this.suggester.suggest(BookSuggester.AUTHOR, "", 10);
+        Assert.assertEquals("all authors must be suggested", 3, suggestions.size());
+        Assert.assertEquals("counts must follow changes", 1, suggestions.get(2).getCount());
+        Assert.assertEquals("new titles must be suggested", 2, this.suggester.suggest(
+                BookSuggester.TITLE, "mad", 10).size());
+        Assert.assertTrue("removed titles must not be suggested", this.suggester.suggest(
+                BookSuggester.TITLE, "green", 10).isEmpty());
+    }
+
+    /**
+     * Tests that values are still suggested once enough have been added to be merged into the
+     * sorted values
+     */
+    @Test
+    public void testSuggest_AfterMerge() {
+        // add enough new values to merge them into the sorted arrays
+        for (long id = 10; id < 3010; id++) {
+            this.suggester.bookAdded(id, "Volume " + id, "Author " + (id % 7));
+        }
+        List<Suggestion> suggestions = this.suggester.suggest(BookSuggester.AUTHOR, "author", 3);
+        Assert.assertEquals("limit must apply", 3, suggestions.size());
+        Assert.assertTrue("most popular must be first",
+                suggestions.get(0).getCount() >= suggestions.get(2).getCount());
+        Assert.assertEquals("prefix must match", 11, this.suggester.suggest(BookSuggester.TITLE,
+                "volume 300", 20).size());
+    }
+
+    /**
+     * Tests the error case of suggesting values of a field which isn't suggested
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testSuggest_UnknownField() {
+        this.suggester.suggest("isbn", "978", 10);
+    }
+}
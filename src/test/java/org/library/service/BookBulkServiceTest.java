@@ -0,0 +1,129 @@
+package org.library.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.Session;
+import org.hibernate.stat.Statistics;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.library.WebApplicationInitializer;
+import org.library.config.data.AbstractDataConfig;
+import org.library.domain.Book;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+/**
+ * A test of the {@link BookBulkService} against the development database, focusing on the number
+ * of statements prepared for a bulk request: the inserts, updates and deletes of a chunk must be
+ * sent to the database in JDBC batches, rather than one statement at a time.
+ * 
+ * @author dylants
+ * 
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {WebApplicationInitializer.RootContextConfiguration.class})
+@ActiveProfiles("development")
+@WebAppConfiguration
+public class BookBulkServiceTest {
+
+    // the number of books of each bulk request, spanning several JDBC batches
+    private static final int BOOKS = 2 * AbstractDataConfig.JDBC_BATCH_SIZE;
+    // the statements a chunk may prepare besides its batches, such as loading the books
+    private static final int OTHER_STATEMENTS = 5;
+
+    @Autowired
+    private BookBulkService bookBulkService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @Before
+    public void setupBefore() {
+        EntityManager entityManager = this.entityManagerFactory.createEntityManager();
+        try {
+            this.statistics = entityManager.unwrap(Session.class).getSessionFactory()
+                    .getStatistics();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Tests that creating, updating and deleting {@link Book}s (which are versioned) in bulk
+     * prepares a statement per JDBC batch, rather than per {@link Book}
+     */
+    @Test
+    public void testExecute_Batched() {
+        List<BookBulkOperation> operations = new ArrayList<BookBulkOperation>();
+        for (int i = 0; i < BOOKS; i++) {
+            operations.add(this.createOperation(BookBulkOperation.CREATE, null, "Corduroy "
+                    + i));
+        }
+        List<Long> ids = new ArrayList<Long>();
+        for (BookBulkResult result : this.execute(operations)) {
+            ids.add(result.getId());
+        }
+
+        operations.clear();
+        for (Long id : ids) {
+            operations.add(this.createOperation(BookBulkOperation.UPDATE, id, "A Pocket for "
+                    + "Corduroy " + id));
+        }
+        this.execute(operations);
+
+        operations.clear();
+        for (Long id : ids) {
+            operations.add(this.createOperation(BookBulkOperation.DELETE, id, null));
+        }
+        this.execute(operations);
+    }
+
+    /**
+     * Executes the <code>operations</code>, asserting each succeeds and that the statements they
+     * prepared were batched
+     */
+    private List<BookBulkResult> execute(List<BookBulkOperation> operations) {
+        long prepared = this.statistics.getPrepareStatementCount();
+        List<BookBulkResult> results = this.bookBulkService.execute(operations);
+        prepared = this.statistics.getPrepareStatementCount() - prepared;
+
+        for (BookBulkResult result : results) {
+            Assert.assertTrue("operation must succeed: " + result.getError(),
+                    result.getStatus() == HttpStatus.OK.value()
+                            || result.getStatus() == HttpStatus.CREATED.value());
+        }
+        Assert.assertTrue(operations.get(0).getAction() + " statements must be batched, but "
+                + prepared + " were prepared", prepared <= BOOKS
+                / AbstractDataConfig.JDBC_BATCH_SIZE + OTHER_STATEMENTS);
+        return results;
+    }
+
+    /**
+     * Creates a {@link BookBulkOperation} of the <code>action</code> on the {@link Book} with the
+     * <code>id</code>, holding a {@link Book} with the <code>title</code> if there is one
+     */
+    private BookBulkOperation createOperation(String action, Long id, String title) {
+        BookBulkOperation operation = new BookBulkOperation();
+        operation.setAction(action);
+        operation.setId(id);
+        if (title != null) {
+            Book book = new Book();
+            book.setTitle(title);
+            book.setAuthor("Don Freeman");
+            operation.setBook(book);
+        }
+        return operation;
+    }
+}
@@ -0,0 +1,327 @@
+package org.library.web;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * A test of the {@link AdmissionControlFilter}, and the {@link TokenBucket}s it limits each
+ * client with
+ * 
+ * @author dylants
+ * 
+ */
+public class AdmissionControlFilterTest {
+
+    private static final int CLIENT_BURST = 3;
+
+    private RequestMetrics requestMetrics;
+
+    @Before
+    public void setupBefore() {
+        this.requestMetrics = new RequestMetrics();
+    }
+
+    /**
+     * Tests that a client sending more than its burst is rejected, with a time to retry after,
+     * while other clients aren't
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testRejectsClientOverRate() throws Exception {
+        // a rate slow enough for no token to be added during the test
+        AdmissionControlFilter filter = new AdmissionControlFilter(this.requestMetrics, 0.01,
+                CLIENT_BURST, 1, 10, 1, 1000);
+        for (int i = 0; i < CLIENT_BURST; i++) {
+            Assert.assertEquals("request within the burst must pass", HttpServletResponse.SC_OK,
+                    this.filter(filter, this.createRequest("10.0.0.1", null), new MockFilterChain())
+                            .getStatus());
+        }
+
+        MockHttpServletResponse response = this.filter(filter,
+                this.createRequest("10.0.0.1", null), new MockFilterChain());
+        Assert.assertEquals("request over the burst must be rejected",
+                AdmissionControlFilter.SC_TOO_MANY_REQUESTS, response.getStatus());
+        Assert.assertTrue("Retry-After must be when the next token is added",
+                Long.parseLong(response.getHeader("Retry-After")) > 60);
+        Assert.assertEquals("rejection must be recorded", 1,
+                this.requestMetrics.getStatusCount(AdmissionControlFilter.SC_TOO_MANY_REQUESTS));
+
+        Assert.assertEquals("another address must pass", HttpServletResponse.SC_OK,
+                this.filter(filter, this.createRequest("10.0.0.2", null), new MockFilterChain())
+                        .getStatus());
+        Assert.assertEquals("an unauthenticated API key must not name another client",
+                AdmissionControlFilter.SC_TOO_MANY_REQUESTS,
+                this.filter(filter, this.createRequest("10.0.0.1", "another-key"),
+                        new MockFilterChain()).getStatus());
+        Assert.assertEquals("no request must remain in flight", 0, filter.getInFlight());
+    }
+
+    /**
+     * Tests that the clients of requests from a trusted proxy are named by the client header, or
+     * otherwise by the address the proxy forwarded the request for, while the addresses a client
+     * may have made up are ignored
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testNamesClientsBehindTrustedProxies() throws Exception {
+        AdmissionControlFilter filter = new AdmissionControlFilter(this.requestMetrics, 0.01,
+                CLIENT_BURST, 1, 10, 1, 1000);
+        filter.setTrustedProxies(Arrays.asList("10.0.0.100", "10.0.0.101"));
+        filter.setClientHeader("X-API-Key");
+        for (int i = 0; i < CLIENT_BURST; i++) {
+            Assert.assertEquals("request within the burst must pass", HttpServletResponse.SC_OK,
+                    this.filter(filter, this.createForwardedRequest(null, "203.0.113.1"),
+                            new MockFilterChain()).getStatus());
+        }
+        Assert.assertEquals("request over the burst must be rejected",
+                AdmissionControlFilter.SC_TOO_MANY_REQUESTS,
+                this.filter(filter, this.createForwardedRequest(null, "203.0.113.1"),
+                        new MockFilterChain()).getStatus());
+        Assert.assertEquals("a made up address must not name another client",
+                AdmissionControlFilter.SC_TOO_MANY_REQUESTS,
+                this.filter(filter,
+                        this.createForwardedRequest(null, "198.51.100.1, 203.0.113.1, 10.0.0.101"),
+                        new MockFilterChain()).getStatus());
+
+        Assert.assertEquals("another forwarded address must pass", HttpServletResponse.SC_OK,
+                this.filter(filter, this.createForwardedRequest(null, "203.0.113.2"),
+                        new MockFilterChain()).getStatus());
+        Assert.assertEquals("an API key from the proxy must name another client",
+                HttpServletResponse.SC_OK,
+                this.filter(filter, this.createForwardedRequest("a-key", "203.0.113.1"),
+                        new MockFilterChain()).getStatus());
+
+        // an untrusted address forwarding for a client is the client
+        MockHttpServletRequest request = this.createRequest("10.0.0.1", null);
+        request.addHeader("X-Forwarded-For", "203.0.113.1");
+        Assert.assertEquals("an untrusted address must name its own client",
+                HttpServletResponse.SC_OK,
+                this.filter(filter, request, new MockFilterChain()).getStatus());
+    }
+
+    /**
+     * Tests that once there are too many clients with a bucket of their own, and none has gone
+     * quiet, new clients share a single bucket
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSharesBucketOverMaxClients() throws Exception {
+        AdmissionControlFilter filter = new AdmissionControlFilter(this.requestMetrics, 0.01, 1,
+                1, 10, 1, 1000);
+        for (int i = 0; i < AdmissionControlFilter.MAX_CLIENTS; i++) {
+            this.filter(filter, this.createRequest("client-" + i, null), new MockFilterChain());
+        }
+
+        Assert.assertEquals("first client over the maximum must share a bucket",
+                HttpServletResponse.SC_OK,
+                this.filter(filter, this.createRequest("10.0.0.1", null), new MockFilterChain())
+                        .getStatus());
+        Assert.assertEquals("second client over the maximum must share the same bucket",
+                AdmissionControlFilter.SC_TOO_MANY_REQUESTS,
+                this.filter(filter, this.createRequest("10.0.0.2", null), new MockFilterChain())
+                        .getStatus());
+    }
+
+    /**
+     * Tests that a request beyond the limit of requests in flight is rejected
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testRejectsOverInFlightLimit() throws Exception {
+        final AdmissionControlFilter filter = new AdmissionControlFilter(this.requestMetrics, 100,
+                100, 1, 1, 1, 1000);
+        final MockHttpServletResponse[] nested = new MockHttpServletResponse[1];
+        // a request arriving while the first is still handled
+        MockHttpServletResponse response = this.filter(filter,
+                this.createRequest("10.0.0.1", null), new FilterChain() {
+                    @Override
+                    public void doFilter(ServletRequest request, ServletResponse response)
+                            throws IOException, ServletException {
+                        nested[0] = AdmissionControlFilterTest.this.filter(filter,
+                                createRequest("10.0.0.2", null), new MockFilterChain());
+                    }
+                });
+
+        Assert.assertEquals("first request must pass", HttpServletResponse.SC_OK,
+                response.getStatus());
+        Assert.assertEquals("request over the limit must be rejected",
+                HttpServletResponse.SC_SERVICE_UNAVAILABLE, nested[0].getStatus());
+        Assert.assertEquals("Retry-After must be set", "1", nested[0].getHeader("Retry-After"));
+        Assert.assertEquals("no request must remain in flight", 0, filter.getInFlight());
+    }
+
+    /**
+     * Tests that the limit of requests in flight shrinks as requests miss the target latency, at
+     * most once per limit's worth of requests and down to the minimum, and grows back as they meet
+     * it
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testAdaptsInFlightLimit() throws Exception {
+        AdmissionControlFilter filter = new AdmissionControlFilter(this.requestMetrics, 1000,
+                1000, 2, 10, 1, 1);
+        FilterChain slowChain = new SlowFilterChain();
+        this.filter(filter, this.createRequest("10.0.0.1", null), slowChain);
+        Assert.assertEquals("limit must shrink", 9, filter.getInFlightLimit());
+        for (int i = 0; i < 8; i++) {
+            this.filter(filter, this.createRequest("10.0.0.1", null), slowChain);
+        }
+        Assert.assertEquals("limit must shrink once per limit's worth of requests", 9,
+                filter.getInFlightLimit());
+        this.filter(filter, this.createRequest("10.0.0.1", null), slowChain);
+        Assert.assertEquals("limit must shrink again", 8, filter.getInFlightLimit());
+
+        for (int i = 0; i < 100; i++) {
+            this.filter(filter, this.createRequest("10.0.0.1", null), slowChain);
+        }
+        Assert.assertEquals("limit must not shrink below the minimum", 2,
+                filter.getInFlightLimit());
+
+        for (int i = 0; i < 10; i++) {
+            this.filter(filter, this.createRequest("10.0.0.1", null), new MockFilterChain());
+        }
+        Assert.assertTrue("limit must grow", filter.getInFlightLimit() > 2);
+    }
+
+    /**
+     * Tests that long-running requests are limited on their own, without counting towards or
+     * adapting the limit of the other requests in flight
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLimitsLongRunningSeparately() throws Exception {
+        final AdmissionControlFilter filter = new AdmissionControlFilter(this.requestMetrics, 100,
+                100, 1, 1, 1, 1);
+        final MockHttpServletResponse[] nested = new MockHttpServletResponse[2];
+        MockHttpServletResponse response = this.filter(filter,
+                this.createRequest("10.0.0.1", null, "/api/books/export"), new SlowFilterChain() {
+                    @Override
+                    public void doFilter(ServletRequest request, ServletResponse response) {
+                        super.doFilter(request, response);
+                        try {
+                            nested[0] = AdmissionControlFilterTest.this.filter(filter,
+                                    createRequest("10.0.0.2", null), new MockFilterChain());
+                            MockHttpServletRequest stream = createRequest("10.0.0.2", null);
+                            stream.setParameter("stream", "true");
+                            nested[1] = AdmissionControlFilterTest.this.filter(filter, stream,
+                                    new MockFilterChain());
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+
+        Assert.assertEquals("export must pass", HttpServletResponse.SC_OK, response.getStatus());
+        Assert.assertEquals("other requests must not count the export", HttpServletResponse.SC_OK,
+                nested[0].getStatus());
+        Assert.assertEquals("long-running request over its limit must be rejected",
+                HttpServletResponse.SC_SERVICE_UNAVAILABLE, nested[1].getStatus());
+        Assert.assertEquals("slow export must not shrink the limit", 1, filter.getInFlightLimit());
+        Assert.assertEquals("no request must remain in flight", 0, filter.getLongRunning());
+    }
+
+    /**
+     * Internal method that creates a request from the client at the <code>address</code>
+     * 
+     * @param address
+     *            The address of the client
+     * @param apiKey
+     *            The API key of the client, or <code>null</code> if none
+     * @return The request
+     */
+    protected MockHttpServletRequest createRequest(String address, String apiKey) {
+        return this.createRequest(address, apiKey, "/api/books");
+    }
+
+    /**
+     * Internal method that creates a request for the <code>uri</code> from the client at the
+     * <code>address</code>
+     * 
+     * @param address
+     *            The address of the client
+     * @param apiKey
+     *            The API key of the client, or <code>null</code> if none
+     * @param uri
+     *            The URI of the request
+     * @return The request
+     */
+    protected MockHttpServletRequest createRequest(String address, String apiKey, String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setRemoteAddr(address);
+        if (apiKey != null) {
+            request.addHeader("X-API-Key", apiKey);
+        }
+        return request;
+    }
+
+    /**
+     * Internal method that creates a request for the books forwarded by the trusted proxy at
+     * 10.0.0.100
+     * 
+     * @param apiKey
+     *            The API key of the client, or <code>null</code> if none
+     * @param forwardedFor
+     *            The value of the <code>X-Forwarded-For</code> header
+     * @return The request
+     */
+    protected MockHttpServletRequest createForwardedRequest(String apiKey, String forwardedFor) {
+        MockHttpServletRequest request = this.createRequest("10.0.0.100", apiKey);
+        request.addHeader("X-Forwarded-For", forwardedFor);
+        return request;
+    }
+
+    /**
+     * Internal method that runs the <code>request</code> through the <code>filter</code>
+     * 
+     * @param filter
+     *            The {@link AdmissionControlFilter}
+     * @param request
+     *            The request
+     * @param filterChain
+     *            The {@link FilterChain} handling the request
+     * @return The response
+     * @throws IOException
+     * @throws ServletException
+     */
+    protected MockHttpServletResponse filter(AdmissionControlFilter filter,
+            MockHttpServletRequest request, FilterChain filterChain) throws IOException,
+            ServletException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, filterChain);
+        return response;
+    }
+
+    /**
+     * A {@link FilterChain} taking longer than the target latency of the filters under test
+     */
+    private static class SlowFilterChain implements FilterChain {
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response) {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,49 @@
+package org.library.web;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+
+/**
+ * Wraps {@link MockMvc} to perform requests to asynchronous endpoints as a client would see them:
+ * should the request start asynchronous processing, the result is waited for and dispatched, so
+ * the returned {@link ResultActions} hold the final response.
+ * 
+ * @author dylants
+ * 
+ */
+public class AsyncMockMvc {
+
+    private final MockMvc mockMvc;
+
+    public AsyncMockMvc(MockMvc mockMvc) {
+        this.mockMvc = mockMvc;
+    }
+
+    /**
+     * Performs the request, dispatching the asynchronous result if the request started
+     * asynchronous processing
+     * 
+     * @param requestBuilder
+     *            The request to perform
+     * @return The {@link ResultActions} of the final response
+     * @throws Exception
+     */
+    public ResultActions perform(RequestBuilder requestBuilder) throws Exception {
+        ResultActions actions = this.mockMvc.perform(requestBuilder);
+        MvcResult result = actions.andReturn();
+        // the mock request only offers asynchronous support through the servlet API
+        HttpServletRequest request = result.getRequest();
+        if (request.isAsyncStarted()) {
+            // the dispatch doesn't wait for the result itself
+            result.getAsyncResult(BooksController.ASYNC_TIMEOUT);
+            return this.mockMvc.perform(asyncDispatch(result));
+        }
+        return actions;
+    }
+}
@@ -0,0 +1,99 @@
+package org.library.web;
+
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.library.service.BookChangeCounter;
+
+/**
+ * A test of the {@link BookChangeTracker}, with a {@link BookChangeCounter} standing in for the
+ * count shared through the database, and the clock replaced by one the test moves forward
+ * 
+ * @author dylants
+ * 
+ */
+public class BookChangeTrackerTest {
+
+    private static final long MAX_AGE = 1000;
+
+    private long changes = 100;
+    private int reads;
+    private long nanoTime;
+    private BookChangeTracker bookChangeTracker;
+
+    @Before
+    public void setupBefore() {
+        BookChangeCounter bookChangeCounter = EasyMock.createMock(BookChangeCounter.class);
+        EasyMock.expect(bookChangeCounter.getChanges()).andStubAnswer(new IAnswer<Long>() {
+
+            @Override
+            public Long answer() {
+                BookChangeTrackerTest.this.reads++;
+                return BookChangeTrackerTest.this.changes;
+            }
+        });
+        EasyMock.replay(bookChangeCounter);
+        this.bookChangeTracker = new BookChangeTracker(bookChangeCounter, MAX_AGE) {
+
+            @Override
+            protected long nanoTime() {
+                return BookChangeTrackerTest.this.nanoTime;
+            }
+        };
+    }
+
+    /**
+     * Tests that the count is read once per max age, and makes up the ETag
+     */
+    @Test
+    public void testReadsCountOncePerMaxAge() {
+        String etag = this.bookChangeTracker.getCollectionETag();
+        Assert.assertEquals("ETag must hold the count", "\"" + Long.toString(100, 36) + "\"",
+                etag);
+        Assert.assertEquals("ETag must match", etag, this.bookChangeTracker.getCollectionETag());
+        Assert.assertEquals("count must be read once", 1, this.reads);
+
+        this.nanoTime += TimeUnit.MILLISECONDS.toNanos(MAX_AGE);
+        this.bookChangeTracker.getCollectionETag();
+        Assert.assertEquals("count must be read again", 2, this.reads);
+    }
+
+    /**
+     * Tests that a change made through another instance is seen once the count read is older
+     * than the max age
+     */
+    @Test
+    public void testSeesOtherChangesWithinMaxAge() {
+        String etag = this.bookChangeTracker.getCollectionETag();
+
+        // another instance changes the books
+        this.changes++;
+        this.nanoTime += TimeUnit.MILLISECONDS.toNanos(MAX_AGE - 1);
+        Assert.assertEquals("change must not be seen yet", etag, this.bookChangeTracker
+                .getCollectionETag());
+
+        this.nanoTime += TimeUnit.MILLISECONDS.toNanos(1);
+        Assert.assertNotEquals("change must be seen", etag, this.bookChangeTracker
+                .getCollectionETag());
+        Assert.assertEquals("version must be the count", 101, this.bookChangeTracker
+                .getCollectionVersion());
+    }
+
+    /**
+     * Tests that a change made through this instance is seen at once
+     */
+    @Test
+    public void testSeesLocalChangesAtOnce() {
+        String etag = this.bookChangeTracker.getCollectionETag();
+
+        this.changes++;
+        this.bookChangeTracker.booksChanged();
+        Assert.assertNotEquals("change must be seen", etag, this.bookChangeTracker
+                .getCollectionETag());
+        Assert.assertEquals("count must be read again", 2, this.reads);
+    }
+}
\ No newline at end of file
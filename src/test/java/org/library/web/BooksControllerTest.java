@@ -4,14 +4,25 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
 import org.apache.commons.lang.StringUtils;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.smile.SmileFactory;
+import org.codehaus.jackson.type.TypeReference;
+import org.hibernate.Session;
+import org.hibernate.stat.Statistics;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -19,15 +30,20 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.library.WebApplicationInitializer;
 import org.library.domain.Book;
+import org.library.service.BookChangeCounter;
+import org.library.service.BookService;
+import org.library.transfer.BookFormat;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
-import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
@@ -61,7 +77,19 @@ public class BooksControllerTest {
     @Autowired
     private BooksController bookController;
 
-    private MockMvc mockMvc;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private BookChangeCounter bookChangeCounter;
+
+    private AsyncMockMvc mockMvc;
 
     @BeforeClass
     public static void setupBeforeClass() {
@@ -71,8 +99,10 @@ public class BooksControllerTest {
     @Before
     public void setupBefore() {
         // Create our MockMvc utilizing the current WebApplicationContext. This will give
-        // us access to all the endpoints configured within our application.
-        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.webApplicationContext).build();
+        // us access to all the endpoints configured within our application, with the results of
+        // asynchronous requests dispatched for us.
+        this.mockMvc = new AsyncMockMvc(MockMvcBuilders.webAppContextSetup(
+                this.webApplicationContext).build());
     }
 
     /**
@@ -99,6 +129,259 @@ public class BooksControllerTest {
         Assert.assertTrue("there must be at least one book", books.size() > 0);
     }
 
+    /**
+     * Tests the GET action for a page of {@link Book}s, following the <code>next</code> link to
+     * the following page
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGET_PageOfBooks() throws Exception {
+        // make sure there are at least two books
+        Book book = new Book();
+        book.setTitle("Where the Wild Things Are");
+        book.setAuthor("Maurice Sendak");
+        this.mockMvc.perform(
+                post("/books").contentType(MediaType.APPLICATION_JSON).content(
+                        objectMapper.writeValueAsBytes(book))).andExpect(status().isCreated());
+
+        // request the first page with a single book
+        ResultActions actions = this.mockMvc.perform(get("/books?limit=1"));
+        actions.andExpect(status().isOk());
+        String content = actions.andReturn().getResponse().getContentAsString();
+        List<Book> books = this.convertToBooks(content);
+        Assert.assertEquals("there must be exactly one book", 1, books.size());
+
+        // follow the next link to the second page
+        String next = this.findLink(content, "next");
+        Assert.assertNotNull("next link must exist", next);
+        Assert.assertTrue("next link must include the cursor",
+                next.contains("after=" + books.get(0).getId()));
+        actions = this.mockMvc.perform(get(next.substring(next.indexOf("/books"))));
+        actions.andExpect(status().isOk());
+        List<Book> nextBooks = this.convertToBooks(actions.andReturn().getResponse()
+                .getContentAsString());
+        Assert.assertEquals("there must be exactly one book", 1, nextBooks.size());
+        Assert.assertTrue("next page must start after the cursor",
+                nextBooks.get(0).getId() > books.get(0).getId());
+    }
+
+    /**
+     * Tests the error case of GET on a page of {@link Book}s with an invalid limit
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGET_PageOfBooksInvalidLimit() throws Exception {
+        ResultActions actions = this.mockMvc.perform(get("/books?limit=0"));
+
+        // verify the response is bad request
+        actions.andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Tests the GET action for a page of {@link Book}s held in the query cache, once one of its
+     * {@link Book}s has been deleted without the cache being told: the page must be read from the
+     * database again, rather than failing on the {@link Book} which can't be found
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGET_PageOfBooksDeletedBehindCache() throws Exception {
+        Book book = new Book();
+        book.setTitle("Caps for Sale");
+        book.setAuthor("Esphyr Slobodkina");
+        Book createdBook = this.convertToBook(this.mockMvc.perform(
+                post("/books").contentType(MediaType.APPLICATION_JSON).content(
+                        objectMapper.writeValueAsBytes(book))).andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString());
+
+        // cache the page holding the book
+        String url = "/books?after=" + (createdBook.getId() - 1) + "&limit=1";
+        List<Book> books = this.convertToBooks(this.mockMvc.perform(get(url)).andExpect(
+                status().isOk()).andReturn().getResponse().getContentAsString());
+        Assert.assertEquals("id must match", createdBook.getId(), books.get(0).getId());
+
+        // delete the book behind Hibernate's back, as a concurrent delete may have done before
+        // the page was cached
+        new JdbcTemplate(this.dataSource).update("delete from Book where id = ?",
+                createdBook.getId());
+        this.entityManagerFactory.getCache().evict(Book.class, createdBook.getId());
+
+        // verify the page is read again, without the deleted book
+        books = this.convertToBooks(this.mockMvc.perform(get(url)).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+        for (Book pageBook : books) {
+            Assert.assertNotEquals("book must be deleted", createdBook.getId(), pageBook.getId());
+        }
+    }
+
+    /**
+     * Tests the GET action for {@link Book}s filtered by author and title (exactly and by prefix)
+     * and sorted, following the <code>next</code> link to the following page
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGET_FilterAndSortBooks() throws Exception {
+        String[][] titlesAndAuthors = { {"Frog and Toad Together", "Arnold Lobel"},
+                {"Owl at Home", "Arnold Lobel"}, {"Frog and Toad Are Friends", "Arnold Lobel"},
+                {"Frog and Toad All Year", "Arnold Lobelson"}};
+        for (String[] titleAndAuthor : titlesAndAuthors) {
+            Book book = new Book();
+            book.setTitle(titleAndAuthor[0]);
+            book.setAuthor(titleAndAuthor[1]);
+            this.mockMvc.perform(
+                    post("/books").contentType(MediaType.APPLICATION_JSON).content(
+                            objectMapper.writeValueAsBytes(book))).andExpect(status().isCreated());
+        }
+
+        // an exact author, sorted by title
+        ResultActions actions = this.mockMvc.perform(get("/books?author=Arnold Lobel&sort=title"));
+        actions.andExpect(status().isOk());
+        List<Book> books = this.convertToBooks(actions.andReturn().getResponse()
+                .getContentAsString());
+        Assert.assertEquals("there must be three books", 3, books.size());
+        Assert.assertEquals("books must be sorted", "Frog and Toad Are Friends", books.get(0)
+                .getTitle());
+        Assert.assertEquals("books must be sorted", "Frog and Toad Together", books.get(1)
+                .getTitle());
+        Assert.assertEquals("books must be sorted", "Owl at Home", books.get(2).getTitle());
+
+        // an author and title prefix combined, sorted by author and then descending title
+        actions = this.mockMvc.perform(get("/books?author=Arnold Lob*&title=Frog*"
+                + "&sort=-author,-title&limit=2"));
+        actions.andExpect(status().isOk());
+        String content = actions.andReturn().getResponse().getContentAsString();
+        books = this.convertToBooks(content);
+        Assert.assertEquals("there must be two books", 2, books.size());
+        Assert.assertEquals("books must be sorted", "Frog and Toad All Year", books.get(0)
+                .getTitle());
+        Assert.assertEquals("books must be sorted", "Frog and Toad Together", books.get(1)
+                .getTitle());
+
+        // follow the next link to the last matching book
+        String next = this.findLink(content, "next");
+        Assert.assertNotNull("next link must exist", next);
+        Assert.assertTrue("next link must include the offset", next.contains("offset=2"));
+        actions = this.mockMvc.perform(get(next.substring(next.indexOf("/books"))));
+        actions.andExpect(status().isOk());
+        books = this.convertToBooks(actions.andReturn().getResponse().getContentAsString());
+        Assert.assertEquals("there must be one book", 1, books.size());
+        Assert.assertEquals("books must be sorted", "Frog and Toad Are Friends", books.get(0)
+                .getTitle());
+
+        // LIKE wildcards in a prefix are matched literally
+        actions = this.mockMvc.perform(get("/books").param("title", "Frog%*"));
+        actions.andExpect(status().isOk());
+        Assert.assertTrue("there must be no books", this.convertToBooks(
+                actions.andReturn().getResponse().getContentAsString()).isEmpty());
+
+        // unknown sort fields, and cursors with filters, are rejected
+        this.mockMvc.perform(get("/books?sort=publisher")).andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/books?author=Arnold Lobel&after=1")).andExpect(
+                status().isBadRequest());
+    }
+
+    /**
+     * Tests the GET action streaming all {@link Book}s
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGET_StreamAllBooks() throws Exception {
+        ResultActions actions = this.mockMvc.perform(get("/books?stream=true"));
+
+        // verify the response is OK
+        actions.andExpect(status().isOk());
+        MvcResult result = actions.andReturn();
+        Assert.assertEquals("content type must be JSON", MediaType.APPLICATION_JSON_VALUE, result
+                .getResponse().getContentType());
+        String content = result.getResponse().getContentAsString();
+        Assert.assertTrue("content must exist", StringUtils.isNotBlank(content));
+
+        // the streamed content must match the format of the non-streamed content
+        List<Book> books = this.convertToBooks(content);
+        Assert.assertTrue("there must be at least one book", books.size() > 0);
+        Assert.assertEquals("first book must be the preloaded book", (long) 1L,
+                (long) books.get(0).getId());
+    }
+
+    /**
+     * Tests the GET action to search {@link Book}s, verifying the results are ranked and follow
+     * the {@link Book}s as they're created, updated and deleted
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGET_SearchBooks() throws Exception {
+        // the default book is found by title and author, regardless of case
+        List<Book> books = this.convertToBooks(this.mockMvc
+                .perform(get("/books/search").param("q", "ELEGANT greene"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString());
+        Assert.assertEquals("one book must be found", 1, books.size());
+        Assert.assertEquals("id must match", Long.valueOf(1), books.get(0).getId());
+
+        // create two books, the one with the term in the title must rank first
+        Book byAuthor = new Book();
+        byAuthor.setTitle("Blueberries for Sal");
+        byAuthor.setAuthor("Robert Zebulon");
+        Book byTitle = new Book();
+        byTitle.setTitle("Zebulon the Zebra");
+        byTitle.setAuthor("Jane Doe");
+        byAuthor = this.convertToBook(this.mockMvc
+                .perform(post("/books").contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsBytes(byAuthor)))
+                .andExpect(status().isCreated()).andReturn().getResponse().getContentAsString());
+        byTitle = this.convertToBook(this.mockMvc
+                .perform(post("/books").contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsBytes(byTitle)))
+                .andExpect(status().isCreated()).andReturn().getResponse().getContentAsString());
+        books = this.convertToBooks(this.mockMvc.perform(get("/books/search").param("q", "zebulon"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString());
+        Assert.assertEquals("two books must be found", 2, books.size());
+        Assert.assertEquals("title match must rank first", byTitle.getId(), books.get(0).getId());
+
+        // update one book and delete the other, the search must follow
+        byTitle.setTitle("Zebras");
+        this.mockMvc.perform(
+                put("/books/" + byTitle.getId()).contentType(MediaType.APPLICATION_JSON).content(
+                        objectMapper.writeValueAsBytes(byTitle))).andExpect(status().isOk());
+        this.mockMvc.perform(delete("/books/" + byAuthor.getId())).andExpect(status().isOk());
+        books = this.convertToBooks(this.mockMvc.perform(get("/books/search").param("q", "zebulon"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString());
+        Assert.assertTrue("no books must be found", books.isEmpty());
+        books = this.convertToBooks(this.mockMvc.perform(get("/books/search").param("q", "zebras"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString());
+        Assert.assertEquals("updated book must be found", 1, books.size());
+    }
+
+    /**
+     * Tests the GET action to suggest {@link Book} titles and authors
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGET_SuggestBooks() throws Exception {
+        // the default book is suggested by title and by author
+        String content = this.mockMvc.perform(get("/books/suggest").param("prefix", "the eleg"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        List<Map<String, Object>> suggestions = this.convertToResults(content);
+        Assert.assertEquals("one title must be suggested", 1, suggestions.size());
+        Assert.assertTrue("title must be suggested", suggestions.get(0).get("text").toString()
+                .startsWith("The Elegant Universe"));
+        content = this.mockMvc
+                .perform(get("/books/suggest").param("prefix", "bri").param("field", "author"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        suggestions = this.convertToResults(content);
+        Assert.assertEquals("author must be suggested", "Brian Greene", suggestions.get(0).get(
+                "text"));
+
+        // unknown fields are rejected
+        this.mockMvc.perform(get("/books/suggest").param("prefix", "bri").param("field", "isbn"))
+                .andExpect(status().isBadRequest());
+    }
+
     /**
      * Tests the GET action for a single {@link Book} that was preloaded in the database prior to
      * running any tests (in the "development" profile)
@@ -127,6 +410,333 @@ public class BooksControllerTest {
         Assert.assertEquals("author must match", "Brian Greene", book.getAuthor());
     }
 
+    /**
+     * Tests the GET actions for a single {@link Book} and all {@link Book}s asking for Smile
+     * (binary JSON), which must hold the same content as the JSON responses
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGET_Smile() throws Exception {
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+
+        // perform the GET request for a single book
+        MvcResult result = this.mockMvc.perform(
+                get("/books/1").accept(MappingJacksonSmileHttpMessageConverter.APPLICATION_SMILE))
+                .andExpect(status().isOk()).andReturn();
+        Assert.assertEquals("content type must be Smile",
+                MappingJacksonSmileHttpMessageConverter.APPLICATION_SMILE,
+                MediaType.valueOf(result.getResponse().getContentType()));
+        Object resource = smileMapper.readValue(result.getResponse().getContentAsByteArray(),
+                Map.class);
+        Book book = this.convertToBook(objectMapper.writeValueAsString(resource));
+        Assert.assertEquals("id must match", (long) 1L, (long) book.getId());
+        Assert.assertEquals("author must match", "Brian Greene", book.getAuthor());
+
+        // perform the GET request for all books
+        result = this.mockMvc.perform(
+                get("/books").accept(MappingJacksonSmileHttpMessageConverter.APPLICATION_SMILE))
+                .andExpect(status().isOk()).andReturn();
+        resource = smileMapper.readValue(result.getResponse().getContentAsByteArray(), Map.class);
+        List<Book> books = this.convertToBooks(objectMapper.writeValueAsString(resource));
+        Assert.assertTrue("there must be at least one book", books.size() > 0);
+
+        // JSON must remain the default
+        result = this.mockMvc.perform(get("/books/1").accept(MediaType.ALL))
+                .andExpect(status().isOk()).andReturn();
+        Assert.assertEquals("content type must be JSON", MediaType.APPLICATION_JSON,
+                MediaType.valueOf(result.getResponse().getContentType()));
+    }
+
+    /**
+     * Tests the conditional GET action for a single {@link Book}, which must not be returned when
+     * the client already holds the current version
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGET_SingleBookNotModified() throws Exception {
+        ResultActions actions = this.mockMvc.perform(get("/books/1"));
+        actions.andExpect(status().isOk());
+        String etag = actions.andReturn().getResponse().getHeader("ETag");
+        Assert.assertTrue("ETag must exist", StringUtils.isNotBlank(etag));
+
+        // perform the GET request with the ETag
+        Statistics statistics = this.getStatistics();
+        long loads = statistics.getEntityLoadCount() + statistics.getSecondLevelCacheHitCount();
+        actions = this.mockMvc.perform(get("/books/1").header("If-None-Match", etag));
+
+        // verify the response is not modified, without content or loading the book
+        actions.andExpect(status().isNotModified());
+        MvcResult result = actions.andReturn();
+        Assert.assertEquals("ETag must match", etag, result.getResponse().getHeader("ETag"));
+        Assert.assertTrue("content must not exist",
+                StringUtils.isBlank(result.getResponse().getContentAsString()));
+        Assert.assertEquals("book must not be loaded", loads, statistics.getEntityLoadCount()
+                + statistics.getSecondLevelCacheHitCount());
+    }
+
+    /**
+     * Tests the conditional GET action for a single {@link Book} which has been deleted and
+     * created again with the same ID, which must not match the ETag of the {@link Book} before,
+     * as its version starts above any the {@link Book} before reached
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGET_SingleBookCreatedAgain() throws Exception {
+        Book book = new Book();
+        book.setId(900001L);
+        book.setTitle("Harold and the Purple Crayon");
+        book.setAuthor("Crockett Johnson");
+        String etag = this.mockMvc.perform(
+                post("/books").contentType(MediaType.APPLICATION_JSON).content(
+                        objectMapper.writeValueAsBytes(book))).andExpect(status().isCreated())
+                .andReturn().getResponse().getHeader("ETag");
+        Assert.assertTrue("ETag must exist", StringUtils.isNotBlank(etag));
+
+        // update the book, so its version moves on from the one it was created at
+        String url = "/books/" + book.getId();
+        book.setTitle("Harold's Trip to the Sky");
+        etag = this.mockMvc.perform(
+                put(url).contentType(MediaType.APPLICATION_JSON).content(
+                        objectMapper.writeValueAsBytes(book))).andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        // delete the book, and create it again
+        this.mockMvc.perform(delete(url)).andExpect(status().isOk());
+        book.setTitle("Harold's Fairy Tale");
+        String createdETag = this.mockMvc.perform(
+                post("/books").contentType(MediaType.APPLICATION_JSON).content(
+                        objectMapper.writeValueAsBytes(book))).andExpect(status().isCreated())
+                .andReturn().getResponse().getHeader("ETag");
+        Assert.assertTrue("version must start above the one before",
+                this.parseVersion(createdETag) > this.parseVersion(etag));
+
+        // the book held for the ETag is gone, so the new one must be returned
+        MvcResult result = this.mockMvc.perform(get(url).header("If-None-Match", etag))
+                .andExpect(status().isOk()).andReturn();
+        Assert.assertNotEquals("ETag must change", etag, result.getResponse().getHeader("ETag"));
+        Assert.assertEquals("title must match", "Harold's Fairy Tale",
+                this.convertToBook(result.getResponse().getContentAsString()).getTitle());
+
+        // delete the book, so books created by other tests still have the highest IDs
+        this.mockMvc.perform(delete(url)).andExpect(status().isOk());
+    }
+
+    /**
+     * Tests the conditional GET action for all {@link Book}s, which must be returned again once a
+     * {@link Book} has been created
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGET_AllBooksNotModifiedUntilChanged() throws Exception {
+        String etag = this.mockMvc.perform(get("/books")).andExpect(status().isOk()).andReturn()
+                .getResponse().getHeader("ETag");
+        Assert.assertTrue("ETag must exist", StringUtils.isNotBlank(etag));
+
+        // nothing has changed, so the books must not be returned
+        this.mockMvc.perform(get("/books").header("If-None-Match", etag)).andExpect(
+                status().isNotModified());
+
+        // create a book
+        Book book = new Book();
+        book.setTitle("Goodnight Moon");
+        book.setAuthor("Margaret Wise Brown");
+        this.mockMvc.perform(
+                post("/books").contentType(MediaType.APPLICATION_JSON).content(
+                        objectMapper.writeValueAsBytes(book))).andExpect(status().isCreated());
+
+        // the books have changed, so they must be returned with a new ETag
+        MvcResult result = this.mockMvc.perform(get("/books").header("If-None-Match", etag))
+                .andExpect(status().isOk()).andReturn();
+        Assert.assertNotEquals("ETag must change", etag, result.getResponse().getHeader("ETag"));
+    }
+
+    /**
+     * Tests the conditional GET action for all {@link Book}s once a {@link Book} has been created
+     * through another instance, which shares the count of the changes through the database: both
+     * instances must hand out the same ETag, and this one must see the change within the max age
+     * of its count, rebuilding its snapshot
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGET_AllBooksChangedThroughAnotherInstance() throws Exception {
+        BookChangeTracker otherTracker = new BookChangeTracker(this.bookChangeCounter, 0);
+        String etag = this.mockMvc.perform(get("/books")).andExpect(status().isOk()).andReturn()
+                .getResponse().getHeader("ETag");
+        Assert.assertEquals("ETag must be shared", etag, otherTracker.getCollectionETag());
+        int count = this.convertToBooks(
+                this.mockMvc.perform(get("/books")).andExpect(status().isOk()).andReturn()
+                        .getResponse().getContentAsString()).size();
+
+        // create a book through the other instance, bypassing this one
+        Book book = new Book();
+        book.setTitle("Harold and the Purple Crayon");
+        book.setAuthor("Crockett Johnson");
+        this.bookService.createBook(book);
+        String otherETag = otherTracker.getCollectionETag();
+        Assert.assertNotEquals("ETag must change", etag, otherETag);
+
+        // once the count this instance read is too old, the change must be seen
+        Thread.sleep(BookChangeTracker.DEFAULT_MAX_AGE);
+        MvcResult result = this.mockMvc.perform(get("/books").header("If-None-Match", etag))
+                .andExpect(status().isOk()).andReturn();
+        Assert.assertEquals("ETag must be shared", otherETag, result.getResponse()
+                .getHeader("ETag"));
+        List<Book> books = this.convertToBooks(result.getResponse().getContentAsString());
+        Assert.assertEquals("created book must be returned", count + 1, books.size());
+        Assert.assertEquals("created book must be last", "Crockett Johnson",
+                books.get(books.size() - 1).getAuthor());
+    }
+
+    /**
+     * Tests the GET action for all {@link Book}s is answered from the same snapshot (in JSON and
+     * Smile) until a {@link Book} has been created
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGET_AllBooksSnapshot() throws Exception {
+        MvcResult result = this.mockMvc.perform(get("/books")).andExpect(status().isOk())
+                .andReturn();
+        MvcResult cachedResult = this.mockMvc.perform(get("/books")).andExpect(status().isOk())
+                .andReturn();
+        Assert.assertEquals("ETag must match", result.getResponse().getHeader("ETag"),
+                cachedResult.getResponse().getHeader("ETag"));
+        Assert.assertEquals("content type must match", result.getResponse().getContentType(),
+                cachedResult.getResponse().getContentType());
+        Assert.assertArrayEquals("content must match", result.getResponse()
+                .getContentAsByteArray(), cachedResult.getResponse().getContentAsByteArray());
+        int count = this.convertToBooks(result.getResponse().getContentAsString()).size();
+
+        // the same snapshot must be served as Smile
+        result = this.mockMvc.perform(
+                get("/books").accept(MappingJacksonSmileHttpMessageConverter.APPLICATION_SMILE))
+                .andExpect(status().isOk()).andReturn();
+        Assert.assertEquals("content type must be Smile",
+                MappingJacksonSmileHttpMessageConverter.APPLICATION_SMILE,
+                MediaType.valueOf(result.getResponse().getContentType()));
+        Assert.assertEquals("ETag must match", cachedResult.getResponse().getHeader("ETag"),
+                result.getResponse().getHeader("ETag"));
+
+        // create a book, which must be part of the next response
+        Book book = new Book();
+        book.setTitle("The Very Hungry Caterpillar");
+        book.setAuthor("Eric Carle");
+        this.mockMvc.perform(
+                post("/books").contentType(MediaType.APPLICATION_JSON).content(
+                        objectMapper.writeValueAsBytes(book))).andExpect(status().isCreated());
+        result = this.mockMvc.perform(get("/books")).andExpect(status().isOk()).andReturn();
+        Assert.assertNotEquals("ETag must change", cachedResult.getResponse().getHeader("ETag"),
+                result.getResponse().getHeader("ETag"));
+        List<Book> books = this.convertToBooks(result.getResponse().getContentAsString());
+        Assert.assertEquals("created book must be returned", count + 1, books.size());
+        Assert.assertEquals("created book must be last", "Eric Carle", books.get(books.size() - 1)
+                .getAuthor());
+    }
+
+    /**
+     * Tests the GET actions for all {@link Book}s, a page of them and a single {@link Book} with
+     * the <code>fields</code> parameter, which must return only the requested fields (and the ID)
+     * 
+     * @throws Exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGET_SparseFieldsets() throws Exception {
+        // all books with only their title
+        String content = this.mockMvc.perform(get("/books").param("fields", "title"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        List<Map<String, Object>> books = (List<Map<String, Object>>) objectMapper.readValue(
+                content, Map.class).get("content");
+        Assert.assertTrue("there must be at least one book", books.size() > 0);
+        Assert.assertEquals("only the id and title must be returned", Arrays.asList("id",
+                "title"), new ArrayList<String>(books.get(0).keySet()));
+
+        // a page of books with their author and title, linking to the next page
+        content = this.mockMvc.perform(get("/books?fields=author,title&limit=1"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        books = (List<Map<String, Object>>) objectMapper.readValue(content, Map.class).get(
+                "content");
+        Assert.assertEquals("there must be exactly one book", 1, books.size());
+        Assert.assertEquals("fields must be in order", Arrays.asList("id", "title", "author"),
+                new ArrayList<String>(books.get(0).keySet()));
+        String next = this.findLink(content, "next");
+        Assert.assertTrue("next link must keep the fields", next.contains("fields=author,title"));
+
+        // a single book with only its author, carrying the ETag of the whole book
+        MvcResult result = this.mockMvc.perform(get("/books/1").param("fields", "author"))
+                .andExpect(status().isOk()).andReturn();
+        Map<String, Object> book = objectMapper.readValue(result.getResponse()
+                .getContentAsString(), Map.class);
+        Assert.assertEquals("only the id and author must be returned", 2, book.size());
+        Assert.assertEquals("id must match", 1, book.get("id"));
+        Assert.assertEquals("author must match", "Brian Greene", book.get("author"));
+        Assert.assertEquals("ETag must match", this.mockMvc.perform(get("/books/1")).andReturn()
+                .getResponse().getHeader("ETag"), result.getResponse().getHeader("ETag"));
+
+        // unknown fields and books are rejected
+        this.mockMvc.perform(get("/books").param("fields", "title,isbn")).andExpect(
+                status().isBadRequest());
+        this.mockMvc.perform(get("/books/1").param("fields", "version")).andExpect(
+                status().isBadRequest());
+        this.mockMvc.perform(get("/books/99").param("fields", "title")).andExpect(
+                status().isNotFound());
+    }
+
+    /**
+     * Tests the GET action for only some fields of {@link Book}s filtered by author and title and
+     * sorted, following the <code>next</code> link to the following page
+     * 
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testGET_FilterAndSortBookFields() throws Exception {
+        String[] titles = {"Little Bear", "Father Bear Comes Home", "Little Bear's Visit"};
+        for (String title : titles) {
+            Book book = new Book();
+            book.setTitle(title);
+            book.setAuthor("Else Holmelund Minarik");
+            this.mockMvc.perform(
+                    post("/books").contentType(MediaType.APPLICATION_JSON).content(
+                            objectMapper.writeValueAsBytes(book))).andExpect(status().isCreated());
+        }
+
+        // the titles of an author's books by prefix, sorted by descending title
+        String content = this.mockMvc.perform(
+                get("/books?fields=title&author=Else Holmelund*&title=Little*&sort=-title"
+                        + "&limit=1")).andExpect(status().isOk()).andReturn().getResponse()
+                .getContentAsString();
+        List<Map<String, Object>> books = (List<Map<String, Object>>) objectMapper.readValue(
+                content, Map.class).get("content");
+        Assert.assertEquals("there must be exactly one book", 1, books.size());
+        Assert.assertEquals("only the id and title must be returned", Arrays.asList("id",
+                "title"), new ArrayList<String>(books.get(0).keySet()));
+        Assert.assertEquals("books must be sorted", "Little Bear's Visit", books.get(0).get(
+                "title"));
+
+        // follow the next link to the other matching book
+        String next = this.findLink(content, "next");
+        Assert.assertNotNull("next link must exist", next);
+        Assert.assertTrue("next link must include the offset", next.contains("offset=1"));
+        content = this.mockMvc.perform(get(next.substring(next.indexOf("/books"))))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        books = (List<Map<String, Object>>) objectMapper.readValue(content, Map.class).get(
+                "content");
+        Assert.assertEquals("there must be exactly one book", 1, books.size());
+        Assert.assertEquals("books must be sorted", "Little Bear", books.get(0).get("title"));
+
+        // unknown sort fields, and cursors with filters, are rejected
+        this.mockMvc.perform(get("/books?fields=title&sort=publisher")).andExpect(
+                status().isBadRequest());
+        this.mockMvc.perform(get("/books?fields=title&title=Little Bear&after=1")).andExpect(
+                status().isBadRequest());
+    }
+
     /**
      * Tests the error case of GET on a single {@link Book} that does not exist
      * 
@@ -175,6 +785,42 @@ public class BooksControllerTest {
         Assert.assertEquals("author must match", author, createdBook.getAuthor());
     }
 
+    /**
+     * Tests the error case of the POST action by attempting to create a {@link Book} with the ID
+     * of an existing {@link Book}, which has been updated since it was created
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testPOST_CreateBookThatExists() throws Exception {
+        Book book = new Book();
+        book.setTitle("Goodnight Moon");
+        book.setAuthor("Margaret Wise Brown");
+        MvcResult result = this.mockMvc.perform(post("/books").contentType(
+                MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsBytes(book)))
+                .andExpect(status().isCreated()).andReturn();
+        Book createdBook = this.convertToBook(result.getResponse().getContentAsString());
+        String url = "/books/" + createdBook.getId();
+
+        // update the book, so it's no longer at its first version
+        createdBook.setTitle("The Runaway Bunny");
+        this.mockMvc.perform(
+                put(url).contentType(MediaType.APPLICATION_JSON).content(
+                        objectMapper.writeValueAsBytes(createdBook))).andExpect(status().isOk());
+
+        // perform the POST request with the ID of the book
+        createdBook.setTitle("Big Red Barn");
+        this.mockMvc.perform(
+                post("/books").contentType(MediaType.APPLICATION_JSON).content(
+                        objectMapper.writeValueAsBytes(createdBook))).andExpect(
+                status().isConflict());
+
+        // verify the book was left as it was
+        result = this.mockMvc.perform(get(url)).andExpect(status().isOk()).andReturn();
+        Assert.assertEquals("title must match", "The Runaway Bunny",
+                this.convertToBook(result.getResponse().getContentAsString()).getTitle());
+    }
+
     /**
      * Tests the PUT action by first creating a {@link Book}, and then updating this {@link Book}
      * 
@@ -208,10 +854,14 @@ public class BooksControllerTest {
         actions = this.mockMvc.perform(put("/books/" + createdBook.getId()).contentType(
                 MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsBytes(createdBook)));
 
-        // verify the response is OK
+        // verify the response is OK, with the ETag of the new version though none was expected
         actions.andExpect(status().isOk());
         result = actions.andReturn();
         Assert.assertNotNull("result must not be null", result);
+        String etag = result.getResponse().getHeader("ETag");
+        Assert.assertTrue("ETag must exist", StringUtils.isNotBlank(etag));
+        Assert.assertEquals("ETag must match the book read back", etag, this.mockMvc.perform(
+                get("/books/" + createdBook.getId())).andReturn().getResponse().getHeader("ETag"));
         content = result.getResponse().getContentAsString();
         Assert.assertTrue("content must exist", StringUtils.isNotBlank(content));
 
@@ -247,6 +897,136 @@ public class BooksControllerTest {
         actions.andExpect(status().is(404));
     }
 
+    /**
+     * Tests that updating a {@link Book} evicts only that {@link Book} from the second-level
+     * cache, leaving the other cached {@link Book}s in place
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testPUT_UpdateBookKeepsOtherBooksCached() throws Exception {
+        Book book = new Book();
+        book.setTitle("Madeline");
+        book.setAuthor("Ludwig Bemelmans");
+        Book cachedBook = this.convertToBook(this.mockMvc.perform(
+                post("/books").contentType(MediaType.APPLICATION_JSON).content(
+                        objectMapper.writeValueAsBytes(book))).andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString());
+        book.setTitle("Madeline's Rescue");
+        Book updatedBook = this.convertToBook(this.mockMvc.perform(
+                post("/books").contentType(MediaType.APPLICATION_JSON).content(
+                        objectMapper.writeValueAsBytes(book))).andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString());
+
+        // make sure the first book is cached
+        this.mockMvc.perform(get("/books/" + cachedBook.getId())).andExpect(status().isOk());
+
+        // update the second book
+        updatedBook.setTitle("Madeline and the Gypsies");
+        this.mockMvc.perform(
+                put("/books/" + updatedBook.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsBytes(updatedBook))).andExpect(
+                status().isOk());
+
+        // the first book must still be read from the cache
+        Statistics statistics = this.getStatistics();
+        long hits = statistics.getSecondLevelCacheHitCount();
+        this.mockMvc.perform(get("/books/" + cachedBook.getId())).andExpect(status().isOk());
+        Assert.assertTrue("book must still be cached",
+                statistics.getSecondLevelCacheHitCount() > hits);
+
+        // while the second book must be read as updated
+        MvcResult result = this.mockMvc.perform(get("/books/" + updatedBook.getId()))
+                .andExpect(status().isOk()).andReturn();
+        Assert.assertEquals("title must match", "Madeline and the Gypsies",
+                this.convertToBook(result.getResponse().getContentAsString()).getTitle());
+    }
+
+    /**
+     * Tests the PATCH action by creating a {@link Book} and then patching its title, verifying the
+     * author is left as it was.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testPATCH_CreateAndPatchBook() throws Exception {
+        Book book = new Book();
+        book.setTitle("Goodnight Moon");
+        book.setAuthor("Margaret Wise Brown");
+
+        // perform the POST request
+        MvcResult result = this.mockMvc.perform(post("/books").contentType(
+                MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsBytes(book)))
+                .andExpect(status().isCreated()).andReturn();
+        Book createdBook = this.convertToBook(result.getResponse().getContentAsString());
+
+        // perform the PATCH to change only the title
+        String patchedTitle = "Goodnight Moon (Board Book)";
+        Map<String, Object> patch = new HashMap<String, Object>();
+        patch.put("title", patchedTitle);
+        result = this.mockMvc.perform(this.createPatchRequest(createdBook.getId(), patch))
+                .andExpect(status().isOk()).andReturn();
+        Book patchedBook = this.convertToBook(result.getResponse().getContentAsString());
+
+        // verify the book details
+        Assert.assertEquals("id must match", createdBook.getId(), patchedBook.getId());
+        Assert.assertEquals("title must be patched", patchedTitle, patchedBook.getTitle());
+        Assert.assertEquals("author must be unchanged", createdBook.getAuthor(),
+                patchedBook.getAuthor());
+
+        // verify the patch was saved
+        result = this.mockMvc.perform(get("/books/" + createdBook.getId()))
+                .andExpect(status().isOk()).andReturn();
+        Book foundBook = this.convertToBook(result.getResponse().getContentAsString());
+        Assert.assertEquals("title must be patched", patchedTitle, foundBook.getTitle());
+        Assert.assertEquals("author must be unchanged", createdBook.getAuthor(),
+                foundBook.getAuthor());
+    }
+
+    /**
+     * Tests the PATCH action with patches which must be rejected: an unknown field, the ID, a
+     * blank or removed (null) required field, and a body which isn't a JSON object
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testPATCH_InvalidPatch() throws Exception {
+        Map<String, Object> patch = new HashMap<String, Object>();
+        patch.put("publisher", "Random House");
+        this.mockMvc.perform(this.createPatchRequest(1L, patch)).andExpect(status().isBadRequest());
+
+        patch.clear();
+        patch.put("id", 2);
+        this.mockMvc.perform(this.createPatchRequest(1L, patch)).andExpect(status().isBadRequest());
+
+        patch.clear();
+        patch.put("title", " ");
+        this.mockMvc.perform(this.createPatchRequest(1L, patch)).andExpect(status().isBadRequest());
+
+        patch.clear();
+        patch.put("author", null);
+        this.mockMvc.perform(this.createPatchRequest(1L, patch)).andExpect(status().isBadRequest());
+
+        this.mockMvc.perform(
+                request(HttpMethod.PATCH, "/books/1").contentType(
+                        MediaType.valueOf(BooksController.MERGE_PATCH_JSON_VALUE)).content(
+                        "[\"title\"]")).andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Tests the PATCH action on a {@link Book} that does not exist, verifying the response is a
+     * 404
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testPATCH_PatchBookThatDoesNotExist() throws Exception {
+        Map<String, Object> patch = new HashMap<String, Object>();
+        patch.put("title", "Where the Wild Things Are");
+        this.mockMvc.perform(this.createPatchRequest(999999L, patch)).andExpect(
+                status().isNotFound());
+    }
+
     /**
      * Tests the DELETE action by creating a {@link Book} and then deleting it, verifying it is no
      * longer there.
@@ -288,6 +1068,77 @@ public class BooksControllerTest {
         actions.andExpect(status().is(404));
     }
 
+    /**
+     * Tests the conditional PUT, PATCH and DELETE actions, which must only change a {@link Book}
+     * when the <code>If-Match</code> header holds the ETag of its current version
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testIfMatch_ConditionalWrites() throws Exception {
+        Book book = new Book();
+        book.setTitle("The Very Hungry Caterpillar");
+        book.setAuthor("Eric Carle");
+
+        // perform the POST request
+        MvcResult result = this.mockMvc.perform(post("/books").contentType(
+                MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsBytes(book)))
+                .andExpect(status().isCreated()).andReturn();
+        String createdETag = result.getResponse().getHeader("ETag");
+        Assert.assertTrue("ETag must exist", StringUtils.isNotBlank(createdETag));
+        Book createdBook = this.convertToBook(result.getResponse().getContentAsString());
+        String url = "/books/" + createdBook.getId();
+
+        // the ETag of the created book must be the one read back
+        Assert.assertEquals("ETag must match", createdETag, this.mockMvc.perform(get(url))
+                .andExpect(status().isOk()).andReturn().getResponse().getHeader("ETag"));
+
+        // update the book with the current ETag
+        createdBook.setTitle("The Very Quiet Cricket");
+        result = this.mockMvc.perform(put(url).header("If-Match", createdETag).contentType(
+                MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsBytes(createdBook)))
+                .andExpect(status().isOk()).andReturn();
+        String updatedETag = result.getResponse().getHeader("ETag");
+        Assert.assertNotEquals("ETag must change", createdETag, updatedETag);
+
+        // the old ETag must no longer match any write
+        this.mockMvc.perform(
+                put(url).header("If-Match", createdETag).contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsBytes(createdBook))).andExpect(
+                status().isPreconditionFailed());
+        Map<String, Object> patch = new HashMap<String, Object>();
+        patch.put("title", "The Very Busy Spider");
+        this.mockMvc.perform(this.createPatchRequest(createdBook.getId(), patch).header("If-Match",
+                createdETag)).andExpect(status().isPreconditionFailed());
+        this.mockMvc.perform(delete(url).header("If-Match", createdETag)).andExpect(
+                status().isPreconditionFailed());
+        // and neither must an ETag which isn't of a book
+        this.mockMvc.perform(delete(url).header("If-Match", "W/" + updatedETag)).andExpect(
+                status().isPreconditionFailed());
+
+        // the failed writes must not have changed the book
+        result = this.mockMvc.perform(get(url)).andExpect(status().isOk()).andReturn();
+        Assert.assertEquals("ETag must match", updatedETag, result.getResponse().getHeader("ETag"));
+        Assert.assertEquals("title must match", "The Very Quiet Cricket",
+                this.convertToBook(result.getResponse().getContentAsString()).getTitle());
+
+        // patch the book with the current ETag
+        result = this.mockMvc.perform(
+                this.createPatchRequest(createdBook.getId(), patch).header("If-Match",
+                        updatedETag)).andExpect(status().isOk()).andReturn();
+        String patchedETag = result.getResponse().getHeader("ETag");
+        Assert.assertNotEquals("ETag must change", updatedETag, patchedETag);
+
+        // delete the book with the current ETag
+        this.mockMvc.perform(delete(url).header("If-Match", patchedETag)).andExpect(
+                status().isOk());
+
+        // a book which doesn't exist never matches
+        this.mockMvc.perform(delete(url).header("If-Match", "*")).andExpect(
+                status().isPreconditionFailed());
+        this.mockMvc.perform(delete(url)).andExpect(status().isNotFound());
+    }
+
     /**
      * Tests the error case of DELETE by attempting to delete a {@link Book} that does not exist
      * 
@@ -303,6 +1154,225 @@ public class BooksControllerTest {
         actions.andExpect(status().is(404));
     }
 
+    /**
+     * Tests the POST action of a bulk request, by creating {@link Book}s in one bulk request and
+     * updating and deleting them in another, along with operations that fail
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testPOST_BulkBooks() throws Exception {
+        List<Map<String, Object>> operations = new ArrayList<Map<String, Object>>();
+        operations.add(this.createOperation("create", null, "Corduroy", "Don Freeman"));
+        operations.add(this.createOperation("create", null, "Frederick", "Leo Lionni"));
+        operations.add(this.createOperation("create", null, "", "Leo Lionni"));
+        operations.add(this.createOperation("update", 99L, "Swimmy", "Leo Lionni"));
+        operations.add(this.createOperation("rename", 1L, null, null));
+
+        // perform the POST request
+        ResultActions actions = this.mockMvc.perform(post("/books/_bulk").contentType(
+                MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsBytes(operations)));
+
+        // verify the response is OK, with a result for each operation
+        actions.andExpect(status().isOk());
+        List<Map<String, Object>> results = this.convertToResults(actions.andReturn()
+                .getResponse().getContentAsString());
+        Assert.assertEquals("results must match operations", operations.size(), results.size());
+        Assert.assertEquals("create must succeed", 201, results.get(0).get("status"));
+        Assert.assertEquals("create must succeed", 201, results.get(1).get("status"));
+        Assert.assertEquals("invalid create must fail", 400, results.get(2).get("status"));
+        Assert.assertNotNull("invalid create must have an error", results.get(2).get("error"));
+        Assert.assertEquals("update must not find book", 404, results.get(3).get("status"));
+        Assert.assertEquals("unknown action must fail", 400, results.get(4).get("status"));
+        Long firstId = ((Number) results.get(0).get("id")).longValue();
+        Long secondId = ((Number) results.get(1).get("id")).longValue();
+
+        // update the first book and delete the second
+        operations.clear();
+        operations.add(this.createOperation("update", firstId, "A Pocket for Corduroy",
+                "Don Freeman"));
+        operations.add(this.createOperation("delete", secondId, null, null));
+        actions = this.mockMvc.perform(post("/books/_bulk").contentType(
+                MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsBytes(operations)));
+        actions.andExpect(status().isOk());
+        results = this.convertToResults(actions.andReturn().getResponse().getContentAsString());
+        Assert.assertEquals("update must succeed", 200, results.get(0).get("status"));
+        Assert.assertEquals("delete must succeed", 200, results.get(1).get("status"));
+
+        // verify the first book was updated, and the second no longer exists
+        actions = this.mockMvc.perform(get("/books/" + firstId));
+        actions.andExpect(status().isOk());
+        Book updatedBook = this.convertToBook(actions.andReturn().getResponse()
+                .getContentAsString());
+        Assert.assertEquals("title must match", "A Pocket for Corduroy", updatedBook.getTitle());
+        this.mockMvc.perform(get("/books/" + secondId)).andExpect(status().isNotFound());
+    }
+
+    /**
+     * Tests the GET action exporting all {@link Book}s, as newline delimited JSON and as CSV
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGET_ExportBooks() throws Exception {
+        ResultActions actions = this.mockMvc.perform(get("/books/export"));
+
+        // verify the response is OK, with a book per line
+        actions.andExpect(status().isOk());
+        MvcResult result = actions.andReturn();
+        Assert.assertTrue("content type must be NDJSON", result.getResponse().getContentType()
+                .startsWith(BookFormat.APPLICATION_NDJSON_VALUE));
+        Assert.assertNotNull("ETag must exist", result.getResponse().getHeader("ETag"));
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        Book firstBook = this.convertToBook(lines[0]);
+        Assert.assertEquals("first book must be the preloaded book", (long) 1L,
+                (long) firstBook.getId());
+        Assert.assertNotNull("title must exist", firstBook.getTitle());
+
+        // the same books are exported as CSV, following a header
+        actions = this.mockMvc.perform(get("/books/export?format=csv"));
+        actions.andExpect(status().isOk());
+        String[] records = actions.andReturn().getResponse().getContentAsString().split("\r\n");
+        Assert.assertEquals("header must match", "id,title,author", records[0]);
+        Assert.assertTrue("first book must be the preloaded book", records[1].startsWith("1,"));
+
+        // unknown formats are rejected
+        this.mockMvc.perform(get("/books/export?format=xls")).andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Tests the POST action importing {@link Book}s, by importing a file holding an invalid
+     * {@link Book} in chunks, resuming it from its checkpoint once corrected, and importing CSV
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testPOST_ImportBooks() throws Exception {
+        String json = "{\"id\":910001,\"title\":\"Corduroy\",\"author\":\"Don Freeman\"}\n"
+                + "{\"title\":\"Frederick\",\"author\":\"Leo Lionni\"}\n"
+                + "{\"id\":910002,\"title\":\"Swimmy\",\"author\":\"Leo Lionni\"}\n"
+                + "{\"id\":910003,\"title\":\"\",\"author\":\"Leo Lionni\"}\n";
+
+        // the first chunk commits, while the chunk holding the invalid book is rolled back
+        ResultActions actions = this.mockMvc.perform(post("/books/import?chunkSize=2")
+                .contentType(MediaType.parseMediaType(BookFormat.APPLICATION_NDJSON_VALUE))
+                .content(json.getBytes("UTF-8")));
+        actions.andExpect(status().isBadRequest());
+        Map<String, Object> importResult = this.convertToResult(actions.andReturn()
+                .getResponse().getContentAsString());
+        Assert.assertEquals("imported must match", 2, importResult.get("imported"));
+        Assert.assertEquals("checkpoint must match", 2, importResult.get("checkpoint"));
+        Assert.assertNotNull("error must exist", importResult.get("error"));
+        this.mockMvc.perform(get("/books/910001")).andExpect(status().isOk());
+        this.mockMvc.perform(get("/books/910002")).andExpect(status().isNotFound());
+
+        // resume from the checkpoint once the file is corrected
+        json = json.replace("\"title\":\"\"", "\"title\":\"Inch by Inch\"");
+        actions = this.mockMvc.perform(post("/books/import?chunkSize=2&skip=2").contentType(
+                MediaType.parseMediaType(BookFormat.APPLICATION_NDJSON_VALUE)).content(
+                json.getBytes("UTF-8")));
+        actions.andExpect(status().isOk());
+        importResult = this.convertToResult(actions.andReturn().getResponse()
+                .getContentAsString());
+        Assert.assertEquals("imported must match", 2, importResult.get("imported"));
+        Assert.assertEquals("checkpoint must match", 4, importResult.get("checkpoint"));
+        this.mockMvc.perform(get("/books/910003")).andExpect(status().isOk());
+
+        // import CSV, with the columns in another order, updating an existing book
+        String csv = "author,id,title\r\n" + "Don Freeman,910001,\"A Pocket for \"\"Corduroy\"\",\n"
+                + "the sequel\"\r\n";
+        actions = this.mockMvc.perform(post("/books/import").contentType(
+                MediaType.parseMediaType(BookFormat.TEXT_CSV_VALUE)).content(
+                csv.getBytes("UTF-8")));
+        actions.andExpect(status().isOk());
+        actions = this.mockMvc.perform(get("/books/910001"));
+        actions.andExpect(status().isOk());
+        Book updatedBook = this.convertToBook(actions.andReturn().getResponse()
+                .getContentAsString());
+        Assert.assertEquals("title must match", "A Pocket for \"Corduroy\",\nthe sequel",
+                updatedBook.getTitle());
+
+        // the updated book is exported quoted, as it was imported
+        actions = this.mockMvc.perform(get("/books/export?format=csv"));
+        Assert.assertTrue("book must be quoted", actions.andReturn().getResponse()
+                .getContentAsString().contains(
+                        "910001,\"A Pocket for \"\"Corduroy\"\",\nthe sequel\",Don Freeman"));
+
+        // delete the books with supplied IDs, which would otherwise follow any created later
+        for (long id = 910001L; id <= 910003L; id++) {
+            this.mockMvc.perform(delete("/books/" + id)).andExpect(status().isOk());
+        }
+    }
+
+    /**
+     * Internal method that creates a bulk operation, to be converted to JSON
+     * 
+     * @param action
+     *            The action of the operation
+     * @param id
+     *            The ID of the {@link Book} to update or delete
+     * @param title
+     *            The title of the {@link Book}, or <code>null</code> for no {@link Book}
+     * @param author
+     *            The author of the {@link Book}
+     * @return The bulk operation
+     */
+    protected Map<String, Object> createOperation(String action, Long id, String title,
+            String author) {
+        Map<String, Object> operation = new HashMap<String, Object>();
+        operation.put("action", action);
+        operation.put("id", id);
+        if (title != null) {
+            Map<String, String> book = new HashMap<String, String>();
+            book.put("title", title);
+            book.put("author", author);
+            operation.put("book", book);
+        }
+        return operation;
+    }
+
+    /**
+     * Internal method that converts a JSON {@link String} of a list of objects, such as bulk
+     * results, to a {@link List} of {@link Map}s
+     * 
+     * @param content
+     *            The list in JSON {@link String} format
+     * @return The list of objects
+     * @throws Exception
+     */
+    protected List<Map<String, Object>> convertToResults(String content) throws Exception {
+        return objectMapper.readValue(content, new TypeReference<List<Map<String, Object>>>() {
+        });
+    }
+
+    /**
+     * Internal method that converts a JSON {@link String} of an object, such as an import
+     * result, to a {@link Map}
+     * 
+     * @param content
+     *            The object in JSON {@link String} format
+     * @return The object
+     * @throws Exception
+     */
+    protected Map<String, Object> convertToResult(String content) throws Exception {
+        return objectMapper.readValue(content, new TypeReference<Map<String, Object>>() {
+        });
+    }
+
+    /**
+     * Returns the Hibernate {@link Statistics}, counting the {@link Book}s loaded
+     * 
+     * @return The {@link Statistics}
+     */
+    protected Statistics getStatistics() {
+        EntityManager entityManager = this.entityManagerFactory.createEntityManager();
+        try {
+            return entityManager.unwrap(Session.class).getSessionFactory().getStatistics();
+        } finally {
+            entityManager.close();
+        }
+    }
+
     /**
      * Internal method that converts a JSON {@link String} of a {@link Book} to a {@link Book}
      * object
@@ -321,6 +1391,42 @@ public class BooksControllerTest {
         return book;
     }
 
+    /**
+     * Internal method that parses the version of a {@link Book} from its ETag
+     * 
+     * @param etag
+     *            The ETag of a {@link Book}
+     * @return The version of the {@link Book}
+     */
+    protected long parseVersion(String etag) {
+        return Long.parseLong(etag.replace("\"", ""));
+    }
+
+    /**
+     * Internal method that finds the <code>href</code> of the top level link with the
+     * <code>rel</code> in the JSON {@link String} content
+     * 
+     * @param content
+     *            A resource in JSON {@link String} format
+     * @param rel
+     *            The rel of the link to find
+     * @return The <code>href</code> of the link, or <code>null</code> if not found
+     * @throws Exception
+     */
+    protected String findLink(String content, String rel) throws Exception {
+        @SuppressWarnings("unchecked")
+        Map<String, ?> resource = objectMapper.readValue(content, Map.class);
+        @SuppressWarnings("unchecked")
+        List<? extends Map<String, String>> links = (List<? extends Map<String, String>>) resource
+                .get("links");
+        for (Map<String, String> link : links) {
+            if (rel.equals(link.get("rel"))) {
+                return link.get("href");
+            }
+        }
+        return null;
+    }
+
     /**
      * Internal method that converts a JSON list of {@link Book}s into {@link Book} objects
      * 
@@ -346,4 +1452,21 @@ public class BooksControllerTest {
         return books;
     }
 
+    /**
+     * Internal method that builds a PATCH request applying the JSON merge <code>patch</code> to
+     * the {@link Book} with the <code>bookId</code>
+     * 
+     * @param bookId
+     *            The ID of the {@link Book} to patch
+     * @param patch
+     *            The fields to patch
+     * @return The PATCH request
+     * @throws Exception
+     */
+    protected MockHttpServletRequestBuilder createPatchRequest(Long bookId,
+            Map<String, Object> patch) throws Exception {
+        return request(HttpMethod.PATCH, "/books/" + bookId).contentType(
+                MediaType.valueOf(BooksController.MERGE_PATCH_JSON_VALUE)).content(
+                objectMapper.writeValueAsBytes(patch));
+    }
 }
\ No newline at end of file
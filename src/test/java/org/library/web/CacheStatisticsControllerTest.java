@@ -0,0 +1,83 @@
+package org.library.web;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.library.WebApplicationInitializer;
+import org.library.domain.Book;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * A test of the {@link CacheStatisticsController}, focusing on the "/cache" REST API endpoint
+ * 
+ * @author dylants
+ * 
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {WebApplicationInitializer.RootContextConfiguration.class,
+        WebApplicationInitializer.ServletContextConfiguration.class})
+@ActiveProfiles("development")
+@WebAppConfiguration
+public class CacheStatisticsControllerTest {
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    private AsyncMockMvc mockMvc;
+
+    @Before
+    public void setupBefore() {
+        this.mockMvc = new AsyncMockMvc(MockMvcBuilders.webAppContextSetup(
+                this.webApplicationContext).build());
+    }
+
+    /**
+     * Tests that reading the same {@link Book} twice is served from the second-level cache the
+     * second time
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGET_CacheStatistics() throws Exception {
+        this.mockMvc.perform(get("/books/1")).andExpect(status().isOk());
+        long hits = this.findBookRegionStatistic("hits");
+
+        this.mockMvc.perform(get("/books/1")).andExpect(status().isOk());
+        Assert.assertTrue("book must be read from the cache",
+                this.findBookRegionStatistic("hits") > hits);
+        Assert.assertTrue("book must be in the cache", this.findBookRegionStatistic("size") > 0);
+    }
+
+    /**
+     * Internal method that returns the value of the statistic of the {@link Book} cache region
+     * 
+     * @param statistic
+     *            The name of the statistic
+     * @return The value of the statistic
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    protected long findBookRegionStatistic(String statistic) throws Exception {
+        String content = this.mockMvc.perform(get("/cache")).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        Map<String, Object> statistics = this.objectMapper.readValue(content, Map.class);
+        Map<String, Object> regions = (Map<String, Object>) statistics.get("regions");
+        Map<String, Number> region = (Map<String, Number>) regions.get(Book.class.getName());
+        return region.get(statistic).longValue();
+    }
+}
@@ -0,0 +1,282 @@
+package org.library.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringUtils;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.library.service.BookChangeCounter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * A test of the {@link CompressionFilter}, and the {@link CompressingResponseWrapper} it
+ * compresses responses with
+ * 
+ * @author dylants
+ * 
+ */
+public class CompressionFilterTest {
+
+    private static final int MIN_COMPRESSION_SIZE = 100;
+
+    private long changes;
+    private BookChangeTracker bookChangeTracker;
+    private CompressionFilter compressionFilter;
+
+    @Before
+    public void setupBefore() {
+        BookChangeCounter bookChangeCounter = EasyMock.createMock(BookChangeCounter.class);
+        EasyMock.expect(bookChangeCounter.getChanges()).andStubAnswer(new IAnswer<Long>() {
+
+            @Override
+            public Long answer() {
+                return CompressionFilterTest.this.changes;
+            }
+        });
+        EasyMock.replay(bookChangeCounter);
+        this.bookChangeTracker = new BookChangeTracker(bookChangeCounter,
+                BookChangeTracker.DEFAULT_MAX_AGE);
+        this.compressionFilter = new CompressionFilter(this.bookChangeTracker,
+                MIN_COMPRESSION_SIZE);
+    }
+
+    /**
+     * Tests that a body of at least the minimum size is compressed for a client accepting gzip
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testCompressesLargeBody() throws Exception {
+        String body = StringUtils.repeat("{\"title\":\"Goodnight Moon\"}", 20);
+        MockHttpServletResponse response = this.filter(this.createRequest("gzip, deflate"),
+                new WritingFilterChain(body, null));
+
+        Assert.assertEquals("body must be compressed", "gzip",
+                response.getHeader("Content-Encoding"));
+        Assert.assertEquals("Vary must be set", "Accept-Encoding, Accept",
+                response.getHeader("Vary"));
+        byte[] compressed = response.getContentAsByteArray();
+        Assert.assertTrue("body must be smaller", compressed.length < body.length());
+        Assert.assertEquals("body must decompress", body, this.decompress(compressed));
+    }
+
+    /**
+     * Tests that a body smaller than the minimum size, or for a client not accepting gzip, is
+     * written as it is
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testDoesNotCompress() throws Exception {
+        String smallBody = "{\"title\":\"Goodnight Moon\"}";
+        MockHttpServletResponse response = this.filter(this.createRequest("gzip"),
+                new WritingFilterChain(smallBody, null));
+        Assert.assertNull("body must not be compressed", response.getHeader("Content-Encoding"));
+        Assert.assertEquals("body must match", smallBody, response.getContentAsString());
+        Assert.assertEquals("length must be set", smallBody.length(), response.getContentLength());
+
+        String largeBody = StringUtils.repeat(smallBody, 20);
+        for (String acceptEncoding : new String[]{null, "deflate", "gzip;q=0"}) {
+            response = this.filter(this.createRequest(acceptEncoding), new WritingFilterChain(
+                    largeBody, null));
+            Assert.assertNull("body must not be compressed for " + acceptEncoding,
+                    response.getHeader("Content-Encoding"));
+            Assert.assertEquals("body must match", largeBody, response.getContentAsString());
+        }
+    }
+
+    /**
+     * Tests that the ETag of a compressed response is suffixed, and that the suffix is removed
+     * from the ETags of conditional requests before they reach the controllers, while a 304
+     * response carries the suffixed ETag back
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSuffixesETagOfCompressedResponse() throws Exception {
+        String body = StringUtils.repeat("{\"title\":\"Goodnight Moon\"}", 20);
+        MockHttpServletResponse response = this.filter(this.createRequest("gzip"),
+                new WritingFilterChain(body, "\"42\""));
+        Assert.assertEquals("ETag must be suffixed", "\"42-gzip\"", response.getHeader("ETag"));
+
+        // the same response as it is keeps its ETag
+        response = this.filter(this.createRequest(null), new WritingFilterChain(body, "\"42\""));
+        Assert.assertEquals("ETag must not be suffixed", "\"42\"", response.getHeader("ETag"));
+        response = this.filter(this.createRequest("gzip"), new WritingFilterChain(
+                "{\"title\":\"Goodnight Moon\"}", "\"42\""));
+        Assert.assertEquals("ETag must not be suffixed", "\"42\"", response.getHeader("ETag"));
+
+        // the controllers must see the ETag of the response as it is
+        final List<String> ifNoneMatch = new ArrayList<String>();
+        FilterChain notModifiedChain = new FilterChain() {
+
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                ifNoneMatch.add(((HttpServletRequest) request).getHeader("If-None-Match"));
+                HttpServletResponse httpResponse = (HttpServletResponse) response;
+                httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                httpResponse.setHeader("ETag", "\"42\"");
+            }
+        };
+        MockHttpServletRequest request = this.createRequest("gzip");
+        request.addHeader("If-None-Match", "\"41-gzip\", \"42-gzip\"");
+        response = this.filter(request, notModifiedChain);
+        Assert.assertEquals("suffix must be removed", "\"41\", \"42\"", ifNoneMatch.get(0));
+        Assert.assertEquals("ETag must be suffixed", "\"42-gzip\"", response.getHeader("ETag"));
+
+        // a client which was sent the response as it is gets its ETag back
+        request = this.createRequest("gzip");
+        request.addHeader("If-None-Match", "\"42\"");
+        response = this.filter(request, notModifiedChain);
+        Assert.assertEquals("ETag must match", "\"42\"", ifNoneMatch.get(1));
+        Assert.assertEquals("ETag must not be suffixed", "\"42\"", response.getHeader("ETag"));
+    }
+
+    /**
+     * Tests that the compressed response of the collection is cached until the collection
+     * changes, while other responses aren't cached
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testCachesCollectionResponse() throws Exception {
+        String body = StringUtils.repeat("{\"title\":\"Goodnight Moon\"}", 20);
+        WritingFilterChain collectionChain = new WritingFilterChain(body,
+                this.bookChangeTracker.getCollectionETag());
+        MockHttpServletResponse response = this.filter(this.createRequest("gzip"),
+                collectionChain);
+        Assert.assertEquals("response must be written", 1, collectionChain.count);
+
+        // the same request must be answered from the cache
+        MockHttpServletResponse cachedResponse = this.filter(this.createRequest("gzip"),
+                collectionChain);
+        Assert.assertEquals("response must be cached", 1, collectionChain.count);
+        Assert.assertArrayEquals("cached body must match", response.getContentAsByteArray(),
+                cachedResponse.getContentAsByteArray());
+        Assert.assertEquals("ETag must match", response.getHeader("ETag"),
+                cachedResponse.getHeader("ETag"));
+        Assert.assertEquals("ETag must be suffixed", CompressingResponseWrapper
+                .toGzipETag(this.bookChangeTracker.getCollectionETag()), cachedResponse
+                .getHeader("ETag"));
+        Assert.assertEquals("Vary must be set", "Accept-Encoding, Accept",
+                cachedResponse.getHeader("Vary"));
+        Assert.assertEquals("body must be compressed", "gzip",
+                cachedResponse.getHeader("Content-Encoding"));
+
+        // once the collection changes, the response must be written again
+        this.changes++;
+        this.bookChangeTracker.booksChanged();
+        collectionChain = new WritingFilterChain(body, this.bookChangeTracker
+                .getCollectionETag());
+        this.filter(this.createRequest("gzip"), collectionChain);
+        Assert.assertEquals("response must be written again", 1, collectionChain.count);
+
+        // responses without the ETag of the collection must never be cached
+        WritingFilterChain bookChain = new WritingFilterChain(body, "\"0\"");
+        for (int i = 0; i < 2; i++) {
+            MockHttpServletRequest request = this.createRequest("gzip");
+            request.setRequestURI("/api/books/1");
+            this.filter(request, bookChain);
+        }
+        Assert.assertEquals("response must not be cached", 2, bookChain.count);
+    }
+
+    /**
+     * Internal method that creates a GET request on the books
+     * 
+     * @param acceptEncoding
+     *            The value of the <code>Accept-Encoding</code> header, which may be
+     *            <code>null</code>
+     * @return The request
+     */
+    protected MockHttpServletRequest createRequest(String acceptEncoding) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/books");
+        request.addHeader("Accept", "application/json");
+        if (acceptEncoding != null) {
+            request.addHeader("Accept-Encoding", acceptEncoding);
+        }
+        return request;
+    }
+
+    /**
+     * Internal method that filters the <code>request</code>, returning the response
+     * 
+     * @param request
+     *            The request
+     * @param filterChain
+     *            The {@link FilterChain} writing the response
+     * @return The response
+     * @throws Exception
+     */
+    protected MockHttpServletResponse filter(MockHttpServletRequest request,
+            FilterChain filterChain) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        this.compressionFilter.doFilter(request, response, filterChain);
+        return response;
+    }
+
+    /**
+     * Internal method that decompresses the gzip <code>compressed</code> body
+     * 
+     * @param compressed
+     *            The compressed body
+     * @return The decompressed body
+     * @throws IOException
+     */
+    protected String decompress(byte[] compressed) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * A {@link FilterChain} writing a JSON body, as our controllers would, counting the times it
+     * was called
+     */
+    private static class WritingFilterChain implements FilterChain {
+
+        private final String body;
+        private final String etag;
+        private int count;
+
+        public WritingFilterChain(String body, String etag) {
+            this.body = body;
+            this.etag = etag;
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response)
+                throws IOException, ServletException {
+            this.count++;
+            HttpServletResponse httpResponse = (HttpServletResponse) response;
+            httpResponse.setStatus(HttpServletResponse.SC_OK);
+            httpResponse.setContentType("application/json;charset=UTF-8");
+            if (this.etag != null) {
+                httpResponse.setHeader("ETag", this.etag);
+            }
+            httpResponse.getOutputStream().write(this.body.getBytes("UTF-8"));
+            httpResponse.getOutputStream().flush();
+        }
+    }
+}
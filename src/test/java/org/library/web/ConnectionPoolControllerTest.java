@@ -0,0 +1,89 @@
+package org.library.web;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.library.WebApplicationInitializer;
+import org.library.config.data.AbstractDataConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * A test of the {@link ConnectionPoolController}, focusing on the "/pool" REST API endpoint
+ * 
+ * @author dylants
+ * 
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {WebApplicationInitializer.RootContextConfiguration.class,
+        WebApplicationInitializer.ServletContextConfiguration.class})
+@ActiveProfiles("development")
+@WebAppConfiguration
+public class ConnectionPoolControllerTest {
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    private AsyncMockMvc mockMvc;
+
+    @Before
+    public void setupBefore() {
+        this.mockMvc = new AsyncMockMvc(MockMvcBuilders.webAppContextSetup(
+                this.webApplicationContext).build());
+    }
+
+    /**
+     * Tests that the connections borrowed to handle a request are recorded, and returned to the
+     * pool afterwards
+     * 
+     * @throws Exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGET_PoolMetrics() throws Exception {
+        long borrows = ((Number) this.findPoolMetrics().get("borrows")).longValue();
+        this.mockMvc.perform(get("/books?limit=5")).andExpect(status().isOk());
+
+        Map<String, Object> metrics = this.findPoolMetrics();
+        Assert.assertEquals("max active must match", AbstractDataConfig.POOL_MAX_ACTIVE,
+                ((Number) metrics.get("maxActive")).intValue());
+        Assert.assertTrue("the borrowed connection must be recorded",
+                ((Number) metrics.get("borrows")).longValue() > borrows);
+        Assert.assertEquals("no borrow must have failed", 0,
+                ((Number) metrics.get("failures")).longValue());
+        Assert.assertEquals("no thread must be waiting", 0,
+                ((Number) metrics.get("waiting")).intValue());
+        Assert.assertTrue("the pool must hold connections",
+                ((Number) metrics.get("size")).intValue() > 0);
+        Map<String, Number> latency = (Map<String, Number>) metrics.get("borrowLatency");
+        Assert.assertTrue("percentiles must be ordered",
+                latency.get("p50").doubleValue() <= latency.get("max").doubleValue());
+    }
+
+    /**
+     * Internal method that returns the metrics read from the "/pool" endpoint
+     * 
+     * @return The metrics
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> findPoolMetrics() throws Exception {
+        String content = this.mockMvc.perform(get("/pool")).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return this.objectMapper.readValue(content, Map.class);
+    }
+}
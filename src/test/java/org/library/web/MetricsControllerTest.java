@@ -0,0 +1,91 @@
+package org.library.web;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.library.WebApplicationInitializer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * A test of the {@link MetricsController}, focusing on the "/metrics" REST API endpoint
+ * 
+ * @author dylants
+ * 
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {WebApplicationInitializer.RootContextConfiguration.class,
+        WebApplicationInitializer.ServletContextConfiguration.class})
+@ActiveProfiles("development")
+@WebAppConfiguration
+public class MetricsControllerTest {
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    private AsyncMockMvc mockMvc;
+
+    @Before
+    public void setupBefore() {
+        this.mockMvc = new AsyncMockMvc(MockMvcBuilders.webAppContextSetup(
+                this.webApplicationContext).build());
+    }
+
+    /**
+     * Tests that requests are recorded against the endpoint of their handler method and the status
+     * code of their response
+     * 
+     * @throws Exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGET_Metrics() throws Exception {
+        this.mockMvc.perform(get("/books/1")).andExpect(status().isOk());
+        this.mockMvc.perform(get("/books/999999")).andExpect(status().isNotFound());
+
+        Map<String, Object> metrics = this.findMetrics();
+        Map<String, Object> endpoints = (Map<String, Object>) metrics.get("endpoints");
+        Map<String, Object> findBook = (Map<String, Object>) endpoints.get("findBook");
+        Assert.assertNotNull("findBook must be recorded", findBook);
+        Assert.assertTrue("both requests must be recorded",
+                ((Number) findBook.get("requests")).longValue() >= 2);
+        Assert.assertEquals("no request must have failed", 0,
+                ((Number) findBook.get("errors")).longValue());
+        Map<String, Number> latency = (Map<String, Number>) findBook.get("latency");
+        Assert.assertTrue("latencies must be recorded", latency.get("max").doubleValue() > 0);
+        Assert.assertTrue("percentiles must be ordered",
+                latency.get("p50").doubleValue() <= latency.get("p99").doubleValue());
+
+        Map<String, Number> statuses = (Map<String, Number>) metrics.get("statuses");
+        Assert.assertTrue("the OK response must be counted", statuses.get("200").longValue() > 0);
+        Assert.assertTrue("the not found response must be counted",
+                statuses.get("404").longValue() > 0);
+    }
+
+    /**
+     * Internal method that returns the metrics read from the "/metrics" endpoint
+     * 
+     * @return The metrics
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> findMetrics() throws Exception {
+        String content = this.mockMvc.perform(get("/metrics")).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return this.objectMapper.readValue(content, Map.class);
+    }
+}
\ No newline at end of file